@@ -0,0 +1,205 @@
+package com.patientping.benchmarks;
+
+import com.patientping.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of every BookStats stage over a generated csv. Run with "-prof gc" to also report allocation rates:
+ *
+ * java -jar target/benchmarks.jar BookStatsBenchmark -prof gc -p rows=1000000
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BookStatsBenchmark {
+
+    @Param({"10000", "1000000"})
+    public long rows;
+
+    private Path csv;
+    private StatsReport report;
+    private BookStats bookStats;
+    private List<Book> books;
+    private Map<String, List<Book>> booksByAuthor;
+    private BookTable table;
+    private AuthorIndex authorIndex;
+    private ParallelBookStats parallelBookStats;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        csv = Files.createTempFile("books-" + rows + "-", ".csv");
+        new BooksGenerator(rows, 42L).write(rows, csv);
+        bookStats = new BookStats();
+        try (InputStream in = Files.newInputStream(csv)) {
+            books = bookStats.loadCsv(in);
+        }
+        booksByAuthor = bookStats.indexByAuthor(books);
+        table = new MappedCsvLoader(csv).loadTable();
+        authorIndex = AuthorIndex.build(table);
+        parallelBookStats = new ParallelBookStats();
+        report = bookStats.report("All Language Book Stats", table, null, authorIndex);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(csv);
+    }
+
+    @Benchmark
+    public List<Book> loadCsv() throws IOException {
+        try (InputStream in = Files.newInputStream(csv)) {
+            return bookStats.loadCsv(in);
+        }
+    }
+
+    @Benchmark
+    public List<Book> loadCsvMapped() throws IOException {
+        return new MappedCsvLoader(csv).loadCsv();
+    }
+
+    @Benchmark
+    public List<Book> loadCsvParallel() throws IOException {
+        return bookStats.loadCsvParallel(csv);
+    }
+
+    @Benchmark
+    public BookTable loadTable() throws IOException {
+        return new MappedCsvLoader(csv).loadTable();
+    }
+
+    @Benchmark
+    public StreamingBookStats streamingStats() throws IOException {
+        StreamingBookStats stats = new StreamingBookStats();
+        try (InputStream in = Files.newInputStream(csv)) {
+            stats.load(in);
+        }
+        return stats;
+    }
+
+    @Benchmark
+    public List<Book> filterToEnglishBooks() {
+        return bookStats.filterToEnglishBooks(books);
+    }
+
+    @Benchmark
+    public int[] filterToEnglishBooksColumnar() {
+        return bookStats.filterToEnglishBooks(table);
+    }
+
+    @Benchmark
+    public Map<String, List<Book>> indexByAuthor() {
+        return bookStats.indexByAuthor(books);
+    }
+
+    @Benchmark
+    public AuthorIndex buildAuthorIndex() {
+        return AuthorIndex.build(table);
+    }
+
+    @Benchmark
+    public Author findMostBooks() {
+        return bookStats.findMostBooks(booksByAuthor);
+    }
+
+    @Benchmark
+    public Author findMostBooksParallel() {
+        return parallelBookStats.findMostBooks(booksByAuthor);
+    }
+
+    @Benchmark
+    public Author findMostBooksIndexed() {
+        return bookStats.findMostBooks(authorIndex);
+    }
+
+    @Benchmark
+    public Book findHighestRatedBook() {
+        return bookStats.findHighestRatedBook(books);
+    }
+
+    @Benchmark
+    public Book findHighestRatedBookParallel() {
+        return parallelBookStats.findHighestRatedBook(books);
+    }
+
+    @Benchmark
+    public Book findHighestRatedBookColumnar() {
+        return bookStats.findHighestRatedBook(table);
+    }
+
+    @Benchmark
+    public Book findHighestRatio() {
+        return bookStats.findHighestRatio(books);
+    }
+
+    @Benchmark
+    public Book findHighestRatioParallel() {
+        return parallelBookStats.findHighestRatio(books);
+    }
+
+    @Benchmark
+    public Book findHighestRatioColumnar() {
+        return bookStats.findHighestRatio(table);
+    }
+
+    @Benchmark
+    public Author findAuthorWithHighestAverageRating() {
+        return bookStats.findAuthorWithHighestAverageRating(booksByAuthor);
+    }
+
+    @Benchmark
+    public Author findAuthorWithHighestAverageRatingParallel() {
+        return parallelBookStats.findAuthorWithHighestAverageRating(booksByAuthor);
+    }
+
+    @Benchmark
+    public Author findAuthorWithHighestAverageRatingIndexed() {
+        return bookStats.findAuthorWithHighestAverageRating(authorIndex);
+    }
+
+    /**
+     * Writes 1000 reports, as for a per-shard or per-language breakdown, through one ReportWriter.
+     */
+    @Benchmark
+    public void writeReportsJsonl() throws IOException {
+        try (ReportWriter writer = new ReportWriter(DISCARD, ReportWriter.Format.JSONL)) {
+            for (int i = 0; i < 1000; i++) {
+                writer.write(report);
+            }
+        }
+    }
+
+    @Benchmark
+    public void writeReportsText() throws IOException {
+        try (ReportWriter writer = new ReportWriter(DISCARD, ReportWriter.Format.TEXT)) {
+            for (int i = 0; i < 1000; i++) {
+                writer.write(report);
+            }
+        }
+    }
+
+    private static final Writer DISCARD = new Writer() {
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+}
@@ -0,0 +1,178 @@
+package com.patientping.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/**
+ * Writes synthetic books.csv-shaped data for benchmarks. The output only depends on the row count and seed, so the
+ * same parameters always produce the same file.
+ *
+ * Authors are drawn from a Zipf-like distribution so a few authors have many books, about a fifth of the rows list
+ * several authors joined with "-", and language codes follow roughly the mix found in the bundled books.csv.
+ * About one row in a thousand has a quoted title containing a comma, which the loaders skip, like the real file.
+ */
+public class BooksGenerator {
+    public static final String HEADER = "bookID,title,authors,average_rating,isbn,isbn13,language_code,# num_pages,ratings_count,text_reviews_count";
+
+    private static final String[] LANGUAGES = {"eng", "en-US", "spa", "en-GB", "ger", "fre", "jpn", "por", "mul", "ita"};
+    private static final int[] LANGUAGE_WEIGHTS = {7700, 1240, 305, 250, 175, 150, 50, 20, 15, 95};
+    private static final String[] FIRST_NAMES = {"Mary", "John", "J.K.", "Stephen", "Agatha", "William", "Jane", "Terry", "Ursula", "Neil", "Hans", "Zoë", "José", "Fyodor", "Haruki"};
+    private static final String[] LAST_NAMES = {"Rowling", "King", "Christie", "Shakespeare", "Austen", "Pratchett", "Le Guin", "Gaiman", "Andersen", "GrandPré", "Saramago", "Dostoyevsky", "Murakami", "Smith", "Brown"};
+    private static final String[] TITLE_WORDS = {"The", "Secret", "History", "of", "Night", "Garden", "Winter", "Stone", "House", "River", "Last", "Song", "Empire", "Collected", "Stories"};
+
+    private final long seed;
+    private final int authorCount;
+    private final double[] authorCumulative;
+
+    /**
+     * @param rows the number of rows that will be generated; the author pool grows with it.
+     * @param seed the random seed.
+     */
+    public BooksGenerator(long rows, long seed) {
+        this.seed = seed;
+        this.authorCount = (int) Math.max(100, Math.min(rows / 4, 5_000_000));
+        this.authorCumulative = new double[authorCount];
+        double total = 0;
+        for (int i = 0; i < authorCount; i++) {
+            total += 1.0 / Math.pow(i + 1, 1.1);
+            authorCumulative[i] = total;
+        }
+        for (int i = 0; i < authorCount; i++) {
+            authorCumulative[i] /= total;
+        }
+    }
+
+    /**
+     * Write a header and the given number of rows.
+     *
+     * @param rows the number of rows to write.
+     * @param out where to write them.
+     * @throws IOException if writing fails.
+     */
+    public void write(long rows, Writer out) throws IOException {
+        Random random = new Random(seed);
+        StringBuilder line = new StringBuilder(160);
+        out.write(HEADER);
+        out.write('\n');
+        for (long id = 1; id <= rows; id++) {
+            line.setLength(0);
+            line.append(id).append(',');
+            appendTitle(random, line);
+            line.append(',');
+            int authors = random.nextInt(10) < 8 ? 1 : 2 + random.nextInt(3);
+            for (int i = 0; i < authors; i++) {
+                if (i > 0) {
+                    line.append('-');
+                }
+                appendAuthor(pickAuthor(random), line);
+            }
+            int ratingCount = random.nextInt(20) == 0 ? random.nextInt(25) : (int) Math.min(Integer.MAX_VALUE, Math.exp(random.nextDouble() * 15));
+            int textReviews = ratingCount == 0 ? 0 : random.nextInt(Math.max(1, ratingCount / 10 + 1));
+            int rating = ratingCount == 0 ? 0 : 100 + random.nextInt(401);
+            long isbn13 = 9780000000000L + Math.floorMod(id * 7919L, 10_000_000_000L);
+            line.append(',').append(rating / 100).append('.').append(rating % 100 < 10 ? "0" : "").append(rating % 100)
+                    .append(',');
+            appendZeroPadded(isbn13 % 10_000_000_000L, 10, line);
+            line.append(',').append(isbn13)
+                    .append(',').append(pickLanguage(random))
+                    .append(',').append(1 + random.nextInt(1500))
+                    .append(',').append(ratingCount)
+                    .append(',').append(textReviews)
+                    .append('\n');
+            out.append(line);
+        }
+    }
+
+    /**
+     * Write a complete csv file.
+     *
+     * @param rows the number of rows to write.
+     * @param file the file to create or replace.
+     * @throws IOException if writing fails.
+     */
+    public void write(long rows, Path file) throws IOException {
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file), StandardCharsets.UTF_8), 1 << 16)) {
+            write(rows, out);
+        }
+    }
+
+    private int pickAuthor(Random random) {
+        double u = random.nextDouble();
+        int lo = 0;
+        int hi = authorCount - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (authorCumulative[mid] < u) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static void appendAuthor(int author, StringBuilder line) {
+        line.append(FIRST_NAMES[author % FIRST_NAMES.length]).append(' ')
+                .append(LAST_NAMES[(author / FIRST_NAMES.length) % LAST_NAMES.length]);
+        int suffix = author / (FIRST_NAMES.length * LAST_NAMES.length);
+        if (suffix > 0) {
+            line.append(' ').append(suffix);
+        }
+    }
+
+    private static void appendTitle(Random random, StringBuilder line) {
+        boolean quoted = random.nextInt(1000) == 0;
+        if (quoted) {
+            line.append('"');
+        }
+        int words = 1 + random.nextInt(6);
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                line.append(' ');
+            }
+            line.append(TITLE_WORDS[random.nextInt(TITLE_WORDS.length)]);
+        }
+        if (quoted) {
+            line.append(", Volume ").append(1 + random.nextInt(9)).append('"');
+        }
+    }
+
+    private static void appendZeroPadded(long value, int width, StringBuilder line) {
+        String digits = Long.toString(value);
+        for (int i = digits.length(); i < width; i++) {
+            line.append('0');
+        }
+        line.append(digits);
+    }
+
+    private static String pickLanguage(Random random) {
+        int pick = random.nextInt(10000);
+        for (int i = 0; i < LANGUAGES.length; i++) {
+            pick -= LANGUAGE_WEIGHTS[i];
+            if (pick < 0) {
+                return LANGUAGES[i];
+            }
+        }
+        return LANGUAGES[0];
+    }
+
+    /**
+     * Generate a file from the command line: BooksGenerator &lt;rows&gt; &lt;file&gt; [seed]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: BooksGenerator <rows> <file> [seed]");
+            return;
+        }
+        long rows = Long.parseLong(args[0]);
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 42L;
+        new BooksGenerator(rows, seed).write(rows, Paths.get(args[1]));
+    }
+}
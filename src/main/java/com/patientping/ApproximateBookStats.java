@@ -0,0 +1,201 @@
+package com.patientping;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Approximate stats for one set of books in memory that does not grow with the input, for feeds too large for the
+ * exact per-author maps: distinct author and title counts (HyperLogLog), the authors with the most books
+ * (Space-Saving) and rating and ratio percentiles (t-digest). Stats built from different parts of a feed, e.g. on
+ * different machines, can be merged.
+ */
+public class ApproximateBookStats implements BookAccumulator, Serializable {
+    private static final long serialVersionUID = 1L;
+    public static final double DEFAULT_DISTINCT_ERROR = 0.01;
+    public static final double DEFAULT_TOP_AUTHORS_ERROR = 0.0001;
+
+    private final HyperLogLog distinctAuthors;
+    private final HyperLogLog distinctTitles;
+    private final SpaceSaving topAuthors;
+    private final TDigest ratings;
+    private final TDigest ratios;
+    private long bookCount;
+
+    public ApproximateBookStats() {
+        this(DEFAULT_DISTINCT_ERROR, DEFAULT_TOP_AUTHORS_ERROR, TDigest.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param distinctError the relative standard error of the distinct author and title counts.
+     * @param topAuthorsError the most an author's book count may be overestimated by, as a fraction of the total
+     *                        number of (book, author) pairs.
+     * @param compression the t-digest compression of the percentiles; higher is more accurate.
+     */
+    public ApproximateBookStats(double distinctError, double topAuthorsError, double compression) {
+        this.distinctAuthors = HyperLogLog.withRelativeError(distinctError);
+        this.distinctTitles = HyperLogLog.withRelativeError(distinctError);
+        this.topAuthors = SpaceSaving.withError(topAuthorsError);
+        this.ratings = new TDigest(compression);
+        this.ratios = new TDigest(compression);
+    }
+
+    /**
+     * Add a book. The csv parsers accept "NaN" and "Infinity" as an average_rating, which the percentiles cannot
+     * place, so a book is still counted but left out of the percentiles if its rating or ratio is not finite.
+     *
+     * @param book the book to add.
+     */
+    @Override
+    public void accept(Book book) {
+        bookCount++;
+        distinctTitles.add(book.getTitle());
+        for (String author : book.getAuthors().split("-")) {
+            distinctAuthors.add(author);
+            topAuthors.add(author);
+        }
+        float rating = book.getAverageRating();
+        if (isFinite(rating)) {
+            ratings.add(rating);
+        }
+        if (book.getRatingCount() > 0) { //don't divide by zero
+            float ratio = ((float) book.getTextReviewsCount()) / ((float) book.getRatingCount());
+            if (isFinite(ratio)) {
+                ratios.add(ratio);
+            }
+        }
+    }
+
+    private static boolean isFinite(float value) {
+        return !Float.isNaN(value) && !Float.isInfinite(value);
+    }
+
+    /**
+     * Fold stats for other books into these.
+     *
+     * @param other stats built with the same distinct count error.
+     */
+    public void merge(ApproximateBookStats other) {
+        bookCount += other.bookCount;
+        distinctAuthors.merge(other.distinctAuthors);
+        distinctTitles.merge(other.distinctTitles);
+        topAuthors.merge(other.topAuthors);
+        ratings.merge(other.ratings);
+        ratios.merge(other.ratios);
+    }
+
+    public long getBookCount() {
+        return bookCount;
+    }
+
+    public long getDistinctAuthorCount() {
+        return distinctAuthors.estimate();
+    }
+
+    public long getDistinctTitleCount() {
+        return distinctTitles.estimate();
+    }
+
+    /**
+     * @param k the number of authors to return.
+     * @return up to k authors with the most books, most first, with upper bounds on their book counts.
+     */
+    public List<SpaceSaving.HeavyHitter> getAuthorsWithMostBooks(int k) {
+        return topAuthors.getTop(k);
+    }
+
+    /**
+     * @param q the quantile, from 0 to 1; 0.5 is the median.
+     * @return the estimated average rating at the quantile, or NaN if there are no books.
+     */
+    public double getRatingQuantile(double q) {
+        return ratings.quantile(q);
+    }
+
+    /**
+     * @param q the quantile, from 0 to 1.
+     * @return the estimated ratio of text reviews to star ratings at the quantile, over books with ratings.
+     */
+    public double getRatioQuantile(double q) {
+        return ratios.quantile(q);
+    }
+
+    public HyperLogLog getDistinctAuthors() {
+        return distinctAuthors;
+    }
+
+    public HyperLogLog getDistinctTitles() {
+        return distinctTitles;
+    }
+
+    public SpaceSaving getTopAuthors() {
+        return topAuthors;
+    }
+
+    public TDigest getRatings() {
+        return ratings;
+    }
+
+    public TDigest getRatios() {
+        return ratios;
+    }
+
+    /**
+     * Load a csv in one pass and write approximate stats for English books and for all books.
+     *
+     * @param in an input stream from a csv file containing books, which may be gzip compressed.
+     * @param report where to write the stats.
+     * @param bookStats parses the rows and records the load and rejected rows in its metrics.
+     * @throws IOException if the csv cannot be read or the report cannot be written.
+     */
+    public static void run(InputStream in, ReportWriter report, BookStats bookStats) throws IOException {
+        bookStats.getMetrics().register();
+        ApproximateBookStats english = new ApproximateBookStats();
+        ApproximateBookStats all = new ApproximateBookStats();
+        load(in, english, all, bookStats);
+        writeReport(english, all, report, bookStats);
+    }
+
+    /**
+     * Load one csv, or every csv matching a glob one after another, and write approximate stats for English books
+     * and for all books.
+     *
+     * @param location a csv or csv.gz file, a directory of them or a glob such as data/publishers/*.csv.
+     * @param report where to write the stats.
+     * @param bookStats parses the rows and records the loads and rejected rows in its metrics.
+     * @throws IOException if a file cannot be read or the report cannot be written.
+     */
+    public static void run(String location, ReportWriter report, BookStats bookStats) throws IOException {
+        bookStats.getMetrics().register();
+        Path path = Paths.get(location);
+        List<Path> files = Files.isRegularFile(path) ? Collections.singletonList(path) : ShardedBookStats.findShards(location);
+        report.writeLine("Processing " + files.size() + " files");
+        ApproximateBookStats english = new ApproximateBookStats();
+        ApproximateBookStats all = new ApproximateBookStats();
+        for (Path file : files) {
+            try (InputStream in = GzipInput.open(file)) {
+                load(in, english, all, bookStats);
+            }
+        }
+        writeReport(english, all, report, bookStats);
+    }
+
+    private static void load(InputStream in, ApproximateBookStats english, ApproximateBookStats all, BookStats bookStats) throws IOException {
+        FilteredAccumulator englishFilter = new FilteredAccumulator(BookStats::isEnglish, english);
+        bookStats.streamCsv(in, book -> {
+            all.accept(book);
+            englishFilter.accept(book);
+        });
+    }
+
+    private static void writeReport(ApproximateBookStats english, ApproximateBookStats all, ReportWriter report, BookStats bookStats) throws IOException {
+        report.write(ApproximateReport.of("Approximate English Book Stats", english));
+        report.write(ApproximateReport.of("Approximate All Language Book Stats", all));
+        report.writeLine("Metrics: " + bookStats.getMetrics().toJson());
+    }
+}
@@ -0,0 +1,87 @@
+package com.patientping;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The approximate answers for one set of books, as ApproximateBookStats estimates them, ready to be written by a
+ * ReportWriter in any of its formats.
+ */
+public final class ApproximateReport {
+    /** The quantiles reported for ratings and ratios. */
+    static final double[] QUANTILES = {0.5, 0.9, 0.99};
+    /** How many of the authors with the most books are reported. */
+    static final int TOP_AUTHORS = 5;
+
+    private final String name;
+    private final long bookCount;
+    private final long distinctAuthorCount;
+    private final long distinctTitleCount;
+    private final List<SpaceSaving.HeavyHitter> authorsWithMostBooks;
+    private final double[] ratingQuantiles;
+    private final double[] ratioQuantiles;
+
+    private ApproximateReport(String name, ApproximateBookStats stats) {
+        this.name = name;
+        this.bookCount = stats.getBookCount();
+        this.distinctAuthorCount = stats.getDistinctAuthorCount();
+        this.distinctTitleCount = stats.getDistinctTitleCount();
+        this.authorsWithMostBooks = Collections.unmodifiableList(stats.getAuthorsWithMostBooks(TOP_AUTHORS));
+        this.ratingQuantiles = new double[QUANTILES.length];
+        this.ratioQuantiles = new double[QUANTILES.length];
+        for (int i = 0; i < QUANTILES.length; i++) {
+            ratingQuantiles[i] = stats.getRatingQuantile(QUANTILES[i]);
+            ratioQuantiles[i] = stats.getRatioQuantile(QUANTILES[i]);
+        }
+    }
+
+    /**
+     * Estimate every answer from approximate stats.
+     *
+     * @param name what the books are, e.g. "Approximate English Book Stats".
+     * @param stats the accumulated stats.
+     * @return the report.
+     */
+    public static ApproximateReport of(String name, ApproximateBookStats stats) {
+        return new ApproximateReport(name, stats);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getBookCount() {
+        return bookCount;
+    }
+
+    public long getDistinctAuthorCount() {
+        return distinctAuthorCount;
+    }
+
+    public long getDistinctTitleCount() {
+        return distinctTitleCount;
+    }
+
+    /**
+     * @return up to TOP_AUTHORS authors with the most books, most first, with upper bounds on their book counts.
+     */
+    public List<SpaceSaving.HeavyHitter> getAuthorsWithMostBooks() {
+        return authorsWithMostBooks;
+    }
+
+    /**
+     * @param i an index into QUANTILES.
+     * @return the estimated average rating at that quantile.
+     */
+    public double getRatingQuantile(int i) {
+        return ratingQuantiles[i];
+    }
+
+    /**
+     * @param i an index into QUANTILES.
+     * @return the estimated ratio of text reviews to star ratings at that quantile.
+     */
+    public double getRatioQuantile(int i) {
+        return ratioQuantiles[i];
+    }
+}
@@ -32,6 +32,7 @@ public class Author {
 
     public void setBooks(List<Book> books) {
         this.books = books;
+        this.averageRatingForAllBooks = -1; //the cached average belongs to the old list of books
     }
 
     public float getAverageRatingForAllBooks() {
@@ -39,12 +40,22 @@ public class Author {
     }
 
     private float calculateAverageRatingAcrossAllBooks() {
+        averageRatingForAllBooks = averageRating(books);
+
+        return averageRatingForAllBooks;
+    }
+
+    /**
+     * Average the star ratings of some books, adding them up in list order.
+     *
+     * @param books a list of books.
+     * @return the average rating, or NaN if there are no books.
+     */
+    static float averageRating(List<Book> books) {
         float ratingTotal = 0f;
         for(Book book: books) {
             ratingTotal += book.getAverageRating();
         }
-        averageRatingForAllBooks = ratingTotal / ((float) books.size());
-
-        return averageRatingForAllBooks;
+        return ratingTotal / ((float) books.size());
     }
 }
@@ -0,0 +1,73 @@
+package com.patientping;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps a count and rating total per author instead of a list of their books, so memory is bounded by the number of
+ * distinct authors. Answers "author with the most books" and "author with the highest average rating".
+ */
+public class AuthorAggregates implements BookAccumulator, Serializable {
+    private static final long serialVersionUID = 1L;
+    private final Map<String, AuthorTotals> totalsByAuthor = new LinkedHashMap<>();
+
+    @Override
+    public void accept(Book book) {
+        for (String author : book.getAuthors().split("-")) {
+            totalsByAuthor.computeIfAbsent(author, AuthorTotals::new).add(book.getAverageRating());
+        }
+    }
+
+    /**
+     * Add the totals from books that came after these, e.g. the next shard. Authors new to these aggregates are
+     * added after the existing ones, so ties still go to the author seen first.
+     *
+     * @param other aggregates of later books.
+     */
+    public void merge(AuthorAggregates other) {
+        for (AuthorTotals totals : other.totalsByAuthor.values()) {
+            totalsByAuthor.computeIfAbsent(totals.getName(), AuthorTotals::new).merge(totals);
+        }
+    }
+
+    public Collection<AuthorTotals> getTotals() {
+        return totalsByAuthor.values();
+    }
+
+    public AuthorTotals getTotals(String author) {
+        return totalsByAuthor.get(author);
+    }
+
+    /**
+     * Find the author with the most books. Ties go to the author that was seen first.
+     *
+     * @return the totals of the author with the most books, or null if no books were seen.
+     */
+    public AuthorTotals findMostBooks() {
+        AuthorTotals best = null;
+        for (AuthorTotals totals : totalsByAuthor.values()) {
+            if (best == null || totals.getBookCount() > best.getBookCount()) {
+                best = totals;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Find the author with the highest average rating across all of their books. Ties go to the author that was seen
+     * first.
+     *
+     * @return the totals of the author with the highest average rating, or null if no books were seen.
+     */
+    public AuthorTotals findHighestAverageRating() {
+        AuthorTotals best = null;
+        for (AuthorTotals totals : totalsByAuthor.values()) {
+            if (best == null || totals.getAverageRating() > best.getAverageRating()) {
+                best = totals;
+            }
+        }
+        return best;
+    }
+}
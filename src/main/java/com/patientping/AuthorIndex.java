@@ -0,0 +1,187 @@
+package com.patientping;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of a BookTable by author. Every distinct author name is given an int id once, in the order the names are
+ * first seen, and each author's books are kept as a sorted array of table rows.
+ * A view restricted to a subset of rows (e.g. the English books) shares the same dictionary and postings.
+ */
+public class AuthorIndex {
+    private final BookTable table;
+    private final List<String> names;
+    private final Map<String, Integer> idsByName;
+    private final int[][] postings;
+    private final BitSet rowFilter;
+
+    private AuthorIndex(BookTable table, List<String> names, Map<String, Integer> idsByName, int[][] postings, BitSet rowFilter) {
+        this.table = table;
+        this.names = names;
+        this.idsByName = idsByName;
+        this.postings = postings;
+        this.rowFilter = rowFilter;
+    }
+
+    /**
+     * Index every row of a table by author. The authors column is split on "-" once per row.
+     *
+     * @param table a BookTable.
+     * @return an index over every row of the table.
+     */
+    public static AuthorIndex build(BookTable table) {
+        List<String> names = new ArrayList<>();
+        Map<String, Integer> idsByName = new HashMap<>();
+        int[][] postings = new int[16][];
+        int[] counts = new int[16];
+        for (int row = 0; row < table.size(); row++) {
+            for (String author : table.getAuthors(row).split("-")) {
+                Integer id = idsByName.get(author);
+                if (id == null) {
+                    id = names.size();
+                    names.add(author);
+                    idsByName.put(author, id);
+                    if (id == postings.length) {
+                        postings = Arrays.copyOf(postings, id * 2);
+                        counts = Arrays.copyOf(counts, id * 2);
+                    }
+                    postings[id] = new int[2];
+                }
+                int[] rows = postings[id];
+                if (counts[id] == rows.length) {
+                    rows = Arrays.copyOf(rows, rows.length * 2);
+                    postings[id] = rows;
+                }
+                rows[counts[id]++] = row;
+            }
+        }
+        int[][] trimmed = new int[names.size()][];
+        for (int id = 0; id < trimmed.length; id++) {
+            trimmed[id] = Arrays.copyOf(postings[id], counts[id]);
+        }
+        return new AuthorIndex(table, names, idsByName, trimmed, null);
+    }
+
+    /**
+     * Rebuild an index from its dictionary and postings, as BookSnapshot stores them, without splitting any authors
+     * column.
+     *
+     * @param table the table the rows refer to.
+     * @param names every author name, indexed by author id.
+     * @param postings the ascending rows of each author's books, indexed by author id.
+     * @return an index over every row of the table.
+     */
+    static AuthorIndex of(BookTable table, List<String> names, int[][] postings) {
+        Map<String, Integer> idsByName = new HashMap<>(names.size() * 2);
+        for (int id = 0; id < names.size(); id++) {
+            idsByName.put(names.get(id), id);
+        }
+        return new AuthorIndex(table, names, idsByName, postings, null);
+    }
+
+    /**
+     * Restrict the index to some rows of the table without rebuilding it.
+     *
+     * @param rows the rows to keep, e.g. from BookStats.filterToEnglishBooks.
+     * @return a view of this index that only sees the given rows.
+     */
+    public AuthorIndex restrictTo(int[] rows) {
+        BitSet filter = new BitSet(table.size());
+        for (int row : rows) {
+            if (rowFilter == null || rowFilter.get(row)) {
+                filter.set(row);
+            }
+        }
+        return new AuthorIndex(table, names, idsByName, postings, filter);
+    }
+
+    public BookTable getTable() {
+        return table;
+    }
+
+    /**
+     * @return the number of author ids; some may have no books in a restricted view.
+     */
+    public int authorCount() {
+        return names.size();
+    }
+
+    public String getName(int authorId) {
+        return names.get(authorId);
+    }
+
+    /**
+     * @return the id of the author, or -1 if the name is not in the index.
+     */
+    public int getId(String name) {
+        Integer id = idsByName.get(name);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @return the number of books by the author that are visible in this index.
+     */
+    public int getBookCount(int authorId) {
+        if (rowFilter == null) {
+            return postings[authorId].length;
+        }
+        int count = 0;
+        for (int row : postings[authorId]) {
+            if (rowFilter.get(row)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the rows of the author's books that are visible in this index, in ascending order.
+     */
+    public int[] getRows(int authorId) {
+        if (rowFilter == null) {
+            return postings[authorId];
+        }
+        int[] rows = new int[postings[authorId].length];
+        int count = 0;
+        for (int row : postings[authorId]) {
+            if (rowFilter.get(row)) {
+                rows[count++] = row;
+            }
+        }
+        return Arrays.copyOf(rows, count);
+    }
+
+    /**
+     * Average the ratings of the author's visible books, summing them in row order like Author does.
+     *
+     * @return the average rating, or NaN if the author has no visible books.
+     */
+    public float getAverageRating(int authorId) {
+        float ratingTotal = 0f;
+        int count = 0;
+        for (int row : postings[authorId]) {
+            if (rowFilter == null || rowFilter.get(row)) {
+                ratingTotal += table.getAverageRating(row);
+                count++;
+            }
+        }
+        return ratingTotal / ((float) count);
+    }
+
+    /**
+     * Materialize an author and their visible books.
+     *
+     * @return an Author with a Book for every visible row.
+     */
+    public Author getAuthor(int authorId) {
+        List<Book> books = new ArrayList<>();
+        for (int row : getRows(authorId)) {
+            books.add(table.getBook(row));
+        }
+        return new Author(names.get(authorId), books);
+    }
+}
@@ -0,0 +1,81 @@
+package com.patientping;
+
+import java.io.Serializable;
+
+/**
+ * Running totals for a single author: how many books they have, the sum of those books' average ratings and the
+ * highest of those ratings. Ratings added one at a time are summed as floats in the order they arrive, as
+ * Author.averageRating sums them, so a single pass over the books gives exactly Author's average.
+ */
+public class AuthorTotals implements Serializable {
+    private static final long serialVersionUID = 3L;
+    private final String name;
+    private int bookCount;
+    private float ratingTotal;
+    // The exact sum, which the average is taken from once totals of two non-empty sets of books were merged.
+    private double exactRatingTotal;
+    private boolean merged;
+    private float maxRating = -1;
+
+    public AuthorTotals(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Add one book's rating to the totals.
+     *
+     * @param rating the book's average rating.
+     */
+    public void add(float rating) {
+        bookCount++;
+        ratingTotal += rating;
+        exactRatingTotal += rating;
+        if (rating > maxRating) {
+            maxRating = rating;
+        }
+    }
+
+    /**
+     * Add another set of totals for the same author, e.g. from another shard of the books. Two float sums cannot be
+     * combined into the float sum of one pass, so once both sides have books the average is taken from the exact
+     * double sum instead. It can then differ from Author's average in the last bit, and it is the same however the
+     * author's books were split between the shards that had some. Merging into empty totals just copies them.
+     *
+     * @param other totals for the same author.
+     */
+    public void merge(AuthorTotals other) {
+        merged |= other.merged || (bookCount > 0 && other.bookCount > 0);
+        bookCount += other.bookCount;
+        ratingTotal += other.ratingTotal;
+        exactRatingTotal += other.exactRatingTotal;
+        if (other.maxRating > maxRating) {
+            maxRating = other.maxRating;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getBookCount() {
+        return bookCount;
+    }
+
+    /**
+     * @return the exact sum of the ratings.
+     */
+    public double getRatingTotal() {
+        return exactRatingTotal;
+    }
+
+    public float getMaxRating() {
+        return maxRating;
+    }
+
+    /**
+     * @return the average rating: exactly Author's average unless totals were merged, see merge.
+     */
+    public float getAverageRating() {
+        return merged ? (float) (exactRatingTotal / bookCount) : ratingTotal / ((float) bookCount);
+    }
+}
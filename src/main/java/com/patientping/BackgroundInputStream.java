@@ -0,0 +1,142 @@
+package com.patientping;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * An InputStream whose bytes are produced on a background thread, so that producing them (e.g. decompressing)
+ * overlaps with whatever the reading thread does with them (e.g. parsing). Chunks are handed over through a bounded
+ * queue, so the producer can only get a fixed number of chunks ahead of the reader.
+ */
+class BackgroundInputStream extends InputStream {
+    private static final byte[] END = new byte[0];
+
+    /**
+     * Writes the stream's bytes to a sink, in order.
+     */
+    interface Producer {
+        void produce(Sink sink) throws IOException;
+    }
+
+    /**
+     * Receives bytes from a Producer. The bytes are copied, so the caller may reuse its buffer.
+     */
+    interface Sink {
+        void write(byte[] b, int off, int len) throws IOException;
+    }
+
+    private final BlockingQueue<byte[]> chunks;
+    private final Thread thread;
+    private volatile Throwable failure;
+    private byte[] chunk = new byte[0];
+    private int position;
+    private boolean ended;
+
+    /**
+     * Start producing in the background.
+     *
+     * @param name the name of the background thread.
+     * @param producer writes the bytes of the stream.
+     * @param capacity how many chunks the producer may get ahead of the reader.
+     */
+    BackgroundInputStream(String name, Producer producer, int capacity) {
+        this.chunks = new ArrayBlockingQueue<>(capacity);
+        this.thread = new Thread(() -> produce(producer), name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void produce(Producer producer) {
+        try {
+            producer.produce((b, off, len) -> {
+                if (len > 0) {
+                    byte[] copy = new byte[len];
+                    System.arraycopy(b, off, copy, 0, len);
+                    put(copy);
+                }
+            });
+        } catch (Throwable t) {
+            failure = t;
+        }
+        try {
+            put(END);
+        } catch (InterruptedIOException e) {
+            // Closed by the reader, so nobody is waiting for the end.
+        }
+    }
+
+    private void put(byte[] b) throws InterruptedIOException {
+        try {
+            chunks.put(b);
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Reader closed the stream");
+        }
+    }
+
+    /**
+     * @return false if the stream has ended.
+     */
+    private boolean fill() throws IOException {
+        while (position == chunk.length) {
+            if (ended) {
+                return false;
+            }
+            try {
+                chunk = chunks.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            position = 0;
+            if (chunk == END) {
+                ended = true;
+                Throwable t = failure;
+                if (t instanceof IOException) {
+                    throw new IOException(t.getMessage(), t);
+                } else if (t != null) {
+                    throw new IOException("Background producer failed", t);
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return fill() ? chunk[position++] & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int n = Math.min(len, chunk.length - position);
+        System.arraycopy(chunk, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return chunk.length - position;
+    }
+
+    /**
+     * Stop the producer and discard anything it has not handed over yet.
+     */
+    @Override
+    public void close() {
+        ended = true;
+        chunk = END;
+        position = 0;
+        thread.interrupt();
+        chunks.clear();
+    }
+}
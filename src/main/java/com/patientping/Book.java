@@ -1,6 +1,9 @@
 package com.patientping;
 
-public class Book {
+import java.io.Serializable;
+
+public class Book implements Serializable {
+    private static final long serialVersionUID = 1L;
     private final int id;
     private final String title;
     private final String authors;
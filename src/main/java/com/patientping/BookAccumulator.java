@@ -0,0 +1,10 @@
+package com.patientping;
+
+import java.util.function.Consumer;
+
+/**
+ * Receives books one at a time and folds them into a running result.
+ * Implementations keep only as much state as their result needs, so they can be fed straight from the csv reader.
+ */
+public interface BookAccumulator extends Consumer<Book> {
+}
@@ -0,0 +1,154 @@
+package com.patientping;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A books csv loaded once and kept in memory together with the indexes that queries need, so a long-running
+ * process can answer many queries without reloading. Instances are immutable and safe to share between threads.
+ * Adding books creates a new dataset with a higher version, so results cached against the old version no longer
+ * match. The new version shares every author's book list that the added books do not touch; the per-author lists
+ * cannot be modified, so sharing them cannot leak changes between versions. The search index is built with the
+ * dataset, so the first search does not pay for it; it and the BookIndexes for point lookups are rebuilt for each
+ * version.
+ */
+public class BookDataset {
+    private final long version;
+    private final List<Book> books;
+    private final List<Book> englishBooks;
+    private final Map<String, List<Book>> booksByAuthor;
+    private final Map<String, List<Book>> englishBooksByAuthor;
+    private final BookIndexes indexes;
+    private final BookSearchIndex searchIndex;
+
+    public BookDataset(List<Book> books) {
+        this(books, BookIndexes.build(books));
+    }
+
+    private BookDataset(List<Book> books, BookIndexes indexes) {
+        this(books, indexes, englishBooks(books, indexes), unmodifiableLists(new BookStats().indexByAuthor(books)), null, 1);
+    }
+
+    private BookDataset(List<Book> books, BookIndexes indexes, List<Book> englishBooks, Map<String, List<Book>> booksByAuthor,
+                        Map<String, List<Book>> englishBooksByAuthor, long version) {
+        this.version = version;
+        this.indexes = indexes;
+        this.books = Collections.unmodifiableList(books);
+        this.englishBooks = Collections.unmodifiableList(englishBooks);
+        this.booksByAuthor = Collections.unmodifiableMap(booksByAuthor);
+        this.englishBooksByAuthor = Collections.unmodifiableMap(englishBooksByAuthor != null ? englishBooksByAuthor
+                : unmodifiableLists(new BookStats().indexByAuthor(englishBooks)));
+        this.searchIndex = new BookSearchIndex(this.books, this.booksByAuthor);
+    }
+
+    private static Map<String, List<Book>> unmodifiableLists(Map<String, List<Book>> booksByAuthor) {
+        for (Map.Entry<String, List<Book>> entry : booksByAuthor.entrySet()) {
+            entry.setValue(Collections.unmodifiableList(entry.getValue()));
+        }
+        return booksByAuthor;
+    }
+
+    private static List<Book> englishBooks(List<Book> books, BookIndexes indexes) {
+        int[] rows = indexes.getEnglishRows().toArray();
+        List<Book> englishBooks = new ArrayList<>(rows.length);
+        for (int row : rows) {
+            englishBooks.add(books.get(row));
+        }
+        return englishBooks;
+    }
+
+    /**
+     * Load a dataset from a csv.
+     *
+     * @param in an input stream from a csv file containing books.
+     * @return the loaded dataset.
+     * @throws IOException if the csv cannot be read.
+     */
+    public static BookDataset load(InputStream in) throws IOException {
+        return new BookDataset(new BookStats().loadCsv(in));
+    }
+
+    /**
+     * Create the next version of the dataset with more books appended. Only the new books are filtered and grouped
+     * by author, but the book lists are copied and the point lookup and search indexes are rebuilt over every book,
+     * so an append costs about as much as loading the combined books.
+     *
+     * @param moreBooks the books to append.
+     * @return a new dataset; this one is unchanged.
+     */
+    public BookDataset withBooks(List<Book> moreBooks) {
+        BookStats bookStats = new BookStats();
+        List<Book> moreEnglishBooks = bookStats.filterToEnglishBooks(moreBooks);
+        List<Book> combined = append(books, moreBooks);
+        return new BookDataset(combined, BookIndexes.build(combined), append(englishBooks, moreEnglishBooks),
+                append(booksByAuthor, bookStats.indexByAuthor(moreBooks)),
+                append(englishBooksByAuthor, bookStats.indexByAuthor(moreEnglishBooks)), version + 1);
+    }
+
+    private static List<Book> append(List<Book> books, List<Book> moreBooks) {
+        List<Book> combined = new ArrayList<>(books.size() + moreBooks.size());
+        combined.addAll(books);
+        combined.addAll(moreBooks);
+        return combined;
+    }
+
+    /**
+     * Merge the authors of appended books into a copy of an author map. New authors go last in the order they were
+     * first seen, as indexByAuthor would put them, and only the lists of authors with new books are copied.
+     */
+    private static Map<String, List<Book>> append(Map<String, List<Book>> booksByAuthor, Map<String, List<Book>> moreBooksByAuthor) {
+        Map<String, List<Book>> combined = new LinkedHashMap<>(booksByAuthor);
+        for (Map.Entry<String, List<Book>> entry : moreBooksByAuthor.entrySet()) {
+            List<Book> existing = combined.get(entry.getKey());
+            combined.put(entry.getKey(), Collections.unmodifiableList(existing == null ? entry.getValue()
+                    : append(existing, entry.getValue())));
+        }
+        return combined;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @param englishOnly whether to restrict to books listed as English.
+     * @return the books, in csv order.
+     */
+    public List<Book> getBooks(boolean englishOnly) {
+        return englishOnly ? englishBooks : books;
+    }
+
+    /**
+     * @param englishOnly whether to restrict to books listed as English.
+     * @return a map of author name -> their books.
+     */
+    public Map<String, List<Book>> getBooksByAuthor(boolean englishOnly) {
+        return englishOnly ? englishBooksByAuthor : booksByAuthor;
+    }
+
+    /**
+     * @return the first book with the bookID, or null if there is none.
+     */
+    public Book findById(int id) {
+        return indexes.findById(id);
+    }
+
+    /**
+     * @return the first book with the isbn13, or null if there is none.
+     */
+    public Book findByIsbn13(long isbn13) {
+        return indexes.findByIsbn13(isbn13);
+    }
+
+    /**
+     * @return the prefix and fuzzy search index over every author name and book title.
+     */
+    public BookSearchIndex getSearchIndex() {
+        return searchIndex;
+    }
+}
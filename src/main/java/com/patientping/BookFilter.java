@@ -0,0 +1,94 @@
+package com.patientping;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * A named row filter for BookQuery. Filters with the same name are treated as the same filter, so the QueryEngine
+ * evaluates each distinct filter at most once per book however many queries or other filters use it.
+ */
+public abstract class BookFilter {
+    public static final BookFilter ALL = of("true", b -> true);
+    public static final BookFilter ENGLISH = of("english", BookStats::isEnglish);
+    public static final BookFilter HAS_RATINGS = of("ratings_count > 0", b -> b.getRatingCount() > 0);
+
+    private final String name;
+
+    BookFilter(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @param name a name that uniquely describes what the predicate does.
+     * @param predicate the test applied to each book.
+     * @return a filter wrapping the predicate.
+     */
+    public static BookFilter of(String name, Predicate<Book> predicate) {
+        return new BookFilter(name) {
+            @Override
+            boolean test(Book book, QueryEngine.RowContext row) {
+                return predicate.test(book);
+            }
+        };
+    }
+
+    /**
+     * @param minimumRatings the smallest rating count to keep.
+     * @return a filter that keeps books with at least that many ratings.
+     */
+    public static BookFilter minimumRatings(int minimumRatings) {
+        return of("ratings_count >= " + minimumRatings, b -> b.getRatingCount() >= minimumRatings);
+    }
+
+    /**
+     * Combine filters so a book must pass all of them. Each part is still evaluated at most once per book, so
+     * e.g. the English filter is shared by every query that uses it on its own or as part of a combination.
+     *
+     * @param filters the filters to combine.
+     * @return a filter that keeps books that pass every one of the filters.
+     */
+    public static BookFilter and(BookFilter... filters) {
+        List<BookFilter> parts = Arrays.asList(filters);
+        StringBuilder name = new StringBuilder("(");
+        for (BookFilter filter : parts) {
+            name.append(name.length() > 1 ? " && " : "").append(filter.getName());
+        }
+        return new BookFilter(name.append(')').toString()) {
+            @Override
+            boolean test(Book book, QueryEngine.RowContext row) {
+                for (BookFilter filter : parts) {
+                    if (!row.passes(filter)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        };
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Evaluate the filter for one book. Sub-filters must be evaluated through the row context so their results are
+     * shared.
+     */
+    abstract boolean test(Book book, QueryEngine.RowContext row);
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof BookFilter && ((BookFilter) o).name.equals(name);
+    }
+
+    @Override
+    public int hashCode() {
+        return name.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
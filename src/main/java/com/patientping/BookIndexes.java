@@ -0,0 +1,125 @@
+package com.patientping;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * Secondary indexes over a BookTable or a list of books, built once at load time: a compressed bitmap of rows per
+ * language code and hash indexes from bookID and isbn13 to a row. A row is a table row or a list position. Language
+ * subsets and point lookups then avoid scanning the books.
+ */
+public class BookIndexes {
+    private final IntFunction<Book> books;
+    // Keyed by lower-cased language code, since the English filter ignores case.
+    private final Map<String, CompressedBitmap> rowsByLanguage = new HashMap<>();
+    private final LongIntHashMap rowsById;
+    private final LongIntHashMap rowsByIsbn13;
+
+    private BookIndexes(int size, IntFunction<Book> books) {
+        this.books = books;
+        this.rowsById = new LongIntHashMap(size);
+        this.rowsByIsbn13 = new LongIntHashMap(size);
+    }
+
+    /**
+     * Index every row of a table.
+     *
+     * @param table a BookTable.
+     * @return the indexes for the table.
+     */
+    public static BookIndexes build(BookTable table) {
+        BookIndexes indexes = new BookIndexes(table.size(), table::getBook);
+        List<String> languages = table.getLanguages();
+        CompressedBitmap[] bitmapsByCode = new CompressedBitmap[languages.size()];
+        for (int code = 0; code < bitmapsByCode.length; code++) {
+            bitmapsByCode[code] = indexes.languageRows(languages.get(code));
+        }
+        for (int row = 0; row < table.size(); row++) {
+            bitmapsByCode[table.getLanguageCode(row)].add(row);
+            indexes.addKeys(row, table.getId(row), table.getIsbn13AsLong(row));
+        }
+        return indexes;
+    }
+
+    /**
+     * Index every book of a list. Lookups hand back the list's own Book objects.
+     *
+     * @param books a list of books; it must not change afterwards.
+     * @return the indexes for the list.
+     */
+    public static BookIndexes build(List<Book> books) {
+        BookIndexes indexes = new BookIndexes(books.size(), books::get);
+        for (int row = 0; row < books.size(); row++) {
+            Book book = books.get(row);
+            indexes.languageRows(book.getLanguage()).add(row);
+            indexes.addKeys(row, book.getId(), BookTable.packIsbn13(book.getIsbn13()));
+        }
+        return indexes;
+    }
+
+    private CompressedBitmap languageRows(String language) {
+        return rowsByLanguage.computeIfAbsent(language.toLowerCase(Locale.ROOT), l -> new CompressedBitmap());
+    }
+
+    private void addKeys(int row, int id, long isbn13) {
+        rowsById.putIfAbsent(id, row);
+        if (isbn13 >= 0) {
+            rowsByIsbn13.putIfAbsent(isbn13, row);
+        }
+    }
+
+    /**
+     * @param languageCodes one or more language codes; case is ignored.
+     * @return the rows whose language is any of the codes.
+     */
+    public CompressedBitmap getRowsForLanguages(String... languageCodes) {
+        CompressedBitmap rows = new CompressedBitmap();
+        for (String code : languageCodes) {
+            CompressedBitmap languageRows = rowsByLanguage.get(code.toLowerCase(Locale.ROOT));
+            if (languageRows != null) {
+                rows = rows.or(languageRows);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * @return the rows listed as English, the same rows as BookStats.filterToEnglishBooks.
+     */
+    public CompressedBitmap getEnglishRows() {
+        return getRowsForLanguages("eng", "en-US");
+    }
+
+    /**
+     * @return the first row with the bookID, or -1 if there is none.
+     */
+    public int findRowById(int id) {
+        return rowsById.get(id);
+    }
+
+    /**
+     * @return the first row with the isbn13, or -1 if there is none.
+     */
+    public int findRowByIsbn13(long isbn13) {
+        return rowsByIsbn13.get(isbn13);
+    }
+
+    /**
+     * @return the first book with the bookID, or null if there is none.
+     */
+    public Book findById(int id) {
+        int row = findRowById(id);
+        return row < 0 ? null : books.apply(row);
+    }
+
+    /**
+     * @return the first book with the isbn13, or null if there is none.
+     */
+    public Book findByIsbn13(long isbn13) {
+        int row = findRowByIsbn13(isbn13);
+        return row < 0 ? null : books.apply(row);
+    }
+}
@@ -0,0 +1,85 @@
+package com.patientping;
+
+import java.util.function.ToDoubleFunction;
+
+/**
+ * A declarative statistic over books: keep the books that pass a filter, optionally group them by author or
+ * language, and aggregate a value in each group. Queries are run by a QueryEngine, which answers many of them in a
+ * single pass.
+ */
+public class BookQuery {
+    public enum GroupBy {
+        NONE, AUTHOR, LANGUAGE
+    }
+
+    public enum Aggregate {
+        COUNT, SUM, AVG, MAX, ARGMAX
+    }
+
+    /**
+     * The ratio of text reviews to star ratings; only meaningful for books that pass BookFilter.HAS_RATINGS.
+     */
+    public static final ToDoubleFunction<Book> RATIO = b -> ((float) b.getTextReviewsCount()) / ((float) b.getRatingCount());
+
+    private final String name;
+    private final BookFilter filter;
+    private final GroupBy groupBy;
+    private final Aggregate aggregate;
+    private final ToDoubleFunction<Book> value;
+
+    /**
+     * @param name a label for the query's result.
+     * @param filter which books to include.
+     * @param groupBy how to group the included books.
+     * @param aggregate what to compute for each group.
+     * @param value the value to aggregate; ignored by COUNT and may be null for it.
+     */
+    public BookQuery(String name, BookFilter filter, GroupBy groupBy, Aggregate aggregate, ToDoubleFunction<Book> value) {
+        this.name = name;
+        this.filter = filter;
+        this.groupBy = groupBy;
+        this.aggregate = aggregate;
+        this.value = value;
+    }
+
+    /**
+     * @param field a numeric header field.
+     * @return a function that reads that field from a Book.
+     */
+    public static ToDoubleFunction<Book> column(HeaderFields field) {
+        switch (field) {
+            case bookID:
+                return Book::getId;
+            case average_rating:
+                return Book::getAverageRating;
+            case num_pages:
+                return Book::getNumPages;
+            case ratings_count:
+                return Book::getRatingCount;
+            case text_reviews_count:
+                return Book::getTextReviewsCount;
+            default:
+                throw new IllegalArgumentException(field.getField() + " is not a numeric column");
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public BookFilter getFilter() {
+        return filter;
+    }
+
+    public GroupBy getGroupBy() {
+        return groupBy;
+    }
+
+    public Aggregate getAggregate() {
+        return aggregate;
+    }
+
+    public ToDoubleFunction<Book> getValue() {
+        return value;
+    }
+}
@@ -0,0 +1,159 @@
+package com.patientping;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Search over author names and book titles that ignores case, accents and punctuation, built once when books are
+ * loaded. Prefix completion ranks authors by how many books they have and books by how many ratings they have;
+ * fuzzy search ranks by similarity first. Equal ranks keep csv order. Instances are immutable and safe to share
+ * between threads.
+ */
+public class BookSearchIndex {
+    /**
+     * The smallest similarity a fuzzy match needs by default; low enough for a typo or two in a short name.
+     */
+    public static final double DEFAULT_MIN_SIMILARITY = 0.3;
+
+    private final List<String> authorNames;
+    private final Map<String, List<Book>> booksByAuthor;
+    private final Map<String, List<String>> authorsByNormalizedName;
+    private final List<Book> books;
+    private final SearchIndex authors;
+    private final SearchIndex titles;
+
+    /**
+     * @param books the books, in csv order.
+     * @param booksByAuthor a map of author name -> their books, as built by {@link BookStats#indexByAuthor(List)}.
+     */
+    public BookSearchIndex(List<Book> books, Map<String, List<Book>> booksByAuthor) {
+        this.books = books;
+        this.booksByAuthor = booksByAuthor;
+        this.authorNames = new ArrayList<>(booksByAuthor.keySet());
+        long[] authorWeights = new long[authorNames.size()];
+        Map<String, List<String>> byNormalizedName = new HashMap<>();
+        for (int i = 0; i < authorNames.size(); i++) {
+            String name = authorNames.get(i);
+            authorWeights[i] = booksByAuthor.get(name).size();
+            byNormalizedName.computeIfAbsent(SearchText.normalize(name), n -> new ArrayList<>()).add(name);
+        }
+        this.authorsByNormalizedName = byNormalizedName;
+        this.authors = new SearchIndex(authorNames, authorWeights);
+
+        List<String> bookTitles = new ArrayList<>(books.size());
+        long[] titleWeights = new long[books.size()];
+        for (int i = 0; i < books.size(); i++) {
+            bookTitles.add(books.get(i).getTitle());
+            titleWeights[i] = books.get(i).getRatingCount();
+        }
+        this.titles = new SearchIndex(bookTitles, titleWeights);
+    }
+
+    /**
+     * Find authors whose name matches once case, accents and punctuation are ignored, so "mary grandpre" finds
+     * every spelling of Mary GrandPr&eacute; in the csv.
+     *
+     * @param name the author name.
+     * @return the matching authors with their books, in the order they appear in the csv; empty if there are none.
+     */
+    public List<Author> findAuthors(String name) {
+        List<String> names = authorsByNormalizedName.get(SearchText.normalize(name));
+        if (names == null) {
+            return Collections.emptyList();
+        }
+        List<Author> found = new ArrayList<>(names.size());
+        for (String match : names) {
+            found.add(new Author(match, booksByAuthor.get(match)));
+        }
+        return found;
+    }
+
+    /**
+     * Complete an author name from what has been typed so far. Any word of the name can match, so "grand" finds
+     * "Mary GrandPr&eacute;".
+     *
+     * @param prefix the start of a word in the name.
+     * @param k the most authors to return.
+     * @return the matching authors, those with the most books first.
+     */
+    public List<Author> completeAuthors(String prefix, int k) {
+        List<Author> found = new ArrayList<>();
+        for (int entry : authors.complete(prefix, k)) {
+            found.add(author(entry));
+        }
+        return found;
+    }
+
+    /**
+     * Complete a book title from what has been typed so far. Any word of the title can match.
+     *
+     * @param prefix the start of a word in the title.
+     * @param k the most books to return.
+     * @return the matching books, those with the most ratings first.
+     */
+    public List<Book> completeTitles(String prefix, int k) {
+        List<Book> found = new ArrayList<>();
+        for (int entry : titles.complete(prefix, k)) {
+            found.add(books.get(entry));
+        }
+        return found;
+    }
+
+    /**
+     * Find authors with names like the query, tolerating typos.
+     *
+     * @param query a name, or part of one.
+     * @param k the most authors to return.
+     * @return the closest authors, most similar first; empty if none reach {@link #DEFAULT_MIN_SIMILARITY}.
+     */
+    public List<SearchHit<Author>> searchAuthors(String query, int k) {
+        return searchAuthors(query, k, DEFAULT_MIN_SIMILARITY);
+    }
+
+    /**
+     * @param query a name, or part of one.
+     * @param k the most authors to return.
+     * @param minSimilarity the smallest similarity, above 0 and at most 1, for an author to match.
+     * @return the closest authors, most similar first, then those with the most books.
+     */
+    public List<SearchHit<Author>> searchAuthors(String query, int k, double minSimilarity) {
+        List<SearchHit<Author>> hits = new ArrayList<>();
+        for (SearchIndex.Match match : authors.fuzzy(query, k, minSimilarity)) {
+            hits.add(new SearchHit<>(author(match.entry), match.similarity));
+        }
+        return hits;
+    }
+
+    /**
+     * Find books with titles like the query, tolerating typos.
+     *
+     * @param query a title, or part of one.
+     * @param k the most books to return.
+     * @return the closest books, most similar first; empty if none reach {@link #DEFAULT_MIN_SIMILARITY}.
+     */
+    public List<SearchHit<Book>> searchTitles(String query, int k) {
+        return searchTitles(query, k, DEFAULT_MIN_SIMILARITY);
+    }
+
+    /**
+     * @param query a title, or part of one.
+     * @param k the most books to return.
+     * @param minSimilarity the smallest similarity, above 0 and at most 1, for a book to match.
+     * @return the closest books, most similar first, then those with the most ratings.
+     */
+    public List<SearchHit<Book>> searchTitles(String query, int k, double minSimilarity) {
+        List<SearchHit<Book>> hits = new ArrayList<>();
+        for (SearchIndex.Match match : titles.fuzzy(query, k, minSimilarity)) {
+            hits.add(new SearchHit<>(books.get(match.entry), match.similarity));
+        }
+        return hits;
+    }
+
+    private Author author(int entry) {
+        String name = authorNames.get(entry);
+        return new Author(name, booksByAuthor.get(name));
+    }
+}
@@ -0,0 +1,455 @@
+package com.patientping;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A versioned binary snapshot of a parsed books csv, including its author index. The snapshot stores the same
+ * columns as BookTable and AuthorIndex, each in its own section, and is read back by memory-mapping the file, so
+ * fields are only paged in when they are read. The size and modification time of the source csv are recorded so a
+ * snapshot that no longer matches its csv can be detected. toTable and toAuthorIndex copy the columns back out in
+ * bulk, without parsing, for the code that works on a BookTable such as BookStats.run.
+ *
+ * Layout: a fixed header (magic, version, source size and modification time, row/author/language counts, then the
+ * offset and length of every section) followed by the sections in Section order. Numbers are big-endian.
+ */
+public class BookSnapshot {
+    public static final int MAGIC = 0x424B534E; // "BKSN"
+    public static final int VERSION = 1;
+
+    private enum Section {
+        IDS, AVERAGE_RATINGS, ISBN13S, LANGUAGE_CODES, NUM_PAGES, RATING_COUNTS, TEXT_REVIEW_COUNTS,
+        TEXT_OFFSETS, TEXT, LANGUAGE_OFFSETS, LANGUAGE_TEXT, AUTHOR_OFFSETS, AUTHOR_TEXT, POSTING_OFFSETS, POSTINGS,
+        IRREGULAR_ISBN13S
+    }
+
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4 + 4 + 4 + Section.values().length * 16;
+
+    private final long sourceSize;
+    private final long sourceModified;
+    private final int rowCount;
+    private final int authorCount;
+    private final int languageCount;
+    private final ByteBuffer[] sections;
+    private final String[] languages;
+    private final Map<Integer, String> irregularIsbn13s = new HashMap<>();
+    private Map<String, Integer> authorIds;
+
+    private BookSnapshot(long sourceSize, long sourceModified, int rowCount, int authorCount, int languageCount, ByteBuffer[] sections) {
+        this.sourceSize = sourceSize;
+        this.sourceModified = sourceModified;
+        this.rowCount = rowCount;
+        this.authorCount = authorCount;
+        this.languageCount = languageCount;
+        this.sections = sections;
+        this.languages = new String[languageCount];
+        for (int code = 0; code < languageCount; code++) {
+            languages[code] = string(Section.LANGUAGE_OFFSETS, Section.LANGUAGE_TEXT, code);
+        }
+        ByteBuffer irregular = sections[Section.IRREGULAR_ISBN13S.ordinal()];
+        int position = 0;
+        while (position < irregular.limit()) {
+            int row = irregular.getInt(position);
+            int length = irregular.getInt(position + 4);
+            irregularIsbn13s.put(row, decode(irregular, position + 8, length));
+            position += 8 + length;
+        }
+    }
+
+    /**
+     * Write a snapshot of a table and its author index. The snapshot is written to a temporary file first and moved
+     * into place, so readers never see a half-written snapshot; the temporary file is deleted if writing fails.
+     *
+     * @param table the parsed books.
+     * @param index an unrestricted author index of the table.
+     * @param source the csv the table was parsed from, used to detect stale snapshots.
+     * @param snapshot where to write the snapshot.
+     * @throws IOException if the snapshot cannot be written.
+     */
+    public static void write(BookTable table, AuthorIndex index, Path source, Path snapshot) throws IOException {
+        write(table, index, Files.size(source), Files.getLastModifiedTime(source).toMillis(), snapshot);
+    }
+
+    /**
+     * Write a snapshot of a table, recording the size and modification time its csv had when parsing started. Reading
+     * them before the parse means a csv changed during the parse leaves a snapshot that is already stale.
+     */
+    private static void write(BookTable table, AuthorIndex index, long sourceSize, long sourceModified, Path snapshot) throws IOException {
+        Path temp = Files.createTempFile(snapshot.toAbsolutePath().getParent(), snapshot.getFileName().toString(), ".tmp");
+        long[] offsets = new long[Section.values().length];
+        long[] lengths = new long[Section.values().length];
+        try {
+            writeSections(table, index, sourceSize, sourceModified, temp, offsets, lengths);
+            Files.move(temp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+
+    private static void writeSections(BookTable table, AuthorIndex index, long sourceSize, long sourceModified, Path temp, long[] offsets, long[] lengths) throws IOException {
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.position(HEADER_SIZE);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            int rows = table.size();
+            for (Section section : Section.values()) {
+                out.flush();
+                offsets[section.ordinal()] = channel.position();
+                writeSection(section, table, index, out);
+                out.flush();
+                lengths[section.ordinal()] = channel.position() - offsets[section.ordinal()];
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION);
+            header.putLong(sourceSize).putLong(sourceModified);
+            header.putInt(rows).putInt(index.authorCount()).putInt(table.getLanguages().size());
+            for (int i = 0; i < offsets.length; i++) {
+                header.putLong(offsets[i]).putLong(lengths[i]);
+            }
+            header.flip();
+            channel.write(header, 0);
+        }
+    }
+
+    private static void writeSection(Section section, BookTable table, AuthorIndex index, DataOutputStream out) throws IOException {
+        int rows = table.size();
+        switch (section) {
+            case IDS:
+                for (int row = 0; row < rows; row++) out.writeInt(table.getId(row));
+                break;
+            case AVERAGE_RATINGS:
+                for (int row = 0; row < rows; row++) out.writeFloat(table.getAverageRating(row));
+                break;
+            case ISBN13S:
+                for (int row = 0; row < rows; row++) out.writeLong(table.getIsbn13AsLong(row));
+                break;
+            case LANGUAGE_CODES:
+                for (int row = 0; row < rows; row++) out.writeShort(table.getLanguageCode(row));
+                break;
+            case NUM_PAGES:
+                for (int row = 0; row < rows; row++) out.writeInt(table.getNumPages(row));
+                break;
+            case RATING_COUNTS:
+                for (int row = 0; row < rows; row++) out.writeInt(table.getRatingCount(row));
+                break;
+            case TEXT_REVIEW_COUNTS:
+                for (int row = 0; row < rows; row++) out.writeInt(table.getTextReviewsCount(row));
+                break;
+            case TEXT_OFFSETS:
+                if (table.getTextOffset(rows * 3) > Integer.MAX_VALUE) {
+                    // The text section is mapped as one buffer when the snapshot is read.
+                    throw new IOException("Text columns are too large for a book snapshot: " + table.getTextOffset(rows * 3) + " bytes");
+                }
+                for (int n = 0; n <= rows * 3; n++) out.writeInt((int) table.getTextOffset(n));
+                break;
+            case TEXT:
+                table.writeText(out);
+                break;
+            case LANGUAGE_OFFSETS:
+            case LANGUAGE_TEXT:
+                writeStrings(table.getLanguages().toArray(new String[0]), section == Section.LANGUAGE_OFFSETS, out);
+                break;
+            case AUTHOR_OFFSETS:
+            case AUTHOR_TEXT:
+                String[] names = new String[index.authorCount()];
+                for (int id = 0; id < names.length; id++) names[id] = index.getName(id);
+                writeStrings(names, section == Section.AUTHOR_OFFSETS, out);
+                break;
+            case POSTING_OFFSETS:
+                long offset = 0;
+                out.writeLong(offset);
+                for (int id = 0; id < index.authorCount(); id++) {
+                    offset += index.getRows(id).length;
+                    out.writeLong(offset);
+                }
+                break;
+            case POSTINGS:
+                for (int id = 0; id < index.authorCount(); id++) {
+                    for (int row : index.getRows(id)) out.writeInt(row);
+                }
+                break;
+            case IRREGULAR_ISBN13S:
+                for (int row = 0; row < rows; row++) {
+                    if (table.getIsbn13AsLong(row) < 0) {
+                        byte[] bytes = table.getIsbn13(row).getBytes(StandardCharsets.UTF_8);
+                        out.writeInt(row);
+                        out.writeInt(bytes.length);
+                        out.write(bytes);
+                    }
+                }
+                break;
+        }
+    }
+
+    /**
+     * Write either the offsets (count + 1 ints) or the concatenated UTF-8 bytes of a list of strings.
+     */
+    private static void writeStrings(String[] strings, boolean offsets, DataOutputStream out) throws IOException {
+        int offset = 0;
+        if (offsets) {
+            out.writeInt(offset);
+        }
+        for (String s : strings) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            if (offsets) {
+                offset += bytes.length;
+                out.writeInt(offset);
+            } else {
+                out.write(bytes);
+            }
+        }
+    }
+
+    /**
+     * Open a snapshot by memory-mapping its sections. No rows are read until they are asked for.
+     *
+     * @param snapshot the snapshot file.
+     * @return the opened snapshot.
+     * @throws IOException if the file is not a snapshot or was written by a different version.
+     */
+    public static BookSnapshot open(Path snapshot) throws IOException {
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException("Not a book snapshot: " + snapshot);
+            }
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a book snapshot: " + snapshot);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported book snapshot version " + version + " in " + snapshot);
+            }
+            long sourceSize = header.getLong();
+            long sourceModified = header.getLong();
+            int rowCount = header.getInt();
+            int authorCount = header.getInt();
+            int languageCount = header.getInt();
+            ByteBuffer[] sections = new ByteBuffer[Section.values().length];
+            for (int i = 0; i < sections.length; i++) {
+                long offset = header.getLong();
+                long length = header.getLong();
+                if (offset + length > channel.size()) {
+                    throw new IOException("Truncated book snapshot: " + snapshot);
+                }
+                sections[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+            }
+            return new BookSnapshot(sourceSize, sourceModified, rowCount, authorCount, languageCount, sections);
+        }
+    }
+
+    /**
+     * Open the snapshot for a csv if it is up to date, otherwise parse the csv, write a fresh snapshot and open that.
+     *
+     * @param csv the books csv.
+     * @param snapshot where the snapshot lives.
+     * @return an up to date snapshot of the csv.
+     * @throws IOException if the csv cannot be parsed or the snapshot cannot be written.
+     */
+    public static BookSnapshot openOrCreate(Path csv, Path snapshot) throws IOException {
+        return openOrCreate(csv, snapshot, new BookStatsMetrics());
+    }
+
+    /**
+     * Open the snapshot for a csv if it is up to date, otherwise parse the csv, write a fresh snapshot and open that.
+     *
+     * @param csv the books csv.
+     * @param snapshot where the snapshot lives.
+     * @param metrics records the parse of the csv, if it is needed.
+     * @return an up to date snapshot of the csv.
+     * @throws IOException if the csv cannot be parsed or the snapshot cannot be written.
+     */
+    public static BookSnapshot openOrCreate(Path csv, Path snapshot, BookStatsMetrics metrics) throws IOException {
+        if (Files.exists(snapshot)) {
+            try {
+                BookSnapshot existing = open(snapshot);
+                if (!existing.isStale(csv)) {
+                    return existing;
+                }
+            } catch (IOException e) {
+                System.err.println("Ignoring unreadable book snapshot " + snapshot + ": " + e.getMessage());
+            }
+        }
+        long sourceSize = Files.size(csv);
+        long sourceModified = Files.getLastModifiedTime(csv).toMillis();
+        BookTable table = new MappedCsvLoader(csv, metrics).loadTable();
+        write(table, AuthorIndex.build(table), sourceSize, sourceModified, snapshot);
+        return open(snapshot);
+    }
+
+    /**
+     * Check whether the csv has changed since this snapshot was written.
+     *
+     * @param csv the csv the snapshot was written from.
+     * @return true if the csv's size or modification time differ from the ones recorded in the snapshot.
+     * @throws IOException if the csv cannot be read.
+     */
+    public boolean isStale(Path csv) throws IOException {
+        return Files.size(csv) != sourceSize || Files.getLastModifiedTime(csv).toMillis() != sourceModified;
+    }
+
+    public int size() {
+        return rowCount;
+    }
+
+    public int getId(int row) {
+        return sections[Section.IDS.ordinal()].getInt(row * 4);
+    }
+
+    public String getTitle(int row) {
+        return text(row * 3);
+    }
+
+    public String getAuthors(int row) {
+        return text(row * 3 + 1);
+    }
+
+    public float getAverageRating(int row) {
+        return sections[Section.AVERAGE_RATINGS.ordinal()].getFloat(row * 4);
+    }
+
+    public String getIsbn(int row) {
+        return text(row * 3 + 2);
+    }
+
+    public String getIsbn13(int row) {
+        long packed = sections[Section.ISBN13S.ordinal()].getLong(row * 8);
+        return packed < 0 ? irregularIsbn13s.get(row) : Long.toString(packed);
+    }
+
+    public String getLanguage(int row) {
+        return languages[sections[Section.LANGUAGE_CODES.ordinal()].getShort(row * 2)];
+    }
+
+    public int getNumPages(int row) {
+        return sections[Section.NUM_PAGES.ordinal()].getInt(row * 4);
+    }
+
+    public int getRatingCount(int row) {
+        return sections[Section.RATING_COUNTS.ordinal()].getInt(row * 4);
+    }
+
+    public int getTextReviewsCount(int row) {
+        return sections[Section.TEXT_REVIEW_COUNTS.ordinal()].getInt(row * 4);
+    }
+
+    /**
+     * Materialize a row as a Book.
+     *
+     * @param row a row of the snapshot.
+     * @return a Book holding the same values as the row.
+     */
+    public Book getBook(int row) {
+        return new Book(getId(row), getTitle(row), getAuthors(row), getAverageRating(row), getIsbn(row), getIsbn13(row),
+                getLanguage(row), getNumPages(row), getRatingCount(row), getTextReviewsCount(row));
+    }
+
+    /**
+     * Copy every column into a BookTable, e.g. to run BookStats.report on it.
+     *
+     * @return a table with the same rows as the snapshot.
+     */
+    public BookTable toTable() {
+        return BookTable.fromColumns(rowCount, section(Section.IDS), section(Section.AVERAGE_RATINGS),
+                section(Section.ISBN13S), section(Section.LANGUAGE_CODES), section(Section.NUM_PAGES),
+                section(Section.RATING_COUNTS), section(Section.TEXT_REVIEW_COUNTS), section(Section.TEXT_OFFSETS),
+                section(Section.TEXT), Arrays.asList(languages), irregularIsbn13s);
+    }
+
+    /**
+     * Rebuild the author index from the snapshot's dictionary and postings, without splitting any authors column.
+     *
+     * @param table the table from toTable.
+     * @return an unrestricted author index of the table.
+     */
+    public AuthorIndex toAuthorIndex(BookTable table) {
+        List<String> names = new ArrayList<>(authorCount);
+        int[][] postings = new int[authorCount][];
+        for (int id = 0; id < authorCount; id++) {
+            names.add(getAuthorName(id));
+            postings[id] = getAuthorRows(id);
+        }
+        return AuthorIndex.of(table, names, postings);
+    }
+
+    public int authorCount() {
+        return authorCount;
+    }
+
+    public String getAuthorName(int authorId) {
+        return string(Section.AUTHOR_OFFSETS, Section.AUTHOR_TEXT, authorId);
+    }
+
+    /**
+     * Look up an author's id. The name -> id map is only built the first time this is called.
+     *
+     * @return the id of the author, or -1 if the name is not in the snapshot.
+     */
+    public synchronized int getAuthorId(String name) {
+        if (authorIds == null) {
+            authorIds = new HashMap<>(authorCount * 2);
+            for (int id = 0; id < authorCount; id++) {
+                authorIds.put(getAuthorName(id), id);
+            }
+        }
+        Integer id = authorIds.get(name);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @return the rows of the author's books, in ascending order.
+     */
+    public int[] getAuthorRows(int authorId) {
+        ByteBuffer offsets = sections[Section.POSTING_OFFSETS.ordinal()];
+        ByteBuffer postings = sections[Section.POSTINGS.ordinal()];
+        long start = offsets.getLong(authorId * 8);
+        long end = offsets.getLong((authorId + 1) * 8);
+        int[] rows = new int[(int) (end - start)];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = postings.getInt((int) ((start + i) * 4));
+        }
+        return rows;
+    }
+
+    private ByteBuffer section(Section section) {
+        return sections[section.ordinal()];
+    }
+
+    private String text(int field) {
+        ByteBuffer offsets = sections[Section.TEXT_OFFSETS.ordinal()];
+        int start = offsets.getInt(field * 4);
+        int end = offsets.getInt((field + 1) * 4);
+        return decode(sections[Section.TEXT.ordinal()], start, end - start);
+    }
+
+    private String string(Section offsetSection, Section textSection, int index) {
+        ByteBuffer offsets = sections[offsetSection.ordinal()];
+        int start = offsets.getInt(index * 4);
+        int end = offsets.getInt((index + 1) * 4);
+        return decode(sections[textSection.ordinal()], start, end - start);
+    }
+
+    private static String decode(ByteBuffer buffer, int start, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
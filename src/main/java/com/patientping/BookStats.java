@@ -1,61 +1,235 @@
 package com.patientping;
 
 import java.io.BufferedReader;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import static com.patientping.HeaderFields.*;
 
 public class BookStats {
+    private final BookStatsMetrics metrics;
+
+    public BookStats() {
+        this(new BookStatsMetrics());
+    }
+
+    /**
+     * @param metrics records load and query timings and rejected rows.
+     */
+    public BookStats(BookStatsMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public BookStatsMetrics getMetrics() {
+        return metrics;
+    }
+
     public static void main(String[] args) throws IOException {
-        BookStats bookStats = new BookStats();
-        bookStats.run();
+        List<String> options = Arrays.asList(args);
+        int serve = options.indexOf("--serve");
+        if (serve >= 0) {
+            boolean hasPort = serve + 1 < args.length && !args[serve + 1].startsWith("--");
+            int port;
+            try {
+                port = hasPort ? BookStatsServer.parsePort(args[serve + 1]) : BookStatsServer.DEFAULT_PORT;
+            } catch (IllegalArgumentException e) {
+                System.out.println(e.getMessage());
+                return;
+            }
+            BookStatsServer.serve(port);
+            return;
+        }
+        String format = optionValue(args, "--format");
+        try (ReportWriter report = ReportWriter.toStandardOutput(format == null ? ReportWriter.Format.TEXT : ReportWriter.Format.parse(format))) {
+            // Every mode loads through the same BookStats, so its metrics cover whichever mode runs.
+            BookStats bookStats = new BookStats();
+            if (options.contains("--streaming")) {
+                new StreamingBookStats(bookStats).run(BookStats.class.getResourceAsStream("/books.csv"), report);
+                return;
+            }
+            String shards = optionValue(args, "--shards");
+            if (shards != null) {
+                ShardedBookStats.run(shards, report, bookStats);
+                return;
+            }
+            if (options.contains("--external-sort")) {
+                String budget = optionValue(args, "--memory-budget");
+                long memoryBudget;
+                try {
+                    memoryBudget = budget == null ? ExternalAuthorGrouping.DEFAULT_MEMORY_BUDGET : ExternalAuthorGrouping.parseMemoryBudget(budget);
+                } catch (IllegalArgumentException e) {
+                    System.out.println(e.getMessage());
+                    return;
+                }
+                String location = optionValue(args, "--external-sort");
+                if (location == null || location.startsWith("--")) {
+                    ExternalAuthorGrouping.run(BookStats.class.getResourceAsStream("/books.csv"), report, bookStats, memoryBudget);
+                } else {
+                    try (InputStream in = GzipInput.open(Paths.get(location))) {
+                        ExternalAuthorGrouping.run(in, report, bookStats, memoryBudget);
+                    }
+                }
+                return;
+            }
+            String follow = optionValue(args, "--follow");
+            if (follow != null) {
+                try {
+                    FollowingBookStats.run(Paths.get(follow), report, bookStats);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return;
+            }
+            if (options.contains("--approximate")) {
+                String location = optionValue(args, "--approximate");
+                if (location == null || location.startsWith("--")) {
+                    ApproximateBookStats.run(BookStats.class.getResourceAsStream("/books.csv"), report, bookStats);
+                } else {
+                    ApproximateBookStats.run(location, report, bookStats);
+                }
+                return;
+            }
+            String file = args.length > 0 && !args[0].startsWith("--") ? args[0] : null;
+            String snapshotFile = optionValue(args, "--snapshot");
+            if (snapshotFile != null) {
+                if (file == null) {
+                    System.out.println("--snapshot needs the path of an uncompressed books csv.");
+                    return;
+                }
+                BookSnapshot snapshot = BookSnapshot.openOrCreate(Paths.get(file), Paths.get(snapshotFile), bookStats.getMetrics());
+                BookTable books = bookStats.getMetrics().time("snapshot", snapshot::toTable);
+                bookStats.run(books, bookStats.getMetrics().time("snapshot", () -> snapshot.toAuthorIndex(books)), report);
+            } else if (file != null) {
+                try (InputStream in = GzipInput.open(Paths.get(file))) {
+                    bookStats.run(in, report);
+                }
+            } else {
+                bookStats.run(BookStats.class.getResourceAsStream("/books.csv"), report);
+            }
+        }
+    }
+
+    private static String optionValue(String[] args, String option) {
+        int index = Arrays.asList(args).indexOf(option);
+        return index >= 0 && index + 1 < args.length ? args[index + 1] : null;
     }
 
     /**
      * Read in a csv file of books and convert it to a list of Book objects.
      *
-     * @param in an input stream from a csv file containing books.
+     * @param in an input stream from a csv file containing books; it is closed when done.
      * @return A list of Book objects.
      * @throws IOException if the buffered reader throws an exception.
      */
     public List<Book> loadCsv(InputStream in) throws IOException {
         List<Book> books = new ArrayList<>();
+        streamCsv(in, books::add);
+        return books;
+    }
+
+    /**
+     * Read in a csv file of books, which may be gzip compressed, and convert it to a list of Book objects. A gzip
+     * file is decompressed on other threads while this one parses, with its members inflated in parallel.
+     *
+     * @param file the path of a csv or csv.gz file containing books.
+     * @return A list of Book objects.
+     * @throws IOException if the file cannot be read or decompressed.
+     */
+    public List<Book> loadCsv(Path file) throws IOException {
+        try (InputStream in = GzipInput.open(file)) {
+            return loadCsv(in);
+        }
+    }
+
+    /**
+     * Read in a csv file of books on all available cores and convert it to a list of Book objects in file order.
+     *
+     * @param file the path of a csv file containing books.
+     * @return A list of Book objects.
+     * @throws IOException if the file cannot be read.
+     */
+    public List<Book> loadCsvParallel(Path file) throws IOException {
+        return new ParallelCsvLoader(file, ForkJoinPool.commonPool(), ParallelCsvLoader.DEFAULT_CHUNK_SIZE, metrics).loadCsv();
+    }
 
-        BufferedReader reader = new BufferedReader(new InputStreamReader(in));
-
-        List<String> header = Arrays.asList(reader.readLine().split(","));
-        if (!header.containsAll(Arrays.stream(HeaderFields.values()).map(HeaderFields::getField).collect(Collectors.toList()))) {
-            System.out.println("Book CSV file is not formatted correctly. No books will be read in.");
-        } else {
-            String line = reader.readLine();
-            while (line != null) {
-                //System.out.println(line);
-                String[] parts = line.split(",");
-                if (parts.length != 10) { //If the line does not have the correct number of fields, skip it.
-                    line = reader.readLine();
-                    continue;
+    /**
+     * Read in a csv file of books and hand each Book to the consumer as soon as its row is parsed.
+     * Nothing is retained between rows, so memory use is independent of the size of the file.
+     * Rows that cannot be parsed are skipped and counted in the metrics by reason. Gzip compressed input is
+     * detected and decompressed on a background thread. The stream is closed when this returns or throws.
+     *
+     * @param in an input stream from a csv file containing books.
+     * @param consumer receives every Book in file order.
+     * @throws IOException if the buffered reader throws an exception.
+     */
+    public void streamCsv(InputStream in, Consumer<Book> consumer) throws IOException {
+        // Closing the decompressed stream stops its background thread if the header is bad or the consumer throws.
+        try (InputStream decompressed = GzipInput.decompress(in)) {
+            CountingInputStream counted = new CountingInputStream(decompressed);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(counted, StandardCharsets.UTF_8));
+            long rows = 0;
+
+            try (BookStatsMetrics.Sample load = metrics.start("load")) {
+                String header = reader.readLine();
+                CsvColumns columns = header == null ? null : CsvColumns.resolve(header.split(","));
+                if (columns == null) {
+                    metrics.reject(RejectReason.BAD_HEADER);
+                    System.out.println("Book CSV file is not formatted correctly. No books will be read in.");
+                } else {
+                    String line = reader.readLine();
+                    while (line != null) {
+                        Book b = parseRow(line, columns);
+                        if (b != null) {
+                            consumer.accept(b);
+                            rows++;
+                        }
+                        line = reader.readLine();
+                    }
                 }
-                Book b = new Book(
-                        Integer.parseInt(parts[header.indexOf(bookID.getField())]),
-                        parts[header.indexOf(title.getField())],
-                        parts[header.indexOf(authors.getField())],
-                        Float.parseFloat(parts[header.indexOf(average_rating.getField())]),
-                        parts[header.indexOf(isbn.getField())],
-                        parts[header.indexOf(isbn13.getField())],
-                        parts[header.indexOf(language_code.getField())],
-                        Integer.parseInt(parts[header.indexOf(num_pages.getField())]),
-                        Integer.parseInt(parts[header.indexOf(ratings_count.getField())]),
-                        Integer.parseInt(parts[header.indexOf(text_reviews_count.getField())])
-                );
-                books.add(b);
-                line = reader.readLine();
+                metrics.recordLoad(rows, counted.count, load.elapsedNanos());
             }
         }
-        return books;
+    }
+
+    /**
+     * Parse one csv row into a Book.
+     *
+     * @param line a csv row without its line terminator.
+     * @param columns where each field is in the row.
+     * @return the Book, or null if the row was rejected.
+     */
+    Book parseRow(String line, CsvColumns columns) {
+        String[] parts = line.split(",");
+        if (parts.length != 10) { //If the line does not have the correct number of fields, skip it.
+            metrics.reject(line.indexOf('"') >= 0 ? RejectReason.QUOTED_COMMA : RejectReason.WRONG_FIELD_COUNT);
+            return null;
+        }
+        try {
+            return new Book(
+                    Integer.parseInt(parts[columns.indexOf(bookID)]),
+                    parts[columns.indexOf(title)],
+                    parts[columns.indexOf(authors)],
+                    Float.parseFloat(parts[columns.indexOf(average_rating)]),
+                    parts[columns.indexOf(isbn)],
+                    parts[columns.indexOf(isbn13)],
+                    parts[columns.indexOf(language_code)],
+                    Integer.parseInt(parts[columns.indexOf(num_pages)]),
+                    Integer.parseInt(parts[columns.indexOf(ratings_count)]),
+                    Integer.parseInt(parts[columns.indexOf(text_reviews_count)])
+            );
+        } catch (NumberFormatException e) {
+            metrics.reject(RejectReason.UNPARSABLE_NUMBER);
+            return null;
+        }
     }
 
     /**
@@ -65,20 +239,61 @@ public class BookStats {
      * @return a list of Books that have their language listed as English;
      */
     public List<Book> filterToEnglishBooks(List<Book> books) {
-        return books.stream().filter(b ->
-                b.getLanguage().equalsIgnoreCase("eng") ||
-                        b.getLanguage().equalsIgnoreCase("en-US"))
-                .collect(Collectors.toList());
+        return books.stream().filter(BookStats::isEnglish).collect(Collectors.toList());
+    }
+
+    /**
+     * Check whether a book's language is listed as English.
+     *
+     * @param book a Book.
+     * @return true if the language code is "eng" or "en-US".
+     */
+    public static boolean isEnglish(Book book) {
+        return isEnglish(book.getLanguage());
     }
 
     /**
-     * Index a list of books by author.
+     * Check whether a language code means English.
+     *
+     * @param language a language code from the csv.
+     * @return true if the language code is "eng" or "en-US".
+     */
+    public static boolean isEnglish(String language) {
+        return language.equalsIgnoreCase("eng") || language.equalsIgnoreCase("en-US");
+    }
+
+    /**
+     * Filter a table of books to just the rows written in English. The language check is done once per distinct
+     * language code rather than once per row.
+     *
+     * @param table a BookTable.
+     * @return the rows of the table that have their language listed as English, in ascending order.
+     */
+    public int[] filterToEnglishBooks(BookTable table) {
+        List<String> languages = table.getLanguages();
+        boolean[] english = new boolean[languages.size()];
+        for (int code = 0; code < english.length; code++) {
+            english[code] = isEnglish(languages.get(code));
+        }
+        int[] rows = new int[table.size()];
+        int count = 0;
+        for (int row = 0; row < table.size(); row++) {
+            if (english[table.getLanguageCode(row)]) {
+                rows[count++] = row;
+            }
+        }
+        return Arrays.copyOf(rows, count);
+    }
+
+    /**
+     * Index a list of books by author. Authors are kept in the order they are first seen, so that finding the
+     * author with the most books or the highest average rating breaks ties the same way on every run.
      *
      * @param books a list of Book objects.
      * @return a map of Authors -> a list of their books.
      */
     public Map<String, List<Book>> indexByAuthor(List<Book> books) {
-        Map<String, List<Book>> booksByAuthor = new HashMap<>();
+        Map<String, List<Book>> booksByAuthor = new LinkedHashMap<>();
         for (Book b : books) {
             String[] authors = b.getAuthors().split("-");
             for (String author : authors) {
@@ -99,122 +314,299 @@ public class BookStats {
      */
     public Author findMostBooks(Map<String, List<Book>> booksByAuthor) {
         Author authorWithMostBooks = new Author("");
-        if (!booksByAuthor.isEmpty()) {
-            for (Map.Entry<String, List<Book>> entry : booksByAuthor.entrySet()) {
-                int count = entry.getValue().size();
-                if (count > authorWithMostBooks.getBooks().size()) {
-                    authorWithMostBooks = new Author(entry.getKey(), entry.getValue());
-                }
+        for (Map.Entry<String, List<Book>> entry : booksByAuthor.entrySet()) {
+            int count = entry.getValue().size();
+            if (count > authorWithMostBooks.getBooks().size()) {
+                authorWithMostBooks = new Author(entry.getKey(), entry.getValue());
             }
-            System.out.printf("Author with the most books: %s. %d books.%n", authorWithMostBooks.getName(), authorWithMostBooks.getBooks().size());
-        } else {
-            System.out.println("The list of books is empty.");
         }
 
         return authorWithMostBooks;
     }
 
     /**
-     * Find the highest rated book and print out the author and the book's average rating.
+     * Finds the author with the most books using an author index. Only the winning author's books are materialized.
+     *
+     * @param index an AuthorIndex, possibly restricted to a subset of rows.
+     * @return an Author Object with the most books.
+     */
+    public Author findMostBooks(AuthorIndex index) {
+        int mostBooksId = -1;
+        int mostBooks = 0;
+        for (int id = 0; id < index.authorCount(); id++) {
+            int count = index.getBookCount(id);
+            if (count > mostBooks) {
+                mostBooks = count;
+                mostBooksId = id;
+            }
+        }
+        return mostBooksId < 0 ? new Author("") : index.getAuthor(mostBooksId);
+    }
+
+    /**
+     * Find the highest rated book, ignoring books with fewer than 25 ratings.
      *
      * @param books a list of Books.
      * @return The highest rated book.
      */
     public Book findHighestRatedBook(List<Book> books) {
         Book highestRatedBook = new Book(-1, "", "", -1, "", "", "", -1, -1, -1);
-        if (!books.isEmpty()) {
-            for (Book b : books) {
-                if (b.getRatingCount() < 25) { //exclude any book with fewer than 25 ratings
-                    continue;
-                }
-                float rating = b.getAverageRating();
-                if (rating > highestRatedBook.getAverageRating()) {
-                    highestRatedBook = b;
-                }
+        for (Book b : books) {
+            if (b.getRatingCount() < 25) { //exclude any book with fewer than 25 ratings
+                continue;
+            }
+            float rating = b.getAverageRating();
+            if (rating > highestRatedBook.getAverageRating()) {
+                highestRatedBook = b;
             }
-            System.out.printf("Author with the highest rating: %s. %f stars.%n", highestRatedBook.getAuthors(), highestRatedBook.getAverageRating());
-        } else {
-            System.out.println("The list of books is empty.");
         }
         return highestRatedBook;
     }
 
     /**
-     * Finds the book with the highest ratio of text reviews to star reviews and prints the author of the book and the ratio.
+     * Find the highest rated book in a table by scanning its rating columns.
+     *
+     * @param table a BookTable.
+     * @return The highest rated book.
+     */
+    public Book findHighestRatedBook(BookTable table) {
+        return findHighestRatedBook(table, null);
+    }
+
+    /**
+     * Find the highest rated book among some rows of a table, e.g. the rows returned by filterToEnglishBooks.
+     *
+     * @param table a BookTable.
+     * @param rows the rows to consider, or null for every row.
+     * @return The highest rated book.
+     */
+    public Book findHighestRatedBook(BookTable table, int[] rows) {
+        int count = rows == null ? table.size() : rows.length;
+        int highestRatedRow = -1;
+        float highestRating = -1;
+        for (int i = 0; i < count; i++) {
+            int row = rows == null ? i : rows[i];
+            if (table.getRatingCount(row) < 25) { //exclude any book with fewer than 25 ratings
+                continue;
+            }
+            float rating = table.getAverageRating(row);
+            if (rating > highestRating) {
+                highestRating = rating;
+                highestRatedRow = row;
+            }
+        }
+        return highestRatedRow < 0 ? new Book(-1, "", "", -1, "", "", "", -1, -1, -1) : table.getBook(highestRatedRow);
+    }
+
+    /**
+     * Finds the book with the highest ratio of text reviews to star reviews.
      *
      * @param books a list of books.
      * @return the book with the highest ratios.
      */
     public Book findHighestRatio(List<Book> books) {
         Book highestRatioBook = new Book(-1, "", "", -1, "", "", "", -1, -1, -1);
-        if (!books.isEmpty()) {
-            float highestRatio = 0f;
-            for (Book b : books) {
-                if (b.getRatingCount() <= 0) { //don't divide by zero
-                    continue;
-                }
-                float ratio = ((float) b.getTextReviewsCount()) / ((float) b.getRatingCount());
-                if (ratio > highestRatio) {
-                    highestRatio = ratio;
-                    highestRatioBook = b;
-                }
+        float highestRatio = 0f;
+        for (Book b : books) {
+            if (b.getRatingCount() <= 0) { //don't divide by zero
+                continue;
+            }
+            float ratio = ((float) b.getTextReviewsCount()) / ((float) b.getRatingCount());
+            if (ratio > highestRatio) {
+                highestRatio = ratio;
+                highestRatioBook = b;
             }
-            System.out.printf("Author with the highest ratio of text reviews to star reviews: %s. %f%n", highestRatioBook.getAuthors(), highestRatio);
-        } else {
-            System.out.println("The list of books is empty.");
         }
 
         return highestRatioBook;
     }
 
     /**
-     * Print the author that has the highest average star rating across all of their books along with their average rating.
+     * Finds the book in a table with the highest ratio of text reviews to star reviews by scanning its count columns.
+     *
+     * @param table a BookTable.
+     * @return the book with the highest ratio.
+     */
+    public Book findHighestRatio(BookTable table) {
+        return findHighestRatio(table, null);
+    }
+
+    /**
+     * Finds the book with the highest ratio of text reviews to star reviews among some rows of a table.
+     *
+     * @param table a BookTable.
+     * @param rows the rows to consider, or null for every row.
+     * @return the book with the highest ratio.
+     */
+    public Book findHighestRatio(BookTable table, int[] rows) {
+        int count = rows == null ? table.size() : rows.length;
+        int highestRatioRow = -1;
+        float highestRatio = 0f;
+        for (int i = 0; i < count; i++) {
+            int row = rows == null ? i : rows[i];
+            int ratingCount = table.getRatingCount(row);
+            if (ratingCount <= 0) { //don't divide by zero
+                continue;
+            }
+            float ratio = ((float) table.getTextReviewsCount(row)) / ((float) ratingCount);
+            if (ratio > highestRatio) {
+                highestRatio = ratio;
+                highestRatioRow = row;
+            }
+        }
+        return highestRatioRow < 0 ? new Book(-1, "", "", -1, "", "", "", -1, -1, -1) : table.getBook(highestRatioRow);
+    }
+
+    /**
+     * Find the author that has the highest average star rating across all of their books.
+     *
      * @param booksByAuthor a map of authors to their list of books.
      * @return the author with the highest average star rating across all their books.
      */
     public Author findAuthorWithHighestAverageRating(Map<String, List<Book>> booksByAuthor) {
-        Author authorWithHighestAverageRating = new Author("");
+        Map.Entry<String, List<Book>> authorWithHighestAverageRating = null;
         float highestAverageRating = 0f;
-        if (!booksByAuthor.isEmpty()) {
-            for (Map.Entry<String, List<Book>> entry : booksByAuthor.entrySet()) {
-                Author authorToEvaluate = new Author(entry.getKey(), entry.getValue());
-                float average = authorToEvaluate.getAverageRatingForAllBooks();
-                if (average > highestAverageRating) {
-                    authorWithHighestAverageRating = authorToEvaluate;
-                    highestAverageRating = average;
-                }
+        for (Map.Entry<String, List<Book>> entry : booksByAuthor.entrySet()) {
+            float average = Author.averageRating(entry.getValue());
+            if (average > highestAverageRating) {
+                authorWithHighestAverageRating = entry;
+                highestAverageRating = average;
             }
-            System.out.printf("Author with the highest average rating across all books: %s. %f average rating.%n", authorWithHighestAverageRating.getName(), highestAverageRating);
-        } else {
-            System.out.println("List of books is empty.");
         }
 
-        return authorWithHighestAverageRating;
+        return authorWithHighestAverageRating == null ? new Author("")
+                : new Author(authorWithHighestAverageRating.getKey(), authorWithHighestAverageRating.getValue());
+    }
+
+    /**
+     * Find the author that has the highest average star rating across all of their books, using an author index
+     * instead of building an Author for every entry.
+     *
+     * @param index an AuthorIndex, possibly restricted to a subset of rows.
+     * @return the author with the highest average star rating across all their books.
+     */
+    public Author findAuthorWithHighestAverageRating(AuthorIndex index) {
+        int highestAverageId = -1;
+        float highestAverageRating = 0f;
+        for (int id = 0; id < index.authorCount(); id++) {
+            if (index.getBookCount(id) == 0) {
+                continue;
+            }
+            float average = index.getAverageRating(id);
+            if (average > highestAverageRating) {
+                highestAverageRating = average;
+                highestAverageId = id;
+            }
+        }
+        return highestAverageId < 0 ? new Author("") : index.getAuthor(highestAverageId);
     }
 
     public void run() throws IOException {
-        InputStream in = BookStats.class.getResourceAsStream("/books.csv");
+        run(BookStats.class.getResourceAsStream("/books.csv"));
+    }
 
-        List<Book> books = loadCsv(in);
-        System.out.println("Loaded " + books.size() + " books");
+    /**
+     * Load books from a csv and print the stats for them.
+     *
+     * @param in an input stream from a csv file containing books, which may be gzip compressed.
+     * @throws IOException if the csv cannot be read.
+     */
+    public void run(InputStream in) throws IOException {
+        try (ReportWriter report = ReportWriter.toStandardOutput(ReportWriter.Format.TEXT)) {
+            run(in, report);
+        }
+    }
+
+    /**
+     * Load books from a csv and write the stats for them.
+     *
+     * @param in an input stream from a csv file containing books, which may be gzip compressed.
+     * @param report where to write the stats.
+     * @throws IOException if the csv cannot be read or the report cannot be written.
+     */
+    public void run(InputStream in, ReportWriter report) throws IOException {
+        BookTable books = new BookTable();
+        streamCsv(in, books::add);
+        run(books, null, report);
+    }
 
-        List<Book> englishBooks = filterToEnglishBooks(books);
-        System.out.println("" + englishBooks.size() + " Books in English");
+    /**
+     * Write the stats for books that are already loaded, e.g. from a BookSnapshot.
+     *
+     * @param books the books.
+     * @param booksByAuthor an unrestricted author index of the books, or null to build one.
+     * @param report where to write the stats.
+     * @throws IOException if the report cannot be written.
+     */
+    public void run(BookTable books, AuthorIndex booksByAuthor, ReportWriter report) throws IOException {
+        metrics.register();
+        report.writeLine("Loaded " + books.size() + " books");
 
-        System.out.println("English Book Stats:");
-        Map<String, List<Book>> englishBooksByAuthor = indexByAuthor(englishBooks);
-        findMostBooks(englishBooksByAuthor);
-        findHighestRatedBook(englishBooks);
-        findHighestRatio(englishBooks);
-        findAuthorWithHighestAverageRating(englishBooksByAuthor);
+        // Built once at load time, so the English rows come from the language bitmaps rather than a scan.
+        BookIndexes indexes = metrics.time("bookIndexes", () -> BookIndexes.build(books));
+        int[] englishBooks = metrics.time("filter", () -> indexes.getEnglishRows().toArray());
+        report.writeLine("" + englishBooks.length + " Books in English");
 
-        System.out.println("All Language Book Stats:");
-        findHighestRatedBook(books);
-        Map<String, List<Book>> booksByAuthor = indexByAuthor(books);
-        findMostBooks(booksByAuthor);
-        findHighestRatedBook(books);
-        findHighestRatio(books);
-        findAuthorWithHighestAverageRating(booksByAuthor);
+        // Authors are indexed once; the English stats use a view of that index rather than a second one.
+        AuthorIndex allBooksByAuthor = booksByAuthor != null ? booksByAuthor : metrics.time("index", () -> AuthorIndex.build(books));
+        AuthorIndex englishBooksByAuthor = metrics.time("restrictIndex", () -> allBooksByAuthor.restrictTo(englishBooks));
 
+        report.write(report("English Book Stats", books, englishBooks, englishBooksByAuthor));
+        report.write(report("All Language Book Stats", books, null, allBooksByAuthor));
+
+        report.writeLine("Metrics: " + metrics.toJson());
+    }
+
+    /**
+     * Answer every question for some rows of a table, timing each one.
+     *
+     * @param name what the rows are, e.g. "English Book Stats".
+     * @param table a BookTable.
+     * @param rows the rows to consider, or null for every row.
+     * @param index an author index of the same rows.
+     * @return the answers.
+     */
+    public StatsReport report(String name, BookTable table, int[] rows, AuthorIndex index) {
+        return new StatsReport(name, rows == null ? table.size() : rows.length,
+                StatResult.mostBooks(metrics.time("findMostBooks", () -> findMostBooks(index))),
+                StatResult.highestRatedBook(metrics.time("findHighestRatedBook", () -> findHighestRatedBook(table, rows))),
+                StatResult.highestRatio(metrics.time("findHighestRatio", () -> findHighestRatio(table, rows))),
+                StatResult.highestAverageRating(metrics.time("findAuthorWithHighestAverageRating", () -> findAuthorWithHighestAverageRating(index))));
+    }
+
+    /**
+     * Counts the bytes read through it, for the load throughput metrics.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
     }
 }
@@ -0,0 +1,298 @@
+package com.patientping;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Counters and timers for loading and querying books: a timer with a latency histogram per named phase (load,
+ * filter, index, each find), row and byte throughput for loading, and rejected rows by reason. Everything is safe
+ * to update from several threads, and can be read through JMX or dumped as JSON.
+ */
+public class BookStatsMetrics implements BookStatsMetricsMBean {
+    public static final String OBJECT_NAME = "com.patientping:type=BookStatsMetrics";
+
+    private final LongAdder rowsLoaded = new LongAdder();
+    private final LongAdder bytesLoaded = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+    private final LongAdder[] rejectedRows = new LongAdder[RejectReason.values().length];
+    private final Map<String, PhaseTimer> phases = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    public BookStatsMetrics() {
+        for (int i = 0; i < rejectedRows.length; i++) {
+            rejectedRows[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Start timing one run of a phase. Closing the returned sample records the elapsed time, so it can be used in a
+     * try-with-resources block around code that throws checked exceptions.
+     *
+     * @param phase the name of the phase.
+     * @return the running sample.
+     */
+    public Sample start(String phase) {
+        return new Sample(timer(phase));
+    }
+
+    /**
+     * Time one run of a phase.
+     *
+     * @param phase the name of the phase.
+     * @param work the work to time.
+     * @return the result of the work.
+     */
+    public <T> T time(String phase, Supplier<T> work) {
+        Sample sample = start(phase);
+        try {
+            return work.get();
+        } finally {
+            sample.close();
+        }
+    }
+
+    /**
+     * Record the time taken by one run of a phase.
+     */
+    public void record(String phase, long nanos) {
+        timer(phase).record(nanos);
+    }
+
+    /**
+     * Record a finished load, for the rows/sec and bytes/sec rates.
+     *
+     * @param rows the rows that were turned into books.
+     * @param bytes the bytes read.
+     * @param nanos how long the load took.
+     */
+    public void recordLoad(long rows, long bytes, long nanos) {
+        rowsLoaded.add(rows);
+        bytesLoaded.add(bytes);
+        loadNanos.add(nanos);
+    }
+
+    public void reject(RejectReason reason) {
+        rejectedRows[reason.ordinal()].increment();
+    }
+
+    public long getRejectedRows(RejectReason reason) {
+        return rejectedRows[reason.ordinal()].sum();
+    }
+
+    @Override
+    public long getRowsLoaded() {
+        return rowsLoaded.sum();
+    }
+
+    @Override
+    public long getBytesLoaded() {
+        return bytesLoaded.sum();
+    }
+
+    @Override
+    public double getRowsPerSecond() {
+        return perSecond(rowsLoaded.sum());
+    }
+
+    @Override
+    public double getBytesPerSecond() {
+        return perSecond(bytesLoaded.sum());
+    }
+
+    private double perSecond(long count) {
+        long nanos = loadNanos.sum();
+        return nanos == 0 ? 0 : count * 1e9 / nanos;
+    }
+
+    @Override
+    public long getRejectedWrongFieldCount() {
+        return getRejectedRows(RejectReason.WRONG_FIELD_COUNT);
+    }
+
+    @Override
+    public long getRejectedUnparsableNumber() {
+        return getRejectedRows(RejectReason.UNPARSABLE_NUMBER);
+    }
+
+    @Override
+    public long getRejectedQuotedComma() {
+        return getRejectedRows(RejectReason.QUOTED_COMMA);
+    }
+
+    @Override
+    public long getRejectedBadHeader() {
+        return getRejectedRows(RejectReason.BAD_HEADER);
+    }
+
+    @Override
+    public String[] getPhaseNames() {
+        synchronized (phases) {
+            return phases.keySet().toArray(new String[0]);
+        }
+    }
+
+    @Override
+    public long getPhaseCount(String phase) {
+        PhaseTimer timer = phases.get(phase);
+        return timer == null ? 0 : timer.count.sum();
+    }
+
+    @Override
+    public double getPhaseTotalMillis(String phase) {
+        PhaseTimer timer = phases.get(phase);
+        return timer == null ? 0 : timer.totalNanos.sum() / 1e6;
+    }
+
+    @Override
+    public double getPhaseMaxMillis(String phase) {
+        PhaseTimer timer = phases.get(phase);
+        return timer == null ? 0 : timer.maxNanos.get() / 1e6;
+    }
+
+    /**
+     * @return the latency histogram of a phase: bucket i counts the runs that took less than 2^i nanoseconds but
+     * at least 2^(i-1), or null if the phase has never been timed.
+     */
+    public long[] getPhaseHistogram(String phase) {
+        PhaseTimer timer = phases.get(phase);
+        if (timer == null) {
+            return null;
+        }
+        long[] buckets = new long[timer.histogram.length()];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = timer.histogram.get(i);
+        }
+        return buckets;
+    }
+
+    @Override
+    public String toJson() {
+        StringBuilder out = new StringBuilder("{\"load\":{\"rows\":").append(getRowsLoaded())
+                .append(",\"bytes\":").append(getBytesLoaded())
+                .append(",\"nanos\":").append(loadNanos.sum())
+                .append(",\"rowsPerSecond\":").append(Math.round(getRowsPerSecond()))
+                .append(",\"bytesPerSecond\":").append(Math.round(getBytesPerSecond()))
+                .append("},\"rejectedRows\":{");
+        for (RejectReason reason : RejectReason.values()) {
+            if (reason.ordinal() > 0) {
+                out.append(',');
+            }
+            Json.appendString(out, reason.name()).append(':').append(getRejectedRows(reason));
+        }
+        out.append("},\"phases\":{");
+        List<Map.Entry<String, PhaseTimer>> entries;
+        synchronized (phases) {
+            entries = new ArrayList<>(phases.entrySet());
+        }
+        for (int i = 0; i < entries.size(); i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            PhaseTimer timer = entries.get(i).getValue();
+            Json.appendString(out, entries.get(i).getKey())
+                    .append(":{\"count\":").append(timer.count.sum())
+                    .append(",\"totalNanos\":").append(timer.totalNanos.sum())
+                    .append(",\"maxNanos\":").append(timer.maxNanos.get())
+                    .append(",\"histogram\":{");
+            // Keyed by the upper bound of each bucket in nanoseconds; empty buckets are left out.
+            boolean first = true;
+            for (int bucket = 0; bucket < timer.histogram.length(); bucket++) {
+                long count = timer.histogram.get(bucket);
+                if (count > 0) {
+                    if (!first) {
+                        out.append(',');
+                    }
+                    first = false;
+                    Json.appendString(out, bucket == 63 ? "inf" : Long.toString(1L << bucket)).append(':').append(count);
+                }
+            }
+            out.append("}}");
+        }
+        return out.append("}}").toString();
+    }
+
+    @Override
+    public void reset() {
+        rowsLoaded.reset();
+        bytesLoaded.reset();
+        loadNanos.reset();
+        for (LongAdder rejected : rejectedRows) {
+            rejected.reset();
+        }
+        phases.clear();
+    }
+
+    /**
+     * Register these metrics with the platform MBean server, replacing anything already registered under the name.
+     *
+     * @return the name they were registered under, or null if registration failed.
+     */
+    public ObjectName register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+            return name;
+        } catch (JMException e) {
+            System.err.println("Could not register metrics with JMX: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private PhaseTimer timer(String phase) {
+        return phases.computeIfAbsent(phase, p -> new PhaseTimer());
+    }
+
+    /**
+     * One running measurement of a phase, recorded when closed.
+     */
+    public static final class Sample implements AutoCloseable {
+        private final PhaseTimer timer;
+        private final long start = System.nanoTime();
+
+        private Sample(PhaseTimer timer) {
+            this.timer = timer;
+        }
+
+        /**
+         * @return the nanoseconds since the sample was started.
+         */
+        public long elapsedNanos() {
+            return System.nanoTime() - start;
+        }
+
+        @Override
+        public void close() {
+            timer.record(elapsedNanos());
+        }
+    }
+
+    private static final class PhaseTimer {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+        // Bucket i holds runs of [2^(i-1), 2^i) nanoseconds, so a whole histogram is 64 counters.
+        private final AtomicLongArray histogram = new AtomicLongArray(64);
+
+        void record(long nanos) {
+            nanos = Math.max(nanos, 0);
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+            histogram.incrementAndGet(Math.min(64 - Long.numberOfLeadingZeros(nanos), 63));
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.patientping;
+
+/**
+ * The JMX view of BookStatsMetrics. Times are reported in milliseconds.
+ */
+public interface BookStatsMetricsMBean {
+    long getRowsLoaded();
+
+    long getBytesLoaded();
+
+    double getRowsPerSecond();
+
+    double getBytesPerSecond();
+
+    long getRejectedWrongFieldCount();
+
+    long getRejectedUnparsableNumber();
+
+    long getRejectedQuotedComma();
+
+    long getRejectedBadHeader();
+
+    /**
+     * @return the names of every phase that has been timed, in the order they were first timed.
+     */
+    String[] getPhaseNames();
+
+    /**
+     * @return how many times the phase has been timed, or 0 if it never has.
+     */
+    long getPhaseCount(String phase);
+
+    double getPhaseTotalMillis(String phase);
+
+    double getPhaseMaxMillis(String phase);
+
+    /**
+     * @return every metric as a JSON object.
+     */
+    String toJson();
+
+    void reset();
+}
@@ -0,0 +1,300 @@
+package com.patientping;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A long-running HTTP server, built on the JDK's HttpServer, that answers BookStats queries as JSON from a dataset
+ * loaded once at startup. Requests run on virtual threads when the JVM has them, and otherwise on a work-stealing
+ * pool, so concurrent requests do not each need their own platform thread. Ranked results are cached per dataset
+ * version through CachingBookStats.
+ *
+ * Endpoints (all GET; add english=true to restrict to English books):
+ *   /authors/most-books?k=10
+ *   /authors/highest-average-rating?k=10
+ *   /books/highest-rated?k=10&minRatings=25
+ *   /books/highest-ratio?k=10
+ *   /books/{id}
+ *   /books/isbn13/{isbn13}
+ *   /stats
+ *
+ * Search endpoints (GET, over all books; case, accents and punctuation are ignored):
+ *   /authors/complete?prefix=gran&k=10
+ *   /authors/search?q=mary grandpre&k=10
+ *   /books/complete?prefix=harry&k=10
+ *   /books/search?q=hary poter&k=10
+ */
+public class BookStatsServer {
+    public static final int DEFAULT_PORT = 8080;
+    private static final int MAX_K = 10_000;
+
+    private final CachingBookStats stats;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * Create a server for a dataset. The server does not accept requests until start is called.
+     *
+     * @param dataset the books to serve.
+     * @param port the port to listen on, or 0 for any free port.
+     * @throws IOException if the port cannot be bound.
+     */
+    public BookStatsServer(BookDataset dataset, int port) throws IOException {
+        this.stats = new CachingBookStats(dataset);
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        this.executor = newRequestExecutor();
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+    }
+
+    /**
+     * Use a virtual thread per request on JVMs that support them (Java 21+), otherwise a work-stealing pool sized
+     * to the number of cores. Reflection keeps the project compiling for Java 8.
+     */
+    static ExecutorService newRequestExecutor() {
+        try {
+            Method virtualThreads = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) virtualThreads.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newWorkStealingPool();
+        }
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    /**
+     * @return the port the server is listening on.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                respond(exchange, 405, error("Only GET is supported"));
+                return;
+            }
+            URI uri = exchange.getRequestURI();
+            Map<String, String> params = parseQuery(uri.getRawQuery());
+            String path = uri.getPath();
+            String body = route(path, params);
+            if (body == null) {
+                respond(exchange, 404, error("Not found: " + path));
+            } else {
+                respond(exchange, 200, body);
+            }
+        } catch (IllegalArgumentException e) {
+            respond(exchange, 400, error(e.getMessage()));
+        } catch (RuntimeException e) {
+            respond(exchange, 500, error("Internal error"));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * @return the JSON response for a request, or null if nothing matches the path.
+     */
+    String route(String path, Map<String, String> params) {
+        boolean englishOnly = Boolean.parseBoolean(params.get("english"));
+        BookDataset dataset = stats.getDataset();
+        switch (path) {
+            case "/authors/most-books":
+                return authorsJson(stats.findAuthorsWithMostBooks(englishOnly, intParam(params, "k", 10, 0, MAX_K)));
+            case "/authors/highest-average-rating":
+                return authorsJson(stats.findAuthorsWithHighestAverageRating(englishOnly, intParam(params, "k", 10, 0, MAX_K)));
+            case "/books/highest-rated":
+                return booksJson(stats.findHighestRatedBooks(englishOnly, intParam(params, "k", 10, 0, MAX_K),
+                        intParam(params, "minRatings", 25, 0, Integer.MAX_VALUE)));
+            case "/books/highest-ratio":
+                return booksJson(stats.findHighestRatioBooks(englishOnly, intParam(params, "k", 10, 0, MAX_K)));
+            case "/authors/complete":
+                return authorsJson(dataset.getSearchIndex().completeAuthors(requiredParam(params, "prefix"),
+                        intParam(params, "k", 10, 0, MAX_K)));
+            case "/authors/search":
+                return authorHitsJson(dataset.getSearchIndex().searchAuthors(requiredParam(params, "q"),
+                        intParam(params, "k", 10, 0, MAX_K)));
+            case "/books/complete":
+                return booksJson(dataset.getSearchIndex().completeTitles(requiredParam(params, "prefix"),
+                        intParam(params, "k", 10, 0, MAX_K)));
+            case "/books/search":
+                return bookHitsJson(dataset.getSearchIndex().searchTitles(requiredParam(params, "q"),
+                        intParam(params, "k", 10, 0, MAX_K)));
+            case "/stats":
+                return "{\"books\":" + dataset.getBooks(false).size() + ",\"englishBooks\":" + dataset.getBooks(true).size()
+                        + ",\"authors\":" + dataset.getBooksByAuthor(false).size() + "}";
+            default:
+                Book book;
+                if (path.startsWith("/books/isbn13/")) {
+                    book = dataset.findByIsbn13(parseLong("isbn13", path.substring("/books/isbn13/".length())));
+                } else if (path.startsWith("/books/")) {
+                    book = dataset.findById(parseInt("id", path.substring("/books/".length())));
+                } else {
+                    return null;
+                }
+                return book == null ? null : Json.appendBook(new StringBuilder(), book).toString();
+        }
+    }
+
+    private static String booksJson(List<Book> books) {
+        StringBuilder out = new StringBuilder("[");
+        for (Book book : books) {
+            Json.appendBook(out.length() > 1 ? out.append(',') : out, book);
+        }
+        return out.append(']').toString();
+    }
+
+    private static String authorsJson(List<Author> authors) {
+        StringBuilder out = new StringBuilder("[");
+        for (Author author : authors) {
+            appendAuthorFields((out.length() > 1 ? out.append(',') : out).append('{'), author).append('}');
+        }
+        return out.append(']').toString();
+    }
+
+    private static String authorHitsJson(List<SearchHit<Author>> hits) {
+        StringBuilder out = new StringBuilder("[");
+        for (SearchHit<Author> hit : hits) {
+            appendAuthorFields((out.length() > 1 ? out.append(',') : out).append('{'), hit.getValue());
+            Json.appendNumber(out.append(",\"similarity\":"), hit.getSimilarity()).append('}');
+        }
+        return out.append(']').toString();
+    }
+
+    private static StringBuilder appendAuthorFields(StringBuilder out, Author author) {
+        Json.appendString(out.append("\"name\":"), author.getName());
+        out.append(",\"books\":").append(author.getBooks().size());
+        return Json.appendNumber(out.append(",\"averageRating\":"), author.getAverageRatingForAllBooks());
+    }
+
+    private static String bookHitsJson(List<SearchHit<Book>> hits) {
+        StringBuilder out = new StringBuilder("[");
+        for (SearchHit<Book> hit : hits) {
+            Json.appendBook((out.length() > 1 ? out.append(',') : out).append("{\"book\":"), hit.getValue());
+            Json.appendNumber(out.append(",\"similarity\":"), hit.getSimilarity()).append('}');
+        }
+        return out.append(']').toString();
+    }
+
+    private static String error(String message) {
+        return Json.appendString(new StringBuilder("{\"error\":"), message).append('}').toString();
+    }
+
+    private static String requiredParam(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if (value == null || value.trim().isEmpty()) {
+            throw new IllegalArgumentException(name + " is required");
+        }
+        return value;
+    }
+
+    private static int intParam(Map<String, String> params, String name, int defaultValue, int min, int max) {
+        String value = params.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        int parsed = parseInt(name, value);
+        if (parsed < min || parsed > max) {
+            throw new IllegalArgumentException(name + " must be between " + min + " and " + max);
+        }
+        return parsed;
+    }
+
+    private static int parseInt(String name, String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " must be an integer: " + value);
+        }
+    }
+
+    private static long parseLong(String name, String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " must be an integer: " + value);
+        }
+    }
+
+    static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            try {
+                String key = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), "UTF-8");
+                String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), "UTF-8");
+                params.put(key, value);
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return params;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Parse the port given to --serve.
+     *
+     * @param value a port number; 0 picks any free port.
+     * @return the port.
+     * @throws IllegalArgumentException if the value is not a number from 0 to 65535.
+     */
+    public static int parsePort(String value) {
+        int port;
+        try {
+            port = Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a port: " + value);
+        }
+        if (port < 0 || port > 65535) {
+            throw new IllegalArgumentException("Not a port: " + value);
+        }
+        return port;
+    }
+
+    /**
+     * Load the bundled books once and serve them until the process is stopped.
+     *
+     * @param port the port to listen on.
+     * @throws IOException if the books cannot be loaded or the port cannot be bound.
+     */
+    public static void serve(int port) throws IOException {
+        BookDataset dataset = BookDataset.load(BookStats.class.getResourceAsStream("/books.csv"));
+        BookStatsServer server = new BookStatsServer(dataset, port);
+        server.start();
+        System.out.println("Serving " + dataset.getBooks(false).size() + " books on port " + server.getPort());
+    }
+}
@@ -0,0 +1,400 @@
+package com.patientping;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.patientping.HeaderFields.*;
+
+/**
+ * Column-oriented storage for books. Numbers live in primitive arrays, isbn13 is packed into a long, language codes
+ * are stored as indexes into a small dictionary and the title, authors and isbn of every row are stored as UTF-8 in
+ * fixed-size pages of bytes addressed by long offsets, so the text is not limited to the size of one array. Rows are
+ * addressed by their position, starting at 0, and scans only touch the columns they need.
+ */
+public class BookTable {
+    private static final int TEXT_FIELDS = 3;
+    private static final int TITLE = 0;
+    private static final int AUTHORS = 1;
+    private static final int ISBN = 2;
+    public static final int DEFAULT_PAGE_SIZE = 1 << 20;
+
+    private int size;
+    private int[] ids = new int[16];
+    private float[] averageRatings = new float[16];
+    private long[] isbn13s = new long[16];
+    private short[] languageCodes = new short[16];
+    private int[] numPages = new int[16];
+    private int[] ratingCounts = new int[16];
+    private int[] textReviewCounts = new int[16];
+
+    // Text byte at offset t is in pages[t >>> pageShift] at index t & pageMask. Every page but the last is full
+    // size; the last one grows until it is. A field may continue from one page into the next.
+    private final int pageShift;
+    private final int pageMask;
+    private byte[][] pages = new byte[4][];
+    private int pageCount;
+    private long textLength;
+    // Text field n of the table spans [textOffsets[n], textOffsets[n + 1]) in the pages.
+    private int textFieldCount;
+    private long[] textOffsets = new long[16 * TEXT_FIELDS + 1];
+
+    private final List<String> languages = new ArrayList<>();
+    private final Map<String, Short> languageDictionary = new HashMap<>();
+    // isbn13 values that can't be packed into a long without losing their exact text, keyed by row.
+    private final Map<Integer, String> irregularIsbn13s = new HashMap<>();
+
+    public BookTable() {
+        this(DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * @param pageSize the bytes of text each page holds, a power of two. Tables are usually built with
+     *                 DEFAULT_PAGE_SIZE; small pages are mostly useful to test fields that cross pages.
+     */
+    public BookTable(int pageSize) {
+        if (pageSize <= 0 || Integer.bitCount(pageSize) != 1) {
+            throw new IllegalArgumentException("pageSize must be a power of two: " + pageSize);
+        }
+        this.pageShift = Integer.numberOfTrailingZeros(pageSize);
+        this.pageMask = pageSize - 1;
+        this.pages[0] = new byte[Math.min(1024, pageSize)];
+        this.pageCount = 1;
+    }
+
+    /**
+     * Build a table holding the same books as a list, in the same order.
+     *
+     * @param books a list of Book objects.
+     * @return a table with one row per book.
+     */
+    public static BookTable from(List<Book> books) {
+        BookTable table = new BookTable();
+        for (Book book : books) {
+            table.add(book);
+        }
+        return table;
+    }
+
+    /**
+     * Build a table from whole columns, as BookSnapshot stores them, copying each column in bulk rather than
+     * parsing or re-encoding any row.
+     *
+     * @param rows the number of rows.
+     * @param textOffsets rows * 3 + 1 int offsets into text; see getTextOffset.
+     * @param text the UTF-8 title, authors and isbn of every row.
+     * @param languages the language dictionary the language codes index.
+     * @param irregularIsbn13s the isbn13 text of rows whose isbn13 column is -1.
+     * @return a table holding the columns.
+     */
+    static BookTable fromColumns(int rows, ByteBuffer ids, ByteBuffer averageRatings, ByteBuffer isbn13s,
+                                 ByteBuffer languageCodes, ByteBuffer numPages, ByteBuffer ratingCounts,
+                                 ByteBuffer textReviewCounts, ByteBuffer textOffsets, ByteBuffer text,
+                                 List<String> languages, Map<Integer, String> irregularIsbn13s) {
+        BookTable table = new BookTable();
+        table.size = rows;
+        table.ids = new int[Math.max(16, rows)];
+        ids.duplicate().asIntBuffer().get(table.ids, 0, rows);
+        table.averageRatings = new float[table.ids.length];
+        averageRatings.duplicate().asFloatBuffer().get(table.averageRatings, 0, rows);
+        table.isbn13s = new long[table.ids.length];
+        isbn13s.duplicate().asLongBuffer().get(table.isbn13s, 0, rows);
+        table.languageCodes = new short[table.ids.length];
+        languageCodes.duplicate().asShortBuffer().get(table.languageCodes, 0, rows);
+        table.numPages = new int[table.ids.length];
+        numPages.duplicate().asIntBuffer().get(table.numPages, 0, rows);
+        table.ratingCounts = new int[table.ids.length];
+        ratingCounts.duplicate().asIntBuffer().get(table.ratingCounts, 0, rows);
+        table.textReviewCounts = new int[table.ids.length];
+        textReviewCounts.duplicate().asIntBuffer().get(table.textReviewCounts, 0, rows);
+
+        table.textOffsets = new long[table.ids.length * TEXT_FIELDS + 1];
+        table.textFieldCount = rows * TEXT_FIELDS;
+        for (int n = 0; n <= table.textFieldCount; n++) {
+            table.textOffsets[n] = textOffsets.getInt(n * 4);
+        }
+        ByteBuffer remaining = text.duplicate();
+        while (remaining.hasRemaining()) {
+            int n = table.reserveText(remaining.remaining());
+            remaining.get(table.pages[table.page(table.textLength)], table.index(table.textLength), n);
+            table.textLength += n;
+        }
+
+        for (String language : languages) {
+            table.encodeLanguage(language);
+        }
+        table.irregularIsbn13s.putAll(irregularIsbn13s);
+        return table;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Append a book as a new row.
+     *
+     * @param book the book to add.
+     * @return the row the book was stored in.
+     */
+    public int add(Book book) {
+        int row = startRow(book.getId(), book.getAverageRating(), book.getLanguage(), book.getNumPages(), book.getRatingCount(), book.getTextReviewsCount());
+        appendText(book.getTitle().getBytes(StandardCharsets.UTF_8));
+        appendText(book.getAuthors().getBytes(StandardCharsets.UTF_8));
+        appendText(book.getIsbn().getBytes(StandardCharsets.UTF_8));
+        setIsbn13(row, book.getIsbn13());
+        return row;
+    }
+
+    /**
+     * Append a csv row without creating a Book or Strings for its title, authors and isbn.
+     *
+     * @param csvRow a row of a memory-mapped csv file.
+     * @return the row the book was stored in.
+     */
+    public int add(MappedCsvRow csvRow) {
+        int row = startRow(csvRow.getInt(bookID), csvRow.getFloat(average_rating), csvRow.getString(language_code),
+                csvRow.getInt(num_pages), csvRow.getInt(ratings_count), csvRow.getInt(text_reviews_count));
+        appendText(csvRow, title);
+        appendText(csvRow, authors);
+        appendText(csvRow, isbn);
+        setIsbn13(row, csvRow.getString(isbn13));
+        return row;
+    }
+
+    private int startRow(int id, float averageRating, String language, int pages, int ratingCount, int textReviewCount) {
+        if (size == ids.length) {
+            int capacity = size * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            averageRatings = Arrays.copyOf(averageRatings, capacity);
+            isbn13s = Arrays.copyOf(isbn13s, capacity);
+            languageCodes = Arrays.copyOf(languageCodes, capacity);
+            numPages = Arrays.copyOf(numPages, capacity);
+            ratingCounts = Arrays.copyOf(ratingCounts, capacity);
+            textReviewCounts = Arrays.copyOf(textReviewCounts, capacity);
+            textOffsets = Arrays.copyOf(textOffsets, capacity * TEXT_FIELDS + 1);
+        }
+        int row = size++;
+        ids[row] = id;
+        averageRatings[row] = averageRating;
+        languageCodes[row] = encodeLanguage(language);
+        numPages[row] = pages;
+        ratingCounts[row] = ratingCount;
+        textReviewCounts[row] = textReviewCount;
+        return row;
+    }
+
+    private short encodeLanguage(String language) {
+        Short code = languageDictionary.get(language);
+        if (code == null) {
+            if (languages.size() > Short.MAX_VALUE) {
+                throw new IllegalStateException("Too many distinct language codes: " + languages.size());
+            }
+            code = (short) languages.size();
+            languages.add(language);
+            languageDictionary.put(language, code);
+        }
+        return code;
+    }
+
+    private void setIsbn13(int row, String value) {
+        long packed = packIsbn13(value);
+        isbn13s[row] = packed;
+        if (packed < 0) {
+            irregularIsbn13s.put(row, value);
+        }
+    }
+
+    /**
+     * @return the isbn13 as a long, or -1 if the text is not plain digits that survive the round trip.
+     */
+    static long packIsbn13(String value) {
+        if (value.isEmpty() || value.length() > 18 || (value.length() > 1 && value.charAt(0) == '0')) {
+            return -1;
+        }
+        long packed = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            packed = packed * 10 + (c - '0');
+        }
+        return packed;
+    }
+
+    private void appendText(byte[] bytes) {
+        int copied = 0;
+        while (copied < bytes.length) {
+            int n = reserveText(bytes.length - copied);
+            System.arraycopy(bytes, copied, pages[page(textLength)], index(textLength), n);
+            textLength += n;
+            copied += n;
+        }
+        textOffsets[++textFieldCount] = textLength;
+    }
+
+    private void appendText(MappedCsvRow csvRow, HeaderFields field) {
+        int length = csvRow.length(field);
+        int copied = 0;
+        while (copied < length) {
+            int n = reserveText(length - copied);
+            csvRow.copyBytes(field, copied, pages[page(textLength)], index(textLength), n);
+            textLength += n;
+            copied += n;
+        }
+        textOffsets[++textFieldCount] = textLength;
+    }
+
+    /**
+     * Make room at the end of the text, in the page that holds textLength, for up to wanted bytes.
+     *
+     * @return how many bytes can be written there, at least 1.
+     */
+    private int reserveText(int wanted) {
+        int page = page(textLength);
+        int index = index(textLength);
+        if (page == pageCount) {
+            if (pageCount == pages.length) {
+                pages = Arrays.copyOf(pages, pageCount * 2);
+            }
+            pages[pageCount++] = new byte[pageMask + 1];
+        } else if (index + wanted > pages[page].length && pages[page].length <= pageMask) {
+            pages[page] = Arrays.copyOf(pages[page], Math.min(pageMask + 1, Math.max(index + wanted, pages[page].length * 2)));
+        }
+        return Math.min(wanted, pages[page].length - index);
+    }
+
+    private int page(long offset) {
+        return (int) (offset >>> pageShift);
+    }
+
+    private int index(long offset) {
+        return (int) (offset & pageMask);
+    }
+
+    private String text(int row, int field) {
+        long start = textOffsets[row * TEXT_FIELDS + field];
+        int length = (int) (textOffsets[row * TEXT_FIELDS + field + 1] - start);
+        int index = index(start);
+        if (index + length <= pageMask + 1) {
+            return new String(pages[page(start)], index, length, StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[length];
+        copyText(start, bytes, 0, length);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Copy bytes of text, which may span several pages, into an array.
+     */
+    private void copyText(long from, byte[] dest, int offset, int length) {
+        int copied = 0;
+        while (copied < length) {
+            long position = from + copied;
+            int n = Math.min(length - copied, pageMask + 1 - index(position));
+            System.arraycopy(pages[page(position)], index(position), dest, offset + copied, n);
+            copied += n;
+        }
+    }
+
+    public int getId(int row) {
+        return ids[row];
+    }
+
+    public String getTitle(int row) {
+        return text(row, TITLE);
+    }
+
+    public String getAuthors(int row) {
+        return text(row, AUTHORS);
+    }
+
+    public float getAverageRating(int row) {
+        return averageRatings[row];
+    }
+
+    public String getIsbn(int row) {
+        return text(row, ISBN);
+    }
+
+    /**
+     * @return the isbn13 packed into a long, or -1 if it could not be packed.
+     */
+    public long getIsbn13AsLong(int row) {
+        return isbn13s[row];
+    }
+
+    public String getIsbn13(int row) {
+        long packed = isbn13s[row];
+        return packed < 0 ? irregularIsbn13s.get(row) : Long.toString(packed);
+    }
+
+    public String getLanguage(int row) {
+        return languages.get(languageCodes[row]);
+    }
+
+    /**
+     * @return the dictionary code of the row's language; see getLanguages.
+     */
+    public int getLanguageCode(int row) {
+        return languageCodes[row];
+    }
+
+    /**
+     * @return every distinct language code, indexed by its dictionary code.
+     */
+    public List<String> getLanguages() {
+        return languages;
+    }
+
+    public int getNumPages(int row) {
+        return numPages[row];
+    }
+
+    public int getRatingCount(int row) {
+        return ratingCounts[row];
+    }
+
+    public int getTextReviewsCount(int row) {
+        return textReviewCounts[row];
+    }
+
+    /**
+     * Write the UTF-8 title, authors and isbn of every row, in field order, getTextOffset(3 * size()) bytes in all.
+     *
+     * @param out where to write the text.
+     * @throws IOException if the text cannot be written.
+     */
+    void writeText(OutputStream out) throws IOException {
+        for (int page = 0; page < pageCount; page++) {
+            long pageStart = (long) page << pageShift;
+            out.write(pages[page], 0, (int) Math.min(pages[page].length, textLength - pageStart));
+        }
+    }
+
+    /**
+     * @return where text field n starts in the text. Row r's title, authors and isbn are fields 3r, 3r + 1 and
+     * 3r + 2, and each field ends where the next one starts.
+     */
+    long getTextOffset(int n) {
+        return textOffsets[n];
+    }
+
+    /**
+     * Materialize a row as a Book.
+     *
+     * @param row a row of this table.
+     * @return a Book holding the same values as the row.
+     */
+    public Book getBook(int row) {
+        return new Book(getId(row), getTitle(row), getAuthors(row), getAverageRating(row), getIsbn(row), getIsbn13(row),
+                getLanguage(row), getNumPages(row), getRatingCount(row), getTextReviewsCount(row));
+    }
+}
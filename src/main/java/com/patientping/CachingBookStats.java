@@ -0,0 +1,116 @@
+package com.patientping;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Answers BookStats and RankedBookStats queries over the current BookDataset through a QueryCache. Every cache key
+ * includes the dataset version, so loading new books invalidates earlier results automatically; the cache is also
+ * cleared then, since old entries can never be hit again. A result that was still being computed from the old
+ * dataset when the new one was published is returned to its caller but not cached.
+ */
+public class CachingBookStats {
+    public static final int DEFAULT_MAX_ENTRIES = 10_000;
+
+    private final AtomicReference<BookDataset> dataset;
+    private final QueryCache<List<Object>, Object> cache;
+    private final BookStats bookStats = new BookStats();
+    private final RankedBookStats rankedBookStats = new RankedBookStats();
+
+    public CachingBookStats(BookDataset dataset) {
+        this(dataset, new QueryCache<>(DEFAULT_MAX_ENTRIES));
+    }
+
+    public CachingBookStats(BookDataset dataset, QueryCache<List<Object>, Object> cache) {
+        this.dataset = new AtomicReference<>(dataset);
+        this.cache = cache;
+    }
+
+    public BookDataset getDataset() {
+        return dataset.get();
+    }
+
+    public QueryCache<List<Object>, Object> getCache() {
+        return cache;
+    }
+
+    /**
+     * Append books to the dataset, moving to a new version and invalidating every cached result.
+     *
+     * @param books the books to append.
+     */
+    public synchronized void addBooks(List<Book> books) {
+        BookDataset next = dataset.get().withBooks(books);
+        cache.invalidate(() -> dataset.set(next));
+    }
+
+    /**
+     * Load a csv and append its books to the dataset.
+     *
+     * @param in an input stream from a csv file containing books.
+     * @throws IOException if the csv cannot be read.
+     */
+    public void loadCsv(InputStream in) throws IOException {
+        addBooks(bookStats.loadCsv(in));
+    }
+
+    public Author findMostBooks(boolean englishOnly) {
+        BookDataset current = dataset.get();
+        return cached(current, "findMostBooks", englishOnly, () -> bookStats.findMostBooks(current.getBooksByAuthor(englishOnly)));
+    }
+
+    public Book findHighestRatedBook(boolean englishOnly) {
+        BookDataset current = dataset.get();
+        return cached(current, "findHighestRatedBook", englishOnly, () -> bookStats.findHighestRatedBook(current.getBooks(englishOnly)));
+    }
+
+    public Book findHighestRatio(boolean englishOnly) {
+        BookDataset current = dataset.get();
+        return cached(current, "findHighestRatio", englishOnly, () -> bookStats.findHighestRatio(current.getBooks(englishOnly)));
+    }
+
+    public Author findAuthorWithHighestAverageRating(boolean englishOnly) {
+        BookDataset current = dataset.get();
+        return cached(current, "findAuthorWithHighestAverageRating", englishOnly,
+                () -> bookStats.findAuthorWithHighestAverageRating(current.getBooksByAuthor(englishOnly)));
+    }
+
+    public List<Author> findAuthorsWithMostBooks(boolean englishOnly, int k) {
+        BookDataset current = dataset.get();
+        return cached(current, "findAuthorsWithMostBooks", englishOnly,
+                () -> Collections.unmodifiableList(rankedBookStats.findAuthorsWithMostBooks(current.getBooksByAuthor(englishOnly), k)), k);
+    }
+
+    public List<Author> findAuthorsWithHighestAverageRating(boolean englishOnly, int k) {
+        BookDataset current = dataset.get();
+        return cached(current, "findAuthorsWithHighestAverageRating", englishOnly,
+                () -> Collections.unmodifiableList(rankedBookStats.findAuthorsWithHighestAverageRating(current.getBooksByAuthor(englishOnly), k)), k);
+    }
+
+    public List<Book> findHighestRatedBooks(boolean englishOnly, int k, int minimumRatings) {
+        BookDataset current = dataset.get();
+        return cached(current, "findHighestRatedBooks", englishOnly,
+                () -> Collections.unmodifiableList(rankedBookStats.findHighestRatedBooks(current.getBooks(englishOnly), k, minimumRatings)), k, minimumRatings);
+    }
+
+    public List<Book> findHighestRatioBooks(boolean englishOnly, int k) {
+        BookDataset current = dataset.get();
+        return cached(current, "findHighestRatioBooks", englishOnly,
+                () -> Collections.unmodifiableList(rankedBookStats.findHighestRatioBooks(current.getBooks(englishOnly), k)), k);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T cached(BookDataset current, String query, boolean englishOnly, Supplier<T> compute, Object... params) {
+        Object[] key = new Object[3 + params.length];
+        key[0] = query;
+        key[1] = current.getVersion();
+        key[2] = englishOnly;
+        System.arraycopy(params, 0, key, 3, params.length);
+        return (T) cache.get(Arrays.asList(key), compute, () -> dataset.get() == current);
+    }
+}
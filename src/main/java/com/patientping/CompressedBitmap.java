@@ -0,0 +1,318 @@
+package com.patientping;
+
+import java.util.Arrays;
+
+/**
+ * A compressed set of non-negative ints, e.g. the rows of a BookTable that have some language code.
+ * Values are split into chunks of 65536 by their high 16 bits. A sparse chunk stores its low 16 bits in a sorted
+ * char array and a dense chunk stores a 65536-bit bitmap, so both a handful of rows and most of a table are cheap.
+ * Bitmaps can be combined with and/or without decompressing them.
+ */
+public class CompressedBitmap {
+    private static final int MAX_ARRAY_SIZE = 4096;
+
+    // keys[i] holds the high 16 bits shared by every value in chunks[i]; keys are sorted.
+    private char[] keys = new char[4];
+    private Chunk[] chunks = new Chunk[4];
+    private int size;
+
+    /**
+     * Add a value. Adding values in ascending order is O(1).
+     *
+     * @param value a non-negative int.
+     */
+    public void add(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative value: " + value);
+        }
+        char key = (char) (value >>> 16);
+        int i = size > 0 && keys[size - 1] == key ? size - 1 : indexOf(key);
+        if (i < 0) {
+            i = -i - 1;
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                chunks = Arrays.copyOf(chunks, size * 2);
+            }
+            System.arraycopy(keys, i, keys, i + 1, size - i);
+            System.arraycopy(chunks, i, chunks, i + 1, size - i);
+            keys[i] = key;
+            chunks[i] = new ArrayChunk();
+            size++;
+        }
+        chunks[i] = chunks[i].add((char) value);
+    }
+
+    public boolean contains(int value) {
+        int i = value < 0 ? -1 : indexOf((char) (value >>> 16));
+        return i >= 0 && chunks[i].contains((char) value);
+    }
+
+    public int cardinality() {
+        int cardinality = 0;
+        for (int i = 0; i < size; i++) {
+            cardinality += chunks[i].cardinality();
+        }
+        return cardinality;
+    }
+
+    /**
+     * @return the values in this bitmap that are also in the other one.
+     */
+    public CompressedBitmap and(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                Chunk chunk = chunks[i].and(other.chunks[j]);
+                if (chunk.cardinality() > 0) {
+                    result.append(keys[i], chunk);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the values that are in either bitmap.
+     */
+    public CompressedBitmap or(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < size || j < other.size) {
+            if (j == other.size || (i < size && keys[i] < other.keys[j])) {
+                result.append(keys[i], chunks[i]);
+                i++;
+            } else if (i == size || keys[i] > other.keys[j]) {
+                result.append(other.keys[j], other.chunks[j]);
+                j++;
+            } else {
+                result.append(keys[i], chunks[i].or(other.chunks[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the values in ascending order.
+     */
+    public int[] toArray() {
+        int[] values = new int[cardinality()];
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            n = chunks[i].copyTo(keys[i] << 16, values, n);
+        }
+        return values;
+    }
+
+    // Chunks are copied on the way in so that adding to a result never modifies the bitmaps it was built from.
+    private void append(char key, Chunk chunk) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            chunks = Arrays.copyOf(chunks, size * 2);
+        }
+        keys[size] = key;
+        chunks[size] = chunk.copy();
+        size++;
+    }
+
+    private int indexOf(char key) {
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    private abstract static class Chunk {
+        abstract Chunk add(char low);
+
+        abstract boolean contains(char low);
+
+        abstract int cardinality();
+
+        abstract Chunk copy();
+
+        abstract int copyTo(int high, int[] values, int offset);
+
+        abstract long[] toWords();
+
+        Chunk and(Chunk other) {
+            if (this instanceof ArrayChunk || other instanceof ArrayChunk) {
+                ArrayChunk small = (ArrayChunk) (this instanceof ArrayChunk ? this : other);
+                Chunk large = small == this ? other : this;
+                ArrayChunk result = new ArrayChunk();
+                for (int i = 0; i < small.count; i++) {
+                    if (large.contains(small.values[i])) {
+                        result.add(small.values[i]);
+                    }
+                }
+                return result;
+            }
+            long[] words = toWords();
+            long[] otherWords = other.toWords();
+            long[] result = new long[words.length];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = words[i] & otherWords[i];
+            }
+            return BitmapChunk.of(result);
+        }
+
+        Chunk or(Chunk other) {
+            if (this instanceof ArrayChunk && other instanceof ArrayChunk
+                    && cardinality() + other.cardinality() <= MAX_ARRAY_SIZE) {
+                Chunk result = copy();
+                ArrayChunk small = (ArrayChunk) other;
+                for (int i = 0; i < small.count; i++) {
+                    result = result.add(small.values[i]);
+                }
+                return result;
+            }
+            long[] words = toWords();
+            long[] otherWords = other.toWords();
+            long[] result = new long[words.length];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = words[i] | otherWords[i];
+            }
+            return BitmapChunk.of(result);
+        }
+    }
+
+    private static class ArrayChunk extends Chunk {
+        private char[] values = new char[4];
+        private int count;
+
+        @Override
+        Chunk add(char low) {
+            int i = count > 0 && values[count - 1] < low ? -count - 1 : Arrays.binarySearch(values, 0, count, low);
+            if (i >= 0) {
+                return this;
+            }
+            if (count == MAX_ARRAY_SIZE) {
+                return new BitmapChunk(toWords()).add(low);
+            }
+            i = -i - 1;
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+            }
+            System.arraycopy(values, i, values, i + 1, count - i);
+            values[i] = low;
+            count++;
+            return this;
+        }
+
+        @Override
+        boolean contains(char low) {
+            return Arrays.binarySearch(values, 0, count, low) >= 0;
+        }
+
+        @Override
+        int cardinality() {
+            return count;
+        }
+
+        @Override
+        Chunk copy() {
+            ArrayChunk copy = new ArrayChunk();
+            copy.values = Arrays.copyOf(values, Math.max(count, 1));
+            copy.count = count;
+            return copy;
+        }
+
+        @Override
+        int copyTo(int high, int[] out, int offset) {
+            for (int i = 0; i < count; i++) {
+                out[offset++] = high | values[i];
+            }
+            return offset;
+        }
+
+        @Override
+        long[] toWords() {
+            long[] words = new long[1024];
+            for (int i = 0; i < count; i++) {
+                words[values[i] >>> 6] |= 1L << values[i];
+            }
+            return words;
+        }
+    }
+
+    private static class BitmapChunk extends Chunk {
+        private final long[] words;
+        private int cardinality;
+
+        private BitmapChunk(long[] words) {
+            this.words = words;
+            for (long word : words) {
+                cardinality += Long.bitCount(word);
+            }
+        }
+
+        /**
+         * @return a chunk holding the set bits, stored as an array if there are few enough of them.
+         */
+        static Chunk of(long[] words) {
+            BitmapChunk bitmap = new BitmapChunk(words);
+            if (bitmap.cardinality > MAX_ARRAY_SIZE) {
+                return bitmap;
+            }
+            ArrayChunk array = new ArrayChunk();
+            array.values = new char[Math.max(bitmap.cardinality, 1)];
+            for (int w = 0; w < words.length; w++) {
+                long word = words[w];
+                while (word != 0) {
+                    array.values[array.count++] = (char) ((w << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return array;
+        }
+
+        @Override
+        Chunk add(char low) {
+            long bit = 1L << low;
+            if ((words[low >>> 6] & bit) == 0) {
+                words[low >>> 6] |= bit;
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        boolean contains(char low) {
+            return (words[low >>> 6] & (1L << low)) != 0;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        Chunk copy() {
+            return new BitmapChunk(words.clone());
+        }
+
+        @Override
+        int copyTo(int high, int[] out, int offset) {
+            for (int w = 0; w < words.length; w++) {
+                long word = words[w];
+                while (word != 0) {
+                    out[offset++] = high | ((w << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return offset;
+        }
+
+        @Override
+        long[] toWords() {
+            return words;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.patientping;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe statistics that many producer threads can feed at once. The book count and rating total are striped
+ * adders, so producers do not contend on them. Each author's book count and rating total are kept together in one
+ * immutable tally, and the current leaders together in one immutable state; both are only ever replaced as a whole
+ * with compare-and-set, and the leaders only when a book or author actually takes the lead. Nothing takes a lock, so
+ * readers never block writers, and a reader always sees an author's count and total, or a set of leaders, that
+ * belong together.
+ */
+public class ConcurrentBookStats implements BookAccumulator {
+    private final int minimumRatings;
+    private final ConcurrentHashMap<String, AtomicReference<AuthorTally>> authors = new ConcurrentHashMap<>();
+    private final LongAdder bookCount = new LongAdder();
+    private final DoubleAdder ratingTotal = new DoubleAdder();
+    private final AtomicReference<Leaders> leaders = new AtomicReference<>(Leaders.NONE);
+
+    public ConcurrentBookStats(int minimumRatings) {
+        this.minimumRatings = minimumRatings;
+    }
+
+    /**
+     * Add a book. Safe to call from any number of threads at once.
+     *
+     * The book is added to the count before the total, and to both before it is considered for highest rated and
+     * highest ratio or its authors' tallies are updated. So a snapshot, which reads in the opposite order, never
+     * counts a rating without its book, an author's count never gets ahead of the book count, and a leading book is
+     * always one the snapshot has counted.
+     *
+     * @param book the book to add.
+     */
+    @Override
+    public void accept(Book book) {
+        float rating = book.getAverageRating();
+        boolean rated = book.getRatingCount() >= minimumRatings;
+        float ratio = book.getRatingCount() > 0 //don't divide by zero
+                ? ((float) book.getTextReviewsCount()) / ((float) book.getRatingCount()) : 0f;
+        bookCount.increment();
+        ratingTotal.add(rating);
+
+        Leaders current;
+        while (true) {
+            current = leaders.get();
+            boolean higherRating = rated && (current.highestRatedBook == null
+                    || rating > current.highestRatedBook.getAverageRating());
+            boolean higherRatio = ratio > current.highestRatio;
+            if (!higherRating && !higherRatio) {
+                break;
+            }
+            Leaders next = new Leaders(current.authorWithMostBooks, current.mostBooks,
+                    higherRating ? book : current.highestRatedBook,
+                    higherRatio ? book : current.highestRatioBook,
+                    higherRatio ? ratio : current.highestRatio);
+            if (leaders.compareAndSet(current, next)) {
+                break;
+            }
+        }
+
+        for (String author : book.getAuthors().split("-")) {
+            AtomicReference<AuthorTally> tally = authors.computeIfAbsent(author, a -> new AtomicReference<>(AuthorTally.EMPTY));
+            AuthorTally before;
+            AuthorTally after;
+            do {
+                before = tally.get();
+                after = new AuthorTally(before.bookCount + 1, before.ratingTotal + rating);
+            } while (!tally.compareAndSet(before, after));
+
+            // Counts only grow, so a leader is only ever replaced by an author with a higher count.
+            int count = after.bookCount;
+            while ((current = leaders.get()).authorWithMostBooks == null || count > current.mostBooks) {
+                Leaders next = new Leaders(author, count,
+                        current.highestRatedBook, current.highestRatioBook, current.highestRatio);
+                if (leaders.compareAndSet(current, next)) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Add a batch of books from the calling thread.
+     *
+     * @param books the books to add.
+     */
+    public void acceptAll(Collection<Book> books) {
+        for (Book book : books) {
+            accept(book);
+        }
+    }
+
+    /**
+     * Read the current totals and leaders without blocking writers. The leaders are read first, then the total and
+     * then the count, so the leaders are always among the books the snapshot counts and every rating in the total
+     * has its book counted. Every book whose accept call returned before this call is reflected; books still being
+     * added by other threads may or may not be.
+     *
+     * @return an immutable view of the stats.
+     */
+    public Snapshot snapshot() {
+        Leaders current = leaders.get();
+        double total = ratingTotal.sum();
+        long count = bookCount.sum();
+        return new Snapshot(count, total, current.authorWithMostBooks, current.mostBooks,
+                current.highestRatedBook, current.highestRatioBook, current.highestRatio);
+    }
+
+    /**
+     * Find the author with the highest average rating by scanning the per-author tallies. Each tally is read
+     * atomically, so every average is of books that were all counted. This does not block writers, but books added
+     * during the scan may or may not be counted.
+     *
+     * @return the author's name, or null if no books have been added.
+     */
+    public String findAuthorWithHighestAverageRating() {
+        String best = null;
+        double bestAverage = 0;
+        for (Map.Entry<String, AtomicReference<AuthorTally>> entry : authors.entrySet()) {
+            AuthorTally tally = entry.getValue().get();
+            if (tally.bookCount == 0) {
+                continue;
+            }
+            double average = tally.getAverageRating();
+            if (best == null || average > bestAverage) {
+                best = entry.getKey();
+                bestAverage = average;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return the number of books added for the author so far.
+     */
+    public int getBookCount(String author) {
+        AtomicReference<AuthorTally> tally = authors.get(author);
+        return tally == null ? 0 : tally.get().bookCount;
+    }
+
+    /**
+     * @return the average rating of the author's books added so far, or NaN if there are none.
+     */
+    public double getAverageRating(String author) {
+        AtomicReference<AuthorTally> tally = authors.get(author);
+        return tally == null ? Double.NaN : tally.get().getAverageRating();
+    }
+
+    /**
+     * An immutable reading of the stats at one point in time.
+     */
+    public static class Snapshot {
+        private final long bookCount;
+        private final double ratingTotal;
+        private final String authorWithMostBooks;
+        private final int mostBooks;
+        private final Book highestRatedBook;
+        private final Book highestRatioBook;
+        private final float highestRatio;
+
+        Snapshot(long bookCount, double ratingTotal, String authorWithMostBooks, int mostBooks, Book highestRatedBook, Book highestRatioBook, float highestRatio) {
+            this.bookCount = bookCount;
+            this.ratingTotal = ratingTotal;
+            this.authorWithMostBooks = authorWithMostBooks;
+            this.mostBooks = mostBooks;
+            this.highestRatedBook = highestRatedBook;
+            this.highestRatioBook = highestRatioBook;
+            this.highestRatio = highestRatio;
+        }
+
+        public long getBookCount() {
+            return bookCount;
+        }
+
+        public double getAverageRating() {
+            return ratingTotal / bookCount;
+        }
+
+        public String getAuthorWithMostBooks() {
+            return authorWithMostBooks;
+        }
+
+        public int getMostBooks() {
+            return mostBooks;
+        }
+
+        public Book getHighestRatedBook() {
+            return highestRatedBook;
+        }
+
+        public Book getHighestRatioBook() {
+            return highestRatioBook;
+        }
+
+        public float getHighestRatio() {
+            return highestRatio;
+        }
+    }
+
+    /**
+     * The current leaders, always replaced together.
+     */
+    private static final class Leaders {
+        private static final Leaders NONE = new Leaders(null, 0, null, null, 0f);
+
+        private final String authorWithMostBooks;
+        private final int mostBooks;
+        private final Book highestRatedBook;
+        private final Book highestRatioBook;
+        private final float highestRatio;
+
+        Leaders(String authorWithMostBooks, int mostBooks, Book highestRatedBook, Book highestRatioBook, float highestRatio) {
+            this.authorWithMostBooks = authorWithMostBooks;
+            this.mostBooks = mostBooks;
+            this.highestRatedBook = highestRatedBook;
+            this.highestRatioBook = highestRatioBook;
+            this.highestRatio = highestRatio;
+        }
+    }
+
+    /**
+     * One author's book count and rating total, always replaced together.
+     */
+    private static final class AuthorTally {
+        private static final AuthorTally EMPTY = new AuthorTally(0, 0);
+
+        private final int bookCount;
+        private final double ratingTotal;
+
+        AuthorTally(int bookCount, double ratingTotal) {
+            this.bookCount = bookCount;
+            this.ratingTotal = ratingTotal;
+        }
+
+        double getAverageRating() {
+            return ratingTotal / bookCount;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.patientping;
+
+/**
+ * The position of every HeaderFields column in a csv header, resolved once so rows can be read by index.
+ */
+public class CsvColumns {
+    private final int[] columnByField;
+
+    private CsvColumns(int[] columnByField) {
+        this.columnByField = columnByField;
+    }
+
+    /**
+     * Find the column of every HeaderFields entry in a header row.
+     *
+     * @param header the names of the header columns, in order.
+     * @return the resolved columns, or null if any HeaderFields column is missing.
+     */
+    public static CsvColumns resolve(String[] header) {
+        int[] columnByField = new int[HeaderFields.values().length];
+        for (HeaderFields field : HeaderFields.values()) {
+            int column = -1;
+            for (int i = 0; i < header.length; i++) {
+                if (header[i].equals(field.getField())) {
+                    column = i;
+                    break;
+                }
+            }
+            if (column < 0) {
+                return null;
+            }
+            columnByField[field.ordinal()] = column;
+        }
+        return new CsvColumns(columnByField);
+    }
+
+    public int indexOf(HeaderFields field) {
+        return columnByField[field.ordinal()];
+    }
+}
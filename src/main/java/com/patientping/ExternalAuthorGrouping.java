@@ -0,0 +1,406 @@
+package com.patientping;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Groups books by author without holding every author in memory, for catalogs too large for indexByAuthor. Each
+ * (author, rating) pair is buffered until the buffer exceeds a memory budget, then the buffer is sorted by author and
+ * written to a temporary run file. The runs are k-way merged to visit every author's ratings together.
+ *
+ * The results are exactly those of the in-memory path. Every pair carries its position in the input, so an
+ * author's ratings are summed as floats in book order, as Author does, and ties go to the author seen first, as
+ * they do when iterating indexByAuthor.
+ */
+public class ExternalAuthorGrouping implements BookAccumulator, Closeable {
+    public static final long DEFAULT_MEMORY_BUDGET = 256L * 1024 * 1024;
+    public static final int DEFAULT_FAN_IN = 64;
+    // Estimated heap per buffered pair besides the author's characters: the pair, its String and the list slot.
+    private static final int RECORD_OVERHEAD = 96;
+    private static final Comparator<Record> AUTHOR_ORDER = Comparator.<Record, String>comparing(r -> r.author).thenComparingLong(r -> r.sequence);
+
+    private final long memoryBudget;
+    private final Path tempParent;
+    private final int fanIn;
+    private final List<Record> buffer = new ArrayList<>();
+    private final List<Path> runs = new ArrayList<>();
+    private Path tempDir;
+    private long bufferedBytes;
+    private long sequence;
+    private AuthorTotals mostBooks;
+    private AuthorTotals highestAverageRating;
+    private boolean summarized;
+
+    public ExternalAuthorGrouping() {
+        this(DEFAULT_MEMORY_BUDGET, Paths.get(System.getProperty("java.io.tmpdir")), DEFAULT_FAN_IN);
+    }
+
+    /**
+     * @param memoryBudget roughly how many bytes of heap buffered pairs may use before they are spilled to disk.
+     * @param tempParent the directory to create the temporary run files in.
+     * @param fanIn the most runs to merge at once; more runs are first merged into larger runs.
+     */
+    public ExternalAuthorGrouping(long memoryBudget, Path tempParent, int fanIn) {
+        if (fanIn < 2) {
+            throw new IllegalArgumentException("fanIn must be at least 2: " + fanIn);
+        }
+        this.memoryBudget = memoryBudget;
+        this.tempParent = tempParent;
+        this.fanIn = fanIn;
+    }
+
+    @Override
+    public void accept(Book book) {
+        summarized = false;
+        for (String author : book.getAuthors().split("-")) {
+            buffer.add(new Record(author, book.getAverageRating(), sequence++));
+            bufferedBytes += RECORD_OVERHEAD + 2L * author.length();
+        }
+        if (bufferedBytes > memoryBudget) {
+            try {
+                spill();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not spill authors to disk", e);
+            }
+        }
+    }
+
+    /**
+     * @return the author with the most books, or null if there are no books.
+     * @throws IOException if the runs cannot be read.
+     */
+    public AuthorTotals findMostBooks() throws IOException {
+        summarize();
+        return mostBooks;
+    }
+
+    /**
+     * @return the author with the highest average rating across all their books, or null if no author has an
+     * average above zero.
+     * @throws IOException if the runs cannot be read.
+     */
+    public AuthorTotals findHighestAverageRating() throws IOException {
+        summarize();
+        return highestAverageRating;
+    }
+
+    /**
+     * @return how many runs have been spilled to disk.
+     */
+    public int getRunCount() {
+        return runs.size();
+    }
+
+    /**
+     * Delete the temporary run files.
+     */
+    @Override
+    public void close() throws IOException {
+        for (Path run : runs) {
+            Files.deleteIfExists(run);
+        }
+        runs.clear();
+        if (tempDir != null) {
+            Files.deleteIfExists(tempDir);
+            tempDir = null;
+        }
+    }
+
+    /**
+     * Parse a memory budget such as 268435456, 512k, 64m or 2g.
+     *
+     * @param value a number of bytes, optionally followed by k, m or g in either case.
+     * @return the number of bytes.
+     * @throws IllegalArgumentException if the value is not a positive number of bytes.
+     */
+    public static long parseMemoryBudget(String value) {
+        String digits = value.trim();
+        int shift = 0;
+        if (!digits.isEmpty()) {
+            switch (Character.toLowerCase(digits.charAt(digits.length() - 1))) {
+                case 'k': shift = 10; break;
+                case 'm': shift = 20; break;
+                case 'g': shift = 30; break;
+                default: break;
+            }
+        }
+        if (shift > 0) {
+            digits = digits.substring(0, digits.length() - 1);
+        }
+        long bytes;
+        try {
+            bytes = Long.parseLong(digits);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a memory budget: " + value);
+        }
+        if (bytes <= 0 || bytes > Long.MAX_VALUE >> shift) {
+            throw new IllegalArgumentException("Not a memory budget: " + value);
+        }
+        return bytes << shift;
+    }
+
+    /**
+     * Load a csv in one pass and write the author with the most books and the author with the highest average
+     * rating, for English books and for all books, spilling to the default temporary directory.
+     *
+     * @param in an input stream from a csv file containing books.
+     * @param report where to write the stats.
+     * @param bookStats parses the rows and records the load and rejected rows in its metrics.
+     * @param memoryBudget roughly how many bytes of heap buffered pairs may use in all; the English and the
+     *                     all-language grouping each get half.
+     * @throws IOException if the csv cannot be read, the runs cannot be written or the report cannot be written.
+     */
+    public static void run(InputStream in, ReportWriter report, BookStats bookStats, long memoryBudget) throws IOException {
+        bookStats.getMetrics().register();
+        Path tempParent = Paths.get(System.getProperty("java.io.tmpdir"));
+        try (ExternalAuthorGrouping english = new ExternalAuthorGrouping(memoryBudget / 2, tempParent, DEFAULT_FAN_IN);
+             ExternalAuthorGrouping all = new ExternalAuthorGrouping(memoryBudget / 2, tempParent, DEFAULT_FAN_IN)) {
+            FilteredAccumulator englishFilter = new FilteredAccumulator(BookStats::isEnglish, english);
+            int[] counts = new int[2];
+            bookStats.streamCsv(in, book -> {
+                all.accept(book);
+                englishFilter.accept(book);
+                counts[0]++;
+                if (BookStats.isEnglish(book)) {
+                    counts[1]++;
+                }
+            });
+            report.write(new StatsReport("English Book Stats", counts[1],
+                    StatResult.mostBooks(english.findMostBooks()), StatResult.highestAverageRating(english.findHighestAverageRating())));
+            report.write(new StatsReport("All Language Book Stats", counts[0],
+                    StatResult.mostBooks(all.findMostBooks()), StatResult.highestAverageRating(all.findHighestAverageRating())));
+        }
+        report.writeLine("Metrics: " + bookStats.getMetrics().toJson());
+    }
+
+    private void spill() throws IOException {
+        buffer.sort(AUTHOR_ORDER);
+        if (tempDir == null) {
+            tempDir = Files.createTempDirectory(tempParent, "authors");
+        }
+        Path run = Files.createTempFile(tempDir, "run", ".bin");
+        try (RunWriter writer = new RunWriter(run)) {
+            for (Record record : buffer) {
+                writer.write(record);
+            }
+        }
+        runs.add(run);
+        buffer.clear();
+        bufferedBytes = 0;
+    }
+
+    /**
+     * Merge every run and the buffer in author order, and find both winners in one pass.
+     */
+    private void summarize() throws IOException {
+        if (summarized) {
+            return;
+        }
+        // Keep the number of open files bounded by merging the oldest runs into one until few enough remain.
+        while (runs.size() + 1 > fanIn) {
+            List<Path> inputs = new ArrayList<>(runs.subList(0, fanIn));
+            Path merged = Files.createTempFile(tempDir, "run", ".bin");
+            try (RunWriter writer = new RunWriter(merged)) {
+                merge(inputs, new ArrayList<>(), writer::write);
+            }
+            for (Path input : inputs) {
+                Files.delete(input);
+            }
+            runs.subList(0, fanIn).clear();
+            runs.add(merged);
+        }
+
+        buffer.sort(AUTHOR_ORDER);
+        Summary summary = new Summary();
+        merge(runs, buffer, summary::add);
+        summary.finishAuthor();
+        mostBooks = summary.mostBooks;
+        highestAverageRating = summary.highestAverageRating;
+        summarized = true;
+    }
+
+    private interface RecordVisitor {
+        void visit(Record record) throws IOException;
+    }
+
+    private static void merge(List<Path> runFiles, List<Record> sortedBuffer, RecordVisitor visitor) throws IOException {
+        List<RunReader> readers = new ArrayList<>();
+        PriorityQueue<RecordSource> sources = new PriorityQueue<>((a, b) -> AUTHOR_ORDER.compare(a.current, b.current));
+        try {
+            for (Path run : runFiles) {
+                RunReader reader = new RunReader(run);
+                readers.add(reader);
+                if (reader.advance()) {
+                    sources.add(reader);
+                }
+            }
+            RecordSource buffered = new BufferSource(sortedBuffer);
+            if (buffered.advance()) {
+                sources.add(buffered);
+            }
+            while (!sources.isEmpty()) {
+                RecordSource source = sources.poll();
+                visitor.visit(source.current);
+                if (source.advance()) {
+                    sources.add(source);
+                }
+            }
+        } finally {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * Totals one author at a time as the merged pairs arrive, and keeps the winners. An author's pairs arrive in
+     * sequence order, and their ratings are summed as floats in that order, so the average is exactly Author's.
+     */
+    private static class Summary {
+        private AuthorTotals current;
+        private long currentFirstSeen;
+        private float currentRatingTotal;
+        private float highestAverage;
+        private AuthorTotals mostBooks;
+        private long mostBooksFirstSeen;
+        private AuthorTotals highestAverageRating;
+        private long highestAverageFirstSeen;
+
+        void add(Record record) {
+            if (current == null || !current.getName().equals(record.author)) {
+                finishAuthor();
+                current = new AuthorTotals(record.author);
+                currentFirstSeen = record.sequence; // pairs for an author arrive in input order
+                currentRatingTotal = 0f;
+            }
+            current.add(record.rating);
+            currentRatingTotal += record.rating;
+        }
+
+        void finishAuthor() {
+            if (current == null) {
+                return;
+            }
+            if (mostBooks == null || current.getBookCount() > mostBooks.getBookCount()
+                    || (current.getBookCount() == mostBooks.getBookCount() && currentFirstSeen < mostBooksFirstSeen)) {
+                mostBooks = current;
+                mostBooksFirstSeen = currentFirstSeen;
+            }
+            float average = currentRatingTotal / ((float) current.getBookCount());
+            // Like BookStats.findAuthorWithHighestAverageRating, an average must be above zero to count.
+            if (average > 0 && (highestAverageRating == null || average > highestAverage
+                    || (average == highestAverage && currentFirstSeen < highestAverageFirstSeen))) {
+                highestAverageRating = current;
+                highestAverage = average;
+                highestAverageFirstSeen = currentFirstSeen;
+            }
+            current = null;
+        }
+    }
+
+    private static final class Record {
+        final String author;
+        final float rating;
+        final long sequence;
+
+        Record(String author, float rating, long sequence) {
+            this.author = author;
+            this.rating = rating;
+            this.sequence = sequence;
+        }
+    }
+
+    private abstract static class RecordSource {
+        Record current;
+
+        /**
+         * @return false if there are no more records.
+         */
+        abstract boolean advance() throws IOException;
+    }
+
+    private static class BufferSource extends RecordSource {
+        private final List<Record> records;
+        private int position;
+
+        BufferSource(List<Record> records) {
+            this.records = records;
+        }
+
+        @Override
+        boolean advance() {
+            if (position == records.size()) {
+                return false;
+            }
+            current = records.get(position++);
+            return true;
+        }
+    }
+
+    /**
+     * Reads a run file: for each pair, the author's UTF-8 length and bytes, the rating and the sequence number.
+     */
+    private static class RunReader extends RecordSource implements Closeable {
+        private final DataInputStream in;
+
+        RunReader(Path run) throws IOException {
+            InputStream file = Files.newInputStream(run);
+            this.in = new DataInputStream(new BufferedInputStream(file, 64 * 1024));
+        }
+
+        @Override
+        boolean advance() throws IOException {
+            int length;
+            try {
+                length = in.readInt();
+            } catch (EOFException e) {
+                return false;
+            }
+            byte[] name = new byte[length];
+            in.readFully(name);
+            current = new Record(new String(name, StandardCharsets.UTF_8), in.readFloat(), in.readLong());
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    private static class RunWriter implements Closeable {
+        private final DataOutputStream out;
+
+        RunWriter(Path run) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), 64 * 1024));
+        }
+
+        void write(Record record) throws IOException {
+            byte[] name = record.author.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(name.length);
+            out.write(name);
+            out.writeFloat(record.rating);
+            out.writeLong(record.sequence);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.patientping;
+
+import java.util.function.Predicate;
+
+/**
+ * Passes on only the books that match a filter, e.g. to collect stats for a single language.
+ */
+public class FilteredAccumulator implements BookAccumulator {
+    private final Predicate<Book> filter;
+    private final BookAccumulator delegate;
+
+    public FilteredAccumulator(Predicate<Book> filter, BookAccumulator delegate) {
+        this.filter = filter;
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void accept(Book book) {
+        if (filter.test(book)) {
+            delegate.accept(book);
+        }
+    }
+}
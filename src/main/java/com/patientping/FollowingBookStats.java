@@ -0,0 +1,281 @@
+package com.patientping;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+/**
+ * Follows a books csv that is being appended to, like tail -f. Only the bytes after the last complete row already
+ * parsed are read, and each new row goes through the same row rules as BookStats.loadCsv before being folded into
+ * IncrementalBookStats, so the stats stay current without re-reading the file. A row without its line terminator
+ * yet is left for the next read.
+ *
+ * If the file shrinks below the parsed offset (truncated), is replaced by a different file (rotated, detected by
+ * its file key where the file system has one) or no longer holds the same bytes just before the parsed offset
+ * (truncated and refilled past the offset between two polls), the stats are cleared and the file is read again from
+ * the start. The file must be an uncompressed csv.
+ *
+ * The stats are updated in place by poll, on whichever thread calls it; read them on that thread, e.g. in the
+ * follow callback.
+ */
+public class FollowingBookStats implements Closeable {
+    private static final long POLL_MILLIS = 1000;
+    private static final int FINGERPRINT_BYTES = 64;
+
+    private final Path file;
+    private final BookStats bookStats;
+    private final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+    private byte[] line = new byte[256];
+    private IncrementalBookStats englishStats;
+    private IncrementalBookStats allStats;
+    private CsvColumns columns;
+    private boolean headerRead;
+    private long offset;
+    // The bytes just before offset, checked on every poll to notice a file rewritten past the offset.
+    private byte[] fingerprint = new byte[0];
+    private Object fileKey;
+    private int reloads;
+    private volatile boolean closed;
+
+    /**
+     * @param file the csv to follow. It does not have to exist yet.
+     */
+    public FollowingBookStats(Path file) {
+        this(file, new BookStats());
+    }
+
+    /**
+     * @param file the csv to follow. It does not have to exist yet.
+     * @param bookStats parses the rows and records rejected rows in its metrics.
+     */
+    public FollowingBookStats(Path file, BookStats bookStats) {
+        this.file = file;
+        this.bookStats = bookStats;
+        reset();
+    }
+
+    /**
+     * Read whatever has been appended since the last poll, reloading from the start if the file was truncated,
+     * rewritten or rotated.
+     *
+     * @return the number of books added; after a reload, every book read so far from the new file.
+     * @throws IOException if the file cannot be read.
+     */
+    public synchronized int poll() throws IOException {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return 0; // between a rotation's rename and create; the next poll sees the new file
+        }
+        Object key = attributes.fileKey();
+        if (attributes.size() < offset || (fileKey != null && key != null && !fileKey.equals(key))) {
+            reset();
+            reloads++;
+        }
+        fileKey = key;
+
+        int added = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (offset > 0 && !Arrays.equals(fingerprint, readFingerprint(channel))) {
+                reset();
+                reloads++;
+            }
+            if (channel.size() == offset) {
+                return 0;
+            }
+            try (BookStatsMetrics.Sample follow = bookStats.getMetrics().start("follow")) {
+                long start = offset;
+                channel.position(offset);
+                int lineLength = 0;
+                buffer.clear();
+                while (channel.read(buffer) > 0) {
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        byte b = buffer.get();
+                        if (b != '\n') {
+                            if (lineLength == line.length) {
+                                line = Arrays.copyOf(line, lineLength * 2);
+                            }
+                            line[lineLength++] = b;
+                            continue;
+                        }
+                        int length = lineLength > 0 && line[lineLength - 1] == '\r' ? lineLength - 1 : lineLength;
+                        if (accept(new String(line, 0, length, StandardCharsets.UTF_8))) {
+                            added++;
+                        }
+                        offset += lineLength + 1;
+                        lineLength = 0;
+                    }
+                    buffer.clear();
+                }
+                fingerprint = readFingerprint(channel);
+                // A trailing partial line is read again next time, so only the bytes offset moved past are counted.
+                bookStats.getMetrics().recordLoad(added, offset - start, follow.elapsedNanos());
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Poll whenever the file's directory reports a change, and at least once a second in case it does not, until
+     * closed or interrupted.
+     *
+     * @param onUpdate called on this thread after every poll that added books or reloaded the file, and once at the
+     *                 start.
+     * @throws IOException if the file cannot be read or its directory cannot be watched.
+     * @throws InterruptedException if the thread is interrupted while waiting for changes.
+     */
+    public void follow(Consumer<FollowingBookStats> onUpdate) throws IOException, InterruptedException {
+        Path directory = file.toAbsolutePath().getParent();
+        try (WatchService watcher = directory.getFileSystem().newWatchService()) {
+            directory.register(watcher, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+            poll();
+            onUpdate.accept(this);
+            while (!closed) {
+                WatchKey key = watcher.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    // Any change in the directory just triggers a check of the file, so the events are not needed.
+                    key.pollEvents();
+                    key.reset();
+                }
+                int reloadsBefore = getReloadCount();
+                if (poll() > 0 || getReloadCount() != reloadsBefore) {
+                    onUpdate.accept(this);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stop following; follow returns within a second.
+     */
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+    /**
+     * @return stats for the English books read so far.
+     */
+    public synchronized IncrementalBookStats getEnglishStats() {
+        return englishStats;
+    }
+
+    /**
+     * @return stats for every book read so far.
+     */
+    public synchronized IncrementalBookStats getAllStats() {
+        return allStats;
+    }
+
+    /**
+     * @return the byte offset just past the last complete row read.
+     */
+    public synchronized long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return how many times the file was read again from the start after being truncated or rotated.
+     */
+    public synchronized int getReloadCount() {
+        return reloads;
+    }
+
+    /**
+     * Follow a csv and write the same report as BookStats.run every time books are added.
+     *
+     * @param file the csv to follow.
+     * @param report where to write the stats.
+     * @param bookStats parses the rows and records the loads and rejected rows in its metrics.
+     * @throws IOException if the file cannot be read or the report cannot be written.
+     * @throws InterruptedException if the thread is interrupted.
+     */
+    public static void run(Path file, ReportWriter report, BookStats bookStats) throws IOException, InterruptedException {
+        bookStats.getMetrics().register();
+        try (FollowingBookStats following = new FollowingBookStats(file, bookStats)) {
+            following.follow(stats -> {
+                try {
+                    writeReport(stats.getEnglishStats(), stats.getAllStats(), report);
+                    report.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    static void writeReport(IncrementalBookStats englishStats, IncrementalBookStats allStats, ReportWriter report) throws IOException {
+        report.writeLine("Loaded " + allStats.getBookCount() + " books");
+        report.writeLine("" + englishStats.getBookCount() + " Books in English");
+        report.write(StatsReport.of("English Book Stats", englishStats));
+        report.write(StatsReport.of("All Language Book Stats", allStats));
+    }
+
+    /**
+     * @return the up to FINGERPRINT_BYTES bytes of the file just before offset.
+     */
+    private byte[] readFingerprint(FileChannel channel) throws IOException {
+        int length = (int) Math.min(FINGERPRINT_BYTES, offset);
+        ByteBuffer bytes = ByteBuffer.allocate(length);
+        long position = offset - length;
+        while (bytes.hasRemaining()) {
+            int read = channel.read(bytes, position + bytes.position());
+            if (read < 0) {
+                break;
+            }
+        }
+        return bytes.position() == length ? bytes.array() : Arrays.copyOf(bytes.array(), bytes.position());
+    }
+
+    private boolean accept(String row) {
+        if (!headerRead) {
+            headerRead = true;
+            columns = CsvColumns.resolve(row.split(","));
+            if (columns == null) {
+                bookStats.getMetrics().reject(RejectReason.BAD_HEADER);
+                System.out.println("Book CSV file is not formatted correctly. No books will be read in.");
+            }
+            return false;
+        }
+        if (columns == null) {
+            return false;
+        }
+        Book book = bookStats.parseRow(row, columns);
+        if (book == null) {
+            return false;
+        }
+        allStats.append(book);
+        if (BookStats.isEnglish(book)) {
+            englishStats.append(book);
+        }
+        return true;
+    }
+
+    private void reset() {
+        englishStats = new IncrementalBookStats(StreamingBookStats.MINIMUM_RATINGS);
+        allStats = new IncrementalBookStats(StreamingBookStats.MINIMUM_RATINGS);
+        columns = null;
+        headerRead = false;
+        offset = 0;
+        fingerprint = new byte[0];
+    }
+}
@@ -0,0 +1,114 @@
+package com.patientping;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Opens books csv input that may be gzip compressed. Decompression always runs on a background thread, so it
+ * overlaps with parsing instead of adding to it, and a gzip file made of several members is inflated on several
+ * threads at once. Plain input is passed through unchanged.
+ */
+public final class GzipInput {
+    /** The most decompressed chunks the background thread may get ahead of the reader. */
+    private static final int QUEUE_CAPACITY = 64;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    public static final int DEFAULT_MAX_BUFFERED_MEMBER_BYTES = 16 * 1024 * 1024;
+
+    private GzipInput() {
+    }
+
+    /**
+     * @param in a stream that supports mark and reset.
+     * @return true if the stream starts with the gzip magic number. The stream is left where it was.
+     * @throws IOException if the stream cannot be read.
+     */
+    public static boolean isGzip(InputStream in) throws IOException {
+        in.mark(2);
+        int first = in.read();
+        int second = in.read();
+        in.reset();
+        return first == 0x1F && second == 0x8B;
+    }
+
+    /**
+     * Decompress a stream on a background thread if it is gzip compressed.
+     *
+     * @param in a csv stream, compressed or not.
+     * @return a stream of the uncompressed csv.
+     * @throws IOException if the stream cannot be read.
+     */
+    public static InputStream decompress(InputStream in) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in, BUFFER_SIZE);
+        if (!isGzip(buffered)) {
+            return buffered;
+        }
+        return new BackgroundInputStream("gzip-decompress", sink -> {
+            try (GZIPInputStream gzip = new GZIPInputStream(buffered, BUFFER_SIZE)) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int n;
+                while ((n = gzip.read(buffer)) >= 0) {
+                    sink.write(buffer, 0, n);
+                }
+            }
+        }, QUEUE_CAPACITY);
+    }
+
+    /**
+     * Open a csv file, decompressing it if it is gzip compressed, with members inflated on every core.
+     *
+     * @param file a csv file, compressed or not.
+     * @return a stream of the uncompressed csv.
+     * @throws IOException if the file cannot be read.
+     */
+    public static InputStream open(Path file) throws IOException {
+        return open(file, Runtime.getRuntime().availableProcessors(), DEFAULT_MAX_BUFFERED_MEMBER_BYTES);
+    }
+
+    /**
+     * Open a csv file, decompressing it if it is gzip compressed.
+     *
+     * @param file a csv file, compressed or not.
+     * @param threads how many members to inflate at once.
+     * @param maxBufferedMemberBytes members that inflate to more than this are streamed rather than inflated
+     *                               ahead of time; up to twice threads members of this size may be held in memory.
+     * @return a stream of the uncompressed csv. Closing it stops the decompression threads.
+     * @throws IOException if the file cannot be read.
+     */
+    public static InputStream open(Path file, int threads, int maxBufferedMemberBytes) throws IOException {
+        InputStream plain = new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE);
+        if (!isGzip(plain)) {
+            return plain;
+        }
+        plain.close();
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        ExecutorService executor = Executors.newFixedThreadPool(threads, daemonThreads());
+        ParallelGzipDecoder decoder = new ParallelGzipDecoder(channel, executor, 2 * threads, maxBufferedMemberBytes);
+        return new BackgroundInputStream("gzip-decode", sink -> {
+            try {
+                decoder.produce(sink);
+            } finally {
+                executor.shutdownNow();
+                channel.close();
+            }
+        }, QUEUE_CAPACITY);
+    }
+
+    private static ThreadFactory daemonThreads() {
+        ThreadFactory factory = Executors.defaultThreadFactory();
+        return r -> {
+            Thread thread = factory.newThread(r);
+            thread.setName("gzip-inflate-" + thread.getName());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,48 @@
+package com.patientping;
+
+import java.io.Serializable;
+
+/**
+ * Tracks the book with the highest average rating, ignoring books with too few ratings to be meaningful.
+ * The first book seen wins a tie, matching BookStats.findHighestRatedBook.
+ */
+public class HighestRatedBookAccumulator implements BookAccumulator, Serializable {
+    private static final long serialVersionUID = 1L;
+    private final int minimumRatings;
+    private Book highestRatedBook;
+
+    public HighestRatedBookAccumulator(int minimumRatings) {
+        this.minimumRatings = minimumRatings;
+    }
+
+    @Override
+    public void accept(Book book) {
+        if (book.getRatingCount() < minimumRatings) {
+            return;
+        }
+        if (highestRatedBook == null || book.getAverageRating() > highestRatedBook.getAverageRating()) {
+            highestRatedBook = book;
+        }
+    }
+
+    /**
+     * Take the highest rated book from books that came after these, if it is strictly higher.
+     *
+     * @param other an accumulator of later books with the same minimum number of ratings.
+     */
+    public void merge(HighestRatedBookAccumulator other) {
+        if (other.minimumRatings != minimumRatings) {
+            throw new IllegalArgumentException("Cannot merge accumulators with minimum ratings " + minimumRatings + " and " + other.minimumRatings);
+        }
+        if (other.highestRatedBook != null) {
+            accept(other.highestRatedBook);
+        }
+    }
+
+    /**
+     * @return the highest rated book, or null if no book had enough ratings.
+     */
+    public Book getHighestRatedBook() {
+        return highestRatedBook;
+    }
+}
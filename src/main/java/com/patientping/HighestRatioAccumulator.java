@@ -0,0 +1,48 @@
+package com.patientping;
+
+import java.io.Serializable;
+
+/**
+ * Tracks the book with the highest ratio of text reviews to star ratings.
+ * Books without ratings are skipped and the first book seen wins a tie, matching BookStats.findHighestRatio.
+ */
+public class HighestRatioAccumulator implements BookAccumulator, Serializable {
+    private static final long serialVersionUID = 1L;
+    private Book highestRatioBook;
+    private float highestRatio = 0f;
+
+    @Override
+    public void accept(Book book) {
+        if (book.getRatingCount() <= 0) { //don't divide by zero
+            return;
+        }
+        float ratio = ((float) book.getTextReviewsCount()) / ((float) book.getRatingCount());
+        if (ratio > highestRatio) {
+            highestRatio = ratio;
+            highestRatioBook = book;
+        }
+    }
+
+    /**
+     * Take the highest ratio book from books that came after these, if its ratio is strictly higher.
+     *
+     * @param other an accumulator of later books.
+     */
+    public void merge(HighestRatioAccumulator other) {
+        if (other.highestRatio > highestRatio) {
+            highestRatio = other.highestRatio;
+            highestRatioBook = other.highestRatioBook;
+        }
+    }
+
+    /**
+     * @return the book with the highest ratio, or null if no book had a ratio above zero.
+     */
+    public Book getHighestRatioBook() {
+        return highestRatioBook;
+    }
+
+    public float getHighestRatio() {
+        return highestRatio;
+    }
+}
@@ -0,0 +1,130 @@
+package com.patientping;
+
+import java.io.Serializable;
+
+/**
+ * Estimates how many distinct strings it has seen, in a fixed 2^precision bytes whatever the input size. The
+ * relative standard error is about 1.04 / sqrt(2^precision). Sketches with the same precision can be merged, e.g.
+ * when each was built on a different machine, and the result is the same as if one sketch had seen everything.
+ */
+public class HyperLogLog implements Serializable {
+    private static final long serialVersionUID = 1L;
+    public static final int MIN_PRECISION = 4;
+    public static final int MAX_PRECISION = 18;
+
+    private final int precision;
+    private final byte[] registers;
+
+    /**
+     * @param precision log2 of the number of registers, from 4 to 18.
+     */
+    public HyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("precision must be between " + MIN_PRECISION + " and " + MAX_PRECISION + ": " + precision);
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    /**
+     * @param relativeError the largest acceptable relative standard error, e.g. 0.01 for 1%.
+     * @return the smallest sketch with at most that error.
+     */
+    public static HyperLogLog withRelativeError(double relativeError) {
+        int precision = MIN_PRECISION;
+        while (precision < MAX_PRECISION && 1.04 / Math.sqrt(1 << precision) > relativeError) {
+            precision++;
+        }
+        return new HyperLogLog(precision);
+    }
+
+    public void add(String value) {
+        long hash = hash(value);
+        int register = (int) (hash >>> (64 - precision));
+        // The rank is the position of the first set bit in the rest of the hash; a sentinel bit caps it.
+        long rest = (hash << precision) | (1L << (precision - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+        if (rank > registers[register]) {
+            registers[register] = rank;
+        }
+    }
+
+    /**
+     * @return the estimated number of distinct strings added.
+     */
+    public long estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double estimate = alpha(m) * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            // Linear counting is more accurate while many registers are still empty.
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * Fold another sketch into this one.
+     *
+     * @param other a sketch with the same precision.
+     */
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Cannot merge sketches with precision " + precision + " and " + other.precision);
+        }
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    /**
+     * @return the relative standard error of the estimate.
+     */
+    public double getRelativeError() {
+        return 1.04 / Math.sqrt(registers.length);
+    }
+
+    private static double alpha(int m) {
+        switch (m) {
+            case 16:
+                return 0.673;
+            case 32:
+                return 0.697;
+            case 64:
+                return 0.709;
+            default:
+                return 0.7213 / (1 + 1.079 / m);
+        }
+    }
+
+    /**
+     * A 64-bit hash of the string's characters: FNV-1a followed by the MurmurHash3 finalizer, so every bit of the
+     * result depends on every character. String.hashCode has only 32 bits, which is too few for large counts.
+     */
+    static long hash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
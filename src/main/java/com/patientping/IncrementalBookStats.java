@@ -0,0 +1,156 @@
+package com.patientping;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Statistics that are kept up to date as new books are appended, instead of being recomputed from the full list.
+ * Running totals are kept per author and for all books. "Most books", "highest rated book" and "highest ratio" are
+ * answered in O(1) and "highest average rating" in O(log n) after every batch.
+ * Ties go to the author or book that was seen first, the same as the batch methods in BookStats.
+ */
+public class IncrementalBookStats {
+    private final int minimumRatings;
+    private final Map<String, AuthorEntry> authors = new HashMap<>();
+    // Ordered by average rating, highest first. An entry must be removed before its totals change and re-added after.
+    private final TreeSet<AuthorEntry> authorsByAverageRating = new TreeSet<>(
+            Comparator.comparing((AuthorEntry entry) -> entry.totals.getAverageRating()).reversed()
+                    .thenComparingInt(entry -> entry.order));
+    private AuthorEntry authorWithMostBooks;
+
+    private int bookCount;
+    private double ratingTotal;
+    private float maxRating = -1;
+    private Book highestRatedBook;
+    private Book highestRatioBook;
+    private float highestRatio = 0f;
+
+    public IncrementalBookStats(int minimumRatings) {
+        this.minimumRatings = minimumRatings;
+    }
+
+    /**
+     * Fold a batch of new books into the statistics.
+     *
+     * @param batch the books to add, in arrival order.
+     */
+    public void append(Collection<Book> batch) {
+        for (Book book : batch) {
+            append(book);
+        }
+    }
+
+    /**
+     * Fold a single new book into the statistics.
+     *
+     * @param book the book to add.
+     */
+    public void append(Book book) {
+        float rating = book.getAverageRating();
+        bookCount++;
+        ratingTotal += rating;
+        if (rating > maxRating) {
+            maxRating = rating;
+        }
+
+        for (String author : book.getAuthors().split("-")) {
+            AuthorEntry entry = authors.get(author);
+            if (entry == null) {
+                entry = new AuthorEntry(new AuthorTotals(author), authors.size());
+                authors.put(author, entry);
+            } else {
+                authorsByAverageRating.remove(entry);
+            }
+            entry.totals.add(rating);
+            authorsByAverageRating.add(entry);
+
+            // Counts only grow, so the leader can only be overtaken by the author that just changed.
+            if (authorWithMostBooks == null
+                    || entry.totals.getBookCount() > authorWithMostBooks.totals.getBookCount()
+                    || (entry.totals.getBookCount() == authorWithMostBooks.totals.getBookCount() && entry.order < authorWithMostBooks.order)) {
+                authorWithMostBooks = entry;
+            }
+        }
+
+        if (book.getRatingCount() >= minimumRatings
+                && (highestRatedBook == null || rating > highestRatedBook.getAverageRating())) {
+            highestRatedBook = book;
+        }
+        if (book.getRatingCount() > 0) { //don't divide by zero
+            float ratio = ((float) book.getTextReviewsCount()) / ((float) book.getRatingCount());
+            if (ratio > highestRatio) {
+                highestRatio = ratio;
+                highestRatioBook = book;
+            }
+        }
+    }
+
+    public int getBookCount() {
+        return bookCount;
+    }
+
+    /**
+     * @return the average rating of every book appended so far, or NaN if there are none.
+     */
+    public double getAverageRating() {
+        return ratingTotal / bookCount;
+    }
+
+    public float getMaxRating() {
+        return maxRating;
+    }
+
+    /**
+     * @return the running totals for an author, or null if none of their books have been appended.
+     */
+    public AuthorTotals getTotals(String author) {
+        AuthorEntry entry = authors.get(author);
+        return entry == null ? null : entry.totals;
+    }
+
+    /**
+     * @return the totals of the author with the most books, or null if no books have been appended.
+     */
+    public AuthorTotals getAuthorWithMostBooks() {
+        return authorWithMostBooks == null ? null : authorWithMostBooks.totals;
+    }
+
+    /**
+     * @return the totals of the author with the highest average rating, or null if no books have been appended.
+     */
+    public AuthorTotals getAuthorWithHighestAverageRating() {
+        return authorsByAverageRating.isEmpty() ? null : authorsByAverageRating.first().totals;
+    }
+
+    /**
+     * @return the highest rated book with enough ratings, or null if there is none.
+     */
+    public Book getHighestRatedBook() {
+        return highestRatedBook;
+    }
+
+    /**
+     * @return the book with the highest ratio of text reviews to star ratings, or null if there is none.
+     */
+    public Book getHighestRatioBook() {
+        return highestRatioBook;
+    }
+
+    public float getHighestRatio() {
+        return highestRatio;
+    }
+
+    private static class AuthorEntry {
+        private final AuthorTotals totals;
+        // Position in which the author was first seen, used to break ties.
+        private final int order;
+
+        AuthorEntry(AuthorTotals totals, int order) {
+            this.totals = totals;
+            this.order = order;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.patientping;
+
+/**
+ * Minimal helpers for writing JSON by hand, so the project does not need a JSON library.
+ */
+public final class Json {
+    private Json() {
+    }
+
+    /**
+     * Append a string as a quoted and escaped JSON string.
+     */
+    public static StringBuilder appendString(StringBuilder out, String value) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        return out.append('"');
+    }
+
+    /**
+     * Append a number, writing non-finite values as null since JSON has no NaN or Infinity.
+     */
+    public static StringBuilder appendNumber(StringBuilder out, double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return out.append("null");
+        }
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return out.append((long) value);
+        }
+        return out.append(value);
+    }
+
+    /**
+     * Append a number, writing non-finite values as null. Floats are written with their shortest representation,
+     * so 4.41f is written as 4.41 rather than as the nearest double.
+     */
+    public static StringBuilder appendNumber(StringBuilder out, float value) {
+        if (Float.isNaN(value) || Float.isInfinite(value)) {
+            return out.append("null");
+        }
+        return out.append(value);
+    }
+
+    /**
+     * Append a book as a JSON object with one member per csv column.
+     */
+    public static StringBuilder appendBook(StringBuilder out, Book book) {
+        out.append("{\"id\":").append(book.getId());
+        appendString(out.append(",\"title\":"), book.getTitle());
+        appendString(out.append(",\"authors\":"), book.getAuthors());
+        appendNumber(out.append(",\"averageRating\":"), book.getAverageRating());
+        appendString(out.append(",\"isbn\":"), book.getIsbn());
+        appendString(out.append(",\"isbn13\":"), book.getIsbn13());
+        appendString(out.append(",\"language\":"), book.getLanguage());
+        out.append(",\"numPages\":").append(book.getNumPages());
+        out.append(",\"ratingsCount\":").append(book.getRatingCount());
+        out.append(",\"textReviewsCount\":").append(book.getTextReviewsCount());
+        return out.append('}');
+    }
+}
@@ -0,0 +1,77 @@
+package com.patientping;
+
+/**
+ * An open-addressing hash map from primitive long keys to non-negative int values, used for point lookups by
+ * bookID or isbn13 without boxing. Only the first value put for a key is kept.
+ */
+public class LongIntHashMap {
+    private long[] keys;
+    // values[i] holds value + 1, so 0 marks an empty slot.
+    private int[] values;
+    private int size;
+
+    public LongIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+        keys = new long[capacity];
+        values = new int[capacity];
+    }
+
+    /**
+     * Associate a value with a key, unless the key already has one.
+     *
+     * @param key any long.
+     * @param value a non-negative int.
+     */
+    public void putIfAbsent(long key, int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative value: " + value);
+        }
+        if ((size + 1) * 2 > keys.length) {
+            resize();
+        }
+        int slot = slot(key, keys, values);
+        if (values[slot] == 0) {
+            keys[slot] = key;
+            values[slot] = value + 1;
+            size++;
+        }
+    }
+
+    /**
+     * @return the value for the key, or -1 if there is none.
+     */
+    public int get(long key) {
+        return values[slot(key, keys, values)] - 1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void resize() {
+        long[] newKeys = new long[keys.length * 2];
+        int[] newValues = new int[values.length * 2];
+        for (int i = 0; i < keys.length; i++) {
+            if (values[i] != 0) {
+                int slot = slot(keys[i], newKeys, newValues);
+                newKeys[slot] = keys[i];
+                newValues[slot] = values[i];
+            }
+        }
+        keys = newKeys;
+        values = newValues;
+    }
+
+    /**
+     * @return the slot holding the key, or the empty slot where it would go.
+     */
+    private static int slot(long key, long[] keys, int[] values) {
+        int mask = keys.length - 1;
+        long hash = key * 0x9E3779B97F4A7C15L;
+        int slot = (int) (hash ^ (hash >>> 32)) & mask;
+        while (values[slot] != 0 && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+}
@@ -0,0 +1,171 @@
+package com.patientping;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Loads a csv file of books by memory-mapping it and scanning the bytes directly, instead of building a String for
+ * every line and splitting it. The header is resolved once, numbers are parsed from the bytes and Strings are only
+ * created for the text fields a caller asks for. Rows follow the same rules as BookStats.loadCsv, and skipped rows
+ * and load throughput are recorded in the same metrics.
+ */
+public class MappedCsvLoader {
+    private static final long WINDOW_SIZE = 1L << 30;
+
+    private final Path file;
+    private final BookStatsMetrics metrics;
+
+    public MappedCsvLoader(Path file) {
+        this(file, new BookStatsMetrics());
+    }
+
+    /**
+     * @param file the csv file.
+     * @param metrics records the load and every skipped row, e.g. BookStats.getMetrics.
+     */
+    public MappedCsvLoader(Path file, BookStatsMetrics metrics) {
+        this.file = file;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Read in the csv file and convert it to a list of Book objects.
+     *
+     * @return A list of Book objects.
+     * @throws IOException if the file cannot be mapped.
+     */
+    public List<Book> loadCsv() throws IOException {
+        List<Book> books = new ArrayList<>();
+        streamCsv(books::add);
+        return books;
+    }
+
+    /**
+     * Read in the csv file straight into a column-oriented BookTable, without creating a Book per row.
+     *
+     * @return a BookTable holding every book in file order.
+     * @throws IOException if the file cannot be mapped.
+     */
+    public BookTable loadTable() throws IOException {
+        BookTable table = new BookTable();
+        forEachRow(table::add);
+        return table;
+    }
+
+    /**
+     * Hand every Book in the csv file to the consumer in file order.
+     *
+     * @param consumer receives every Book.
+     * @throws IOException if the file cannot be mapped.
+     */
+    public void streamCsv(Consumer<Book> consumer) throws IOException {
+        forEachRow(row -> consumer.accept(row.toBook()));
+    }
+
+    /**
+     * Visit every well-formed row of the csv file without converting it to a Book. The row passed to the visitor is
+     * reused, so only the fields that are read from it cost anything. If the visitor reads a number that does not
+     * parse, the NumberFormatException skips the row and counts it as UNPARSABLE_NUMBER, as loadCsv does.
+     *
+     * @param visitor receives every row with exactly ten fields.
+     * @throws IOException if the file cannot be mapped.
+     */
+    public void forEachRow(Consumer<MappedCsvRow> visitor) throws IOException {
+        long[] rows = new long[1];
+        Consumer<MappedCsvRow> counted = visitor.andThen(row -> rows[0]++);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+             BookStatsMetrics.Sample load = metrics.start("load")) {
+            long size = channel.size();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, WINDOW_SIZE));
+            int headerEnd = indexOf(buffer, (byte) '\n', 0, buffer.limit());
+            CsvColumns columns = readHeader(buffer, 0, headerEnd < 0 ? buffer.limit() : headerEnd);
+            if (columns == null) {
+                metrics.reject(RejectReason.BAD_HEADER);
+                System.out.println("Book CSV file is not formatted correctly. No books will be read in.");
+            }
+
+            MappedCsvRow row = new MappedCsvRow(columns);
+            long position = columns == null || headerEnd < 0 ? size : headerEnd + 1;
+            while (position < size) {
+                long length = Math.min(size - position, WINDOW_SIZE);
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                boolean atEnd = position + length == size;
+                int consumed = parseRows(buffer, 0, buffer.limit(), atEnd, row, counted, metrics);
+                if (consumed == 0) {
+                    throw new IOException("Line at byte " + position + " is longer than " + WINDOW_SIZE + " bytes");
+                }
+                position += consumed;
+            }
+            metrics.recordLoad(rows[0], size, load.elapsedNanos());
+        }
+    }
+
+    /**
+     * Decode the header line in [start, end) and resolve the position of every HeaderFields column.
+     *
+     * @return the resolved columns, or null if the header is missing a column.
+     */
+    static CsvColumns readHeader(ByteBuffer buffer, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        String header = new String(bytes, StandardCharsets.UTF_8);
+        if (header.endsWith("\r")) {
+            header = header.substring(0, header.length() - 1);
+        }
+        return CsvColumns.resolve(header.split(","));
+    }
+
+    /**
+     * Visit every complete line in [start, end). A trailing line without a newline is only visited when the range
+     * ends at the end of the file. Lines without ten fields, and lines whose visit throws NumberFormatException, are
+     * skipped and counted in the metrics by reason.
+     *
+     * @return the number of bytes consumed, i.e. up to and including the last newline that was found.
+     */
+    static int parseRows(ByteBuffer buffer, int start, int end, boolean atEndOfFile, MappedCsvRow row,
+                         Consumer<MappedCsvRow> visitor, BookStatsMetrics metrics) {
+        int lineStart = start;
+        while (lineStart < end) {
+            int lineEnd = indexOf(buffer, (byte) '\n', lineStart, end);
+            if (lineEnd < 0) {
+                if (!atEndOfFile) {
+                    break;
+                }
+                lineEnd = end;
+            }
+            if (!row.reset(buffer, lineStart, lineEnd)) { //If the line does not have the correct number of fields, skip it.
+                metrics.reject(indexOf(buffer, (byte) '"', lineStart, lineEnd) >= 0 ? RejectReason.QUOTED_COMMA : RejectReason.WRONG_FIELD_COUNT);
+            } else {
+                try {
+                    visitor.accept(row);
+                } catch (NumberFormatException e) {
+                    metrics.reject(RejectReason.UNPARSABLE_NUMBER);
+                }
+            }
+            lineStart = Math.min(lineEnd + 1, end);
+            if (lineEnd == end) {
+                break;
+            }
+        }
+        return lineStart - start;
+    }
+
+    static int indexOf(ByteBuffer buffer, byte value, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer.get(i) == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
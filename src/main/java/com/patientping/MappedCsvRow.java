@@ -0,0 +1,172 @@
+package com.patientping;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static com.patientping.HeaderFields.*;
+
+/**
+ * A cursor over one row of a memory-mapped csv file. Numeric fields are parsed straight from the bytes and Strings
+ * are only created for the text fields that are asked for. The same instance is reused for every row, so callers
+ * must not hold on to it.
+ */
+public class MappedCsvRow {
+    static final int FIELD_COUNT = 10;
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8};
+
+    private final CsvColumns columns;
+    private final int[] fieldStarts = new int[FIELD_COUNT];
+    private final int[] fieldEnds = new int[FIELD_COUNT];
+    private ByteBuffer buffer;
+    private byte[] scratch = new byte[256];
+
+    MappedCsvRow(CsvColumns columns) {
+        this.columns = columns;
+    }
+
+    /**
+     * Split the line in [start, end) into fields. Like String.split(","), trailing empty fields are dropped before
+     * the fields are counted.
+     *
+     * @return true if the line has exactly ten fields.
+     */
+    boolean reset(ByteBuffer buffer, int start, int end) {
+        this.buffer = buffer;
+        if (end > start && buffer.get(end - 1) == '\r') {
+            end--;
+        }
+        int fields = 0;
+        int nonEmptyFields = 0;
+        int fieldStart = start;
+        for (int i = start; i <= end; i++) {
+            if (i == end || buffer.get(i) == ',') {
+                if (fields < FIELD_COUNT) {
+                    fieldStarts[fields] = fieldStart;
+                    fieldEnds[fields] = i;
+                }
+                fields++;
+                if (i > fieldStart) {
+                    nonEmptyFields = fields;
+                }
+                fieldStart = i + 1;
+            }
+        }
+        return nonEmptyFields == FIELD_COUNT;
+    }
+
+    public int getInt(HeaderFields field) {
+        long value = getLong(field);
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new NumberFormatException("For input string: \"" + getString(field) + "\"");
+        }
+        return (int) value;
+    }
+
+    public long getLong(HeaderFields field) {
+        int column = columns.indexOf(field);
+        int start = fieldStarts[column];
+        int end = fieldEnds[column];
+        boolean negative = false;
+        if (start < end && (buffer.get(start) == '-' || buffer.get(start) == '+')) {
+            negative = buffer.get(start) == '-';
+            start++;
+        }
+        if (start == end || end - start > 18) {
+            return Long.parseLong(getString(field));
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("For input string: \"" + getString(field) + "\"");
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parse a float column. Plain decimals with up to eight digits are converted without creating a String and give
+     * the same result as Float.parseFloat; anything else falls back to it.
+     */
+    public float getFloat(HeaderFields field) {
+        int column = columns.indexOf(field);
+        int start = fieldStarts[column];
+        int end = fieldEnds[column];
+        boolean negative = start < end && buffer.get(start) == '-';
+        if (negative) {
+            start++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = -1;
+        for (int i = start; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b == '.' && scale < 0) {
+                scale = 0;
+            } else if (b >= '0' && b <= '9' && digits < 8) {
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if (scale >= 0) {
+                    scale++;
+                }
+            } else {
+                return Float.parseFloat(getString(field));
+            }
+        }
+        if (digits == 0) {
+            return Float.parseFloat(getString(field));
+        }
+        float value = (float) (mantissa / POWERS_OF_TEN[Math.max(scale, 0)]);
+        return negative ? -value : value;
+    }
+
+    public String getString(HeaderFields field) {
+        int column = columns.indexOf(field);
+        int start = fieldStarts[column];
+        int length = fieldEnds[column] - start;
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        for (int i = 0; i < length; i++) {
+            scratch[i] = buffer.get(start + i);
+        }
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Copy part of the raw UTF-8 bytes of a field into dest without decoding them.
+     *
+     * @param from where in the field to start copying.
+     * @param length how many bytes to copy.
+     */
+    void copyBytes(HeaderFields field, int from, byte[] dest, int offset, int length) {
+        int start = fieldStarts[columns.indexOf(field)] + from;
+        for (int i = 0; i < length; i++) {
+            dest[offset + i] = buffer.get(start + i);
+        }
+    }
+
+    int length(HeaderFields field) {
+        int column = columns.indexOf(field);
+        return fieldEnds[column] - fieldStarts[column];
+    }
+
+    /**
+     * @return a Book holding every field of this row.
+     */
+    public Book toBook() {
+        return new Book(
+                getInt(bookID),
+                getString(title),
+                getString(authors),
+                getFloat(average_rating),
+                getString(isbn),
+                getString(isbn13),
+                getString(language_code),
+                getInt(num_pages),
+                getInt(ratings_count),
+                getInt(text_reviews_count)
+        );
+    }
+}
@@ -0,0 +1,284 @@
+package com.patientping;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Fork/join versions of the BookStats queries over books already in memory. Each task scans a slice and keeps only
+ * the best position and its score in two fields, so nothing is allocated per book or per author; the slices are
+ * then combined left to right. A later slice only wins with a strictly better score, so ties go to the earliest
+ * book or author, and every result is the same as BookStats would return.
+ *
+ * Per-author averages are parallelized over the authors rather than over the books. Each author's float sum is
+ * still added up in book order, so the averages are identical to the sequential ones. The map's entries are first
+ * copied into a list so they can be split by position; that copy walks the map serially, so the per-author queries
+ * gain less from more cores than the per-book ones. On a single-thread pool the sequential loops are used as is.
+ */
+public class ParallelBookStats {
+    private static final int DEFAULT_MIN_SLICE = 4096;
+
+    private final BookStats sequential = new BookStats();
+    private final ForkJoinPool pool;
+    private final int minSlice;
+
+    /**
+     * Run on the common fork/join pool.
+     */
+    public ParallelBookStats() {
+        this(ForkJoinPool.commonPool(), DEFAULT_MIN_SLICE);
+    }
+
+    /**
+     * @param pool the pool to run on.
+     * @param minSlice the fewest books or authors a task scans rather than splitting further; at least 1.
+     */
+    public ParallelBookStats(ForkJoinPool pool, int minSlice) {
+        if (minSlice < 1) {
+            throw new IllegalArgumentException("minSlice must be at least 1: " + minSlice);
+        }
+        this.pool = pool;
+        this.minSlice = minSlice;
+    }
+
+    /**
+     * @param booksByAuthor a Map of Author Name -> List of Books.
+     * @return an Author Object with the most books, as {@link BookStats#findMostBooks(Map)} returns.
+     */
+    public Author findMostBooks(Map<String, List<Book>> booksByAuthor) {
+        if (pool.getParallelism() <= 1) {
+            return sequential.findMostBooks(booksByAuthor);
+        }
+        List<Map.Entry<String, List<Book>>> entries = new ArrayList<>(booksByAuthor.entrySet());
+        int best = argMax(new MostBooks(entries, 0, entries.size(), 0));
+        return best < 0 ? new Author("") : new Author(entries.get(best).getKey(), entries.get(best).getValue());
+    }
+
+    /**
+     * @param books a list of Books.
+     * @return The highest rated book with at least 25 ratings, as {@link BookStats#findHighestRatedBook(List)}
+     * returns.
+     */
+    public Book findHighestRatedBook(List<Book> books) {
+        if (pool.getParallelism() <= 1) {
+            return sequential.findHighestRatedBook(books);
+        }
+        List<Book> list = randomAccess(books);
+        int best = argMax(new HighestRated(list, 0, list.size(), -1));
+        return best < 0 ? new Book(-1, "", "", -1, "", "", "", -1, -1, -1) : list.get(best);
+    }
+
+    /**
+     * @param books a list of books.
+     * @return the book with the highest ratio of text reviews to star reviews, as
+     * {@link BookStats#findHighestRatio(List)} returns.
+     */
+    public Book findHighestRatio(List<Book> books) {
+        if (pool.getParallelism() <= 1) {
+            return sequential.findHighestRatio(books);
+        }
+        List<Book> list = randomAccess(books);
+        int best = argMax(new HighestRatio(list, 0, list.size(), 0f));
+        return best < 0 ? new Book(-1, "", "", -1, "", "", "", -1, -1, -1) : list.get(best);
+    }
+
+    /**
+     * @param booksByAuthor a map of authors to their list of books.
+     * @return the author with the highest average star rating across all their books, as
+     * {@link BookStats#findAuthorWithHighestAverageRating(Map)} returns.
+     */
+    public Author findAuthorWithHighestAverageRating(Map<String, List<Book>> booksByAuthor) {
+        if (pool.getParallelism() <= 1) {
+            return sequential.findAuthorWithHighestAverageRating(booksByAuthor);
+        }
+        List<Map.Entry<String, List<Book>>> entries = new ArrayList<>(booksByAuthor.entrySet());
+        int best = argMax(new HighestAverageRating(entries, 0, entries.size(), 0f));
+        return best < 0 ? new Author("") : new Author(entries.get(best).getKey(), entries.get(best).getValue());
+    }
+
+    private int argMax(ArgMax task) {
+        if (task.to == 0) {
+            return -1;
+        }
+        task.slice = Math.max(minSlice, task.to / (pool.getParallelism() * 8) + 1);
+        pool.invoke(task);
+        return task.index;
+    }
+
+    private static List<Book> randomAccess(List<Book> books) {
+        return books instanceof RandomAccess ? books : new ArrayList<>(books);
+    }
+
+    /**
+     * Finds the first position in [from, to) with the highest score above the floor. The state is just the best
+     * position and its score, combined from the left half and then the right. Scores are kept as doubles, which
+     * hold every float and int exactly, so they rank exactly as the sequential float and int comparisons do.
+     * Each query scans in its own subclass so the loop compiles to a direct, inlined scan.
+     */
+    private abstract static class ArgMax extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final int from;
+        final int to;
+        int slice;
+        int index = -1;
+        double score;
+
+        ArgMax(int from, int to, double floor) {
+            this.from = from;
+            this.to = to;
+            this.score = floor;
+        }
+
+        /**
+         * @return a task for part of this one's range, starting from the same floor.
+         */
+        abstract ArgMax split(int from, int to);
+
+        /**
+         * Scan [from, to), keeping the first position whose score beats the best so far.
+         */
+        abstract void scan();
+
+        @Override
+        protected void compute() {
+            if (to - from <= slice) {
+                scan();
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            ArgMax left = split(from, mid);
+            ArgMax right = split(mid, to);
+            left.slice = slice;
+            right.slice = slice;
+            right.fork();
+            left.compute();
+            right.join();
+            index = left.index;
+            score = left.score;
+            if (right.score > score) {
+                index = right.index;
+                score = right.score;
+            }
+        }
+    }
+
+    private static final class MostBooks extends ArgMax {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Map.Entry<String, List<Book>>> entries;
+
+        MostBooks(List<Map.Entry<String, List<Book>>> entries, int from, int to, double floor) {
+            super(from, to, floor);
+            this.entries = entries;
+        }
+
+        @Override
+        ArgMax split(int from, int to) {
+            return new MostBooks(entries, from, to, score);
+        }
+
+        @Override
+        void scan() {
+            for (int i = from; i < to; i++) {
+                int count = entries.get(i).getValue().size();
+                if (count > score) {
+                    score = count;
+                    index = i;
+                }
+            }
+        }
+    }
+
+    private static final class HighestRated extends ArgMax {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Book> books;
+
+        HighestRated(List<Book> books, int from, int to, double floor) {
+            super(from, to, floor);
+            this.books = books;
+        }
+
+        @Override
+        ArgMax split(int from, int to) {
+            return new HighestRated(books, from, to, score);
+        }
+
+        @Override
+        void scan() {
+            for (int i = from; i < to; i++) {
+                Book b = books.get(i);
+                if (b.getRatingCount() < 25) { //exclude any book with fewer than 25 ratings
+                    continue;
+                }
+                float rating = b.getAverageRating();
+                if (rating > score) {
+                    score = rating;
+                    index = i;
+                }
+            }
+        }
+    }
+
+    private static final class HighestRatio extends ArgMax {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Book> books;
+
+        HighestRatio(List<Book> books, int from, int to, double floor) {
+            super(from, to, floor);
+            this.books = books;
+        }
+
+        @Override
+        ArgMax split(int from, int to) {
+            return new HighestRatio(books, from, to, score);
+        }
+
+        @Override
+        void scan() {
+            for (int i = from; i < to; i++) {
+                Book b = books.get(i);
+                if (b.getRatingCount() <= 0) { //don't divide by zero
+                    continue;
+                }
+                float ratio = ((float) b.getTextReviewsCount()) / ((float) b.getRatingCount());
+                if (ratio > score) {
+                    score = ratio;
+                    index = i;
+                }
+            }
+        }
+    }
+
+    private static final class HighestAverageRating extends ArgMax {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Map.Entry<String, List<Book>>> entries;
+
+        HighestAverageRating(List<Map.Entry<String, List<Book>>> entries, int from, int to, double floor) {
+            super(from, to, floor);
+            this.entries = entries;
+        }
+
+        @Override
+        ArgMax split(int from, int to) {
+            return new HighestAverageRating(entries, from, to, score);
+        }
+
+        @Override
+        void scan() {
+            for (int i = from; i < to; i++) {
+                float average = Author.averageRating(entries.get(i).getValue());
+                if (average > score) {
+                    score = average;
+                    index = i;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.patientping;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Loads a csv file of books on a ForkJoinPool. The file is split into byte ranges that start and end on line
+ * boundaries, each range is parsed by a worker, and the per-range results are joined back together in file order.
+ * Rows follow the same rules as BookStats.loadCsv, and skipped rows and load throughput are recorded in the same
+ * metrics.
+ */
+public class ParallelCsvLoader {
+    public static final long DEFAULT_CHUNK_SIZE = 16L << 20;
+    private static final int PROBE_SIZE = 8192;
+
+    private final Path file;
+    private final ForkJoinPool pool;
+    private final long chunkSize;
+    private final BookStatsMetrics metrics;
+
+    public ParallelCsvLoader(Path file) {
+        this(file, ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+    }
+
+    public ParallelCsvLoader(Path file, ForkJoinPool pool, long chunkSize) {
+        this(file, pool, chunkSize, new BookStatsMetrics());
+    }
+
+    /**
+     * @param file the csv file.
+     * @param pool parses the chunks.
+     * @param chunkSize roughly how many bytes each worker parses at a time.
+     * @param metrics records the load and every skipped row, e.g. BookStats.getMetrics.
+     */
+    public ParallelCsvLoader(Path file, ForkJoinPool pool, long chunkSize, BookStatsMetrics metrics) {
+        this.file = file;
+        this.pool = pool;
+        this.chunkSize = Math.max(1, Math.min(chunkSize, Integer.MAX_VALUE));
+        this.metrics = metrics;
+    }
+
+    /**
+     * Read in the csv file and convert it to a list of Book objects in file order.
+     *
+     * @return A list of Book objects.
+     * @throws IOException if the file cannot be read.
+     */
+    public List<Book> loadCsv() throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+             BookStatsMetrics.Sample load = metrics.start("load")) {
+            long size = channel.size();
+            long headerEnd = nextLineStart(channel, 0, size);
+            MappedByteBuffer headerBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, headerEnd);
+            int headerLength = (int) headerEnd;
+            if (headerLength > 0 && headerBuffer.get(headerLength - 1) == '\n') {
+                headerLength--;
+            }
+            CsvColumns columns = MappedCsvLoader.readHeader(headerBuffer, 0, headerLength);
+            if (columns == null) {
+                metrics.reject(RejectReason.BAD_HEADER);
+                System.out.println("Book CSV file is not formatted correctly. No books will be read in.");
+                metrics.recordLoad(0, size, load.elapsedNanos());
+                return new ArrayList<>();
+            }
+
+            List<Long> boundaries = new ArrayList<>();
+            boundaries.add(headerEnd);
+            while (boundaries.get(boundaries.size() - 1) < size) {
+                long previous = boundaries.get(boundaries.size() - 1);
+                boundaries.add(nextLineStart(channel, Math.min(previous + chunkSize, size) - 1, size));
+            }
+
+            int chunks = boundaries.size() - 1;
+            List<List<Book>> results = new ArrayList<>(chunks);
+            for (int i = 0; i < chunks; i++) {
+                results.add(null);
+            }
+            try {
+                pool.invoke(new ChunkTask(channel, columns, metrics, boundaries, results, 0, chunks));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            int total = 0;
+            for (List<Book> result : results) {
+                total += result.size();
+            }
+            List<Book> books = new ArrayList<>(total);
+            for (List<Book> result : results) {
+                books.addAll(result);
+            }
+            metrics.recordLoad(total, size, load.elapsedNanos());
+            return books;
+        }
+    }
+
+    /**
+     * Find the start of the first line that begins after the given position.
+     *
+     * @return the offset just past the first newline at or after position, or size if there is none.
+     */
+    private static long nextLineStart(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer probe = ByteBuffer.allocate(PROBE_SIZE);
+        while (position < size) {
+            probe.clear();
+            int read = channel.read(probe, position);
+            if (read <= 0) {
+                break;
+            }
+            int newline = MappedCsvLoader.indexOf(probe, (byte) '\n', 0, read);
+            if (newline >= 0) {
+                return position + newline + 1;
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    /**
+     * Parses the chunks in [lo, hi), splitting in half until a single chunk is left.
+     */
+    private static class ChunkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel channel;
+        private final CsvColumns columns;
+        private final BookStatsMetrics metrics;
+        private final List<Long> boundaries;
+        private final List<List<Book>> results;
+        private final int lo;
+        private final int hi;
+
+        ChunkTask(FileChannel channel, CsvColumns columns, BookStatsMetrics metrics, List<Long> boundaries,
+                  List<List<Book>> results, int lo, int hi) {
+            this.channel = channel;
+            this.columns = columns;
+            this.metrics = metrics;
+            this.boundaries = boundaries;
+            this.results = results;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo > 1) {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new ChunkTask(channel, columns, metrics, boundaries, results, lo, mid),
+                        new ChunkTask(channel, columns, metrics, boundaries, results, mid, hi));
+                return;
+            }
+            long start = boundaries.get(lo);
+            long end = boundaries.get(lo + 1);
+            List<Book> books = new ArrayList<>();
+            try {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                MappedCsvLoader.parseRows(buffer, 0, buffer.limit(), true, new MappedCsvRow(columns),
+                        row -> books.add(row.toBook()), metrics);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            results.set(lo, books);
+        }
+    }
+}
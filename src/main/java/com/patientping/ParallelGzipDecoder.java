@@ -0,0 +1,338 @@
+package com.patientping;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Decodes a gzip file whose members can be inflated in parallel. A gzip file may be several gzip members one after
+ * another (as written by pigz, bgzip or by concatenating .gz files), and there is no index of where they start, so
+ * every offset that looks like a member header is decoded speculatively on the executor. The members are then
+ * chained from the start of the file: each real member ends exactly where the next one starts, so a candidate is
+ * only used when the previous member ends at its offset, and candidates that turn out to be inside another member
+ * are discarded. Every member used has its CRC and length checked against its trailer.
+ *
+ * Speculative decodes are kept in memory, so a member that inflates to more than maxBufferedMemberBytes is instead
+ * streamed on the decoding thread. A file that is a single large member therefore decodes as fast as it would
+ * sequentially, just on a different thread from the reader.
+ */
+class ParallelGzipDecoder implements BackgroundInputStream.Producer {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+    private static final int FRESERVED = 0xE0;
+
+    private final FileChannel channel;
+    private final ExecutorService executor;
+    private final int window;
+    private final int maxBufferedMemberBytes;
+
+    /**
+     * @param channel the gzip file.
+     * @param executor decodes candidate members.
+     * @param window how many candidate members may be decoding or decoded ahead of the reader.
+     * @param maxBufferedMemberBytes the largest inflated member to decode speculatively.
+     */
+    ParallelGzipDecoder(FileChannel channel, ExecutorService executor, int window, int maxBufferedMemberBytes) {
+        this.channel = channel;
+        this.executor = executor;
+        this.window = window;
+        this.maxBufferedMemberBytes = maxBufferedMemberBytes;
+    }
+
+    @Override
+    public void produce(BackgroundInputStream.Sink sink) throws IOException {
+        CandidateScanner candidates = new CandidateScanner();
+        Deque<Candidate> pending = new ArrayDeque<>();
+        long expected = 0;
+        while (true) {
+            while (pending.size() < window && candidates.hasNext()) {
+                long start = candidates.next();
+                pending.add(new Candidate(start, executor.submit(() -> decodeBuffered(start))));
+            }
+            Candidate candidate = pending.poll();
+            if (candidate == null || candidate.start > expected) {
+                // Nothing starts where the last member ended. Like GZIPInputStream, ignore trailing data.
+                if (expected == 0) {
+                    throw new IOException("Not in gzip format");
+                }
+                break;
+            }
+            if (candidate.start < expected) {
+                candidate.member.cancel(false); // It was inside the member just read.
+                continue;
+            }
+            Member member = await(candidate);
+            if (member == null) {
+                // Too big to buffer, so stream it.
+                expected = decode(expected, sink, Long.MAX_VALUE);
+            } else {
+                for (byte[] chunk : member.chunks) {
+                    sink.write(chunk, 0, chunk.length);
+                }
+                expected = member.end;
+            }
+            // Nothing inside the member just read can start another one, so don't scan or decode its bytes.
+            candidates.skipTo(expected);
+        }
+        for (Candidate candidate : pending) {
+            candidate.member.cancel(false);
+        }
+    }
+
+    private Member await(Candidate candidate) throws IOException {
+        try {
+            return candidate.member.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while decoding gzip member at offset " + candidate.start, e);
+        } catch (ExecutionException e) {
+            throw new IOException("Corrupt gzip member at offset " + candidate.start + ": " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * @return the inflated member, or null if it inflates to more than maxBufferedMemberBytes.
+     */
+    private Member decodeBuffered(long start) throws IOException {
+        Member member = new Member();
+        try {
+            member.end = decode(start, (b, off, len) -> {
+                byte[] copy = new byte[len];
+                System.arraycopy(b, off, copy, 0, len);
+                member.chunks.add(copy);
+            }, maxBufferedMemberBytes);
+        } catch (MemberTooLargeException e) {
+            return null;
+        }
+        return member;
+    }
+
+    /**
+     * Inflate the gzip member that starts at an offset, checking its header and trailer.
+     *
+     * @return the offset just past the member's trailer.
+     * @throws IOException if there is no valid member at the offset.
+     */
+    private long decode(long start, BackgroundInputStream.Sink sink, long limit) throws IOException {
+        ChannelReader in = new ChannelReader(start);
+        readHeader(in);
+        Inflater inflater = new Inflater(true);
+        CRC32 crc = new CRC32();
+        byte[] out = new byte[BUFFER_SIZE];
+        long size = 0;
+        try {
+            while (!inflater.finished()) {
+                if (inflater.needsInput()) {
+                    if (!in.fill()) {
+                        throw new EOFException("Unexpected end of gzip member");
+                    }
+                    inflater.setInput(in.buffer, in.position, in.limit - in.position);
+                    in.position = in.limit;
+                }
+                int n = inflater.inflate(out);
+                if (n == 0 && inflater.needsDictionary()) {
+                    throw new IOException("Unexpected preset dictionary");
+                }
+                if (n > 0) {
+                    size += n;
+                    if (size > limit) {
+                        throw new MemberTooLargeException();
+                    }
+                    crc.update(out, 0, n);
+                    sink.write(out, 0, n);
+                }
+            }
+            in.position = in.limit - inflater.getRemaining();
+        } catch (DataFormatException e) {
+            throw new IOException(e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+        long expectedCrc = in.readIntLE() & 0xFFFFFFFFL;
+        long expectedSize = in.readIntLE() & 0xFFFFFFFFL;
+        if (expectedCrc != crc.getValue()) {
+            throw new IOException("Gzip member CRC mismatch");
+        }
+        if (expectedSize != (size & 0xFFFFFFFFL)) {
+            throw new IOException("Gzip member length mismatch");
+        }
+        return in.offset();
+    }
+
+    private static void readHeader(ChannelReader in) throws IOException {
+        if (in.readByte() != 0x1F || in.readByte() != 0x8B || in.readByte() != 8) {
+            throw new IOException("Not a gzip member");
+        }
+        int flags = in.readByte();
+        if ((flags & FRESERVED) != 0) {
+            throw new IOException("Reserved gzip flags set");
+        }
+        for (int i = 0; i < 6; i++) { // mtime, extra flags, os
+            in.readByte();
+        }
+        if ((flags & FEXTRA) != 0) {
+            int length = in.readByte() | in.readByte() << 8;
+            for (int i = 0; i < length; i++) {
+                in.readByte();
+            }
+        }
+        if ((flags & FNAME) != 0) {
+            while (in.readByte() != 0) {
+                // Skip the zero-terminated file name.
+            }
+        }
+        if ((flags & FCOMMENT) != 0) {
+            while (in.readByte() != 0) {
+                // Skip the zero-terminated comment.
+            }
+        }
+        if ((flags & FHCRC) != 0) {
+            in.readByte();
+            in.readByte();
+        }
+    }
+
+    /**
+     * Buffered positional reads from the file, so that many decodes can share one channel.
+     */
+    private class ChannelReader {
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        long bufferStart;
+        int position;
+        int limit;
+
+        ChannelReader(long start) {
+            this.bufferStart = start;
+        }
+
+        boolean fill() throws IOException {
+            if (position < limit) {
+                return true;
+            }
+            bufferStart += limit;
+            position = 0;
+            limit = 0;
+            int n = channel.read(ByteBuffer.wrap(buffer), bufferStart);
+            if (n <= 0) {
+                return false;
+            }
+            limit = n;
+            return true;
+        }
+
+        int readByte() throws IOException {
+            if (!fill()) {
+                throw new EOFException("Unexpected end of gzip member");
+            }
+            return buffer[position++] & 0xFF;
+        }
+
+        int readIntLE() throws IOException {
+            return readByte() | readByte() << 8 | readByte() << 16 | readByte() << 24;
+        }
+
+        long offset() {
+            return bufferStart + position;
+        }
+    }
+
+    /**
+     * Finds every offset, in order, where the bytes look like the start of a gzip member header.
+     */
+    private class CandidateScanner {
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private long bufferStart;
+        private int position;
+        private int limit;
+        private long next = -1;
+        private boolean done;
+
+        boolean hasNext() throws IOException {
+            while (next < 0 && !done) {
+                if (limit - position < 4) {
+                    // Keep the last few bytes so a header split across two reads is still found.
+                    int kept = limit - position;
+                    System.arraycopy(buffer, position, buffer, 0, kept);
+                    bufferStart += position;
+                    position = 0;
+                    int n = channel.read(ByteBuffer.wrap(buffer, kept, buffer.length - kept), bufferStart + kept);
+                    if (n <= 0) {
+                        done = true;
+                        break;
+                    }
+                    limit = kept + n;
+                    continue;
+                }
+                if (buffer[position] == 0x1F && (buffer[position + 1] & 0xFF) == 0x8B && buffer[position + 2] == 8
+                        && (buffer[position + 3] & FRESERVED) == 0) {
+                    next = bufferStart + position;
+                }
+                position++;
+            }
+            return next >= 0;
+        }
+
+        long next() {
+            long result = next;
+            next = -1;
+            return result;
+        }
+
+        /**
+         * Continue scanning from an offset, if the scan has not already passed it.
+         */
+        void skipTo(long offset) {
+            if (next >= 0 && next < offset) {
+                next = -1;
+            }
+            if (bufferStart + position >= offset) {
+                return;
+            }
+            if (offset <= bufferStart + limit) {
+                position = (int) (offset - bufferStart);
+            } else {
+                bufferStart = offset;
+                position = 0;
+                limit = 0;
+            }
+        }
+    }
+
+    private static final class Candidate {
+        final long start;
+        final Future<Member> member;
+
+        Candidate(long start, Future<Member> member) {
+            this.start = start;
+            this.member = member;
+        }
+    }
+
+    private static final class Member {
+        final List<byte[]> chunks = new ArrayList<>();
+        long end;
+    }
+
+    private static final class MemberTooLargeException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this; // Thrown for control flow, not reported.
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.patientping;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.nio.file.Path;
+
+/**
+ * The stats of one shard of a catalog: per-author rating sums and counts and the best book for each metric, for
+ * English books and for all books. Partial stats are Serializable, so shards can be processed on different machines,
+ * and merging them in shard order gives the stats of the whole catalog.
+ */
+public class PartialBookStats implements BookAccumulator, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final StatsAccumulator englishStats = new StatsAccumulator(StreamingBookStats.MINIMUM_RATINGS);
+    private final StatsAccumulator allStats = new StatsAccumulator(StreamingBookStats.MINIMUM_RATINGS);
+
+    /**
+     * Compute the partial stats of one shard.
+     *
+     * @param shard a csv file of books, which may be gzip compressed.
+     * @return the stats of the books in the shard.
+     * @throws IOException if the shard cannot be read.
+     */
+    public static PartialBookStats load(Path shard) throws IOException {
+        return load(shard, new BookStats());
+    }
+
+    /**
+     * Compute the partial stats of one shard.
+     *
+     * @param shard a csv file of books, which may be gzip compressed.
+     * @param bookStats parses the rows and records the load and rejected rows in its metrics; it may be shared by
+     *                  shards loaded at the same time.
+     * @return the stats of the books in the shard.
+     * @throws IOException if the shard cannot be read.
+     */
+    public static PartialBookStats load(Path shard, BookStats bookStats) throws IOException {
+        PartialBookStats stats = new PartialBookStats();
+        try (InputStream in = GzipInput.open(shard)) {
+            bookStats.streamCsv(in, stats);
+        }
+        return stats;
+    }
+
+    @Override
+    public void accept(Book book) {
+        allStats.accept(book);
+        if (BookStats.isEnglish(book)) {
+            englishStats.accept(book);
+        }
+    }
+
+    /**
+     * Add the stats of the next shard.
+     *
+     * @param other the stats of a shard that comes after every shard already merged into these.
+     */
+    public void merge(PartialBookStats other) {
+        englishStats.merge(other.englishStats);
+        allStats.merge(other.allStats);
+    }
+
+    public StatsAccumulator getEnglishStats() {
+        return englishStats;
+    }
+
+    public StatsAccumulator getAllStats() {
+        return allStats;
+    }
+}
@@ -0,0 +1,144 @@
+package com.patientping;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * A thread-safe LRU cache of query results, bounded by total weight: the number of entries by default, or e.g. an
+ * estimate of their size in bytes. Hits, misses and evictions are counted.
+ *
+ * @param <K> the key type; keys should include everything the result depends on, such as the dataset version.
+ * @param <V> the result type.
+ */
+public class QueryCache<K, V> {
+    private final long maxWeight;
+    private final ToLongFunction<? super V> weigher;
+    // Access-ordered, so iteration starts at the least recently used entry.
+    private final LinkedHashMap<K, V> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxEntries the most entries to keep.
+     */
+    public QueryCache(int maxEntries) {
+        this(maxEntries, v -> 1);
+    }
+
+    /**
+     * @param maxWeight the most total weight to keep.
+     * @param weigher the weight of a value, e.g. its estimated size in bytes; must not change while cached.
+     */
+    public QueryCache(long maxWeight, ToLongFunction<? super V> weigher) {
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    /**
+     * Return the cached value for a key, computing and caching it on a miss. The value is computed without holding
+     * the cache lock, so two threads that miss on the same key at once may both compute it.
+     *
+     * @param key the query key.
+     * @param compute computes the value on a miss.
+     * @return the cached or computed value.
+     */
+    public V get(K key, Supplier<? extends V> compute) {
+        return get(key, compute, () -> true);
+    }
+
+    /**
+     * Like get, but a computed value is only cached if admit still returns true once the cache lock is held. Used
+     * with invalidate, this keeps a value computed from data that was replaced meanwhile out of the cache.
+     *
+     * @param key the query key.
+     * @param compute computes the value on a miss.
+     * @param admit whether the computed value may still be cached.
+     * @return the cached or computed value.
+     */
+    public V get(K key, Supplier<? extends V> compute, BooleanSupplier admit) {
+        synchronized (this) {
+            V value = entries.get(key);
+            if (value != null) {
+                hits.increment();
+                return value;
+            }
+        }
+        misses.increment();
+        V value = compute.get();
+        synchronized (this) {
+            if (admit.getAsBoolean()) {
+                put(key, value);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Cache a value, evicting least recently used entries until the cache is within its weight bound. A value that
+     * is heavier than the whole bound is not cached.
+     */
+    public synchronized void put(K key, V value) {
+        long valueWeight = weigher.applyAsLong(value);
+        if (valueWeight > maxWeight) {
+            return;
+        }
+        V previous = entries.put(key, value);
+        if (previous != null) {
+            weight -= weigher.applyAsLong(previous);
+        }
+        weight += valueWeight;
+        Iterator<Map.Entry<K, V>> eldest = entries.entrySet().iterator();
+        while (weight > maxWeight && eldest.hasNext()) {
+            Map.Entry<K, V> entry = eldest.next();
+            weight -= weigher.applyAsLong(entry.getValue());
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    /**
+     * Drop every entry.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    /**
+     * Run an update and drop every entry while holding the cache lock, so a get that checks the update in its admit
+     * condition cannot cache a value computed before it.
+     *
+     * @param update e.g. publishing a new version of the data.
+     */
+    public synchronized void invalidate(Runnable update) {
+        update.run();
+        clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+}
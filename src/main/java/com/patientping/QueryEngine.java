@@ -0,0 +1,130 @@
+package com.patientping;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs many BookQuery objects in one fused pass over the books. Filters are deduplicated by name and evaluated at
+ * most once per book, and the authors column is only split when a query groups by author, and then only once per
+ * book, however many queries share them.
+ * The engine is a BookAccumulator, so it can be fed straight from BookStats.streamCsv.
+ *
+ * BookStats.run does not go through the engine: it scans the columns of a BookTable by row number, and the engine
+ * needs a Book for every row, so answering the report's stats with it would build every book again.
+ */
+public class QueryEngine implements BookAccumulator {
+    private final Map<BookQuery, QueryResult> results = new LinkedHashMap<>();
+    private final Map<BookFilter, Integer> filterSlots = new HashMap<>();
+    private final List<BookFilter> filters = new ArrayList<>();
+    private final RowContext row = new RowContext();
+
+    /**
+     * @param queries the queries to answer in one pass.
+     */
+    public QueryEngine(List<BookQuery> queries) {
+        for (BookQuery query : queries) {
+            results.put(query, new QueryResult(query));
+            if (!filterSlots.containsKey(query.getFilter())) {
+                filterSlots.put(query.getFilter(), filters.size());
+                filters.add(query.getFilter());
+            }
+        }
+        row.filterStates = new byte[filters.size()];
+    }
+
+    /**
+     * Run the queries over a list of books.
+     *
+     * @param books the books to scan once.
+     * @param queries the queries to answer.
+     * @return a result for every query, in the order they were given.
+     */
+    public static Map<BookQuery, QueryResult> run(List<Book> books, List<BookQuery> queries) {
+        QueryEngine engine = new QueryEngine(queries);
+        books.forEach(engine);
+        return engine.getResults();
+    }
+
+    @Override
+    public void accept(Book book) {
+        row.start(book);
+        for (QueryResult result : results.values()) {
+            BookQuery query = result.getQuery();
+            if (!row.passes(query.getFilter())) {
+                continue;
+            }
+            double value = query.getAggregate() == BookQuery.Aggregate.COUNT ? 0 : query.getValue().applyAsDouble(book);
+            switch (query.getGroupBy()) {
+                case NONE:
+                    result.group("").add(book, value);
+                    break;
+                case LANGUAGE:
+                    result.group(book.getLanguage()).add(book, value);
+                    break;
+                case AUTHOR:
+                    for (String author : row.authors()) {
+                        result.group(author).add(book, value);
+                    }
+                    break;
+            }
+        }
+    }
+
+    /**
+     * @return a result for every query, in the order they were given.
+     */
+    public Map<BookQuery, QueryResult> getResults() {
+        return results;
+    }
+
+    public QueryResult getResult(BookQuery query) {
+        return results.get(query);
+    }
+
+    /**
+     * Per-book memo of shared sub-expressions. Filters that are only used inside BookFilter.and are given slots the
+     * first time they are seen.
+     */
+    class RowContext {
+        private static final byte UNKNOWN = 0;
+        private static final byte PASSED = 1;
+        private static final byte FAILED = 2;
+
+        private Book book;
+        private byte[] filterStates;
+        private String[] authors;
+
+        void start(Book book) {
+            this.book = book;
+            this.authors = null;
+            Arrays.fill(filterStates, UNKNOWN);
+        }
+
+        boolean passes(BookFilter filter) {
+            Integer slot = filterSlots.get(filter);
+            if (slot == null) {
+                slot = filters.size();
+                filterSlots.put(filter, slot);
+                filters.add(filter);
+                filterStates = Arrays.copyOf(filterStates, filters.size());
+            }
+            if (filterStates[slot] == UNKNOWN) {
+                // Evaluate before indexing: the test may register sub-filters and grow filterStates.
+                byte state = filter.test(book, this) ? PASSED : FAILED;
+                filterStates[slot] = state;
+            }
+            return filterStates[slot] == PASSED;
+        }
+
+        String[] authors() {
+            if (authors == null) {
+                authors = book.getAuthors().split("-");
+            }
+            return authors;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.patientping;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The result of one BookQuery: an aggregate per group, in the order the groups were first seen.
+ * Ungrouped queries have a single group with the key "".
+ */
+public class QueryResult {
+    private final BookQuery query;
+    private final Map<String, Group> groups = new LinkedHashMap<>();
+
+    QueryResult(BookQuery query) {
+        this.query = query;
+    }
+
+    Group group(String key) {
+        Group group = groups.get(key);
+        if (group == null) {
+            group = new Group();
+            groups.put(key, group);
+        }
+        return group;
+    }
+
+    public BookQuery getQuery() {
+        return query;
+    }
+
+    public Map<String, Group> getGroups() {
+        return Collections.unmodifiableMap(groups);
+    }
+
+    /**
+     * @return the value of the ungrouped result, or NaN if no books passed the filter.
+     */
+    public double getValue() {
+        Group group = groups.get("");
+        return group == null ? Double.NaN : group.getValue();
+    }
+
+    /**
+     * @return the book that maximized an ungrouped ARGMAX query, or null if no books passed the filter.
+     */
+    public Book getArgmax() {
+        Group group = groups.get("");
+        return group == null ? null : group.getArgmax();
+    }
+
+    /**
+     * Find the group with the largest aggregate value, e.g. the author with the most books. Ties go to the group
+     * that was seen first.
+     *
+     * @return the key of the best group, or null if there are no groups.
+     */
+    public String getBestGroup() {
+        String best = null;
+        double bestValue = 0;
+        for (Map.Entry<String, Group> entry : groups.entrySet()) {
+            double value = entry.getValue().getValue();
+            if (best == null || value > bestValue) {
+                best = entry.getKey();
+                bestValue = value;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Running aggregates for one group.
+     */
+    public class Group {
+        private long count;
+        private double sum;
+        private float floatSum;
+        private double max = Double.NEGATIVE_INFINITY;
+        private Book argmax;
+
+        void add(Book book, double value) {
+            count++;
+            sum += value;
+            floatSum += (float) value;
+            if (value > max) { // the first book wins a tie
+                max = value;
+                argmax = book;
+            }
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getSum() {
+            return sum;
+        }
+
+        public double getMax() {
+            return max;
+        }
+
+        public Book getArgmax() {
+            return argmax;
+        }
+
+        /**
+         * AVG adds the values up as floats in book order and divides as a float, as Author.averageRating does, so an
+         * author's AVG of average_rating is exactly Author.getAverageRatingForAllBooks. SUM adds them as doubles.
+         *
+         * @return the aggregate the query asked for; ARGMAX reports the maximum value alongside getArgmax.
+         */
+        public double getValue() {
+            switch (query.getAggregate()) {
+                case COUNT:
+                    return count;
+                case SUM:
+                    return sum;
+                case AVG:
+                    return floatSum / (float) count;
+                default:
+                    return max;
+            }
+        }
+    }
+}
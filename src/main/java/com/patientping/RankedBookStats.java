@@ -0,0 +1,115 @@
+package com.patientping;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ranked versions of the BookStats queries that return the top K books or authors instead of a single winner.
+ * Each query keeps at most K candidates in a bounded heap. Books and authors that tie keep the order they were
+ * first seen in, as the single-winner queries do, so the top result is always the one BookStats returns.
+ */
+public class RankedBookStats {
+
+    /**
+     * Find the K highest rated books, ignoring books with too few ratings.
+     *
+     * @param books a list of Books.
+     * @param k the number of books to return.
+     * @param minimumRatings books with fewer ratings than this are excluded.
+     * @return up to K books, highest rated first.
+     */
+    public List<Book> findHighestRatedBooks(List<Book> books, int k, int minimumRatings) {
+        TopK<Book> top = new TopK<>(k, Comparator.comparingDouble(Book::getAverageRating));
+        for (Book b : books) {
+            if (b.getRatingCount() >= minimumRatings) {
+                top.offer(b);
+            }
+        }
+        return top.toList();
+    }
+
+    /**
+     * Find the K books with the highest ratio of text reviews to star reviews. Books without ratings or text
+     * reviews are excluded.
+     *
+     * @param books a list of Books.
+     * @param k the number of books to return.
+     * @return up to K books, highest ratio first.
+     */
+    public List<Book> findHighestRatioBooks(List<Book> books, int k) {
+        TopK<Book> top = new TopK<>(k, Comparator.comparingDouble(RankedBookStats::ratio));
+        for (Book b : books) {
+            if (b.getRatingCount() > 0 && ratio(b) > 0f) { //don't divide by zero
+                top.offer(b);
+            }
+        }
+        return top.toList();
+    }
+
+    /**
+     * Find the K authors with the most books.
+     *
+     * @param booksByAuthor a Map of Author Name -> List of Books.
+     * @param k the number of authors to return.
+     * @return up to K authors, most books first.
+     */
+    public List<Author> findAuthorsWithMostBooks(Map<String, List<Book>> booksByAuthor, int k) {
+        TopK<Map.Entry<String, List<Book>>> top = new TopK<>(k, Comparator.comparingInt(e -> e.getValue().size()));
+        for (Map.Entry<String, List<Book>> entry : booksByAuthor.entrySet()) {
+            if (!entry.getValue().isEmpty()) {
+                top.offer(entry);
+            }
+        }
+        return toAuthors(top.toList());
+    }
+
+    /**
+     * Find the K authors with the highest average star rating across all of their books.
+     *
+     * @param booksByAuthor a Map of Author Name -> List of Books.
+     * @param k the number of authors to return.
+     * @return up to K authors, highest average first.
+     */
+    public List<Author> findAuthorsWithHighestAverageRating(Map<String, List<Book>> booksByAuthor, int k) {
+        // Each average is computed once and kept with its entry; TopK orders ties by when they were offered.
+        TopK<AuthorAverage> top = new TopK<>(k, Comparator.comparingDouble(a -> a.average));
+        for (Map.Entry<String, List<Book>> entry : booksByAuthor.entrySet()) {
+            if (entry.getValue().isEmpty()) {
+                continue;
+            }
+            float average = Author.averageRating(entry.getValue());
+            if (average > 0f) {
+                top.offer(new AuthorAverage(entry, average));
+            }
+        }
+        List<Map.Entry<String, List<Book>>> kept = new ArrayList<>();
+        for (AuthorAverage author : top.toList()) {
+            kept.add(author.entry);
+        }
+        return toAuthors(kept);
+    }
+
+    private static List<Author> toAuthors(List<Map.Entry<String, List<Book>>> entries) {
+        List<Author> authors = new ArrayList<>(entries.size());
+        for (Map.Entry<String, List<Book>> entry : entries) {
+            authors.add(new Author(entry.getKey(), entry.getValue()));
+        }
+        return authors;
+    }
+
+    private static float ratio(Book b) {
+        return ((float) b.getTextReviewsCount()) / ((float) b.getRatingCount());
+    }
+
+    private static final class AuthorAverage {
+        private final Map.Entry<String, List<Book>> entry;
+        private final float average;
+
+        AuthorAverage(Map.Entry<String, List<Book>> entry, float average) {
+            this.entry = entry;
+            this.average = average;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.patientping;
+
+/**
+ * Why a csv row was skipped while loading books.
+ */
+public enum RejectReason {
+    /** The row does not split into exactly 10 fields. */
+    WRONG_FIELD_COUNT,
+    /** A numeric field such as bookID or average_rating could not be parsed. */
+    UNPARSABLE_NUMBER,
+    /** The row has the wrong number of fields because a quoted field contains a comma. */
+    QUOTED_COMMA,
+    /** The header row is missing or lacks a required column, so the whole csv is skipped; counted once per csv. */
+    BAD_HEADER
+}
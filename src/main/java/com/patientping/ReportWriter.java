@@ -0,0 +1,316 @@
+package com.patientping;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Writes StatsReports and ApproximateReports through one buffered writer as plain text, CSV or JSON Lines. Each report is built in a
+ * reused StringBuilder and handed to the writer in one call, so writing thousands of reports (per language, per
+ * shard) costs no locking or format-string parsing per line. A ReportWriter is not thread-safe: compute reports on
+ * as many threads as needed, then write them from one.
+ */
+public class ReportWriter implements Closeable, Flushable {
+    /**
+     * The output formats.
+     */
+    public enum Format {
+        /** The human-readable lines BookStats has always printed. */
+        TEXT,
+        /** One row per result under a header row. */
+        CSV,
+        /** One JSON object per result per line. */
+        JSONL;
+
+        /**
+         * @param name a format name in any case, e.g. "jsonl".
+         * @return the format.
+         */
+        public static Format parse(String name) {
+            return valueOf(name.toUpperCase(Locale.ROOT));
+        }
+    }
+
+    private static final String CSV_HEADER = "report,books,metric,author,value,book_id,title\n";
+
+    private final Writer out;
+    private final Format format;
+    private final boolean closeOut;
+    private final StringBuilder line = new StringBuilder(256);
+    private boolean wroteHeader;
+
+    /**
+     * @param out where to write; it is buffered unless it is already a BufferedWriter.
+     * @param format the output format.
+     */
+    public ReportWriter(Writer out, Format format) {
+        this(out, format, true);
+    }
+
+    private ReportWriter(Writer out, Format format, boolean closeOut) {
+        this.out = out instanceof BufferedWriter ? out : new BufferedWriter(out, 64 * 1024);
+        this.format = format;
+        this.closeOut = closeOut;
+    }
+
+    /**
+     * @param format the output format.
+     * @return a writer to standard output that flushes rather than closes it when closed.
+     */
+    public static ReportWriter toStandardOutput(Format format) {
+        return new ReportWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), format, false);
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    /**
+     * Write a free-form line, such as "Loaded 100 books". Only text output includes these lines, so CSV and JSON
+     * Lines output stays machine-readable.
+     */
+    public void writeLine(String text) throws IOException {
+        if (format == Format.TEXT) {
+            out.write(text);
+            out.write('\n');
+        }
+    }
+
+    public void write(StatsReport report) throws IOException {
+        line.setLength(0);
+        switch (format) {
+            case TEXT:
+                appendText(report);
+                break;
+            case CSV:
+                if (!wroteHeader) {
+                    line.append(CSV_HEADER);
+                    wroteHeader = true;
+                }
+                for (StatResult result : report.getResults()) {
+                    appendCsv(report, result);
+                }
+                break;
+            case JSONL:
+                for (StatResult result : report.getResults()) {
+                    appendJson(report, result);
+                }
+                break;
+        }
+        out.append(line);
+    }
+
+    /**
+     * Write approximate stats. Each estimate is one CSV row or JSON object, with the metric named after the estimate,
+     * e.g. DISTINCT_AUTHORS, TOP_AUTHOR (one per author, valued by book count) or RATING_P90.
+     */
+    public void write(ApproximateReport report) throws IOException {
+        line.setLength(0);
+        if (format == Format.TEXT) {
+            appendText(report);
+        } else {
+            if (format == Format.CSV && !wroteHeader) {
+                line.append(CSV_HEADER);
+                wroteHeader = true;
+            }
+            appendEstimate(report, "DISTINCT_AUTHORS", null, report.getDistinctAuthorCount());
+            appendEstimate(report, "DISTINCT_TITLES", null, report.getDistinctTitleCount());
+            for (SpaceSaving.HeavyHitter author : report.getAuthorsWithMostBooks()) {
+                appendEstimate(report, "TOP_AUTHOR", author.getItem(), author.getCount());
+            }
+            for (int i = 0; i < ApproximateReport.QUANTILES.length; i++) {
+                appendEstimate(report, "RATING_" + percentile(i).toUpperCase(Locale.ROOT), null, report.getRatingQuantile(i));
+            }
+            for (int i = 0; i < ApproximateReport.QUANTILES.length; i++) {
+                appendEstimate(report, "RATIO_" + percentile(i).toUpperCase(Locale.ROOT), null, report.getRatioQuantile(i));
+            }
+        }
+        out.append(line);
+    }
+
+    private void appendText(ApproximateReport report) {
+        line.append(report.getName()).append(":\n");
+        line.append("Books: ").append(report.getBookCount())
+                .append(", distinct authors: ~").append(report.getDistinctAuthorCount())
+                .append(", distinct titles: ~").append(report.getDistinctTitleCount()).append('\n');
+        line.append("Authors with the most books: ").append(report.getAuthorsWithMostBooks()).append('\n');
+        line.append("Average rating ");
+        appendQuantiles(report, 2, true);
+        line.append("Text review ratio ");
+        appendQuantiles(report, 4, false);
+    }
+
+    // e.g. "p50/p90/p99: 3.96 / 4.30 / 4.71"
+    private void appendQuantiles(ApproximateReport report, int decimals, boolean ratings) {
+        for (int i = 0; i < ApproximateReport.QUANTILES.length; i++) {
+            line.append(i > 0 ? "/" : "").append(percentile(i));
+        }
+        line.append(": ");
+        for (int i = 0; i < ApproximateReport.QUANTILES.length; i++) {
+            appendFixed(line.append(i > 0 ? " / " : ""), ratings ? report.getRatingQuantile(i) : report.getRatioQuantile(i), decimals);
+        }
+        line.append('\n');
+    }
+
+    private static String percentile(int i) {
+        return "p" + Math.round(ApproximateReport.QUANTILES[i] * 100);
+    }
+
+    private void appendEstimate(ApproximateReport report, String metric, String author, double value) {
+        if (format == Format.CSV) {
+            appendCsvField(report.getName()).append(',').append(report.getBookCount()).append(',').append(metric).append(',');
+            if (author != null) {
+                appendCsvField(author);
+            }
+            Json.appendNumber(line.append(','), value).append(",,\n");
+            return;
+        }
+        Json.appendString(line.append("{\"report\":"), report.getName());
+        line.append(",\"books\":").append(report.getBookCount());
+        line.append(",\"metric\":\"").append(metric).append('"');
+        if (author != null) {
+            Json.appendString(line.append(",\"author\":"), author);
+        }
+        Json.appendNumber(line.append(",\"value\":"), value).append("}\n");
+    }
+
+    private void appendText(StatsReport report) {
+        line.append(report.getName()).append(":\n");
+        for (StatResult result : report.getResults()) {
+            if (!result.isPresent() && report.getBookCount() == 0) {
+                line.append(result.getMetric().getEmptyMessage()).append('\n');
+                continue;
+            }
+            // With books but no answer the find methods used to print a blank author and their starting value.
+            String author = result.isPresent() ? result.getAuthor() : "";
+            float value = result.isPresent() ? result.getValue() : result.getMetric().getUnansweredValue();
+            switch (result.getMetric()) {
+                case MOST_BOOKS:
+                    line.append("Author with the most books: ").append(author).append(". ")
+                            .append((int) value).append(" books.\n");
+                    break;
+                case HIGHEST_RATED_BOOK:
+                    line.append("Author with the highest rating: ").append(author).append(". ");
+                    appendFixed(line, value).append(" stars.\n");
+                    break;
+                case HIGHEST_RATIO:
+                    line.append("Author with the highest ratio of text reviews to star reviews: ").append(author).append(". ");
+                    appendFixed(line, value).append('\n');
+                    break;
+                case HIGHEST_AVERAGE_RATING:
+                    line.append("Author with the highest average rating across all books: ").append(author).append(". ");
+                    appendFixed(line, value).append(" average rating.\n");
+                    break;
+            }
+        }
+    }
+
+    private void appendCsv(StatsReport report, StatResult result) {
+        appendCsvField(report.getName()).append(',').append(report.getBookCount()).append(',').append(result.getMetric()).append(',');
+        if (result.isPresent()) {
+            appendCsvField(result.getAuthor()).append(',');
+            appendValue(result).append(',');
+        } else {
+            line.append(",,");
+        }
+        if (result.getBook() != null) {
+            line.append(result.getBook().getId()).append(',');
+            appendCsvField(result.getBook().getTitle());
+        } else {
+            line.append(',');
+        }
+        line.append('\n');
+    }
+
+    private void appendJson(StatsReport report, StatResult result) {
+        Json.appendString(line.append("{\"report\":"), report.getName());
+        line.append(",\"books\":").append(report.getBookCount());
+        line.append(",\"metric\":\"").append(result.getMetric()).append('"');
+        if (result.isPresent()) {
+            Json.appendString(line.append(",\"author\":"), result.getAuthor());
+            appendValue(line.append(",\"value\":"), result);
+        } else {
+            line.append(",\"author\":null,\"value\":null");
+        }
+        if (result.getBook() != null) {
+            Json.appendBook(line.append(",\"book\":"), result.getBook());
+        }
+        line.append("}\n");
+    }
+
+    private StringBuilder appendValue(StatResult result) {
+        return appendValue(line, result);
+    }
+
+    private static StringBuilder appendValue(StringBuilder out, StatResult result) {
+        if (result.getMetric() == StatResult.Metric.MOST_BOOKS) {
+            return out.append((int) result.getValue());
+        }
+        return Json.appendNumber(out, result.getValue());
+    }
+
+    /**
+     * Quote a CSV field if it contains a comma, quote or line break, doubling any quotes.
+     */
+    private StringBuilder appendCsvField(String value) {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            return line.append(value);
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                line.append('"');
+            }
+            line.append(c);
+        }
+        return line.append('"');
+    }
+
+    /**
+     * Append a float with six decimal places, exactly as printf's %f does: the float is widened to a double, and
+     * that double's shortest decimal form is rounded half up.
+     */
+    static StringBuilder appendFixed(StringBuilder out, float value) {
+        return appendFixed(out, value, 6);
+    }
+
+    /**
+     * Append a double with a fixed number of decimal places, exactly as printf's %.Nf does.
+     */
+    static StringBuilder appendFixed(StringBuilder out, double value, int decimals) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return out.append(Double.isNaN(value) ? "NaN" : value > 0 ? "Infinity" : "-Infinity");
+        }
+        return out.append(new BigDecimal(Double.toString(value)).setScale(decimals, RoundingMode.HALF_UP).toPlainString());
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Flush the output, and close it unless it is standard output.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closeOut) {
+            out.close();
+        } else {
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.patientping;
+
+/**
+ * A fuzzy search result together with how closely it matched.
+ *
+ * @param <T> the type of thing found.
+ */
+public final class SearchHit<T> {
+    private final T value;
+    private final double similarity;
+
+    public SearchHit(T value, double similarity) {
+        this.value = value;
+        this.similarity = similarity;
+    }
+
+    public T getValue() {
+        return value;
+    }
+
+    /**
+     * @return the Jaccard similarity of the query's and the match's trigrams, from 0 exclusive to 1.
+     */
+    public double getSimilarity() {
+        return similarity;
+    }
+
+    @Override
+    public String toString() {
+        return value + " (" + similarity + ")";
+    }
+}
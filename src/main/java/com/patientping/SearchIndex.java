@@ -0,0 +1,396 @@
+package com.patientping;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Prefix and fuzzy lookup over a fixed list of texts, each with a weight used for ranking. Entries are referred to
+ * by their position in the list. Everything is built up front; instances are immutable and safe to share between
+ * threads.
+ *
+ * <p>Prefix lookup uses a sorted dictionary of every word-suffix of every normalized text, so "grand" finds
+ * "mary grandpre". Each dictionary term is just the entry and the offset its suffix starts at, kept in two int
+ * arrays, rather than a copy of the suffix. A max-weight segment tree over the dictionary hands back the K heaviest
+ * entries in a prefix's range without scanning the range. Fuzzy lookup uses a trigram index and ranks by Jaccard
+ * similarity of the trigram sets; each query counts shared trigrams in a hash table sized to its own candidates,
+ * so its memory does not grow with the number of entries, and looks its candidates up in the commoner trigrams'
+ * posting lists by galloping search instead of reading those lists end to end.
+ */
+class SearchIndex {
+    // Dictionary terms are compared on at most this many characters; longer prefixes are checked per entry.
+    static final int MAX_TERM_LENGTH = 24;
+
+    private final String[] normalized;
+    private final long[] weights;
+    private final int[] trigramCounts;
+    // Term i is normalized[termEntries[i]] from termStarts[i], cut to MAX_TERM_LENGTH characters.
+    private final int[] termEntries;
+    private final int[] termStarts;
+    // Heap-ordered segment tree: leaves start at index leaves, each node holds the best term index below it.
+    private final int[] best;
+    private final int leaves;
+    private final LongIntHashMap trigramSlots;
+    private final int[][] postings;
+
+    /**
+     * @param texts the text of each entry.
+     * @param weights the weight of each entry; heavier entries rank first among equally good matches.
+     */
+    SearchIndex(List<String> texts, long[] weights) {
+        if (texts.size() != weights.length) {
+            throw new IllegalArgumentException(texts.size() + " texts but " + weights.length + " weights");
+        }
+        int size = texts.size();
+        this.weights = weights.clone();
+        this.normalized = new String[size];
+        this.trigramCounts = new int[size];
+        List<Term> dictionary = new ArrayList<>();
+        this.trigramSlots = new LongIntHashMap(Math.max(16, size));
+        List<int[]> lists = new ArrayList<>();
+        int[] listSizes = new int[16];
+        for (int entry = 0; entry < size; entry++) {
+            String text = SearchText.normalize(texts.get(entry));
+            normalized[entry] = text;
+            for (int start = 0; start < text.length(); start++) {
+                if (start == 0 || text.charAt(start - 1) == ' ') {
+                    dictionary.add(new Term(entry, start));
+                }
+            }
+            long[] trigrams = SearchText.trigrams(text);
+            trigramCounts[entry] = trigrams.length;
+            for (long trigram : trigrams) {
+                int slot = trigramSlots.get(trigram);
+                if (slot < 0) {
+                    slot = lists.size();
+                    trigramSlots.putIfAbsent(trigram, slot);
+                    lists.add(new int[4]);
+                    if (slot == listSizes.length) {
+                        listSizes = Arrays.copyOf(listSizes, slot * 2);
+                    }
+                }
+                int[] list = lists.get(slot);
+                int used = listSizes[slot];
+                if (used == list.length) {
+                    list = Arrays.copyOf(list, used * 2);
+                    lists.set(slot, list);
+                }
+                list[used] = entry;
+                listSizes[slot] = used + 1;
+            }
+        }
+        this.postings = new int[lists.size()][];
+        for (int slot = 0; slot < postings.length; slot++) {
+            postings[slot] = Arrays.copyOf(lists.get(slot), listSizes[slot]);
+        }
+
+        dictionary.sort((a, b) -> {
+            int order = compareTerm(a.entry, a.start, normalized[b.entry], b.start, termLength(b.entry, b.start));
+            return order != 0 ? order : Integer.compare(a.entry, b.entry);
+        });
+        this.termEntries = new int[dictionary.size()];
+        this.termStarts = new int[dictionary.size()];
+        for (int i = 0; i < termEntries.length; i++) {
+            termEntries[i] = dictionary.get(i).entry;
+            termStarts[i] = dictionary.get(i).start;
+        }
+        this.leaves = Integer.highestOneBit(Math.max(1, termEntries.length * 2 - 1));
+        this.best = new int[leaves * 2];
+        Arrays.fill(best, -1);
+        for (int i = 0; i < termEntries.length; i++) {
+            best[leaves + i] = i;
+        }
+        for (int node = leaves - 1; node > 0; node--) {
+            best[node] = better(best[node * 2], best[node * 2 + 1]) ? best[node * 2] : best[node * 2 + 1];
+        }
+    }
+
+    int size() {
+        return normalized.length;
+    }
+
+    /**
+     * Find the heaviest entries with a word that starts with the prefix, after normalization.
+     *
+     * @param prefix the text typed so far.
+     * @param k the most entries to return.
+     * @return entry positions, heaviest first and then in list order; empty if the prefix normalizes to nothing.
+     */
+    int[] complete(String prefix, int k) {
+        String query = SearchText.normalize(prefix);
+        if (query.isEmpty() || k <= 0) {
+            return new int[0];
+        }
+        String key = query.length() > MAX_TERM_LENGTH ? query.substring(0, MAX_TERM_LENGTH) : query;
+        int from = lowerBound(key);
+        int to = prefixEnd(from, key);
+
+        PriorityQueue<Integer> nodes = new PriorityQueue<>((a, b) -> better(best[a], best[b]) ? -1 : 1);
+        for (int lo = from + leaves, hi = to + leaves; lo < hi; lo >>= 1, hi >>= 1) {
+            if ((lo & 1) == 1) {
+                nodes.add(lo++);
+            }
+            if ((hi & 1) == 1) {
+                nodes.add(--hi);
+            }
+        }
+        Set<Integer> seen = new HashSet<>();
+        int[] found = new int[Math.min(k, to - from)];
+        int count = 0;
+        while (count < found.length && !nodes.isEmpty()) {
+            int node = nodes.poll();
+            if (node < leaves) {
+                nodes.add(node * 2);
+                if (best[node * 2 + 1] >= 0) {
+                    nodes.add(node * 2 + 1);
+                }
+                continue;
+            }
+            int entry = termEntries[node - leaves];
+            if (key != query && !hasWordStartingWith(normalized[entry], query)) {
+                continue;
+            }
+            if (seen.add(entry)) {
+                found[count++] = entry;
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    /**
+     * Find the entries whose trigrams overlap the query's the most, which tolerates typos and missing accents.
+     *
+     * @param text the query.
+     * @param k the most entries to return.
+     * @param minSimilarity the smallest Jaccard similarity, between 0 exclusive and 1, for an entry to match.
+     * @return matches, most similar first, then heaviest first.
+     */
+    List<Match> fuzzy(String text, int k, double minSimilarity) {
+        if (minSimilarity <= 0 || minSimilarity > 1) {
+            throw new IllegalArgumentException("minSimilarity must be in (0, 1]: " + minSimilarity);
+        }
+        long[] query = SearchText.trigrams(SearchText.normalize(text));
+        if (query.length == 0 || k <= 0) {
+            return new ArrayList<>();
+        }
+        int[][] lists = new int[query.length][];
+        for (int i = 0; i < query.length; i++) {
+            int slot = trigramSlots.get(query[i]);
+            lists[i] = slot < 0 ? new int[0] : postings[slot];
+        }
+        Arrays.sort(lists, Comparator.comparingInt((int[] list) -> list.length));
+
+        // similarity <= shared / query.length, so a match shares at least this many trigrams with the query, and so
+        // must appear in at least one of the rarest (query.length - required + 1) lists. Only those lists start
+        // candidates; the commoner lists just add to candidates already found.
+        int required = Math.max(1, (int) Math.ceil(minSimilarity * query.length - 1e-9));
+        int probe = query.length - required + 1;
+        int bound = 0;
+        for (int i = 0; i < probe; i++) {
+            bound += lists[i].length;
+        }
+        SharedCounts shared = new SharedCounts(bound);
+        for (int i = 0; i < probe; i++) {
+            for (int entry : lists[i]) {
+                shared.increment(entry);
+            }
+        }
+        // Posting lists are sorted by entry, so the candidates are looked up in each commoner list by galloping from
+        // the previous candidate's position, rather than by walking the whole list.
+        int[] candidates = Arrays.copyOf(shared.entries, shared.size);
+        Arrays.sort(candidates);
+        for (int i = probe; i < lists.length; i++) {
+            int[] list = lists[i];
+            int position = 0;
+            for (int entry : candidates) {
+                position = gallop(list, position, entry);
+                if (position == list.length) {
+                    break;
+                }
+                if (list[position] == entry) {
+                    shared.increment(entry);
+                }
+            }
+        }
+
+        TopK<Match> top = new TopK<>(k, Comparator.comparingDouble((Match m) -> m.similarity)
+                .thenComparingLong(m -> weights[m.entry])
+                .thenComparingInt(m -> -m.entry));
+        for (int i = 0; i < shared.size; i++) {
+            int entry = shared.entries[i];
+            int count = shared.count(entry);
+            double similarity = (double) count / (query.length + trigramCounts[entry] - count);
+            if (similarity >= minSimilarity) {
+                top.offer(new Match(entry, similarity));
+            }
+        }
+        return top.toList();
+    }
+
+    private boolean better(int term, int other) {
+        if (other < 0) {
+            return term >= 0;
+        }
+        if (term < 0) {
+            return false;
+        }
+        int entry = termEntries[term];
+        int otherEntry = termEntries[other];
+        if (weights[entry] != weights[otherEntry]) {
+            return weights[entry] > weights[otherEntry];
+        }
+        return entry != otherEntry ? entry < otherEntry : term < other;
+    }
+
+    private int termLength(int entry, int start) {
+        return Math.min(normalized[entry].length() - start, MAX_TERM_LENGTH);
+    }
+
+    /**
+     * Compare the term that starts at an offset of an entry's text with some other text, as String.compareTo would
+     * compare the term's substring.
+     */
+    private int compareTerm(int entry, int start, String other, int otherStart, int otherLength) {
+        String text = normalized[entry];
+        int length = termLength(entry, start);
+        int common = Math.min(length, otherLength);
+        for (int i = 0; i < common; i++) {
+            char c = text.charAt(start + i);
+            char o = other.charAt(otherStart + i);
+            if (c != o) {
+                return c - o;
+            }
+        }
+        return length - otherLength;
+    }
+
+    private int lowerBound(String key) {
+        int lo = 0;
+        int hi = termEntries.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compareTerm(termEntries[mid], termStarts[mid], key, 0, key.length()) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // Terms starting with the key are contiguous from the lower bound on.
+    private int prefixEnd(int from, String key) {
+        int lo = from;
+        int hi = termEntries.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int entry = termEntries[mid];
+            int start = termStarts[mid];
+            if (termLength(entry, start) >= key.length() && normalized[entry].startsWith(key, start)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Find the first position at or after from whose entry is at least the target, in a list sorted by entry.
+     *
+     * @return the position, or the list's length if every entry from there on is smaller.
+     */
+    private static int gallop(int[] list, int from, int target) {
+        int step = 1;
+        int hi = from;
+        while (hi < list.length && list[hi] < target) {
+            from = hi + 1;
+            hi += step;
+            step <<= 1;
+        }
+        hi = Math.min(hi, list.length);
+        while (from < hi) {
+            int mid = (from + hi) >>> 1;
+            if (list[mid] < target) {
+                from = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return from;
+    }
+
+    private static boolean hasWordStartingWith(String text, String prefix) {
+        return text.startsWith(prefix) || text.contains(" " + prefix);
+    }
+
+    /**
+     * An entry that matched a fuzzy query.
+     */
+    static final class Match {
+        final int entry;
+        final double similarity;
+
+        Match(int entry, double similarity) {
+            this.entry = entry;
+            this.similarity = similarity;
+        }
+    }
+
+    private static final class Term {
+        private final int entry;
+        private final int start;
+
+        Term(int entry, int start) {
+            this.entry = entry;
+            this.start = start;
+        }
+    }
+
+    /**
+     * Counts of query trigrams shared with each candidate entry, in an open-addressing table sized to the most
+     * candidates the query can have rather than to the whole index.
+     */
+    private static final class SharedCounts {
+        private final int[] keys;
+        // counts[slot] is 0 for an empty slot.
+        private final int[] counts;
+        // The candidates, in the order they were first counted.
+        private final int[] entries;
+        private int size;
+
+        SharedCounts(int maxCandidates) {
+            int capacity = Integer.highestOneBit(Math.max(4, maxCandidates * 2 - 1)) << 1;
+            keys = new int[capacity];
+            counts = new int[capacity];
+            entries = new int[Math.max(1, maxCandidates)];
+        }
+
+        void increment(int entry) {
+            int slot = slot(entry);
+            if (counts[slot] == 0) {
+                keys[slot] = entry;
+                entries[size++] = entry;
+            }
+            counts[slot]++;
+        }
+
+        int count(int entry) {
+            return counts[slot(entry)];
+        }
+
+        private int slot(int entry) {
+            int mask = keys.length - 1;
+            int hash = entry * 0x9E3779B9;
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while (counts[slot] != 0 && keys[slot] != entry) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+    }
+}
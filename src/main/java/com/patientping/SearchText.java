@@ -0,0 +1,84 @@
+package com.patientping;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Normalizes names and titles for searching, so that "Mary GrandPr&eacute;", "mary grandpre" and "MARY GRANDPRE"
+ * all become the same text.
+ */
+public final class SearchText {
+
+    private SearchText() {
+    }
+
+    /**
+     * Decompose accented letters and drop their accents, lowercase, and turn every run of characters that is not a
+     * letter or digit into a single space.
+     *
+     * @param text the text to normalize, may be null.
+     * @return the normalized text, with no leading or trailing space; empty if there is nothing to search on.
+     */
+    public static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String decomposed = isAscii(text) ? text : Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder out = new StringBuilder(decomposed.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            int type = Character.getType(c);
+            if (type == Character.NON_SPACING_MARK || type == Character.ENCLOSING_MARK
+                    || type == Character.COMBINING_SPACING_MARK) {
+                continue;
+            }
+            if (Character.isLetterOrDigit(c)) {
+                if (pendingSpace && out.length() > 0) {
+                    out.append(' ');
+                }
+                pendingSpace = false;
+                out.append(c);
+            } else {
+                pendingSpace = true;
+            }
+        }
+        return out.toString().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * The distinct trigrams of normalized text, padded with two spaces in front and one behind so that short words
+     * and word starts still produce trigrams. Each trigram is packed into a long, 16 bits per character.
+     *
+     * @param normalized text already passed through {@link #normalize(String)}.
+     * @return the trigrams in ascending order, without duplicates; empty for empty text.
+     */
+    public static long[] trigrams(String normalized) {
+        if (normalized.isEmpty()) {
+            return new long[0];
+        }
+        String padded = "  " + normalized + " ";
+        long[] trigrams = new long[padded.length() - 2];
+        for (int i = 0; i < trigrams.length; i++) {
+            trigrams[i] = ((long) padded.charAt(i) << 32) | ((long) padded.charAt(i + 1) << 16) | padded.charAt(i + 2);
+        }
+        Arrays.sort(trigrams);
+        int distinct = 0;
+        for (int i = 0; i < trigrams.length; i++) {
+            if (i == 0 || trigrams[i] != trigrams[i - 1]) {
+                trigrams[distinct++] = trigrams[i];
+            }
+        }
+        return Arrays.copyOf(trigrams, distinct);
+    }
+
+    private static boolean isAscii(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
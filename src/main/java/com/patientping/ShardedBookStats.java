@@ -0,0 +1,154 @@
+package com.patientping;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Computes the BookStats report over a catalog split into several csv files, without concatenating them. Each
+ * shard is processed into a PartialBookStats on its own thread, and the partial stats are merged in shard order,
+ * so ties are broken as if the shards had been read one after another. Reading a shard blocks on I/O, so the shards
+ * run on a dedicated pool rather than the common fork/join pool, and if one shard fails the rest are cancelled.
+ */
+public class ShardedBookStats {
+    private final List<Path> shards;
+    private final ExecutorService pool;
+    private final BookStats bookStats;
+
+    /**
+     * Process the shards on a pool of up to one thread per processor that is shut down after each run.
+     */
+    public ShardedBookStats(List<Path> shards) {
+        this(shards, null, new BookStats());
+    }
+
+    /**
+     * @param shards the csv files to process.
+     * @param pool runs the shards; the caller shuts it down.
+     */
+    public ShardedBookStats(List<Path> shards, ExecutorService pool) {
+        this(shards, pool, new BookStats());
+    }
+
+    /**
+     * @param shards the csv files to process.
+     * @param pool runs the shards and the caller shuts it down, or null for a pool of up to one thread per processor
+     *             that is shut down after each run.
+     * @param bookStats parses every shard and records their loads and rejected rows in one set of metrics.
+     */
+    public ShardedBookStats(List<Path> shards, ExecutorService pool, BookStats bookStats) {
+        this.shards = shards;
+        this.pool = pool;
+        this.bookStats = bookStats;
+    }
+
+    /**
+     * Find the shards of a catalog.
+     *
+     * @param location a directory, whose .csv and .csv.gz files are the shards, or a glob such as
+     *                 data/publishers/*.csv or data/**.csv.
+     * @return the matching files, sorted by path.
+     * @throws IOException if the directory cannot be listed.
+     */
+    public static List<Path> findShards(String location) throws IOException {
+        Path directory = Paths.get(location);
+        PathMatcher matcher;
+        if (Files.isDirectory(directory)) {
+            matcher = FileSystems.getDefault().getPathMatcher("glob:*.{csv,csv.gz}");
+        } else {
+            // The glob is matched against paths relative to the longest leading part that has no glob characters.
+            int firstGlobChar = 0;
+            while (firstGlobChar < location.length() && "*?[{".indexOf(location.charAt(firstGlobChar)) < 0) {
+                firstGlobChar++;
+            }
+            int lastSeparator = Math.max(location.lastIndexOf('/', firstGlobChar), location.lastIndexOf('\\', firstGlobChar));
+            directory = Paths.get(lastSeparator < 0 ? "." : location.substring(0, lastSeparator + 1));
+            matcher = FileSystems.getDefault().getPathMatcher("glob:" + location.substring(lastSeparator + 1));
+        }
+        Path root = directory;
+        try (Stream<Path> files = Files.walk(root)) {
+            return files.filter(Files::isRegularFile)
+                    .filter(file -> matcher.matches(root.relativize(file)))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Process every shard in parallel and merge the results.
+     *
+     * @return the stats of the whole catalog.
+     * @throws IOException if a shard cannot be read.
+     */
+    public PartialBookStats run() throws IOException {
+        ExecutorService executor = pool != null ? pool
+                : Executors.newFixedThreadPool(Math.max(1, Math.min(shards.size(), Runtime.getRuntime().availableProcessors())));
+        CompletionService<Integer> completion = new ExecutorCompletionService<>(executor);
+        List<Future<Integer>> running = new ArrayList<>(shards.size());
+        PartialBookStats[] partials = new PartialBookStats[shards.size()];
+        try {
+            for (int i = 0; i < shards.size(); i++) {
+                int shard = i;
+                running.add(completion.submit(() -> {
+                    partials[shard] = PartialBookStats.load(shards.get(shard), bookStats);
+                    return shard;
+                }));
+            }
+            // Wait in completion order, so the first shard to fail is reported as soon as it does.
+            for (int done = 0; done < shards.size(); done++) {
+                Future<Integer> finished = completion.take();
+                int shard = running.indexOf(finished);
+                try {
+                    finished.get();
+                } catch (ExecutionException e) {
+                    throw new IOException("Could not process shard " + shards.get(shard) + ": " + e.getCause().getMessage(), e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while processing shards", e);
+        } finally {
+            for (Future<Integer> future : running) {
+                future.cancel(true); // a no-op for the shards that finished
+            }
+            if (pool == null) {
+                executor.shutdown();
+            }
+        }
+        PartialBookStats total = new PartialBookStats();
+        for (PartialBookStats partial : partials) {
+            total.merge(partial);
+        }
+        return total;
+    }
+
+    /**
+     * Process the shards and write the same report as BookStats.run.
+     *
+     * @param location a directory of shards or a glob matching them.
+     * @param report where to write the stats.
+     * @param bookStats parses the shards and records the loads in its metrics.
+     * @throws IOException if a shard cannot be read or the report cannot be written.
+     */
+    public static void run(String location, ReportWriter report, BookStats bookStats) throws IOException {
+        bookStats.getMetrics().register();
+        List<Path> shards = findShards(location);
+        report.writeLine("Processing " + shards.size() + " shards");
+        PartialBookStats stats = new ShardedBookStats(shards, null, bookStats).run();
+        StreamingBookStats.writeReport(stats.getEnglishStats(), stats.getAllStats(), report);
+        report.writeLine("Metrics: " + bookStats.getMetrics().toJson());
+    }
+}
@@ -0,0 +1,207 @@
+package com.patientping;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Finds the most frequent strings in a stream with a fixed number of counters (the Space-Saving algorithm). When
+ * every counter is in use, a new string takes over the counter with the smallest count and inherits that count as
+ * its possible error. Every count is an overestimate by at most the total count divided by the capacity, and any
+ * string that occurs more often than that is guaranteed to have a counter.
+ */
+public class SpaceSaving implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final int capacity;
+    private final Map<String, Counter> counters = new HashMap<>();
+    private long totalCount;
+    private long nextSequence;
+    // Counters from smallest to largest count; the latest counter first among equal counts, so it is evicted first.
+    private transient TreeSet<Counter> byCount = newByCount();
+
+    /**
+     * @param capacity the number of counters to keep.
+     */
+    public SpaceSaving(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * @param epsilon the largest acceptable overestimate of a count, as a fraction of the total count.
+     * @return the smallest sketch with at most that error.
+     */
+    public static SpaceSaving withError(double epsilon) {
+        return new SpaceSaving((int) Math.ceil(1 / epsilon));
+    }
+
+    public void add(String item) {
+        totalCount++;
+        Counter counter = counters.get(item);
+        if (counter == null) {
+            if (counters.size() < capacity) {
+                counter = new Counter(item, nextSequence++);
+                counters.put(item, counter);
+            } else {
+                counter = byCount.pollFirst();
+                counters.remove(counter.item);
+                // The evicted string may have been this one all along, so its count is an upper bound.
+                counter = new Counter(item, nextSequence++, counter.count, counter.count);
+                counters.put(item, counter);
+            }
+        } else {
+            byCount.remove(counter);
+        }
+        counter.count++;
+        byCount.add(counter);
+    }
+
+    /**
+     * Fold another sketch into this one. A string missing from one sketch is counted as that sketch's smallest
+     * count if the sketch is full, so counts remain overestimates with the same error bound.
+     *
+     * @param other a sketch with any capacity; the result keeps this sketch's capacity.
+     */
+    public void merge(SpaceSaving other) {
+        long thisMin = minimumIfFull();
+        long otherMin = other.minimumIfFull();
+        Map<String, Counter> merged = new HashMap<>();
+        for (Counter counter : counters.values()) {
+            Counter theirs = other.counters.get(counter.item);
+            long count = counter.count + (theirs == null ? otherMin : theirs.count);
+            long error = counter.error + (theirs == null ? otherMin : theirs.error);
+            merged.put(counter.item, new Counter(counter.item, counter.sequence, count, error));
+        }
+        for (Counter theirs : other.counters.values()) {
+            if (!merged.containsKey(theirs.item)) {
+                merged.put(theirs.item, new Counter(theirs.item, nextSequence + theirs.sequence, theirs.count + thisMin, theirs.error + thisMin));
+            }
+        }
+        nextSequence += other.nextSequence;
+        totalCount += other.totalCount;
+
+        TreeSet<Counter> all = newByCount();
+        all.addAll(merged.values());
+        while (all.size() > capacity) {
+            all.pollFirst();
+        }
+        counters.clear();
+        for (Counter counter : all) {
+            counters.put(counter.item, counter);
+        }
+        byCount = all;
+    }
+
+    private long minimumIfFull() {
+        return counters.size() < capacity ? 0 : byCount.first().count;
+    }
+
+    /**
+     * @param k the number of strings to return.
+     * @return up to k strings with the highest counts, highest first; equal counts keep the order they were first
+     * counted in.
+     */
+    public List<HeavyHitter> getTop(int k) {
+        List<HeavyHitter> top = new ArrayList<>(Math.min(k, counters.size()));
+        Iterator<Counter> largestFirst = byCount.descendingIterator();
+        while (top.size() < k && largestFirst.hasNext()) {
+            Counter counter = largestFirst.next();
+            top.add(new HeavyHitter(counter.item, counter.count, counter.error));
+        }
+        return top;
+    }
+
+    /**
+     * @return the number of strings added, including through merges.
+     */
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the most any count can be overestimated by.
+     */
+    public long getMaxError() {
+        return totalCount / capacity;
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        byCount = newByCount();
+        byCount.addAll(counters.values());
+    }
+
+    private static TreeSet<Counter> newByCount() {
+        return new TreeSet<>((a, b) -> a.count != b.count ? Long.compare(a.count, b.count) : Long.compare(b.sequence, a.sequence));
+    }
+
+    private static final class Counter implements Serializable {
+        private static final long serialVersionUID = 1L;
+        final String item;
+        final long sequence;
+        long count;
+        long error;
+
+        Counter(String item, long sequence) {
+            this.item = item;
+            this.sequence = sequence;
+        }
+
+        Counter(String item, long sequence, long count, long error) {
+            this(item, sequence);
+            this.count = count;
+            this.error = error;
+        }
+    }
+
+    /**
+     * A frequent string and its estimated count.
+     */
+    public static final class HeavyHitter {
+        private final String item;
+        private final long count;
+        private final long error;
+
+        HeavyHitter(String item, long count, long error) {
+            this.item = item;
+            this.count = count;
+            this.error = error;
+        }
+
+        public String getItem() {
+            return item;
+        }
+
+        /**
+         * @return an upper bound on the true count.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return how much the count may be overestimated by; the true count is at least count - error.
+         */
+        public long getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return item + "=" + count + (error > 0 ? "+/-" + error : "");
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.patientping;
+
+/**
+ * The answer to one BookStats question, e.g. which author has the most books, kept apart from how it is printed so
+ * that the find methods can run silently and a ReportWriter can emit the answers in any format.
+ */
+public final class StatResult {
+    /**
+     * The questions BookStats answers.
+     */
+    public enum Metric {
+        MOST_BOOKS("The list of books is empty.", 0f),
+        HIGHEST_RATED_BOOK("The list of books is empty.", -1f),
+        HIGHEST_RATIO("The list of books is empty.", 0f),
+        HIGHEST_AVERAGE_RATING("List of books is empty.", 0f);
+
+        private final String emptyMessage;
+        private final float unansweredValue;
+
+        Metric(String emptyMessage, float unansweredValue) {
+            this.emptyMessage = emptyMessage;
+            this.unansweredValue = unansweredValue;
+        }
+
+        /**
+         * @return what the text report says when there were no books.
+         */
+        public String getEmptyMessage() {
+            return emptyMessage;
+        }
+
+        /**
+         * @return the value the text report prints, with a blank author, when there were books but none of them
+         * qualified, e.g. none had 25 ratings. It is the starting value the find methods compare against.
+         */
+        public float getUnansweredValue() {
+            return unansweredValue;
+        }
+    }
+
+    private final Metric metric;
+    private final String author;
+    private final float value;
+    private final Book book;
+
+    private StatResult(Metric metric, String author, float value, Book book) {
+        this.metric = metric;
+        this.author = author;
+        this.value = value;
+        this.book = book;
+    }
+
+    /**
+     * @param author the result of findMostBooks.
+     */
+    public static StatResult mostBooks(Author author) {
+        return author == null || author.getName().isEmpty() ? empty(Metric.MOST_BOOKS)
+                : new StatResult(Metric.MOST_BOOKS, author.getName(), author.getBooks().size(), null);
+    }
+
+    public static StatResult mostBooks(AuthorTotals totals) {
+        return totals == null ? empty(Metric.MOST_BOOKS) : new StatResult(Metric.MOST_BOOKS, totals.getName(), totals.getBookCount(), null);
+    }
+
+    /**
+     * @param book the result of findHighestRatedBook.
+     */
+    public static StatResult highestRatedBook(Book book) {
+        return book == null || book.getId() < 0 ? empty(Metric.HIGHEST_RATED_BOOK)
+                : new StatResult(Metric.HIGHEST_RATED_BOOK, book.getAuthors(), book.getAverageRating(), book);
+    }
+
+    /**
+     * @param book the result of findHighestRatio.
+     */
+    public static StatResult highestRatio(Book book) {
+        if (book == null || book.getId() < 0 || book.getRatingCount() <= 0) {
+            return empty(Metric.HIGHEST_RATIO);
+        }
+        float ratio = ((float) book.getTextReviewsCount()) / ((float) book.getRatingCount());
+        return new StatResult(Metric.HIGHEST_RATIO, book.getAuthors(), ratio, book);
+    }
+
+    /**
+     * @param author the result of findAuthorWithHighestAverageRating.
+     */
+    public static StatResult highestAverageRating(Author author) {
+        return author == null || author.getName().isEmpty() ? empty(Metric.HIGHEST_AVERAGE_RATING)
+                : new StatResult(Metric.HIGHEST_AVERAGE_RATING, author.getName(), author.getAverageRatingForAllBooks(), null);
+    }
+
+    public static StatResult highestAverageRating(AuthorTotals totals) {
+        return totals == null ? empty(Metric.HIGHEST_AVERAGE_RATING)
+                : new StatResult(Metric.HIGHEST_AVERAGE_RATING, totals.getName(), totals.getAverageRating(), null);
+    }
+
+    private static StatResult empty(Metric metric) {
+        return new StatResult(metric, null, Float.NaN, null);
+    }
+
+    public Metric getMetric() {
+        return metric;
+    }
+
+    /**
+     * @return false if there were no books, or none of them could answer the question.
+     */
+    public boolean isPresent() {
+        return author != null;
+    }
+
+    /**
+     * @return the author's name, or for book metrics the book's authors field; null if there is no answer.
+     */
+    public String getAuthor() {
+        return author;
+    }
+
+    /**
+     * @return the number of books, the rating, the ratio or the average rating, depending on the metric.
+     */
+    public float getValue() {
+        return value;
+    }
+
+    /**
+     * @return the book for HIGHEST_RATED_BOOK and HIGHEST_RATIO, otherwise null.
+     */
+    public Book getBook() {
+        return book;
+    }
+}
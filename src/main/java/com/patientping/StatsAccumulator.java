@@ -0,0 +1,56 @@
+package com.patientping;
+
+import java.io.Serializable;
+
+/**
+ * Collects every stat that BookStats reports for one set of books in a single pass over them.
+ */
+public class StatsAccumulator implements BookAccumulator, Serializable {
+    private static final long serialVersionUID = 1L;
+    private final AuthorAggregates authorAggregates = new AuthorAggregates();
+    private final HighestRatedBookAccumulator highestRated;
+    private final HighestRatioAccumulator highestRatio = new HighestRatioAccumulator();
+    private int bookCount;
+
+    public StatsAccumulator(int minimumRatings) {
+        this.highestRated = new HighestRatedBookAccumulator(minimumRatings);
+    }
+
+    @Override
+    public void accept(Book book) {
+        bookCount++;
+        authorAggregates.accept(book);
+        highestRated.accept(book);
+        highestRatio.accept(book);
+    }
+
+    /**
+     * Add the stats of books that came after these, e.g. the next shard of a catalog. The result is the same as if
+     * one accumulator had seen both sets of books in order, except that the average of an author with books on both
+     * sides comes from an exact double sum, see AuthorTotals.merge.
+     *
+     * @param other stats of later books.
+     */
+    public void merge(StatsAccumulator other) {
+        bookCount += other.bookCount;
+        authorAggregates.merge(other.authorAggregates);
+        highestRated.merge(other.highestRated);
+        highestRatio.merge(other.highestRatio);
+    }
+
+    public int getBookCount() {
+        return bookCount;
+    }
+
+    public AuthorAggregates getAuthorAggregates() {
+        return authorAggregates;
+    }
+
+    public HighestRatedBookAccumulator getHighestRated() {
+        return highestRated;
+    }
+
+    public HighestRatioAccumulator getHighestRatio() {
+        return highestRatio;
+    }
+}
@@ -0,0 +1,67 @@
+package com.patientping;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The answers to every BookStats question for one set of books, e.g. the English books or one shard.
+ */
+public final class StatsReport {
+    private final String name;
+    private final int bookCount;
+    private final List<StatResult> results;
+
+    /**
+     * @param name what the books are, e.g. "English Book Stats".
+     * @param bookCount how many books the answers were computed from.
+     * @param results the answers, in the order they should be reported.
+     */
+    public StatsReport(String name, int bookCount, StatResult... results) {
+        this.name = name;
+        this.bookCount = bookCount;
+        this.results = Collections.unmodifiableList(Arrays.asList(results));
+    }
+
+    /**
+     * Build a report from streamed stats.
+     *
+     * @param name what the books are.
+     * @param stats the accumulated stats.
+     * @return the report.
+     */
+    public static StatsReport of(String name, StatsAccumulator stats) {
+        return new StatsReport(name, stats.getBookCount(),
+                StatResult.mostBooks(stats.getAuthorAggregates().findMostBooks()),
+                StatResult.highestRatedBook(stats.getHighestRated().getHighestRatedBook()),
+                StatResult.highestRatio(stats.getHighestRatio().getHighestRatioBook()),
+                StatResult.highestAverageRating(stats.getAuthorAggregates().findHighestAverageRating()));
+    }
+
+    /**
+     * Build a report from incrementally updated stats.
+     *
+     * @param name what the books are.
+     * @param stats the stats so far.
+     * @return the report.
+     */
+    public static StatsReport of(String name, IncrementalBookStats stats) {
+        return new StatsReport(name, stats.getBookCount(),
+                StatResult.mostBooks(stats.getAuthorWithMostBooks()),
+                StatResult.highestRatedBook(stats.getHighestRatedBook()),
+                StatResult.highestRatio(stats.getHighestRatioBook()),
+                StatResult.highestAverageRating(stats.getAuthorWithHighestAverageRating()));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getBookCount() {
+        return bookCount;
+    }
+
+    public List<StatResult> getResults() {
+        return results;
+    }
+}
@@ -0,0 +1,104 @@
+package com.patientping;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Computes the BookStats report in a single pass over the csv without ever holding the full list of books.
+ * Every row is handed to a set of accumulators, so memory is bounded by the number of distinct authors.
+ */
+public class StreamingBookStats {
+    public static final int MINIMUM_RATINGS = 25;
+
+    private final StatsAccumulator englishStats = new StatsAccumulator(MINIMUM_RATINGS);
+    private final StatsAccumulator allStats = new StatsAccumulator(MINIMUM_RATINGS);
+    private final List<BookAccumulator> accumulators = new ArrayList<>();
+    private final BookStats bookStats;
+
+    public StreamingBookStats() {
+        this(new BookStats());
+    }
+
+    /**
+     * @param bookStats parses the rows and records the load and rejected rows in its metrics.
+     */
+    public StreamingBookStats(BookStats bookStats) {
+        this.bookStats = bookStats;
+        accumulators.add(allStats);
+        accumulators.add(new FilteredAccumulator(BookStats::isEnglish, englishStats));
+    }
+
+    /**
+     * Register an extra accumulator to be fed during the same pass as the built-in stats.
+     *
+     * @param accumulator an accumulator that should see every book.
+     */
+    public void addAccumulator(BookAccumulator accumulator) {
+        accumulators.add(accumulator);
+    }
+
+    /**
+     * Read every book from the csv once and feed it to all accumulators.
+     *
+     * @param in an input stream from a csv file containing books.
+     * @throws IOException if the csv cannot be read.
+     */
+    public void load(InputStream in) throws IOException {
+        bookStats.streamCsv(in, book -> {
+            for (BookAccumulator accumulator : accumulators) {
+                accumulator.accept(book);
+            }
+        });
+    }
+
+    public StatsAccumulator getEnglishStats() {
+        return englishStats;
+    }
+
+    public StatsAccumulator getAllStats() {
+        return allStats;
+    }
+
+    /**
+     * Load the csv and print the same report as BookStats.run.
+     *
+     * @param in an input stream from a csv file containing books.
+     * @throws IOException if the csv cannot be read.
+     */
+    public void run(InputStream in) throws IOException {
+        try (ReportWriter report = ReportWriter.toStandardOutput(ReportWriter.Format.TEXT)) {
+            run(in, report);
+        }
+    }
+
+    /**
+     * Load the csv and write the same report as BookStats.run.
+     *
+     * @param in an input stream from a csv file containing books.
+     * @param report where to write the stats.
+     * @throws IOException if the csv cannot be read or the report cannot be written.
+     */
+    public void run(InputStream in, ReportWriter report) throws IOException {
+        bookStats.getMetrics().register();
+        load(in);
+        writeReport(englishStats, allStats, report);
+        report.writeLine("Metrics: " + bookStats.getMetrics().toJson());
+    }
+
+    /**
+     * Write the same report as BookStats.run from accumulated stats.
+     *
+     * @param englishStats stats for the English books.
+     * @param allStats stats for every book.
+     * @param report where to write the stats.
+     * @throws IOException if the report cannot be written.
+     */
+    static void writeReport(StatsAccumulator englishStats, StatsAccumulator allStats, ReportWriter report) throws IOException {
+        report.writeLine("Loaded " + allStats.getBookCount() + " books");
+        report.writeLine("" + englishStats.getBookCount() + " Books in English");
+        report.write(StatsReport.of("English Book Stats", englishStats));
+        report.write(StatsReport.of("All Language Book Stats", allStats));
+    }
+}
@@ -0,0 +1,219 @@
+package com.patientping;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Estimates quantiles of a stream of numbers with a fixed amount of memory (a merging t-digest). Values are
+ * buffered, then sorted and merged into weighted centroids whose size is limited by the k1 scale function, so that
+ * centroids near the tails are small and quantiles there stay accurate. At most about compression centroids are
+ * kept; the quantile error shrinks as compression grows and is smallest near q = 0 and q = 1. Digests can be merged.
+ */
+public class TDigest implements Serializable {
+    private static final long serialVersionUID = 1L;
+    public static final double DEFAULT_COMPRESSION = 100;
+
+    private final double compression;
+    private double[] means;
+    private double[] weights;
+    private int centroidCount;
+    private final double[] buffer;
+    private int bufferCount;
+    private double totalWeight;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    public TDigest() {
+        this(DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param compression bounds the number of centroids; higher is more accurate and uses more memory.
+     */
+    public TDigest(double compression) {
+        if (compression < 10) {
+            throw new IllegalArgumentException("compression must be at least 10: " + compression);
+        }
+        this.compression = compression;
+        // The k1 scale function never produces more than about pi/2 * compression centroids.
+        int maxCentroids = (int) Math.ceil(Math.PI * compression / 2) + 2;
+        this.means = new double[maxCentroids];
+        this.weights = new double[maxCentroids];
+        this.buffer = new double[(int) (5 * compression)];
+    }
+
+    public void add(double value) {
+        if (Double.isNaN(value)) {
+            throw new IllegalArgumentException("Cannot add NaN");
+        }
+        if (bufferCount == buffer.length) {
+            flush();
+        }
+        buffer[bufferCount++] = value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Fold another digest into this one.
+     *
+     * @param other a digest with any compression; the result keeps this digest's compression.
+     */
+    public void merge(TDigest other) {
+        flush();
+        other.flush();
+        if (other.totalWeight == 0) {
+            return;
+        }
+        double[] mergedMeans = new double[centroidCount + other.centroidCount];
+        double[] mergedWeights = new double[mergedMeans.length];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < centroidCount || j < other.centroidCount) {
+            if (j == other.centroidCount || (i < centroidCount && means[i] <= other.means[j])) {
+                mergedMeans[n] = means[i];
+                mergedWeights[n++] = weights[i++];
+            } else {
+                mergedMeans[n] = other.means[j];
+                mergedWeights[n++] = other.weights[j++];
+            }
+        }
+        totalWeight += other.totalWeight;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        compress(mergedMeans, mergedWeights, n);
+    }
+
+    /**
+     * @param q the quantile, from 0 to 1.
+     * @return the estimated value at the quantile, or NaN if nothing has been added.
+     */
+    public double quantile(double q) {
+        if (q < 0 || q > 1) {
+            throw new IllegalArgumentException("q must be between 0 and 1: " + q);
+        }
+        flush();
+        if (centroidCount == 0) {
+            return Double.NaN;
+        }
+        if (centroidCount == 1) {
+            return means[0];
+        }
+        double target = q * totalWeight;
+        // Each centroid's mean is taken to sit at the middle of the weight it covers; interpolate between them.
+        if (target < weights[0] / 2) {
+            return min + (means[0] - min) * target / (weights[0] / 2);
+        }
+        double cumulative = weights[0] / 2;
+        for (int i = 0; i < centroidCount - 1; i++) {
+            double gap = (weights[i] + weights[i + 1]) / 2;
+            if (target <= cumulative + gap) {
+                return means[i] + (means[i + 1] - means[i]) * (target - cumulative) / gap;
+            }
+            cumulative += gap;
+        }
+        double lastHalf = weights[centroidCount - 1] / 2;
+        return means[centroidCount - 1] + (max - means[centroidCount - 1]) * Math.min(1, (target - cumulative) / lastHalf);
+    }
+
+    /**
+     * @return the number of values added, including through merges.
+     */
+    public long size() {
+        return Math.round(totalWeight + bufferCount);
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public double getCompression() {
+        return compression;
+    }
+
+    /**
+     * @return the number of centroids after merging the buffer, which never exceeds a bound set by compression.
+     */
+    public int centroidCount() {
+        flush();
+        return centroidCount;
+    }
+
+    /**
+     * Merge the buffered values into the centroids.
+     */
+    private void flush() {
+        if (bufferCount == 0) {
+            return;
+        }
+        Arrays.sort(buffer, 0, bufferCount);
+        double[] mergedMeans = new double[centroidCount + bufferCount];
+        double[] mergedWeights = new double[mergedMeans.length];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < centroidCount || j < bufferCount) {
+            if (j == bufferCount || (i < centroidCount && means[i] <= buffer[j])) {
+                mergedMeans[n] = means[i];
+                mergedWeights[n++] = weights[i++];
+            } else {
+                mergedMeans[n] = buffer[j++];
+                mergedWeights[n++] = 1;
+            }
+        }
+        totalWeight += bufferCount;
+        bufferCount = 0;
+        compress(mergedMeans, mergedWeights, n);
+    }
+
+    /**
+     * Merge sorted centroids, whose weights add up to totalWeight, into as few as the scale function allows.
+     */
+    private void compress(double[] sortedMeans, double[] sortedWeights, int n) {
+        int count = 0;
+        double mean = sortedMeans[0];
+        double weight = sortedWeights[0];
+        double weightBefore = 0;
+        double limit = totalWeight * inverseScale(scale(0) + 1);
+        for (int i = 1; i < n; i++) {
+            if (weightBefore + weight + sortedWeights[i] <= limit) {
+                weight += sortedWeights[i];
+                mean += (sortedMeans[i] - mean) * sortedWeights[i] / weight;
+            } else {
+                count = emit(count, mean, weight);
+                weightBefore += weight;
+                limit = totalWeight * inverseScale(scale(weightBefore / totalWeight) + 1);
+                mean = sortedMeans[i];
+                weight = sortedWeights[i];
+            }
+        }
+        centroidCount = emit(count, mean, weight);
+    }
+
+    private int emit(int count, double mean, double weight) {
+        if (count == means.length) {
+            // Rounding at the limits can produce a centroid or two more than the bound.
+            means = Arrays.copyOf(means, count + 2);
+            weights = Arrays.copyOf(weights, count + 2);
+        }
+        means[count] = mean;
+        weights[count] = weight;
+        return count + 1;
+    }
+
+    /**
+     * The k1 scale function: a centroid may span at most one unit of k.
+     */
+    private double scale(double q) {
+        return compression / (2 * Math.PI) * Math.asin(2 * q - 1);
+    }
+
+    private double inverseScale(double k) {
+        return k >= compression / 4 ? 1 : (Math.sin(k * 2 * Math.PI / compression) + 1) / 2;
+    }
+}
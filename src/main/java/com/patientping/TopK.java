@@ -0,0 +1,72 @@
+package com.patientping;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps the K best items offered to it in a bounded heap, so memory stays O(K) however many items are offered.
+ * Items that rank equally are ordered by when they were offered, earliest first, so results are deterministic.
+ *
+ * @param <T> the type of item being ranked.
+ */
+public class TopK<T> {
+    private final int k;
+    private final Comparator<Ranked<T>> ranking;
+    // The worst of the kept items is at the head, ready to be evicted.
+    private final PriorityQueue<Ranked<T>> heap;
+    private long offered;
+
+    /**
+     * @param k the number of items to keep.
+     * @param comparator orders items so that better items compare greater.
+     */
+    public TopK(int k, Comparator<? super T> comparator) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k must not be negative: " + k);
+        }
+        this.k = k;
+        Comparator<Ranked<T>> byItem = (a, b) -> comparator.compare(a.item, b.item);
+        this.ranking = byItem.thenComparing((a, b) -> Long.compare(b.sequence, a.sequence));
+        this.heap = new PriorityQueue<>(Math.max(1, Math.min(k, 1024)), ranking);
+    }
+
+    /**
+     * Offer an item, keeping it only if it is among the K best seen so far.
+     *
+     * @param item the item to rank.
+     */
+    public void offer(T item) {
+        Ranked<T> ranked = new Ranked<>(item, offered++);
+        if (heap.size() < k) {
+            heap.add(ranked);
+        } else if (k > 0 && ranking.compare(ranked, heap.peek()) > 0) {
+            heap.poll();
+            heap.add(ranked);
+        }
+    }
+
+    /**
+     * @return the kept items, best first.
+     */
+    public List<T> toList() {
+        List<Ranked<T>> ranked = new ArrayList<>(heap);
+        ranked.sort(ranking.reversed());
+        List<T> items = new ArrayList<>(ranked.size());
+        for (Ranked<T> r : ranked) {
+            items.add(r.item);
+        }
+        return items;
+    }
+
+    private static class Ranked<T> {
+        private final T item;
+        private final long sequence;
+
+        Ranked(T item, long sequence) {
+            this.item = item;
+            this.sequence = sequence;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+import com.patientping.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The books.csv bundled with the application, read and parsed once for every test that checks a feature against
+ * the sequential BookStats answers on real data.
+ */
+final class BundledBooks {
+    private static byte[] csv;
+    private static List<Book> books;
+
+    private BundledBooks() {
+    }
+
+    /**
+     * @return the bytes of books.csv.
+     */
+    static synchronized byte[] csv() throws IOException {
+        if (csv == null) {
+            try (InputStream in = BookStats.class.getResourceAsStream("/books.csv")) {
+                csv = readAll(in);
+            }
+        }
+        return csv.clone();
+    }
+
+    /**
+     * @return a new stream over books.csv.
+     */
+    static InputStream open() throws IOException {
+        return new ByteArrayInputStream(csv());
+    }
+
+    /**
+     * @return the books in books.csv, as BookStats.loadCsv reads them; the list cannot be modified.
+     */
+    static synchronized List<Book> books() throws IOException {
+        if (books == null) {
+            books = Collections.unmodifiableList(new BookStats().loadCsv(open()));
+        }
+        return books;
+    }
+
+    /**
+     * @return the English books in books.csv.
+     */
+    static List<Book> englishBooks() throws IOException {
+        return new BookStats().filterToEnglishBooks(books());
+    }
+
+    /**
+     * Copy books.csv into a directory, for the loaders that read files.
+     *
+     * @return the copy, named books.csv.
+     */
+    static Path copyTo(Path directory) throws IOException {
+        Path file = directory.resolve("books.csv");
+        Files.write(file, csv());
+        return file;
+    }
+
+    /**
+     * @param books some books.
+     * @return the answers BookStats gives for them with its sequential list-based find methods.
+     */
+    static StatsReport sequentialReport(List<Book> books) {
+        BookStats bookStats = new BookStats();
+        Map<String, List<Book>> booksByAuthor = bookStats.indexByAuthor(books);
+        return new StatsReport("Sequential", books.size(),
+                StatResult.mostBooks(bookStats.findMostBooks(booksByAuthor)),
+                StatResult.highestRatedBook(bookStats.findHighestRatedBook(books)),
+                StatResult.highestRatio(bookStats.findHighestRatio(books)),
+                StatResult.highestAverageRating(bookStats.findAuthorWithHighestAverageRating(booksByAuthor)));
+    }
+
+    /**
+     * Check that a report gives exactly the same answers as another, whatever its name.
+     */
+    static void assertSameAnswers(StatsReport expected, StatsReport actual) {
+        assertSameAnswers(expected, actual, 0f);
+    }
+
+    /**
+     * Check the answers of stats merged from shards, whose author averages may differ from Author's in the last bit,
+     * see AuthorTotals.merge.
+     */
+    static void assertSameMergedAnswers(StatsReport expected, StatsReport actual) {
+        assertSameAnswers(expected, actual, 1e-5f);
+    }
+
+    private static void assertSameAnswers(StatsReport expected, StatsReport actual, float averageTolerance) {
+        assertEquals(expected.getBookCount(), actual.getBookCount(), "book count");
+        assertEquals(expected.getResults().size(), actual.getResults().size());
+        for (int i = 0; i < expected.getResults().size(); i++) {
+            StatResult want = expected.getResults().get(i);
+            StatResult got = actual.getResults().get(i);
+            String metric = want.getMetric().toString();
+            assertEquals(want.getMetric(), got.getMetric());
+            assertEquals(want.getAuthor(), got.getAuthor(), metric);
+            assertEquals(want.getValue(), got.getValue(), want.getMetric() == StatResult.Metric.HIGHEST_AVERAGE_RATING ? averageTolerance : 0f, metric);
+            if (want.getBook() != null || got.getBook() != null) {
+                assertEquals(want.getBook().getId(), got.getBook().getId(), metric);
+            }
+        }
+    }
+
+    /**
+     * Check that two lists hold the same books, field by field, in the same order.
+     */
+    static void assertSameBooks(List<Book> expected, List<Book> actual) {
+        assertEquals(expected.size(), actual.size(), "book count");
+        for (int i = 0; i < expected.size(); i++) {
+            Book want = expected.get(i);
+            Book got = actual.get(i);
+            String row = "row " + i;
+            assertEquals(want.getId(), got.getId(), row);
+            assertEquals(want.getTitle(), got.getTitle(), row);
+            assertEquals(want.getAuthors(), got.getAuthors(), row);
+            assertEquals(want.getAverageRating(), got.getAverageRating(), row);
+            assertEquals(want.getIsbn(), got.getIsbn(), row);
+            assertEquals(want.getIsbn13(), got.getIsbn13(), row);
+            assertEquals(want.getLanguage(), got.getLanguage(), row);
+            assertEquals(want.getNumPages(), got.getNumPages(), row);
+            assertEquals(want.getRatingCount(), got.getRatingCount(), row);
+            assertEquals(want.getTextReviewsCount(), got.getTextReviewsCount(), row);
+        }
+    }
+
+    static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,214 @@
+import com.patientping.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestApproximateBookStats {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testHyperLogLogWithinErrorAndMergeable() {
+        HyperLogLog whole = HyperLogLog.withRelativeError(0.01);
+        HyperLogLog first = HyperLogLog.withRelativeError(0.01);
+        HyperLogLog second = HyperLogLog.withRelativeError(0.01);
+        for (int i = 0; i < 200_000; i++) {
+            String value = "author-" + i;
+            whole.add(value);
+            whole.add(value); // duplicates do not count
+            (i % 2 == 0 ? first : second).add(value);
+        }
+        assertTrue(whole.getRelativeError() <= 0.01);
+        assertEquals(200_000, whole.estimate(), 200_000 * 3 * whole.getRelativeError());
+        first.merge(second);
+        assertEquals(whole.estimate(), first.estimate());
+
+        HyperLogLog small = new HyperLogLog(12);
+        for (int i = 0; i < 100; i++) {
+            small.add("title-" + i);
+        }
+        assertEquals(100, small.estimate(), 3);
+    }
+
+    @Test
+    public void testSpaceSavingFindsHeavyHittersWithinBound() {
+        Random random = new Random(1);
+        SpaceSaving first = new SpaceSaving(100);
+        SpaceSaving second = new SpaceSaving(100);
+        int[] counts = new int[10_000];
+        for (int i = 0; i < 100_000; i++) {
+            // Item k has probability proportional to 1 / (k + 1).
+            int item = (int) Math.floor(Math.pow(counts.length + 1, random.nextDouble())) - 1;
+            counts[item]++;
+            (i < 50_000 ? first : second).add("item-" + item);
+        }
+        first.merge(second);
+        assertEquals(100_000, first.getTotalCount());
+        List<SpaceSaving.HeavyHitter> top = first.getTop(3);
+        assertEquals(Arrays.asList("item-0", "item-1", "item-2"), Arrays.asList(top.get(0).getItem(), top.get(1).getItem(), top.get(2).getItem()));
+        for (SpaceSaving.HeavyHitter hitter : first.getTop(100)) {
+            int actual = counts[Integer.parseInt(hitter.getItem().substring("item-".length()))];
+            assertTrue(hitter.getCount() >= actual, hitter.toString());
+            assertTrue(hitter.getCount() - hitter.getError() <= actual, hitter.toString());
+            assertTrue(hitter.getCount() - actual <= 2 * first.getMaxError(), hitter.toString());
+        }
+    }
+
+    @Test
+    public void testTDigestQuantilesWithinErrorAndMergeable() {
+        Random random = new Random(2);
+        TDigest whole = new TDigest(100);
+        TDigest[] parts = new TDigest[10];
+        for (int i = 0; i < parts.length; i++) {
+            parts[i] = new TDigest(100);
+        }
+        for (int i = 0; i < 100_000; i++) {
+            double value = random.nextDouble();
+            whole.add(value);
+            parts[i % parts.length].add(value);
+        }
+        TDigest merged = new TDigest(100);
+        for (TDigest part : parts) {
+            merged.merge(part);
+        }
+        for (double q : new double[]{0.001, 0.01, 0.25, 0.5, 0.75, 0.99, 0.999}) {
+            assertEquals(q, whole.quantile(q), 0.01, "q=" + q);
+            assertEquals(q, merged.quantile(q), 0.01, "merged q=" + q);
+        }
+        assertEquals(100_000, merged.size());
+        assertTrue(whole.centroidCount() <= 160, "centroids: " + whole.centroidCount());
+        assertTrue(merged.centroidCount() <= 160, "centroids: " + merged.centroidCount());
+        assertTrue(Double.isNaN(new TDigest().quantile(0.5)));
+    }
+
+    @Test
+    public void testApproximateStatsMatchExactStats() throws IOException, ClassNotFoundException {
+        BookStats bookStats = new BookStats();
+        List<Book> books = BundledBooks.books();
+        ApproximateBookStats first = new ApproximateBookStats();
+        ApproximateBookStats second = new ApproximateBookStats();
+        for (int i = 0; i < books.size(); i++) {
+            (i < books.size() / 2 ? first : second).accept(books.get(i));
+        }
+        // Sketches built elsewhere arrive serialized.
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(second);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            first.merge((ApproximateBookStats) in.readObject());
+        }
+
+        Map<String, List<Book>> booksByAuthor = bookStats.indexByAuthor(books);
+        assertEquals(books.size(), first.getBookCount());
+        assertEquals(booksByAuthor.size(), first.getDistinctAuthorCount(), booksByAuthor.size() * 0.03);
+        long titles = books.stream().map(Book::getTitle).distinct().count();
+        assertEquals(titles, first.getDistinctTitleCount(), titles * 0.03);
+
+        SpaceSaving.HeavyHitter top = first.getAuthorsWithMostBooks(1).get(0);
+        assertEquals(booksByAuthor.get(top.getItem()).size(), top.getCount());
+        assertEquals((long) BundledBooks.sequentialReport(books).getResults().get(0).getValue(), top.getCount());
+
+        float[] ratings = new float[books.size()];
+        for (int i = 0; i < ratings.length; i++) {
+            ratings[i] = books.get(i).getAverageRating();
+        }
+        Arrays.sort(ratings);
+        assertEquals(ratings[ratings.length / 2], first.getRatingQuantile(0.5), 0.02);
+        assertEquals(ratings[ratings.length * 9 / 10], first.getRatingQuantile(0.9), 0.02);
+    }
+
+    @Test
+    public void testEmptyStatsAndMergingEmptyStats() {
+        ApproximateBookStats empty = new ApproximateBookStats();
+        assertEquals(0, empty.getBookCount());
+        assertEquals(0, empty.getDistinctAuthorCount());
+        assertTrue(empty.getAuthorsWithMostBooks(5).isEmpty());
+        assertTrue(Double.isNaN(empty.getRatingQuantile(0.5)));
+
+        ApproximateBookStats one = new ApproximateBookStats();
+        one.accept(new Book(1, "Emma", "Jane Austen", 3.99f, "1", "1", "eng", 100, 200, 10));
+        one.merge(new ApproximateBookStats());
+        assertEquals(1, one.getBookCount());
+        assertEquals(1, one.getDistinctAuthorCount());
+        assertEquals(3.99, one.getRatingQuantile(0.5), 1e-6);
+    }
+
+    @Test
+    public void testNonFiniteRatingsAreCountedButNotRanked() throws IOException {
+        String csv = "bookID,title,authors,average_rating,isbn,isbn13,language_code,# num_pages,ratings_count,text_reviews_count\n"
+                + "1,Emma,Jane Austen,3.99,1,1,eng,100,200,10\n"
+                + "2,Persuasion,Jane Austen,NaN,2,2,eng,100,200,10\n"
+                + "3,Sanditon,Jane Austen,Infinity,3,3,eng,100,200,10\n";
+        ApproximateBookStats stats = new ApproximateBookStats();
+        for (Book book : new BookStats().loadCsv(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)))) {
+            stats.accept(book);
+        }
+        assertEquals(3, stats.getBookCount());
+        assertEquals(3.99, stats.getRatingQuantile(1.0), 1e-6);
+        assertEquals(0.05, stats.getRatioQuantile(0.5), 1e-6);
+    }
+
+    @Test
+    public void testRunOverGlobWritesReportInEveryFormat() throws IOException {
+        String header = "bookID,title,authors,average_rating,isbn,isbn13,language_code,# num_pages,ratings_count,text_reviews_count\n";
+        Files.write(tempDir.resolve("a.csv"), (header
+                + "1,Emma,Jane Austen,3.99,1,1,eng,100,200,10\n"
+                + "2,Persuasion,Jane Austen,4.13,2,2,eng,100,400,80\n").getBytes(StandardCharsets.UTF_8));
+        Files.write(tempDir.resolve("b.csv"), (header
+                + "3,Don Quijote,Miguel de Cervantes,3.87,3,3,spa,100,100,5\n").getBytes(StandardCharsets.UTF_8));
+        Files.write(tempDir.resolve("notes.txt"), "not a csv".getBytes(StandardCharsets.UTF_8));
+
+        String text = run(tempDir.resolve("*.csv").toString(), ReportWriter.Format.TEXT);
+        ApproximateBookStats all = new ApproximateBookStats();
+        all.accept(new Book(1, "Emma", "Jane Austen", 3.99f, "1", "1", "eng", 100, 200, 10));
+        all.accept(new Book(2, "Persuasion", "Jane Austen", 4.13f, "2", "2", "eng", 100, 400, 80));
+        all.accept(new Book(3, "Don Quijote", "Miguel de Cervantes", 3.87f, "3", "3", "spa", 100, 100, 5));
+        // The text is what the old printf based output printed.
+        String expected = "Approximate All Language Book Stats:\n"
+                + String.format(Locale.ROOT, "Books: %d, distinct authors: ~%d, distinct titles: ~%d\n", 3, 2, 3)
+                + "Authors with the most books: " + all.getAuthorsWithMostBooks(5) + "\n"
+                + String.format(Locale.ROOT, "Average rating p50/p90/p99: %.2f / %.2f / %.2f\n",
+                all.getRatingQuantile(0.5), all.getRatingQuantile(0.9), all.getRatingQuantile(0.99))
+                + String.format(Locale.ROOT, "Text review ratio p50/p90/p99: %.4f / %.4f / %.4f\n",
+                all.getRatioQuantile(0.5), all.getRatioQuantile(0.9), all.getRatioQuantile(0.99));
+        assertTrue(text.startsWith("Processing 2 files\nApproximate English Book Stats:\nBooks: 2,"), text);
+        assertTrue(text.contains(expected), text);
+
+        String csv = run(tempDir.resolve("a.csv").toString(), ReportWriter.Format.CSV);
+        assertTrue(csv.startsWith("report,books,metric,author,value,book_id,title\n"
+                + "Approximate English Book Stats,2,DISTINCT_AUTHORS,,1,,\n"), csv);
+        assertTrue(csv.contains("Approximate All Language Book Stats,2,TOP_AUTHOR,Jane Austen,2,,\n"), csv);
+
+        String jsonl = run(tempDir.toString(), ReportWriter.Format.JSONL);
+        assertTrue(jsonl.contains("{\"report\":\"Approximate All Language Book Stats\",\"books\":3,\"metric\":\"TOP_AUTHOR\","
+                + "\"author\":\"Jane Austen\",\"value\":2}\n"), jsonl);
+        assertTrue(jsonl.contains("\"metric\":\"RATIO_P99\""), jsonl);
+    }
+
+    private static String run(String location, ReportWriter.Format format) throws IOException {
+        StringWriter out = new StringWriter();
+        try (ReportWriter writer = new ReportWriter(out, format)) {
+            ApproximateBookStats.run(location, writer, new BookStats());
+        }
+        return out.toString();
+    }
+}
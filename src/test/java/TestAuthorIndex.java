@@ -0,0 +1,90 @@
+import com.patientping.*;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TestAuthorIndex {
+
+    private static BookTable table() {
+        Book augustine1 = new Book(1681, "The Confessions (Works of Saint Augustine 1)", "Augustine of Hippo-John E. Rotelle-Maria Boulding", 4.91f, "1565480848", "9781565480841", "eng", 416, 138, 24);
+        Book augustine2 = new Book(1684, "The City of God", "Augustine of Hippo-Thomas Merton-Marcus Dods", 2.92f, "0679783199", "9780679783190", "lat", 905, 99, 15);
+        Book augustine3 = new Book(1685, "The Enchiridion on Faith Hope and Love (Augustine Series 1)", "Augustine of Hippo-Bruce Harbert-John E. Rotelle", 4.04f, "1565481240", "9781565481244", "eng", 144, 251, 19);
+        Book rowling1 = new Book(4, "Harry Potter and the Chamber of Secrets (Harry Potter  #2)", "J.K. Rowling", 4.41f, "0439554896", "9780439554893", "eng", 352, 6267, 272);
+        Book rowling2 = new Book(10, "Harry Potter Collection (Harry Potter  #1-6)", "J.K. Rowling", 4.43f, "0439827604", "9780439827607", "eng", 3342, 27410, 820);
+        return BookTable.from(Arrays.asList(augustine1, augustine2, augustine3, rowling1, rowling2));
+    }
+
+    @Test
+    public void testBuildAssignsIdsAndPostings() {
+        AuthorIndex index = AuthorIndex.build(table());
+
+        assertEquals(7, index.authorCount());
+        assertEquals(0, index.getId("Augustine of Hippo"));
+        assertEquals("J.K. Rowling", index.getName(index.getId("J.K. Rowling")));
+        assertEquals(-1, index.getId("Herman Melville"));
+        assertArrayEquals(new int[]{0, 1, 2}, index.getRows(index.getId("Augustine of Hippo")));
+        assertArrayEquals(new int[]{0, 2}, index.getRows(index.getId("John E. Rotelle")));
+        assertEquals(4.474999904632568, index.getAverageRating(index.getId("John E. Rotelle")));
+    }
+
+    @Test
+    public void testRestrictedViewOnlySeesSelectedRows() {
+        BookTable table = table();
+        BookStats bookStats = new BookStats();
+        AuthorIndex english = AuthorIndex.build(table).restrictTo(bookStats.filterToEnglishBooks(table));
+
+        assertEquals(2, english.getBookCount(english.getId("Augustine of Hippo")));
+        assertEquals(0, english.getBookCount(english.getId("Thomas Merton")));
+        assertArrayEquals(new int[]{0, 2}, english.getRows(english.getId("Augustine of Hippo")));
+        assertEquals(2, english.getAuthor(english.getId("Augustine of Hippo")).getBooks().size());
+    }
+
+    @Test
+    public void testFindMostBooksAndHighestAverageRating() {
+        BookTable table = table();
+        BookStats bookStats = new BookStats();
+        AuthorIndex index = AuthorIndex.build(table);
+
+        Author authorWithMostBooks = bookStats.findMostBooks(index);
+        assertEquals("Augustine of Hippo", authorWithMostBooks.getName());
+        assertEquals(3, authorWithMostBooks.getBooks().size());
+
+        Author authorWithHighestAverage = bookStats.findAuthorWithHighestAverageRating(index);
+        assertEquals("Maria Boulding", authorWithHighestAverage.getName());
+        assertEquals(4.91f, authorWithHighestAverage.getAverageRatingForAllBooks());
+    }
+
+    @Test
+    public void testFindMostBooksWithNoBooks() {
+        AuthorIndex index = AuthorIndex.build(new BookTable());
+        assertEquals("", new BookStats().findMostBooks(index).getName());
+        assertEquals("", new BookStats().findAuthorWithHighestAverageRating(index).getName());
+    }
+
+    @Test
+    public void testRestrictedToNoRows() {
+        AuthorIndex none = AuthorIndex.build(table()).restrictTo(new int[0]);
+        assertEquals(0, none.getBookCount(none.getId("Augustine of Hippo")));
+        assertEquals("", new BookStats().findMostBooks(none).getName());
+        assertEquals("", new BookStats().findAuthorWithHighestAverageRating(none).getName());
+    }
+
+    @Test
+    public void testMatchesAuthorMapOnBundledBooks() throws IOException {
+        Map<String, List<Book>> booksByAuthor = new BookStats().indexByAuthor(BundledBooks.books());
+        AuthorIndex index = AuthorIndex.build(BookTable.from(BundledBooks.books()));
+
+        assertEquals(booksByAuthor.size(), index.authorCount());
+        for (Map.Entry<String, List<Book>> entry : booksByAuthor.entrySet()) {
+            int id = index.getId(entry.getKey());
+            assertEquals(entry.getValue().size(), index.getBookCount(id), entry.getKey());
+            assertEquals(new Author(entry.getKey(), entry.getValue()).getAverageRatingForAllBooks(), index.getAverageRating(id), entry.getKey());
+        }
+    }
+}
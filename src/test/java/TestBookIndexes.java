@@ -0,0 +1,97 @@
+import com.patientping.*;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestBookIndexes {
+
+    @Test
+    public void testBitmapAndOrMatchBitSet() {
+        Random random = new Random(7);
+        for (int density : new int[]{50, 5000, 60000}) {
+            CompressedBitmap a = new CompressedBitmap();
+            CompressedBitmap b = new CompressedBitmap();
+            BitSet expectedA = new BitSet();
+            BitSet expectedB = new BitSet();
+            for (int i = 0; i < density; i++) {
+                int x = random.nextInt(300_000);
+                int y = random.nextInt(300_000);
+                a.add(x);
+                b.add(y);
+                expectedA.set(x);
+                expectedB.set(y);
+            }
+            BitSet and = (BitSet) expectedA.clone();
+            and.and(expectedB);
+            BitSet or = (BitSet) expectedA.clone();
+            or.or(expectedB);
+
+            assertEquals(expectedA.cardinality(), a.cardinality());
+            assertArrayEquals(and.stream().toArray(), a.and(b).toArray());
+            assertArrayEquals(or.stream().toArray(), a.or(b).toArray());
+            assertTrue(a.contains(expectedA.nextSetBit(0)));
+            assertFalse(a.contains(expectedA.nextClearBit(0)));
+        }
+    }
+
+    @Test
+    public void testLanguageBitmapsAndPointLookups() throws IOException {
+        BookStats bookStats = new BookStats();
+        List<Book> books = BundledBooks.books();
+        BookTable table = BookTable.from(books);
+        BookIndexes indexes = BookIndexes.build(table);
+
+        assertArrayEquals(bookStats.filterToEnglishBooks(table), indexes.getEnglishRows().toArray());
+        long spanishOrFrench = books.stream().filter(b -> b.getLanguage().equals("spa") || b.getLanguage().equals("fre")).count();
+        assertEquals(spanishOrFrench, indexes.getRowsForLanguages("SPA", "fre").cardinality());
+        assertEquals(0, indexes.getRowsForLanguages("klingon").cardinality());
+
+        Book book = books.get(1234);
+        assertEquals(1234, indexes.findRowById(book.getId()));
+        assertEquals(book.toString(), indexes.findByIsbn13(Long.parseLong(book.getIsbn13())).toString());
+        assertNull(indexes.findById(-5));
+        assertEquals(-1, indexes.findRowByIsbn13(1L));
+    }
+
+    @Test
+    public void testListIndexesReturnTheListsBooks() {
+        Book english = new Book(4, "Chamber of Secrets", "J.K. Rowling", 4.41f, "0439554896", "9780439554893", "en-US", 352, 6267, 272);
+        Book spanish = new Book(30, "The Hobbit", "J.R.R. Tolkien", 4.95f, "0345538374", "9780345538376", "spa", 1728, 24, 1536);
+        Book duplicate = new Book(4, "Duplicate", "Nobody", 1.00f, "0000000000", "0000000000000", "ENG", 1, 1, 1);
+        BookIndexes indexes = BookIndexes.build(Arrays.asList(english, spanish, duplicate));
+
+        assertArrayEquals(new int[]{0, 2}, indexes.getEnglishRows().toArray());
+        assertSame(english, indexes.findById(4));
+        assertSame(spanish, indexes.findByIsbn13(9780345538376L));
+        assertEquals(-1, indexes.findRowByIsbn13(0L));
+    }
+
+    @Test
+    public void testEmptyIndexes() {
+        BookIndexes indexes = BookIndexes.build(new BookTable());
+        assertEquals(0, indexes.getEnglishRows().cardinality());
+        assertEquals(0, indexes.getRowsForLanguages("eng", "spa").cardinality());
+        assertNull(indexes.findById(4));
+        assertEquals(-1, indexes.findRowByIsbn13(9780439554893L));
+    }
+
+    @Test
+    public void testLongIntHashMapKeepsFirstValue() {
+        LongIntHashMap map = new LongIntHashMap(1);
+        for (int i = 0; i < 1000; i++) {
+            map.putIfAbsent(i * 31L, i);
+        }
+        map.putIfAbsent(0L, 99);
+        assertEquals(1000, map.size());
+        assertEquals(0, map.get(0L));
+        assertEquals(500, map.get(500 * 31L));
+        assertEquals(-1, map.get(7L));
+        assertEquals(-1, map.get(Long.MIN_VALUE));
+    }
+}
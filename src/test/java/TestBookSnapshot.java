@@ -0,0 +1,132 @@
+import com.patientping.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestBookSnapshot {
+
+    @TempDir
+    Path tempDir;
+
+    private static final String HEADER = "bookID,title,authors,average_rating,isbn,isbn13,language_code,# num_pages,ratings_count,text_reviews_count\n";
+    private static final String ROW = "4,Harry Potter and the Chamber of Secrets (Harry Potter  #2),J.K. Rowling,4.41,0439554896,9780439554893,eng,352,6267,272\n";
+
+    private Path write(String data) throws IOException {
+        Path file = tempDir.resolve("books.csv");
+        Files.write(file, data.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    @Test
+    public void testSnapshotRoundTrip() throws IOException {
+        Path csv = BundledBooks.copyTo(tempDir);
+        Path snapshotFile = tempDir.resolve("books.snapshot");
+        BookTable table = new MappedCsvLoader(csv).loadTable();
+        AuthorIndex index = AuthorIndex.build(table);
+        BookSnapshot.write(table, index, csv, snapshotFile);
+
+        BookSnapshot snapshot = BookSnapshot.open(snapshotFile);
+        assertEquals(table.size(), snapshot.size());
+        for (int row = 0; row < table.size(); row += 97) {
+            assertEquals(table.getBook(row).toString(), snapshot.getBook(row).toString());
+            assertEquals(table.getIsbn13(row), snapshot.getIsbn13(row));
+            assertEquals(table.getLanguage(row), snapshot.getLanguage(row));
+            assertEquals(table.getAverageRating(row), snapshot.getAverageRating(row));
+            assertEquals(table.getTextReviewsCount(row), snapshot.getTextReviewsCount(row));
+        }
+
+        assertEquals(index.authorCount(), snapshot.authorCount());
+        int king = snapshot.getAuthorId("Stephen King");
+        assertArrayEquals(index.getRows(index.getId("Stephen King")), snapshot.getAuthorRows(king));
+        assertEquals("Stephen King", snapshot.getAuthorName(king));
+        assertEquals(-1, snapshot.getAuthorId("Nobody At All"));
+    }
+
+    @Test
+    public void testDetectsStaleSnapshot() throws IOException {
+        Path csv = write(HEADER + ROW);
+        Path snapshotFile = tempDir.resolve("books.snapshot");
+        BookSnapshot snapshot = BookSnapshot.openOrCreate(csv, snapshotFile);
+        assertFalse(snapshot.isStale(csv));
+        int rows = snapshot.size();
+
+        Files.write(csv, "99999,New Book,New Author,4.00,0000000000,9780000000000,eng,100,100,10\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        Files.setLastModifiedTime(csv, FileTime.fromMillis(System.currentTimeMillis() + 5000));
+        assertTrue(snapshot.isStale(csv));
+
+        BookSnapshot refreshed = BookSnapshot.openOrCreate(csv, snapshotFile);
+        assertEquals(rows + 1, refreshed.size());
+        assertEquals("New Author", refreshed.getAuthors(rows));
+    }
+
+    @Test
+    public void testReportFromSnapshotMatchesReportFromCsv() throws IOException {
+        Path csv = BundledBooks.copyTo(tempDir);
+        BookSnapshot snapshot = BookSnapshot.openOrCreate(csv, tempDir.resolve("books.snapshot"));
+        BookTable table = snapshot.toTable();
+        assertEquals(snapshot.size(), table.size());
+        assertEquals(snapshot.getBook(snapshot.size() - 1).toString(), table.getBook(table.size() - 1).toString());
+
+        String fromCsv;
+        try (InputStream in = Files.newInputStream(csv)) {
+            fromCsv = report(writer -> new BookStats().run(in, writer));
+        }
+        String fromSnapshot = report(writer -> new BookStats().run(table, snapshot.toAuthorIndex(table), writer));
+        assertEquals(fromCsv, fromSnapshot);
+    }
+
+    private interface ReportTask {
+        void run(ReportWriter writer) throws IOException;
+    }
+
+    // The report without its last line, the metrics, which differ from run to run.
+    private static String report(ReportTask task) throws IOException {
+        StringWriter out = new StringWriter();
+        try (ReportWriter writer = new ReportWriter(out, ReportWriter.Format.TEXT)) {
+            task.run(writer);
+        }
+        String text = out.toString();
+        return text.substring(0, text.lastIndexOf("Metrics: "));
+    }
+
+    @Test
+    public void testFailedWriteLeavesNoFiles() throws IOException {
+        BookTable table = BookTable.from(Collections.singletonList(
+                new Book(1, "Title", "Author", 4.00f, "0000000000", "9780000000000", "eng", 100, 100, 10)));
+        Path snapshotFile = tempDir.resolve("books.snapshot");
+        // The missing source csv is only noticed after the sections are written.
+        assertThrows(IOException.class, () -> BookSnapshot.write(table, AuthorIndex.build(table), tempDir.resolve("missing.csv"), snapshotFile));
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    public void testRejectsFilesThatAreNotSnapshots() throws IOException {
+        Path notASnapshot = write(HEADER + ROW);
+        assertThrows(IOException.class, () -> BookSnapshot.open(notASnapshot));
+    }
+
+    @Test
+    public void testSnapshotOfHeaderOnlyCsv() throws IOException {
+        Path csv = write(HEADER);
+        BookSnapshot snapshot = BookSnapshot.openOrCreate(csv, tempDir.resolve("books.snapshot"));
+        assertEquals(0, snapshot.size());
+        assertEquals(0, snapshot.authorCount());
+        BookTable table = snapshot.toTable();
+        assertEquals(0, table.size());
+        assertEquals("", new BookStats().findMostBooks(snapshot.toAuthorIndex(table)).getName());
+    }
+}
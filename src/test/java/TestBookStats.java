@@ -227,4 +227,15 @@ public class TestBookStats {
         assertEquals("John E. Rotelle", authorWithHighestRatingAverage.getName());
         assertEquals(4.474999904632568, authorWithHighestRatingAverage.getAverageRatingForAllBooks());
     }
+
+    @Test
+    public void testAuthorAverageRatingIsRecalculatedAfterSetBooks() {
+        Book rowling1 = new Book(4, "Harry Potter and the Chamber of Secrets (Harry Potter  #2)", "J.K. Rowling", 4.41f, "0439554896", "9780439554893", "eng", 352, 6267, 272);
+        Book rowling2 = new Book(10, "Harry Potter Collection (Harry Potter  #1-6)", "J.K. Rowling", 4.43f, "0439827604", "9780439827607", "eng", 3342, 27410, 820);
+        Author author = new Author("J.K. Rowling", Arrays.asList(rowling1));
+        assertEquals(4.41f, author.getAverageRatingForAllBooks());
+
+        author.setBooks(Arrays.asList(rowling2));
+        assertEquals(4.43f, author.getAverageRatingForAllBooks());
+    }
 }
@@ -0,0 +1,107 @@
+import com.patientping.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestBookStatsMetrics {
+
+    @TempDir
+    Path tempDir;
+
+    private static final String CSV = "bookID,title,authors,average_rating,isbn,isbn13,language_code,# num_pages,ratings_count,text_reviews_count\n"
+            + "1,Harry Potter and the Half-Blood Prince (Harry Potter  #6),J.K. Rowling-Mary GrandPr\u00e9,4.56,0439785960,9780439785969,eng,652,1944099,26249\n"
+            + "2,Too Few Fields,Nobody,4.0\n"
+            + "3,\"Love, Actually\",Somebody,4.1,0439785960,9780439785969,eng,100,10,1\n"
+            + "4,Bad Rating,Somebody,four,0439785960,9780439785969,eng,100,10,1\n"
+            + "5,Bad Pages,Somebody,4.2,0439785960,9780439785969,eng,1OO,10,1\n"
+            + "6,Harry Potter and the Order of the Phoenix (Harry Potter  #5),J.K. Rowling-Mary GrandPr\u00e9,4.49,0439358078,9780439358071,eng,870,1996446,27613\n";
+
+    @Test
+    public void testRejectedRowsAreCountedByReason() throws IOException {
+        BookStats bookStats = new BookStats();
+        byte[] bytes = CSV.getBytes(StandardCharsets.UTF_8);
+        List<Book> books = bookStats.loadCsv(new ByteArrayInputStream(bytes));
+
+        assertEquals(2, books.size());
+        assertEquals(6, books.get(1).getId());
+        BookStatsMetrics metrics = bookStats.getMetrics();
+        assertEquals(1, metrics.getRejectedRows(RejectReason.WRONG_FIELD_COUNT));
+        assertEquals(1, metrics.getRejectedRows(RejectReason.QUOTED_COMMA));
+        assertEquals(2, metrics.getRejectedRows(RejectReason.UNPARSABLE_NUMBER));
+        assertEquals(2, metrics.getRowsLoaded());
+        assertEquals(bytes.length, metrics.getBytesLoaded());
+        assertTrue(metrics.getRowsPerSecond() > 0);
+        assertEquals(1, metrics.getPhaseCount("load"));
+    }
+
+    @Test
+    public void testBadHeadersAreCounted() throws IOException {
+        for (String csv : new String[]{"id,title\n1,Emma\n", ""}) {
+            byte[] bytes = csv.getBytes(StandardCharsets.UTF_8);
+            Path file = Files.write(tempDir.resolve("books.csv"), bytes);
+            BookStatsMetrics metrics = new BookStatsMetrics();
+            assertEquals(0, new BookStats(metrics).loadCsv(new ByteArrayInputStream(bytes)).size());
+            assertEquals(0, new MappedCsvLoader(file, metrics).loadTable().size());
+            assertEquals(0, new ParallelCsvLoader(file, ForkJoinPool.commonPool(), 1 << 20, metrics).loadCsv().size());
+            assertEquals(3, metrics.getRejectedRows(RejectReason.BAD_HEADER));
+            assertEquals(3, metrics.getRejectedBadHeader());
+            assertEquals(0, metrics.getRejectedWrongFieldCount());
+        }
+    }
+
+    @Test
+    public void testPhaseTimersAndHistogram() {
+        BookStatsMetrics metrics = new BookStatsMetrics();
+        metrics.record("index", 1000);
+        metrics.record("index", 1500);
+        metrics.record("index", 3_000_000);
+        assertEquals(Integer.valueOf(7), metrics.time("filter", () -> 7));
+
+        assertArrayEquals(new String[]{"index", "filter"}, metrics.getPhaseNames());
+        assertEquals(3, metrics.getPhaseCount("index"));
+        assertEquals(3.0025, metrics.getPhaseTotalMillis("index"), 1e-9);
+        assertEquals(3.0, metrics.getPhaseMaxMillis("index"), 1e-9);
+        long[] histogram = metrics.getPhaseHistogram("index");
+        assertEquals(1, histogram[10]); // 1000ns is in [512, 1024)
+        assertEquals(1, histogram[11]); // 1500ns is in [1024, 2048)
+        assertEquals(1, histogram[22]);
+        assertEquals(0, metrics.getPhaseCount("missing"));
+
+        String json = metrics.toJson();
+        assertTrue(json.startsWith("{\"load\":{\"rows\":0,"), json);
+        assertTrue(json.contains("\"rejectedRows\":{\"WRONG_FIELD_COUNT\":0,\"UNPARSABLE_NUMBER\":0,\"QUOTED_COMMA\":0,\"BAD_HEADER\":0}"), json);
+        assertTrue(json.contains("\"index\":{\"count\":3,\"totalNanos\":3002500,\"maxNanos\":3000000,\"histogram\":{\"1024\":1,\"2048\":1,\"4194304\":1}}"), json);
+
+        metrics.reset();
+        assertEquals(0, metrics.getPhaseNames().length);
+    }
+
+    @Test
+    public void testRegisteredWithJmx() throws Exception {
+        BookStats bookStats = new BookStats();
+        bookStats.loadCsv(new ByteArrayInputStream(CSV.getBytes(StandardCharsets.UTF_8)));
+        ObjectName name = bookStats.getMetrics().register();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            assertEquals(2L, server.getAttribute(name, "RowsLoaded"));
+            assertEquals(1L, server.getAttribute(name, "RejectedQuotedComma"));
+            assertEquals(1L, server.invoke(name, "getPhaseCount", new Object[]{"load"}, new String[]{String.class.getName()}));
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+import com.patientping.Book;
+import com.patientping.BookDataset;
+import com.patientping.BookStatsServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestBookStatsServer {
+
+    private BookStatsServer server;
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        Book rowling1 = new Book(4, "Harry Potter and the Chamber of Secrets (Harry Potter  #2)", "J.K. Rowling", 4.41f, "0439554896", "9780439554893", "eng", 352, 6267, 272);
+        Book rowling2 = new Book(10, "Harry Potter Collection (Harry Potter  #1-6)", "J.K. Rowling", 4.73f, "0439827604", "9780439827607", "eng", 3342, 27410, 820);
+        Book quoted = new Book(30, "The \"Hobbit\"", "J.R.R. Tolkien", 4.95f, "0345538374", "9780345538376", "spa", 1728, 24, 1536);
+        server = new BookStatsServer(new BookDataset(Arrays.asList(rowling1, rowling2, quoted)), 0);
+        server.start();
+    }
+
+    @AfterEach
+    public void stopServer() {
+        server.stop();
+    }
+
+    private String[] get(String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + server.getPort() + path).openConnection();
+        int status = connection.getResponseCode();
+        try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                body.write(buffer, 0, read);
+            }
+            return new String[]{String.valueOf(status), body.toString(StandardCharsets.UTF_8.name())};
+        }
+    }
+
+    @Test
+    public void testRankedEndpoints() throws IOException {
+        assertEquals("[{\"name\":\"J.K. Rowling\",\"books\":2,\"averageRating\":4.5699997},{\"name\":\"J.R.R. Tolkien\",\"books\":1,\"averageRating\":4.95}]",
+                get("/authors/most-books?k=5")[1]);
+        assertEquals("[{\"name\":\"J.R.R. Tolkien\",\"books\":1,\"averageRating\":4.95}]", get("/authors/highest-average-rating?k=1")[1]);
+        assertTrue(get("/books/highest-rated?k=1")[1].startsWith("[{\"id\":10,"));
+        assertTrue(get("/books/highest-rated?k=1&minRatings=0")[1].startsWith("[{\"id\":30,\"title\":\"The \\\"Hobbit\\\"\""));
+        assertTrue(get("/books/highest-ratio?k=1&english=true")[1].startsWith("[{\"id\":4,"));
+    }
+
+    @Test
+    public void testLookupById() throws IOException {
+        assertEquals("{\"id\":4,\"title\":\"Harry Potter and the Chamber of Secrets (Harry Potter  #2)\",\"authors\":\"J.K. Rowling\",\"averageRating\":4.41,"
+                        + "\"isbn\":\"0439554896\",\"isbn13\":\"9780439554893\",\"language\":\"eng\",\"numPages\":352,\"ratingsCount\":6267,\"textReviewsCount\":272}",
+                get("/books/4")[1]);
+        assertEquals("404", get("/books/5")[0]);
+        assertTrue(get("/books/isbn13/9780345538376")[1].startsWith("{\"id\":30,"));
+        assertEquals("404", get("/books/isbn13/9780345538377")[0]);
+        assertEquals("400", get("/books/isbn13/978-0345538376")[0]);
+    }
+
+    @Test
+    public void testSearch() throws IOException {
+        assertEquals("[{\"name\":\"J.R.R. Tolkien\",\"books\":1,\"averageRating\":4.95}]", get("/authors/complete?prefix=TOLK")[1]);
+        assertTrue(get("/books/complete?prefix=potter&k=1")[1].startsWith("[{\"id\":10,"));
+        assertTrue(get("/books/search?q=the+hobit")[1].startsWith("[{\"book\":{\"id\":30,"));
+        assertTrue(get("/authors/search?q=jk+rowlin")[1].startsWith("[{\"name\":\"J.K. Rowling\",\"books\":2,"));
+        assertEquals("400", get("/authors/search")[0]);
+    }
+
+    @Test
+    public void testBadRequests() throws IOException {
+        assertEquals("400", get("/books/abc")[0]);
+        assertEquals("400", get("/books/highest-rated?k=-1")[0]);
+        assertEquals("404", get("/nothing")[0]);
+        assertEquals("{\"books\":3,\"englishBooks\":2,\"authors\":2}", get("/stats")[1]);
+    }
+
+    @Test
+    public void testParsePort() {
+        assertEquals(8080, BookStatsServer.parsePort("8080"));
+        assertEquals(0, BookStatsServer.parsePort("0"));
+        for (String bad : new String[]{"", "http", "-1", "65536", "99999999999"}) {
+            assertThrows(IllegalArgumentException.class, () -> BookStatsServer.parsePort(bad), bad);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+import com.patientping.AuthorIndex;
+import com.patientping.Book;
+import com.patientping.BookStats;
+import com.patientping.BookTable;
+import com.patientping.MappedCsvLoader;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class TestBookTable {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testRoundTripsBooks() {
+        Book regular = new Book(1, "Harry Potter and the Half-Blood Prince (Harry Potter  #6)", "J.K. Rowling-Mary GrandPr\u00e9", 4.56f, "0439785960", "9780439785969", "eng", 652, 1944099, 26249);
+        Book irregularIsbn13 = new Book(2, "Formas breves", "Ricardo Piglia", 4.16f, "843392463X", "0788433924636", "spa", 144, 210, 27);
+        BookTable table = BookTable.from(Arrays.asList(regular, irregularIsbn13));
+
+        assertEquals(2, table.size());
+        assertEquals("J.K. Rowling-Mary GrandPr\u00e9", table.getAuthors(0));
+        assertEquals(9780439785969L, table.getIsbn13AsLong(0));
+        assertEquals("9780439785969", table.getIsbn13(0));
+        assertEquals("0788433924636", table.getIsbn13(1));
+        assertEquals("843392463X", table.getIsbn(1));
+        assertEquals("spa", table.getLanguage(1));
+        assertEquals(Arrays.asList("eng", "spa"), table.getLanguages());
+        assertEquals(irregularIsbn13.toString(), table.getBook(1).toString());
+        assertEquals(27, table.getBook(1).getTextReviewsCount());
+    }
+
+    @Test
+    public void testFieldsCanCrossPages() {
+        Book accented = new Book(1, "L'\u00c9l\u00e9gance du h\u00e9risson", "Muriel Barbery", 3.74f, "2070391165", "9782070391165", "fre", 368, 2054, 171);
+        Book empty = new Book(2, "", "Nobody", 1f, "", "", "eng", 1, 1, 1);
+        Book longTitle = new Book(3, "The Lord of the Rings: The Fellowship of the Ring", "J.R.R. Tolkien", 4.36f, "0618346252", "9780618346257", "eng", 398, 2128944, 13670);
+        // With 8-byte pages most fields, and some two-byte characters, are split between pages.
+        BookTable table = new BookTable(8);
+        for (Book book : Arrays.asList(accented, empty, longTitle, accented)) {
+            table.add(book);
+        }
+        assertEquals(accented.toString(), table.getBook(0).toString());
+        assertEquals(empty.toString(), table.getBook(1).toString());
+        assertEquals(longTitle.toString(), table.getBook(2).toString());
+        assertEquals("L'\u00c9l\u00e9gance du h\u00e9risson", table.getTitle(3));
+        assertThrows(IllegalArgumentException.class, () -> new BookTable(100));
+    }
+
+    @Test
+    public void testFilterToEnglishBooks() {
+        Book englishBookEnUs = new Book(280, "The Ravishing of Lol Stein", "Marguerite Duras-Richard Seever", 3.67f, "0394743040", "9780394743042", "en-US", 181, 1939, 122);
+        Book englishBookEng = new Book(1053, "The Richest Man in Babylon", "George S. Clason", 4.25f, "1419349996", "9781419349997", "eng", 4, 78, 12);
+        Book spanishBook = new Book(1642, "Formas breves", "Ricardo Piglia", 4.16f, "843392463X", "9788433924636", "spa", 144, 210, 27);
+        BookTable table = BookTable.from(Arrays.asList(englishBookEng, spanishBook, englishBookEnUs));
+
+        assertArrayEquals(new int[]{0, 2}, new BookStats().filterToEnglishBooks(table));
+    }
+
+    @Test
+    public void testColumnScansWithNoQualifyingBooks() {
+        Book fewRatings = new Book(1, "Unrated", "Nobody", 5f, "", "", "eng", 10, 24, 0);
+        Book noRatings = new Book(2, "Unread", "Nobody", 0f, "", "", "spa", 10, 0, 3);
+        BookTable table = BookTable.from(Arrays.asList(fewRatings, noRatings));
+        BookStats bookStats = new BookStats();
+
+        assertEquals(-1, bookStats.findHighestRatedBook(table).getId());
+        assertEquals(-1, bookStats.findHighestRatio(table).getId());
+        assertEquals(-1, bookStats.findHighestRatedBook(table, new int[0]).getId());
+        assertEquals(-1, bookStats.findHighestRatedBook(new BookTable()).getId());
+    }
+
+    @Test
+    public void testColumnScansMatchListScans() throws IOException {
+        BookStats bookStats = new BookStats();
+        BookTable table = new MappedCsvLoader(BundledBooks.copyTo(tempDir)).loadTable();
+        int[] englishRows = bookStats.filterToEnglishBooks(table);
+        AuthorIndex index = AuthorIndex.build(table);
+
+        BundledBooks.assertSameAnswers(BundledBooks.sequentialReport(BundledBooks.books()), bookStats.report("All", table, null, index));
+        BundledBooks.assertSameAnswers(BundledBooks.sequentialReport(BundledBooks.englishBooks()),
+                bookStats.report("English", table, englishRows, index.restrictTo(englishRows)));
+    }
+}
@@ -0,0 +1,123 @@
+import com.patientping.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestConcurrentBookStats {
+
+    @Test
+    public void testEmptySnapshot() {
+        ConcurrentBookStats.Snapshot snapshot = new ConcurrentBookStats(25).snapshot();
+        assertEquals(0, snapshot.getBookCount());
+        assertNull(snapshot.getAuthorWithMostBooks());
+        assertNull(snapshot.getHighestRatedBook());
+        assertNull(snapshot.getHighestRatioBook());
+    }
+
+    @Test
+    public void testConcurrentProducersMatchSequentialStats() throws Exception {
+        List<Book> books = BundledBooks.books();
+        List<StatResult> expected = BundledBooks.sequentialReport(books).getResults();
+
+        ConcurrentBookStats stats = new ConcurrentBookStats(25);
+        int producers = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            futures.add(executor.submit(() -> {
+                for (int i = producer; i < books.size(); i += producers) {
+                    stats.accept(books.get(i));
+                }
+                // Readers run alongside the writers.
+                stats.snapshot();
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        ConcurrentBookStats.Snapshot snapshot = stats.snapshot();
+        assertEquals(books.size(), snapshot.getBookCount());
+        // Producers interleave, so ties may go to another author or book; the winning values cannot differ.
+        assertEquals((int) expected.get(0).getValue(), snapshot.getMostBooks());
+        assertEquals(snapshot.getMostBooks(), stats.getBookCount(snapshot.getAuthorWithMostBooks()));
+        assertEquals(expected.get(1).getValue(), snapshot.getHighestRatedBook().getAverageRating());
+        assertEquals(expected.get(2).getValue(), snapshot.getHighestRatio());
+        assertEquals(expected.get(3).getValue(), stats.getAverageRating(stats.findAuthorWithHighestAverageRating()), 1e-5);
+    }
+
+    @Test
+    public void testBooksWithTooFewRatingsAreNotRanked() {
+        ConcurrentBookStats stats = new ConcurrentBookStats(25);
+        stats.accept(new Book(1, "Unread", "Nobody", 5f, "", "", "eng", 10, 24, 0));
+        ConcurrentBookStats.Snapshot snapshot = stats.snapshot();
+        assertEquals(1, snapshot.getBookCount());
+        assertEquals("Nobody", snapshot.getAuthorWithMostBooks());
+        assertNull(snapshot.getHighestRatedBook());
+        assertNull(snapshot.getHighestRatioBook());
+    }
+
+    @Test
+    public void testReadersNeverSeeHalfAddedBooks() throws Exception {
+        // Two authors, each with ratings of only 1 and 5, so an average above 5 or a leader the counts do not
+        // include can only come from reading a half-added book.
+        ConcurrentBookStats stats = new ConcurrentBookStats(0);
+        int writers = 4;
+        int booksPerWriter = 20_000;
+        ExecutorService executor = Executors.newFixedThreadPool(writers + 2);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        List<Future<?>> readers = new ArrayList<>();
+        for (int r = 0; r < 2; r++) {
+            readers.add(executor.submit(() -> {
+                while (writing.get()) {
+                    ConcurrentBookStats.Snapshot snapshot = stats.snapshot();
+                    assertTrue(snapshot.getMostBooks() <= snapshot.getBookCount());
+                    assertTrue(snapshot.getHighestRatedBook() == null || snapshot.getBookCount() > 0);
+                    assertTrue(snapshot.getBookCount() == 0 || snapshot.getAverageRating() <= 5.0);
+                    for (String author : new String[]{"Ann", "Bob"}) {
+                        double average = stats.getAverageRating(author);
+                        assertTrue(Double.isNaN(average) || (average >= 1.0 && average <= 5.0), author + " " + average);
+                    }
+                    String best = stats.findAuthorWithHighestAverageRating();
+                    assertTrue(best == null || stats.getAverageRating(best) <= 5.0);
+                }
+            }));
+        }
+        List<Future<?>> producers = new ArrayList<>();
+        for (int w = 0; w < writers; w++) {
+            int writer = w;
+            producers.add(executor.submit(() -> {
+                for (int i = 0; i < booksPerWriter; i++) {
+                    float rating = (i + writer) % 2 == 0 ? 5f : 1f;
+                    stats.accept(new Book(i, "Title", i % 3 == 0 ? "Ann-Bob" : "Ann", rating, "", "", "eng", 100, 30, 3));
+                }
+            }));
+        }
+        try {
+            for (Future<?> producer : producers) {
+                producer.get();
+            }
+        } finally {
+            writing.set(false);
+        }
+        for (Future<?> reader : readers) {
+            reader.get();
+        }
+        executor.shutdown();
+
+        assertEquals(writers * booksPerWriter, stats.snapshot().getBookCount());
+        assertEquals(writers * booksPerWriter, stats.getBookCount("Ann"));
+        assertEquals("Ann", stats.snapshot().getAuthorWithMostBooks());
+    }
+}
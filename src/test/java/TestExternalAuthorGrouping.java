@@ -0,0 +1,133 @@
+import com.patientping.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestExternalAuthorGrouping {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testSpilledRunsMatchInMemoryGrouping() throws IOException {
+        for (List<Book> subset : Arrays.asList(BundledBooks.books(), BundledBooks.englishBooks())) {
+            List<StatResult> expected = BundledBooks.sequentialReport(subset).getResults();
+
+            try (ExternalAuthorGrouping grouping = new ExternalAuthorGrouping(64 * 1024, tempDir, 3)) {
+                subset.forEach(grouping);
+                assertTrue(grouping.getRunCount() > 10, "runs: " + grouping.getRunCount());
+
+                AuthorTotals mostBooks = grouping.findMostBooks();
+                assertEquals(expected.get(0).getAuthor(), mostBooks.getName());
+                assertEquals((int) expected.get(0).getValue(), mostBooks.getBookCount());
+                AuthorTotals highestAverage = grouping.findHighestAverageRating();
+                assertEquals(expected.get(3).getAuthor(), highestAverage.getName());
+                assertEquals(expected.get(3).getValue(), highestAverage.getAverageRating());
+                assertTrue(grouping.getRunCount() < 3);
+            }
+            try (Stream<Path> left = Files.list(tempDir)) {
+                assertEquals(0, left.count());
+            }
+        }
+    }
+
+    @Test
+    public void testTiesGoToAuthorSeenFirst() throws IOException {
+        List<Book> books = Arrays.asList(
+                new Book(1, "First", "Zora Writer-Abe Writer", 4.5f, "1", "1", "eng", 100, 30, 3),
+                new Book(2, "Second", "Abe Writer-Zora Writer", 4.0f, "2", "2", "eng", 100, 30, 3),
+                new Book(3, "Third", "Mid Writer", 4.25f, "3", "3", "eng", 100, 30, 3));
+        BookStats bookStats = new BookStats();
+        Map<String, List<Book>> booksByAuthor = bookStats.indexByAuthor(books);
+
+        try (ExternalAuthorGrouping grouping = new ExternalAuthorGrouping(0, tempDir, 2)) {
+            books.forEach(grouping);
+            assertEquals("Zora Writer", grouping.findMostBooks().getName());
+            assertEquals(bookStats.findMostBooks(booksByAuthor).getName(), grouping.findMostBooks().getName());
+            assertEquals("Zora Writer", grouping.findHighestAverageRating().getName());
+            assertEquals(bookStats.findAuthorWithHighestAverageRating(booksByAuthor).getName(), grouping.findHighestAverageRating().getName());
+
+            // More books after a summary are included in the next one.
+            grouping.accept(new Book(4, "Fourth", "Mid Writer", 4.25f, "4", "4", "eng", 100, 30, 3));
+            grouping.accept(new Book(5, "Fifth", "Mid Writer", 4.25f, "5", "5", "eng", 100, 30, 3));
+            assertEquals("Mid Writer", grouping.findMostBooks().getName());
+        }
+    }
+
+    @Test
+    public void testNearTieAveragesAreSummedAsFloats() throws IOException {
+        // Summed as floats in book order, Near's ratings average 3.2249997, tying Tied, who was seen first.
+        // Summed as doubles they would average 3.225 and win.
+        List<Book> books = new ArrayList<>();
+        books.add(new Book(0, "Only", "Tied", 3.2249997f, "0", "0", "eng", 100, 30, 3));
+        for (float rating : new float[]{2.95f, 4.66f, 1.64f, 2.48f, 4.46f, 3.16f}) {
+            books.add(new Book(books.size(), "Book", "Near", rating, "", "", "eng", 100, 30, 3));
+            books.add(new Book(books.size(), "Filler", "Other", 1f, "", "", "eng", 100, 30, 3));
+        }
+        Map<String, List<Book>> booksByAuthor = new BookStats().indexByAuthor(books);
+        assertEquals("Tied", new BookStats().findAuthorWithHighestAverageRating(booksByAuthor).getName());
+
+        // Every pair is spilled and the runs are merged two at a time, so Near's ratings come from many runs.
+        try (ExternalAuthorGrouping grouping = new ExternalAuthorGrouping(0, tempDir, 2)) {
+            books.forEach(grouping);
+            assertEquals("Tied", grouping.findHighestAverageRating().getName());
+            assertEquals(3.2249997f, grouping.findHighestAverageRating().getAverageRating());
+        }
+    }
+
+    @Test
+    public void testNoBooks() throws IOException {
+        try (ExternalAuthorGrouping grouping = new ExternalAuthorGrouping(1024, tempDir, 2)) {
+            assertNull(grouping.findMostBooks());
+            assertNull(grouping.findHighestAverageRating());
+        }
+    }
+
+    @Test
+    public void testParseMemoryBudget() {
+        assertEquals(268435456L, ExternalAuthorGrouping.parseMemoryBudget("268435456"));
+        assertEquals(512L * 1024, ExternalAuthorGrouping.parseMemoryBudget("512k"));
+        assertEquals(64L << 20, ExternalAuthorGrouping.parseMemoryBudget("64M"));
+        assertEquals(2L << 30, ExternalAuthorGrouping.parseMemoryBudget("2g"));
+        for (String bad : new String[]{"", "m", "0", "-5", "12x", "99999999999999g"}) {
+            assertThrows(IllegalArgumentException.class, () -> ExternalAuthorGrouping.parseMemoryBudget(bad), bad);
+        }
+    }
+
+    @Test
+    public void testRunWithTinyBudgetMatchesDefault() throws IOException {
+        String csv = "bookID,title,authors,average_rating,isbn,isbn13,language_code,# num_pages,ratings_count,text_reviews_count\n"
+                + "1,Emma,Jane Austen,3.99,1,1,eng,100,200,10\n"
+                + "2,Persuasion,Jane Austen,4.13,2,2,eng,100,400,80\n"
+                + "3,Don Quijote,Miguel de Cervantes,4.37,3,3,spa,100,100,5\n";
+        String expected = "English Book Stats:\n"
+                + "Author with the most books: Jane Austen. 2 books.\n"
+                + "Author with the highest average rating across all books: Jane Austen. 4.060000 average rating.\n"
+                + "All Language Book Stats:\n"
+                + "Author with the most books: Jane Austen. 2 books.\n"
+                + "Author with the highest average rating across all books: Miguel de Cervantes. 4.370000 average rating.\n";
+        for (long budget : new long[]{1, ExternalAuthorGrouping.DEFAULT_MEMORY_BUDGET}) {
+            StringWriter out = new StringWriter();
+            try (ReportWriter writer = new ReportWriter(out, ReportWriter.Format.TEXT)) {
+                ExternalAuthorGrouping.run(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), writer, new BookStats(), budget);
+            }
+            assertTrue(out.toString().startsWith(expected), out.toString());
+        }
+    }
+}
@@ -0,0 +1,163 @@
+import com.patientping.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestFollowingBookStats {
+    private static final String HEADER = "bookID,title,authors,average_rating,isbn,isbn13,language_code,# num_pages,ratings_count,text_reviews_count\n";
+    private static final String ROWLING = "4,Harry Potter and the Chamber of Secrets (Harry Potter  #2),J.K. Rowling,4.41,0439554896,9780439554893,eng,352,6267,272\n";
+    private static final String AUGUSTINE = "1681,The Confessions (Works of Saint Augustine 1),Augustine of Hippo-John E. Rotelle,4.91,1565480848,9781565480841,eng,416,138,24\n";
+    private static final String TOLKIEN = "30,The Hobbit,J.R.R. Tolkien,4.95,0345538374,9780345538376,spa,1728,24,1536\n";
+
+    @TempDir
+    Path tempDir;
+
+    private static void append(Path file, String text) throws IOException {
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    @Test
+    public void testReadsOnlyAppendedRows() throws IOException {
+        Path file = tempDir.resolve("books.csv");
+        BookStats bookStats = new BookStats();
+        FollowingBookStats following = new FollowingBookStats(file, bookStats);
+        assertEquals(0, following.poll()); // not created yet
+
+        append(file, HEADER + ROWLING);
+        assertEquals(1, following.poll());
+        assertEquals(0, following.poll());
+
+        // The second row is still being written, so it waits for its line terminator.
+        String partial = TOLKIEN.substring(0, 20);
+        append(file, AUGUSTINE + partial);
+        assertEquals(1, following.poll());
+        assertEquals(Files.size(file) - partial.length(), following.getOffset());
+        assertEquals("Augustine of Hippo", following.getAllStats().getAuthorWithHighestAverageRating().getName());
+
+        append(file, TOLKIEN.substring(20) + "1,too,few,fields\n");
+        assertEquals(1, following.poll());
+        assertEquals(Files.size(file), following.getOffset());
+        assertEquals(3, following.getAllStats().getBookCount());
+        assertEquals(2, following.getEnglishStats().getBookCount());
+        assertEquals("J.R.R. Tolkien", following.getAllStats().getHighestRatioBook().getAuthors());
+        assertEquals(1, bookStats.getMetrics().getRejectedRows(RejectReason.WRONG_FIELD_COUNT));
+        assertEquals(0, following.getReloadCount());
+        // The partial row was read twice but its bytes are only counted once.
+        assertEquals(Files.size(file), bookStats.getMetrics().getBytesLoaded());
+    }
+
+    @Test
+    public void testBadHeaderIsCountedOnce() throws IOException {
+        Path file = tempDir.resolve("books.csv");
+        BookStats bookStats = new BookStats();
+        FollowingBookStats following = new FollowingBookStats(file, bookStats);
+        append(file, "id,title\n" + ROWLING);
+        assertEquals(0, following.poll());
+        append(file, AUGUSTINE);
+        assertEquals(0, following.poll());
+        assertEquals(1, bookStats.getMetrics().getRejectedRows(RejectReason.BAD_HEADER));
+    }
+
+    @Test
+    public void testReloadsWhenRewrittenPastTheOffset() throws IOException {
+        Path file = tempDir.resolve("books.csv");
+        append(file, HEADER + ROWLING);
+        FollowingBookStats following = new FollowingBookStats(file);
+        assertEquals(1, following.poll());
+
+        // Truncated and refilled between two polls, so the file is already longer than the offset again.
+        Files.write(file, (HEADER + TOLKIEN + AUGUSTINE).getBytes(StandardCharsets.UTF_8), StandardOpenOption.TRUNCATE_EXISTING);
+        assertEquals(2, following.poll());
+        assertEquals(1, following.getReloadCount());
+        assertEquals(2, following.getAllStats().getBookCount());
+        assertEquals("J.R.R. Tolkien", following.getAllStats().getAuthorWithMostBooks().getName());
+    }
+
+    @Test
+    public void testReloadsAfterTruncationOrRotation() throws IOException {
+        Path file = tempDir.resolve("books.csv");
+        append(file, HEADER + ROWLING + AUGUSTINE);
+        FollowingBookStats following = new FollowingBookStats(file);
+        assertEquals(2, following.poll());
+
+        Files.write(file, (HEADER + TOLKIEN).getBytes(StandardCharsets.UTF_8), StandardOpenOption.TRUNCATE_EXISTING);
+        assertEquals(1, following.poll());
+        assertEquals(1, following.getReloadCount());
+        assertEquals(1, following.getAllStats().getBookCount());
+        assertEquals("J.R.R. Tolkien", following.getAllStats().getAuthorWithMostBooks().getName());
+
+        // A new, larger file moved into place is only noticed by its file key.
+        Path rotated = tempDir.resolve("books.csv.new");
+        append(rotated, HEADER + ROWLING + AUGUSTINE + ROWLING);
+        Files.move(rotated, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (Files.readAttributes(file, "basic:fileKey").get("fileKey") != null) {
+            assertEquals(3, following.poll());
+            assertEquals(2, following.getReloadCount());
+            assertEquals("J.K. Rowling", following.getAllStats().getAuthorWithMostBooks().getName());
+        }
+    }
+
+    @Test
+    public void testMatchesFullLoadWhenAppendedInChunks() throws IOException {
+        byte[] csv = BundledBooks.csv();
+        Path file = tempDir.resolve("books.csv");
+        FollowingBookStats following = new FollowingBookStats(file);
+        int added = 0;
+        for (int start = 0; start < csv.length; start += 100_000) {
+            byte[] chunk = new byte[Math.min(100_000, csv.length - start)];
+            System.arraycopy(csv, start, chunk, 0, chunk.length);
+            Files.write(file, chunk, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            added += following.poll();
+        }
+
+        assertEquals(BundledBooks.books().size(), added);
+        BundledBooks.assertSameAnswers(BundledBooks.sequentialReport(BundledBooks.books()), StatsReport.of("All", following.getAllStats()));
+        BundledBooks.assertSameAnswers(BundledBooks.sequentialReport(BundledBooks.englishBooks()), StatsReport.of("English", following.getEnglishStats()));
+    }
+
+    @Test
+    public void testFollowReportsAppends() throws Exception {
+        Path file = tempDir.resolve("books.csv");
+        append(file, HEADER + ROWLING);
+        FollowingBookStats following = new FollowingBookStats(file);
+        CountDownLatch twoBooks = new CountDownLatch(1);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread follower = new Thread(() -> {
+            try {
+                following.follow(stats -> {
+                    if (stats.getAllStats().getBookCount() == 2) {
+                        twoBooks.countDown();
+                    }
+                });
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        follower.start();
+        try {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (following.getOffset() == 0) {
+                assertTrue(System.nanoTime() < deadline, "follow never read the first row");
+                Thread.sleep(10);
+            }
+            append(file, AUGUSTINE);
+            assertTrue(twoBooks.await(10, TimeUnit.SECONDS));
+        } finally {
+            following.close();
+            follower.join(5000);
+        }
+        assertEquals(null, failure.get());
+    }
+}
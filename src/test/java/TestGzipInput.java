@@ -0,0 +1,150 @@
+import com.patientping.BookStats;
+import com.patientping.GzipInput;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestGzipInput {
+
+    private static final String CSV = "bookID,title,authors,average_rating,isbn,isbn13,language_code,# num_pages,ratings_count,text_reviews_count\n"
+            + "14428,The Inheritors,William Golding,3.53,0156443791,9780156443791,en-US,240,2681,257\n"
+            + "2386,Moby Dick,Herman Melville-William Hootkins,3.49,9626343583,9789626343586,eng,25,66,17\n";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testMultiMemberFileMatchesPlainCsv() throws IOException {
+        byte[] csv = BundledBooks.csv();
+        Path file = tempDir.resolve("books.csv.gz");
+        Files.write(file, gzipMembers(csv, 20, Deflater.DEFAULT_COMPRESSION));
+
+        assertArrayEquals(csv, readAll(GzipInput.open(file, 4, 1024 * 1024)));
+        BundledBooks.assertSameBooks(BundledBooks.books(), new BookStats().loadCsv(file));
+    }
+
+    @Test
+    public void testHeaderBytesInsideMembersAreNotMemberStarts() throws IOException {
+        // Stored (uncompressed) members copy their data verbatim, so every copy of the gzip magic in the data is a
+        // false member start that has to be rejected.
+        byte[] data = new byte[300_000];
+        Random random = new Random(42);
+        random.nextBytes(data);
+        for (int i = 0; i + 4 < data.length; i += 997) {
+            data[i] = 0x1F;
+            data[i + 1] = (byte) 0x8B;
+            data[i + 2] = 8;
+            data[i + 3] = 0;
+        }
+        Path file = tempDir.resolve("stored.gz");
+        Files.write(file, gzipMembers(data, 7, Deflater.NO_COMPRESSION));
+
+        assertArrayEquals(data, readAll(GzipInput.open(file, 3, 1024 * 1024)));
+        // Members bigger than the buffer limit are streamed instead.
+        assertArrayEquals(data, readAll(GzipInput.open(file, 3, 1000)));
+    }
+
+    @Test
+    public void testStreamsAreDecompressedTransparently() throws IOException {
+        byte[] csv = CSV.getBytes(StandardCharsets.UTF_8);
+        byte[] gzip = gzipMembers(csv, 1, Deflater.DEFAULT_COMPRESSION);
+        assertEquals(2, new BookStats().loadCsv(new ByteArrayInputStream(gzip)).size());
+
+        Path plain = tempDir.resolve("books.csv");
+        Files.write(plain, csv);
+        assertArrayEquals(csv, readAll(GzipInput.open(plain)));
+    }
+
+    @Test
+    public void testEmptyFileAndEmptyMember() throws IOException {
+        Path empty = tempDir.resolve("empty.gz");
+        Files.write(empty, new byte[0]);
+        assertArrayEquals(new byte[0], readAll(GzipInput.open(empty)));
+
+        // An empty member between two others adds nothing.
+        byte[] csv = CSV.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream members = new ByteArrayOutputStream();
+        members.write(gzipMembers(Arrays.copyOf(csv, 100), 1, Deflater.DEFAULT_COMPRESSION));
+        new GZIPOutputStream(members).close();
+        members.write(gzipMembers(Arrays.copyOfRange(csv, 100, csv.length), 1, Deflater.DEFAULT_COMPRESSION));
+        Path file = tempDir.resolve("books.csv.gz");
+        Files.write(file, members.toByteArray());
+        assertArrayEquals(csv, readAll(GzipInput.open(file, 2, 1024 * 1024)));
+    }
+
+    @Test
+    public void testStreamCsvStopsDecompressingWhenTheConsumerFails() throws Exception {
+        // More rows than the decompressing thread may get ahead of the reader, so it would block forever if left.
+        byte[] csv = BundledBooks.csv();
+        int body = new String(csv, StandardCharsets.UTF_8).indexOf('\n') + 1;
+        ByteArrayOutputStream large = new ByteArrayOutputStream();
+        large.write(csv);
+        for (int i = 0; i < 4; i++) {
+            large.write(csv, body, csv.length - body);
+        }
+        byte[] gzip = gzipMembers(large.toByteArray(), 1, Deflater.DEFAULT_COMPRESSION);
+        assertThrows(IllegalStateException.class, () -> new BookStats().streamCsv(new ByteArrayInputStream(gzip), book -> {
+            throw new IllegalStateException("consumer failed");
+        }));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (Thread.getAllStackTraces().keySet().stream().anyMatch(t -> t.getName().equals("gzip-decompress"))) {
+            assertTrue(System.nanoTime() < deadline, "the decompressing thread is still running");
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testCorruptMemberFails() throws IOException {
+        byte[] data = new byte[100_000];
+        new Random(7).nextBytes(data);
+        byte[] gzip = gzipMembers(data, 3, Deflater.DEFAULT_COMPRESSION);
+        gzip[gzip.length - 6] ^= 1; // last member's CRC
+        Path file = tempDir.resolve("corrupt.gz");
+        Files.write(file, gzip);
+
+        assertThrows(IOException.class, () -> readAll(GzipInput.open(file, 2, 1024 * 1024)));
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        try (InputStream closing = in) {
+            return BundledBooks.readAll(closing);
+        }
+    }
+
+    /**
+     * Split data into roughly equal parts and gzip each one as its own member, as pigz and bgzip do.
+     */
+    private static byte[] gzipMembers(byte[] data, int members, int level) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int partSize = (data.length + members - 1) / members;
+        for (int start = 0; start < data.length; start += partSize) {
+            ByteArrayOutputStream member = new ByteArrayOutputStream();
+            try (GZIPOutputStream gzip = new GZIPOutputStream(member) {
+                {
+                    def.setLevel(level);
+                }
+            }) {
+                gzip.write(Arrays.copyOfRange(data, start, Math.min(data.length, start + partSize)));
+            }
+            out.write(member.toByteArray());
+        }
+        return out.toByteArray();
+    }
+}
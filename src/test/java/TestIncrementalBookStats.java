@@ -0,0 +1,62 @@
+import com.patientping.*;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class TestIncrementalBookStats {
+
+    @Test
+    public void testStatsUpdateAfterEachBatch() {
+        Book augustine1 = new Book(1681, "The Confessions (Works of Saint Augustine 1)", "Augustine of Hippo-John E. Rotelle", 4.91f, "1565480848", "9781565480841", "eng", 416, 138, 24);
+        Book augustine2 = new Book(1684, "The City of God", "Augustine of Hippo-Thomas Merton", 2.92f, "0679783199", "9780679783190", "eng", 905, 99, 15);
+        Book rowling1 = new Book(4, "Harry Potter and the Chamber of Secrets (Harry Potter  #2)", "J.K. Rowling", 4.41f, "0439554896", "9780439554893", "eng", 352, 6267, 272);
+        Book rowling2 = new Book(10, "Harry Potter Collection (Harry Potter  #1-6)", "J.K. Rowling", 4.95f, "0439827604", "9780439827607", "eng", 3342, 24, 820);
+        IncrementalBookStats stats = new IncrementalBookStats(25);
+        assertNull(stats.getAuthorWithMostBooks());
+
+        stats.append(Arrays.asList(augustine1, rowling1));
+        assertEquals("Augustine of Hippo", stats.getAuthorWithMostBooks().getName());
+        assertEquals("Augustine of Hippo", stats.getAuthorWithHighestAverageRating().getName());
+        assertEquals(augustine1, stats.getHighestRatedBook());
+
+        stats.append(Arrays.asList(augustine2, rowling2));
+        assertEquals(4, stats.getBookCount());
+        assertEquals("Augustine of Hippo", stats.getAuthorWithMostBooks().getName());
+        assertEquals(2, stats.getAuthorWithMostBooks().getBookCount());
+        assertEquals("John E. Rotelle", stats.getAuthorWithHighestAverageRating().getName());
+        assertEquals(4.91f, stats.getTotals("Augustine of Hippo").getMaxRating());
+        assertEquals(augustine1, stats.getHighestRatedBook()); // rowling2 has too few ratings
+        assertEquals(rowling2, stats.getHighestRatioBook());
+        assertEquals(4.95f, stats.getMaxRating());
+    }
+
+    @Test
+    public void testEmptyBatchesAndUnqualifiedBooks() {
+        IncrementalBookStats stats = new IncrementalBookStats(25);
+        stats.append(Collections.emptyList());
+        assertEquals(0, stats.getBookCount());
+
+        stats.append(Arrays.asList(new Book(1, "Unread", "Nobody", 5f, "", "", "eng", 10, 0, 0)));
+        stats.append(Collections.emptyList());
+        assertEquals(1, stats.getBookCount());
+        assertEquals("Nobody", stats.getAuthorWithMostBooks().getName());
+        assertNull(stats.getHighestRatedBook());
+        assertNull(stats.getHighestRatioBook());
+    }
+
+    @Test
+    public void testBatchesMatchSinglePass() throws IOException {
+        List<Book> books = BundledBooks.books();
+        IncrementalBookStats stats = new IncrementalBookStats(25);
+        for (int start = 0; start < books.size(); start += 1000) {
+            stats.append(books.subList(start, Math.min(start + 1000, books.size())));
+        }
+        BundledBooks.assertSameAnswers(BundledBooks.sequentialReport(books), StatsReport.of("All", stats));
+    }
+}
@@ -0,0 +1,113 @@
+import com.patientping.Book;
+import com.patientping.BookStats;
+import com.patientping.BookStatsMetrics;
+import com.patientping.MappedCsvLoader;
+import com.patientping.RejectReason;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.patientping.HeaderFields.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TestMappedCsvLoader {
+
+    @TempDir
+    Path tempDir;
+
+    private static final String REJECTS = "bookID,title,authors,average_rating,isbn,isbn13,language_code,# num_pages,ratings_count,text_reviews_count\n"
+            + "14428,The Inheritors,William Golding,3.53,0156443791,9780156443791,en-US,240,2681,257\n"
+            + "2386,Moby Dick,Herman Melville,3.49,9626343583,eng,25,66,17\n"
+            + "2387,\"Moby Dick, or The Whale\",Herman Melville,3.49,9626343583,9789626343586,eng,25,66,17\n"
+            + "2388,Moby Dick,Herman Melville,three,9626343583,9789626343586,eng,25,66,17\n"
+            + "2389,Moby Dick,Herman Melville,3.49,9626343583,9789626343586,eng,25,66,99999999999\n";
+
+    private Path write(String data) throws IOException {
+        Path file = tempDir.resolve("books.csv");
+        Files.write(file, data.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    @Test
+    public void testLoadCsv() throws IOException {
+        Path file = write(
+                "title,authors,average_rating,isbn,isbn13,language_code,# num_pages,ratings_count,text_reviews_count,bookID\r\n" +
+                        "The Inheritors,William Golding,3.53,0156443791,9780156443791,en-US,240,2681,257,14428\r\n"
+                        + "Moby Dick,Herman Melville-William Hootkins,3.49,9626343583,eng,25,66,17,2386\r\n"
+                        + "Moby Dick,Herman Melville-William Hootkins,3.49,9626343583,9789626343586,eng,25,66,17,2386");
+        List<Book> books = new MappedCsvLoader(file).loadCsv();
+        assertEquals(2, books.size());
+
+        assertEquals(14428, books.get(0).getId());
+        assertEquals("William Golding", books.get(0).getAuthors());
+        assertEquals(3.53f, books.get(0).getAverageRating());
+        assertEquals("en-US", books.get(0).getLanguage());
+        assertEquals(257, books.get(0).getTextReviewsCount());
+        assertEquals("Herman Melville-William Hootkins", books.get(1).getAuthors());
+        assertEquals(2386, books.get(1).getId());
+    }
+
+    @Test
+    public void testLoadCsvWithBadHeaders() throws IOException {
+        Path file = write(
+                "bookID,title,authors,average_rating,isbn,isbn13,language_code,# num_pages,ratings_count,header\n" +
+                        "14428,The Inheritors,William Golding,3.53,0156443791,9780156443791,en-US,240,2681,257\n");
+        assertEquals(0, new MappedCsvLoader(file).loadCsv().size());
+    }
+
+    @Test
+    public void testRejectsAreCountedLikeLoadCsv() throws IOException {
+        Path file = write(REJECTS);
+        BookStatsMetrics expected = new BookStatsMetrics();
+        new BookStats(expected).loadCsv(Files.newInputStream(file));
+        BookStatsMetrics metrics = new BookStatsMetrics();
+
+        assertEquals(1, new MappedCsvLoader(file, metrics).loadTable().size());
+        for (RejectReason reason : RejectReason.values()) {
+            assertEquals(expected.getRejectedRows(reason), metrics.getRejectedRows(reason), reason.name());
+        }
+        assertEquals(1, metrics.getRejectedRows(RejectReason.WRONG_FIELD_COUNT));
+        assertEquals(1, metrics.getRejectedRows(RejectReason.QUOTED_COMMA));
+        assertEquals(2, metrics.getRejectedRows(RejectReason.UNPARSABLE_NUMBER));
+        assertEquals(1, metrics.getRowsLoaded());
+        assertEquals(Files.size(file), metrics.getBytesLoaded());
+        assertEquals(1, metrics.getPhaseCount("load"));
+    }
+
+    @Test
+    public void testForEachRowReadsOnlyRequestedFields() throws IOException {
+        Path file = write(
+                "bookID,title,authors,average_rating,isbn,isbn13,language_code,# num_pages,ratings_count,text_reviews_count\n" +
+                        "14428,The Inheritors,William Golding,3.53,0156443791,9780156443791,en-US,240,2681,257\n"
+                        + "2386,Moby Dick,Herman Melville-William Hootkins,3.49,9626343583,9789626343586,eng,25,66,17\n");
+        List<Long> isbns = new ArrayList<>();
+        long[] ratingTotal = new long[1];
+        new MappedCsvLoader(file).forEachRow(row -> {
+            isbns.add(row.getLong(isbn13));
+            ratingTotal[0] += row.getInt(ratings_count);
+        });
+        assertEquals(2, isbns.size());
+        assertEquals(9780156443791L, isbns.get(0));
+        assertEquals(2747, ratingTotal[0]);
+    }
+
+    @Test
+    public void testEmptyAndHeaderOnlyFiles() throws IOException {
+        BookStatsMetrics metrics = new BookStatsMetrics();
+        assertEquals(0, new MappedCsvLoader(write(""), metrics).loadCsv().size());
+        assertEquals(0, new MappedCsvLoader(write(REJECTS.substring(0, REJECTS.indexOf('\n') + 1)), metrics).loadCsv().size());
+        assertEquals(0, metrics.getRowsLoaded());
+        assertEquals(2, metrics.getPhaseCount("load"));
+    }
+
+    @Test
+    public void testMatchesLoadCsvOnBundledBooks() throws IOException {
+        BundledBooks.assertSameBooks(BundledBooks.books(), new MappedCsvLoader(BundledBooks.copyTo(tempDir)).loadCsv());
+    }
+}
@@ -0,0 +1,87 @@
+import com.patientping.*;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class TestParallelBookStats {
+    private final BookStats bookStats = new BookStats();
+
+    private void assertSameResults(List<Book> books, ParallelBookStats parallel) {
+        Map<String, List<Book>> booksByAuthor = bookStats.indexByAuthor(books);
+        assertSame(bookStats.findHighestRatedBook(books), parallel.findHighestRatedBook(books));
+        assertSame(bookStats.findHighestRatio(books), parallel.findHighestRatio(books));
+
+        Author mostBooks = parallel.findMostBooks(booksByAuthor);
+        assertEquals(bookStats.findMostBooks(booksByAuthor).getName(), mostBooks.getName());
+        assertSame(booksByAuthor.get(mostBooks.getName()), mostBooks.getBooks());
+
+        Author highestAverage = parallel.findAuthorWithHighestAverageRating(booksByAuthor);
+        Author expected = bookStats.findAuthorWithHighestAverageRating(booksByAuthor);
+        assertEquals(expected.getName(), highestAverage.getName());
+        assertEquals(expected.getAverageRatingForAllBooks(), highestAverage.getAverageRatingForAllBooks(), 0f);
+    }
+
+    @Test
+    public void testMatchesSequentialOnBooksCsv() throws IOException {
+        List<Book> books = BundledBooks.books();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            ParallelBookStats parallel = new ParallelBookStats(pool, 16);
+            assertSameResults(books, parallel);
+            assertSameResults(BundledBooks.englishBooks(), parallel);
+        } finally {
+            pool.shutdown();
+        }
+        assertSameResults(new ArrayList<>(new LinkedList<>(books)), new ParallelBookStats());
+    }
+
+    @Test
+    public void testTiesGoToTheFirstBookOrAuthor() {
+        // Only a few distinct ratings, counts and authors, so most slices end in ties.
+        Random random = new Random(22);
+        List<Book> books = new ArrayList<>();
+        for (int id = 0; id < 5000; id++) {
+            books.add(new Book(id, "Title " + id, "Author " + random.nextInt(50), 1 + random.nextInt(4),
+                    "", "", "eng", 100, 20 + random.nextInt(3) * 10, random.nextInt(3) * 10));
+        }
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            for (int slice : new int[]{1, 7, 100, 10_000}) {
+                assertSameResults(books, new ParallelBookStats(pool, slice));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testEmptyInput() {
+        ParallelBookStats parallel = new ParallelBookStats();
+        List<Book> none = Collections.emptyList();
+        assertEquals(-1, parallel.findHighestRatedBook(none).getId());
+        assertEquals(-1, parallel.findHighestRatio(none).getId());
+        assertEquals("", parallel.findMostBooks(Collections.emptyMap()).getName());
+        assertEquals("", parallel.findAuthorWithHighestAverageRating(Collections.emptyMap()).getName());
+    }
+
+    @Test
+    public void testNoQualifyingBooks() {
+        List<Book> books = new ArrayList<>();
+        for (int id = 0; id < 100; id++) {
+            books.add(new Book(id, "Title " + id, "Author", 5f, "", "", "eng", 100, 24, 0));
+        }
+        ParallelBookStats parallel = new ParallelBookStats(ForkJoinPool.commonPool(), 7);
+        assertEquals(-1, parallel.findHighestRatedBook(books).getId());
+        assertEquals(-1, parallel.findHighestRatio(books).getId());
+    }
+}
@@ -0,0 +1,83 @@
+import com.patientping.Book;
+import com.patientping.BookStatsMetrics;
+import com.patientping.ParallelCsvLoader;
+import com.patientping.RejectReason;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TestParallelCsvLoader {
+
+    @TempDir
+    Path tempDir;
+
+    private static final String REJECTS = "bookID,title,authors,average_rating,isbn,isbn13,language_code,# num_pages,ratings_count,text_reviews_count\n"
+            + "14428,The Inheritors,William Golding,3.53,0156443791,9780156443791,en-US,240,2681,257\n"
+            + "2386,Moby Dick,Herman Melville,3.49,9626343583,eng,25,66,17\n"
+            + "2387,\"Moby Dick, or The Whale\",Herman Melville,3.49,9626343583,9789626343586,eng,25,66,17\n"
+            + "2388,Moby Dick,Herman Melville,three,9626343583,9789626343586,eng,25,66,17\n"
+            + "2389,Moby Dick,Herman Melville,3.49,9626343583,9789626343586,eng,25,66,99999999999\n";
+
+    @Test
+    public void testSkipsRowsWithWrongFieldCount() throws IOException {
+        Path file = tempDir.resolve("books.csv");
+        Files.write(file, ("bookID,title,authors,average_rating,isbn,isbn13,language_code,# num_pages,ratings_count,text_reviews_count\n" +
+                "14428,The Inheritors,William Golding,3.53,0156443791,9780156443791,en-US,240,2681,257\n"
+                + "2386,Moby Dick,Herman Melville-William Hootkins,3.49,9626343583,eng,25,66,17\n"
+                + "2387,Moby Dick,Herman Melville-William Hootkins,3.49,9626343583,9789626343586,eng,25,66,17").getBytes(StandardCharsets.UTF_8));
+
+        List<Book> books = new ParallelCsvLoader(file, ForkJoinPool.commonPool(), 16).loadCsv();
+        assertEquals(2, books.size());
+        assertEquals(14428, books.get(0).getId());
+        assertEquals(2387, books.get(1).getId());
+    }
+
+    @Test
+    public void testRejectsAreCountedLikeLoadCsv() throws IOException {
+        Path file = tempDir.resolve("books.csv");
+        Files.write(file, REJECTS.getBytes(StandardCharsets.UTF_8));
+        BookStatsMetrics metrics = new BookStatsMetrics();
+
+        // Chunks of a few rows each, so the rejects are counted on different workers.
+        assertEquals(1, new ParallelCsvLoader(file, ForkJoinPool.commonPool(), 64, metrics).loadCsv().size());
+        assertEquals(1, metrics.getRejectedRows(RejectReason.WRONG_FIELD_COUNT));
+        assertEquals(1, metrics.getRejectedRows(RejectReason.QUOTED_COMMA));
+        assertEquals(2, metrics.getRejectedRows(RejectReason.UNPARSABLE_NUMBER));
+        assertEquals(1, metrics.getRowsLoaded());
+        assertEquals(Files.size(file), metrics.getBytesLoaded());
+    }
+
+    @Test
+    public void testCrlfRowsSplitAcrossChunks() throws IOException {
+        Path file = tempDir.resolve("books.csv");
+        Files.write(file, REJECTS.substring(0, REJECTS.indexOf("2386,")).replace("\n", "\r\n").getBytes(StandardCharsets.UTF_8));
+
+        // Each chunk boundary lands inside a row or between the \r and the \n.
+        for (int chunkSize : new int[]{1, 7, 120}) {
+            List<Book> books = new ParallelCsvLoader(file, ForkJoinPool.commonPool(), chunkSize).loadCsv();
+            assertEquals(1, books.size(), "chunk size " + chunkSize);
+            assertEquals(257, books.get(0).getTextReviewsCount());
+        }
+    }
+
+    @Test
+    public void testSmallChunksKeepFileOrder() throws IOException {
+        Path file = BundledBooks.copyTo(tempDir);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        List<Book> actual;
+        try {
+            actual = new ParallelCsvLoader(file, pool, 4096).loadCsv();
+        } finally {
+            pool.shutdown();
+        }
+        BundledBooks.assertSameBooks(BundledBooks.books(), actual);
+    }
+}
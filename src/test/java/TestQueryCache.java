@@ -0,0 +1,138 @@
+import com.patientping.*;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class TestQueryCache {
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        QueryCache<String, Integer> cache = new QueryCache<>(2);
+        AtomicInteger computed = new AtomicInteger();
+        cache.get("a", computed::incrementAndGet);
+        cache.get("b", computed::incrementAndGet);
+        cache.get("a", computed::incrementAndGet); // a is now more recent than b
+        cache.get("c", computed::incrementAndGet); // evicts b
+        assertEquals(3, computed.get());
+        assertEquals(1, cache.getHits());
+        assertEquals(3, cache.getMisses());
+        assertEquals(1, cache.getEvictions());
+        assertEquals(Integer.valueOf(1), cache.get("a", computed::incrementAndGet));
+        assertEquals(Integer.valueOf(4), cache.get("b", computed::incrementAndGet));
+    }
+
+    @Test
+    public void testBoundedByWeight() {
+        QueryCache<String, String> cache = new QueryCache<>(10, String::length);
+        cache.put("a", "123456");
+        cache.put("b", "1234");
+        assertEquals(10, cache.getWeight());
+        cache.put("c", "12");
+        assertEquals(2, cache.size());
+        assertEquals(6, cache.getWeight());
+        cache.put("d", "12345678901"); // heavier than the whole cache
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testValueComputedBeforeInvalidateIsNotCached() {
+        QueryCache<String, Integer> cache = new QueryCache<>(10);
+        AtomicInteger version = new AtomicInteger(1);
+        // The data changes while the value is being computed, so the value is returned but not cached.
+        Integer value = cache.get("a", () -> {
+            cache.invalidate(version::incrementAndGet);
+            return 1;
+        }, () -> version.get() == 1);
+        assertEquals(Integer.valueOf(1), value);
+        assertEquals(0, cache.size());
+        cache.get("a", () -> 2, () -> version.get() == 2);
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testAppendedDatasetMatchesFullLoad() throws IOException {
+        List<Book> books = BundledBooks.books();
+        BookDataset full = new BookDataset(books);
+        BookDataset appended = new BookDataset(books.subList(0, 5000))
+                .withBooks(books.subList(5000, 9000))
+                .withBooks(books.subList(9000, books.size()));
+        assertEquals(3, appended.getVersion());
+        for (boolean englishOnly : new boolean[]{false, true}) {
+            assertEquals(full.getBooks(englishOnly), appended.getBooks(englishOnly));
+            assertEquals(new ArrayList<>(full.getBooksByAuthor(englishOnly).entrySet()),
+                    new ArrayList<>(appended.getBooksByAuthor(englishOnly).entrySet()));
+        }
+        assertSame(books.get(9500), appended.findById(books.get(9500).getId()));
+        assertEquals(full.getSearchIndex().completeAuthors("tol", 3).get(0).getName(),
+                appended.getSearchIndex().completeAuthors("tol", 3).get(0).getName());
+    }
+
+    @Test
+    public void testVersionsShareAuthorListsThatCannotBeModified() {
+        Book hobbit = new Book(5907, "The Hobbit", "J.R.R. Tolkien", 4.27f, "0618260307", "9780618260300", "eng", 366, 2530894, 32871);
+        Book emma = new Book(6969, "Emma", "Jane Austen", 3.99f, "0451527445", "9780451527448", "eng", 474, 1216, 100);
+        BookDataset first = new BookDataset(Collections.singletonList(hobbit));
+        BookDataset second = first.withBooks(Collections.singletonList(emma));
+        assertSame(first.getBooksByAuthor(false).get("J.R.R. Tolkien"), second.getBooksByAuthor(false).get("J.R.R. Tolkien"));
+        for (BookDataset dataset : new BookDataset[]{first, second}) {
+            for (boolean englishOnly : new boolean[]{false, true}) {
+                for (List<Book> books : dataset.getBooksByAuthor(englishOnly).values()) {
+                    assertThrows(UnsupportedOperationException.class, () -> books.add(emma));
+                }
+            }
+        }
+        assertEquals(1, first.getBooksByAuthor(false).get("J.R.R. Tolkien").size());
+    }
+
+    @Test
+    public void testCachedResultsMatchBookStats() throws IOException {
+        CachingBookStats stats = new CachingBookStats(new BookDataset(BundledBooks.books()));
+        for (boolean englishOnly : new boolean[]{false, true}) {
+            List<Book> subset = englishOnly ? BundledBooks.englishBooks() : BundledBooks.books();
+            BundledBooks.assertSameAnswers(BundledBooks.sequentialReport(subset), new StatsReport("Cached", subset.size(),
+                    StatResult.mostBooks(stats.findMostBooks(englishOnly)),
+                    StatResult.highestRatedBook(stats.findHighestRatedBook(englishOnly)),
+                    StatResult.highestRatio(stats.findHighestRatio(englishOnly)),
+                    StatResult.highestAverageRating(stats.findAuthorWithHighestAverageRating(englishOnly))));
+        }
+        assertEquals(8, stats.getCache().getMisses());
+        assertSame(stats.findHighestRatedBook(false), stats.findHighestRatedBook(false));
+        assertEquals(2, stats.getCache().getHits());
+    }
+
+    @Test
+    public void testEmptyDatasetAnswersAreCached() {
+        CachingBookStats stats = new CachingBookStats(new BookDataset(Collections.emptyList()));
+        assertEquals(-1, stats.findHighestRatedBook(true).getId());
+        assertEquals("", stats.findMostBooks(true).getName());
+        assertEquals(0, stats.findHighestRatedBooks(true, 10, 25).size());
+        assertSame(stats.findHighestRatedBook(true), stats.findHighestRatedBook(true));
+        assertEquals(2, stats.getCache().getHits());
+    }
+
+    @Test
+    public void testAddingBooksInvalidatesResults() {
+        Book rowling = new Book(4, "Harry Potter and the Chamber of Secrets (Harry Potter  #2)", "J.K. Rowling", 4.41f, "0439554896", "9780439554893", "eng", 352, 6267, 272);
+        Book augustine = new Book(1681, "The Confessions (Works of Saint Augustine 1)", "Augustine of Hippo-John E. Rotelle", 4.91f, "1565480848", "9781565480841", "eng", 416, 138, 24);
+        CachingBookStats stats = new CachingBookStats(new BookDataset(Collections.singletonList(rowling)));
+        assertEquals(1, stats.getDataset().getVersion());
+        assertSame(rowling, stats.findHighestRatedBook(false));
+        assertEquals(1, stats.findHighestRatedBooks(false, 10, 25).size());
+
+        stats.addBooks(Arrays.asList(augustine));
+        assertEquals(2, stats.getDataset().getVersion());
+        assertEquals(0, stats.getCache().size());
+        assertSame(augustine, stats.findHighestRatedBook(false));
+        assertEquals(2, stats.findHighestRatedBooks(false, 10, 25).size());
+        assertEquals(0, stats.getCache().getHits());
+    }
+}
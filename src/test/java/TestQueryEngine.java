@@ -0,0 +1,92 @@
+import com.patientping.*;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class TestQueryEngine {
+
+    private final Book augustine1 = new Book(1681, "The Confessions (Works of Saint Augustine 1)", "Augustine of Hippo-John E. Rotelle-Maria Boulding", 3.91f, "1565480848", "9781565480841", "eng", 416, 138, 24);
+    private final Book augustine2 = new Book(1684, "The City of God", "Augustine of Hippo-Thomas Merton-Marcus Dods", 3.92f, "0679783199", "9780679783190", "lat", 905, 99, 15);
+    private final Book rowling1 = new Book(4, "Harry Potter and the Chamber of Secrets (Harry Potter  #2)", "J.K. Rowling", 4.41f, "0439554896", "9780439554893", "eng", 352, 6267, 272);
+    private final Book rowling2 = new Book(10, "Harry Potter Collection (Harry Potter  #1-6)", "J.K. Rowling", 4.73f, "0439827604", "9780439827607", "en-US", 3342, 24, 820);
+
+    @Test
+    public void testGroupedAggregates() {
+        BookQuery booksPerAuthor = new BookQuery("books per author", BookFilter.ALL, BookQuery.GroupBy.AUTHOR, BookQuery.Aggregate.COUNT, null);
+        BookQuery pagesPerLanguage = new BookQuery("pages per language", BookFilter.ALL, BookQuery.GroupBy.LANGUAGE, BookQuery.Aggregate.SUM, BookQuery.column(HeaderFields.num_pages));
+        BookQuery englishAverage = new BookQuery("english average", BookFilter.ENGLISH, BookQuery.GroupBy.NONE, BookQuery.Aggregate.AVG, BookQuery.column(HeaderFields.average_rating));
+        Map<BookQuery, QueryResult> results = QueryEngine.run(Arrays.asList(augustine1, augustine2, rowling1, rowling2),
+                Arrays.asList(booksPerAuthor, pagesPerLanguage, englishAverage));
+
+        assertEquals("Augustine of Hippo", results.get(booksPerAuthor).getBestGroup());
+        assertEquals(2, results.get(booksPerAuthor).getGroups().get("J.K. Rowling").getCount());
+        assertEquals(768, results.get(pagesPerLanguage).getGroups().get("eng").getValue());
+        assertEquals(3342, results.get(pagesPerLanguage).getGroups().get("en-US").getValue());
+        assertEquals((3.91f + 4.41f + 4.73f) / 3, results.get(englishAverage).getValue(), 1e-6);
+    }
+
+    @Test
+    public void testArgmaxWithMinimumRatings() {
+        BookQuery highestRated = new BookQuery("highest rated", BookFilter.minimumRatings(25), BookQuery.GroupBy.NONE, BookQuery.Aggregate.ARGMAX, BookQuery.column(HeaderFields.average_rating));
+        BookQuery nothing = new BookQuery("nothing", BookFilter.minimumRatings(1_000_000), BookQuery.GroupBy.NONE, BookQuery.Aggregate.ARGMAX, BookQuery.column(HeaderFields.average_rating));
+        Map<BookQuery, QueryResult> results = QueryEngine.run(Arrays.asList(augustine1, augustine2, rowling1, rowling2), Arrays.asList(highestRated, nothing));
+
+        assertEquals(rowling1, results.get(highestRated).getArgmax());
+        assertNull(results.get(nothing).getArgmax());
+    }
+
+    @Test
+    public void testSharedFiltersAreEvaluatedOncePerBook() {
+        AtomicInteger evaluations = new AtomicInteger();
+        BookFilter counted = BookFilter.of("counted english", b -> {
+            evaluations.incrementAndGet();
+            return BookStats.isEnglish(b);
+        });
+        List<BookQuery> queries = Arrays.asList(
+                new BookQuery("count", counted, BookQuery.GroupBy.NONE, BookQuery.Aggregate.COUNT, null),
+                new BookQuery("rated count", BookFilter.and(counted, BookFilter.minimumRatings(25)), BookQuery.GroupBy.NONE, BookQuery.Aggregate.COUNT, null),
+                new BookQuery("max", BookFilter.of("counted english", b -> true), BookQuery.GroupBy.NONE, BookQuery.Aggregate.MAX, BookQuery.column(HeaderFields.num_pages)));
+        Map<BookQuery, QueryResult> results = QueryEngine.run(Arrays.asList(augustine1, augustine2, rowling1, rowling2), queries);
+
+        assertEquals(4, evaluations.get());
+        assertEquals(3, results.get(queries.get(0)).getValue());
+        assertEquals(2, results.get(queries.get(1)).getValue());
+        assertEquals(3342, results.get(queries.get(2)).getValue());
+    }
+
+    @Test
+    public void testMatchesBookStatsOnBundledBooks() throws IOException {
+        List<Book> books = BundledBooks.books();
+        BookQuery englishCount = new BookQuery("english books", BookFilter.ENGLISH, BookQuery.GroupBy.NONE, BookQuery.Aggregate.COUNT, null);
+        BookQuery mostBooks = new BookQuery("most books", BookFilter.ALL, BookQuery.GroupBy.AUTHOR, BookQuery.Aggregate.COUNT, null);
+        BookQuery highestRated = new BookQuery("highest rated", BookFilter.minimumRatings(25), BookQuery.GroupBy.NONE, BookQuery.Aggregate.ARGMAX, BookQuery.column(HeaderFields.average_rating));
+        BookQuery highestRatio = new BookQuery("highest ratio", BookFilter.HAS_RATINGS, BookQuery.GroupBy.NONE, BookQuery.Aggregate.ARGMAX, BookQuery.RATIO);
+        BookQuery highestAverage = new BookQuery("highest average", BookFilter.ALL, BookQuery.GroupBy.AUTHOR, BookQuery.Aggregate.AVG, BookQuery.column(HeaderFields.average_rating));
+        Map<BookQuery, QueryResult> results = QueryEngine.run(books, Arrays.asList(englishCount, mostBooks, highestRated, highestRatio, highestAverage));
+        List<StatResult> expected = BundledBooks.sequentialReport(books).getResults();
+
+        assertEquals(BundledBooks.englishBooks().size(), results.get(englishCount).getValue());
+        assertEquals(expected.get(0).getAuthor(), results.get(mostBooks).getBestGroup());
+        assertEquals(expected.get(1).getBook().getId(), results.get(highestRated).getArgmax().getId());
+        assertEquals(expected.get(2).getBook().getId(), results.get(highestRatio).getArgmax().getId());
+        assertEquals(expected.get(3).getAuthor(), results.get(highestAverage).getBestGroup());
+    }
+
+    @Test
+    public void testAuthorAverageMatchesAuthorExactly() {
+        BookQuery averagePerAuthor = new BookQuery("average per author", BookFilter.ALL, BookQuery.GroupBy.AUTHOR, BookQuery.Aggregate.AVG, BookQuery.column(HeaderFields.average_rating));
+        Map<String, QueryResult.Group> groups = QueryEngine.run(Arrays.asList(augustine1, augustine2, rowling1, rowling2),
+                Arrays.asList(averagePerAuthor)).get(averagePerAuthor).getGroups();
+
+        // Compared without a tolerance: AVG adds float ratings in book order, as Author does.
+        assertEquals(new Author("Augustine of Hippo", Arrays.asList(augustine1, augustine2)).getAverageRatingForAllBooks(), groups.get("Augustine of Hippo").getValue(), 0.0);
+        assertEquals(new Author("J.K. Rowling", Arrays.asList(rowling1, rowling2)).getAverageRatingForAllBooks(), groups.get("J.K. Rowling").getValue(), 0.0);
+    }
+}
@@ -0,0 +1,84 @@
+import com.patientping.*;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestRankedBookStats {
+
+    private final Book lowRating = new Book(11854, "Puzzle Pack: The Witch of Blackbird Pond", "Mary B. Collins", 1.00f, "1583377824", "9781583377826", "eng", 134, 29, 0);
+    private final Book highRating = new Book(30, "J.R.R. Tolkien 4-Book Boxed Set: The Hobbit and The Lord of the Rings", "J.R.R. Tolkien", 4.59f, "0345538374", "9780345538376", "eng", 1728, 97731, 1536);
+    private final Book middlingRating = new Book(137, "Starting an eBay Business for Dummies", "Marsha Collier", 3.52f, "0764569244", "9780764569241", "eng", 384, 51, 4);
+    private final Book tiedRating = new Book(138, "Starting an eBay Business for Dummies 2", "Marsha Collier", 3.52f, "0764569245", "9780764569242", "eng", 384, 51, 4);
+    private final Book fewRatings = new Book(139, "Unrated", "Nobody", 5.00f, "0764569246", "9780764569243", "eng", 384, 24, 20);
+
+    @Test
+    public void testFindHighestRatedBooksKeepsInputOrderForTies() {
+        List<Book> books = Arrays.asList(lowRating, middlingRating, fewRatings, tiedRating, highRating);
+        RankedBookStats stats = new RankedBookStats();
+
+        assertEquals(Arrays.asList(highRating, middlingRating, tiedRating), stats.findHighestRatedBooks(books, 3, 25));
+        assertEquals(Arrays.asList(fewRatings, highRating), stats.findHighestRatedBooks(books, 2, 0));
+        assertEquals(Collections.emptyList(), stats.findHighestRatedBooks(books, 0, 25));
+    }
+
+    @Test
+    public void testFindHighestRatioBooksSkipsZeroRatios() {
+        List<Book> books = Arrays.asList(lowRating, highRating, middlingRating, fewRatings);
+        assertEquals(Arrays.asList(fewRatings, middlingRating, highRating), new RankedBookStats().findHighestRatioBooks(books, 10));
+    }
+
+    @Test
+    public void testFindAuthorsKeepsFirstSeenOrderForTies() {
+        Map<String, List<Book>> booksByAuthor = new LinkedHashMap<>();
+        booksByAuthor.put("Marsha Collier", Arrays.asList(middlingRating, tiedRating));
+        booksByAuthor.put("J.R.R. Tolkien", Collections.singletonList(highRating));
+        booksByAuthor.put("Mary B. Collins", Collections.singletonList(lowRating));
+        booksByAuthor.put("Aaron Author", Collections.singletonList(highRating));
+        RankedBookStats stats = new RankedBookStats();
+
+        List<Author> mostBooks = stats.findAuthorsWithMostBooks(booksByAuthor, 3);
+        assertEquals("Marsha Collier", mostBooks.get(0).getName());
+        assertEquals("J.R.R. Tolkien", mostBooks.get(1).getName());
+        assertEquals("Mary B. Collins", mostBooks.get(2).getName());
+
+        List<Author> highestAverage = stats.findAuthorsWithHighestAverageRating(booksByAuthor, 2);
+        assertEquals("J.R.R. Tolkien", highestAverage.get(0).getName());
+        assertEquals("Aaron Author", highestAverage.get(1).getName());
+        assertEquals(4.59f, highestAverage.get(1).getAverageRatingForAllBooks());
+        assertEquals(Collections.emptyList(), stats.findAuthorsWithHighestAverageRating(booksByAuthor, 0));
+    }
+
+    @Test
+    public void testKLargerThanTheCandidates() {
+        List<Book> books = Arrays.asList(lowRating, fewRatings, middlingRating);
+        RankedBookStats stats = new RankedBookStats();
+
+        assertEquals(Arrays.asList(middlingRating, lowRating), stats.findHighestRatedBooks(books, 10, 25));
+        assertEquals(Collections.emptyList(), stats.findHighestRatedBooks(Collections.emptyList(), 10, 25));
+        assertEquals(Collections.emptyList(), stats.findAuthorsWithMostBooks(Collections.emptyMap(), 10));
+    }
+
+    @Test
+    public void testTopOneMatchesSingleWinner() throws IOException {
+        BookStats bookStats = new BookStats();
+        List<Book> books = BundledBooks.books();
+        List<StatResult> expected = BundledBooks.sequentialReport(books).getResults();
+        RankedBookStats stats = new RankedBookStats();
+
+        List<Book> top = stats.findHighestRatedBooks(books, 100, 25);
+        assertEquals(100, top.size());
+        assertEquals(expected.get(1).getBook().getId(), top.get(0).getId());
+        for (int i = 1; i < top.size(); i++) {
+            assertTrue(top.get(i - 1).getAverageRating() >= top.get(i).getAverageRating());
+        }
+        assertEquals(expected.get(2).getBook().getId(), stats.findHighestRatioBooks(books, 100).get(0).getId());
+
+        Map<String, List<Book>> booksByAuthor = bookStats.indexByAuthor(books);
+        assertEquals(expected.get(0).getAuthor(), stats.findAuthorsWithMostBooks(booksByAuthor, 10).get(0).getName());
+        assertEquals(expected.get(3).getAuthor(), stats.findAuthorsWithHighestAverageRating(booksByAuthor, 10).get(0).getName());
+    }
+}
@@ -0,0 +1,119 @@
+import com.patientping.*;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TestReportWriter {
+    private final Book calvin = new Book(24812, "The Complete Calvin and Hobbes", "Bill Watterson", 4.82f, "0740748475", "9780740748479", "eng", 1456, 31249, 920);
+    private final Book quoted = new Book(7, "Love, \"Actually\"", "Some One", 3.5f, "1", "1", "eng", 10, 4, 1);
+
+    @Test
+    public void testTextMatchesPrintf() throws IOException {
+        Random random = new Random(3);
+        for (int i = 0; i < 2000; i++) {
+            float value = i < 1000 ? random.nextInt(501) / 100f : random.nextFloat() * 10;
+            Author author = new Author("A", Arrays.asList(new Book(1, "t", "A", value, "", "", "eng", 1, 1, 0)));
+            StringWriter out = new StringWriter();
+            try (ReportWriter writer = new ReportWriter(out, ReportWriter.Format.TEXT)) {
+                writer.write(new StatsReport("Stats", 1, StatResult.highestAverageRating(author)));
+            }
+            assertEquals(String.format("Stats:%nAuthor with the highest average rating across all books: A. %f average rating.%n", value).replace(System.lineSeparator(), "\n"),
+                    out.toString());
+        }
+    }
+
+    @Test
+    public void testTextWithoutQualifyingBookMatchesPrintf() throws IOException {
+        // No book has 25 ratings or any text reviews, so the find methods keep their starting values.
+        Book unrated = new Book(1, "Few Ratings", "A", 3f, "", "", "eng", 10, 10, 0);
+        BookTable table = BookTable.from(Arrays.asList(unrated));
+        StringWriter out = new StringWriter();
+        try (ReportWriter writer = new ReportWriter(out, ReportWriter.Format.TEXT)) {
+            writer.write(new BookStats().report("Stats", table, null, AuthorIndex.build(table)));
+            writer.write(new BookStats().report("None", table, new int[0], AuthorIndex.build(table).restrictTo(new int[0])));
+        }
+        String expected = String.format("Stats:%n"
+                + "Author with the most books: %s. %d books.%n"
+                + "Author with the highest rating: %s. %f stars.%n"
+                + "Author with the highest ratio of text reviews to star reviews: %s. %f%n"
+                + "Author with the highest average rating across all books: %s. %f average rating.%n",
+                "A", 1, "", -1f, "", 0f, "A", 3f)
+                + String.format("None:%nThe list of books is empty.%nThe list of books is empty.%nThe list of books is empty.%nList of books is empty.%n");
+        assertEquals(expected.replace(System.lineSeparator(), "\n"), out.toString());
+    }
+
+    @Test
+    public void testFormats() throws IOException {
+        StatsReport report = new StatsReport("English Book Stats", 2,
+                StatResult.mostBooks(new Author("Bill Watterson", Arrays.asList(calvin))),
+                StatResult.highestRatedBook(calvin),
+                StatResult.highestRatio(quoted),
+                StatResult.highestAverageRating(new Author("")));
+
+        StringWriter text = new StringWriter();
+        try (ReportWriter writer = new ReportWriter(text, ReportWriter.Format.TEXT)) {
+            writer.writeLine("Loaded 2 books");
+            writer.write(report);
+        }
+        assertEquals("Loaded 2 books\n"
+                + "English Book Stats:\n"
+                + "Author with the most books: Bill Watterson. 1 books.\n"
+                + "Author with the highest rating: Bill Watterson. 4.820000 stars.\n"
+                + "Author with the highest ratio of text reviews to star reviews: Some One. 0.250000\n"
+                + "Author with the highest average rating across all books: . 0.000000 average rating.\n", text.toString());
+
+        StringWriter csv = new StringWriter();
+        try (ReportWriter writer = new ReportWriter(csv, ReportWriter.Format.CSV)) {
+            writer.writeLine("Loaded 2 books");
+            writer.write(report);
+            writer.write(new StatsReport("Empty", 0, StatResult.mostBooks((Author) null)));
+        }
+        assertEquals("report,books,metric,author,value,book_id,title\n"
+                + "English Book Stats,2,MOST_BOOKS,Bill Watterson,1,,\n"
+                + "English Book Stats,2,HIGHEST_RATED_BOOK,Bill Watterson,4.82,24812,The Complete Calvin and Hobbes\n"
+                + "English Book Stats,2,HIGHEST_RATIO,Some One,0.25,7,\"Love, \"\"Actually\"\"\"\n"
+                + "English Book Stats,2,HIGHEST_AVERAGE_RATING,,,,\n"
+                + "Empty,0,MOST_BOOKS,,,,\n", csv.toString());
+
+        StringWriter jsonl = new StringWriter();
+        try (ReportWriter writer = new ReportWriter(jsonl, ReportWriter.Format.JSONL)) {
+            writer.write(report);
+        }
+        List<String> lines = Arrays.asList(jsonl.toString().split("\n"));
+        assertEquals(4, lines.size());
+        assertEquals("{\"report\":\"English Book Stats\",\"books\":2,\"metric\":\"MOST_BOOKS\",\"author\":\"Bill Watterson\",\"value\":1}", lines.get(0));
+        assertEquals("{\"report\":\"English Book Stats\",\"books\":2,\"metric\":\"HIGHEST_RATIO\",\"author\":\"Some One\",\"value\":0.25,\"book\":"
+                + Json.appendBook(new StringBuilder(), quoted) + "}", lines.get(2));
+        assertEquals("{\"report\":\"English Book Stats\",\"books\":2,\"metric\":\"HIGHEST_AVERAGE_RATING\",\"author\":null,\"value\":null}", lines.get(3));
+    }
+
+    @Test
+    public void testFindMethodsDoNotPrint() {
+        PrintStream original = System.out;
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(captured));
+        try {
+            BookStats bookStats = new BookStats();
+            List<Book> books = Arrays.asList(calvin, quoted);
+            bookStats.findMostBooks(bookStats.indexByAuthor(books));
+            bookStats.findHighestRatedBook(books);
+            bookStats.findHighestRatio(books);
+            bookStats.findAuthorWithHighestAverageRating(bookStats.indexByAuthor(books));
+            BookTable table = BookTable.from(books);
+            AuthorIndex index = AuthorIndex.build(table);
+            bookStats.report("All", table, null, index);
+            bookStats.findMostBooks(bookStats.indexByAuthor(Arrays.asList()));
+        } finally {
+            System.setOut(original);
+        }
+        assertEquals(0, captured.size());
+    }
+}
@@ -0,0 +1,152 @@
+import com.patientping.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestSearchIndex {
+    private static final Book STONE = new Book(1, "Harry Potter and the Philosopher's Stone", "J.K. Rowling-Mary GrandPr\u00e9", 4.47f, "0439554934", "9780439554930", "eng", 320, 5000, 100);
+    private static final Book CHAMBER = new Book(2, "Harry Potter and the Chamber of Secrets", "J.K. Rowling-MARY GRANDPRE", 4.41f, "0439554896", "9780439554893", "eng", 352, 6267, 272);
+    private static final Book HOBBIT = new Book(3, "The Hobbit", "J.R.R. Tolkien", 4.27f, "0618260307", "9780618260300", "eng", 366, 2530894, 32871);
+    private static final Book RINGS = new Book(4, "The Lord of the Rings", "J.R.R. Tolkien", 4.50f, "0618640150", "9780618640157", "eng", 1216, 1710, 91);
+    private static final Book ELEGANCE = new Book(5, "L'\u00c9l\u00e9gance du h\u00e9risson", "Muriel Barbery", 3.74f, "2070391165", "9782070391165", "fre", 368, 2054, 171);
+
+    private static BookSearchIndex index(Book... books) {
+        List<Book> list = Arrays.asList(books);
+        return new BookSearchIndex(list, new BookStats().indexByAuthor(list));
+    }
+
+    private static List<String> names(List<Author> authors) {
+        List<String> names = new ArrayList<>();
+        for (Author author : authors) {
+            names.add(author.getName());
+        }
+        return names;
+    }
+
+    private static double jaccard(String a, String b) {
+        Set<Long> left = new HashSet<>();
+        for (long trigram : SearchText.trigrams(SearchText.normalize(a))) {
+            left.add(trigram);
+        }
+        Set<Long> right = new HashSet<>();
+        for (long trigram : SearchText.trigrams(SearchText.normalize(b))) {
+            right.add(trigram);
+        }
+        Set<Long> union = new HashSet<>(left);
+        union.addAll(right);
+        left.retainAll(right);
+        return union.isEmpty() ? 0 : (double) left.size() / union.size();
+    }
+
+    @Test
+    public void testNormalizeIgnoresCaseAccentsAndPunctuation() {
+        assertEquals("mary grandpre", SearchText.normalize("Mary GrandPr\u00e9"));
+        assertEquals("mary grandpre", SearchText.normalize("  MARY   GRANDPRE "));
+        assertEquals("l elegance du herisson", SearchText.normalize("L'\u00c9l\u00e9gance du h\u00e9risson"));
+        assertEquals("j k rowling", SearchText.normalize("J.K. Rowling"));
+        assertEquals("", SearchText.normalize(null));
+    }
+
+    @Test
+    public void testFindAuthorsMatchesEverySpelling() {
+        BookSearchIndex index = index(STONE, CHAMBER, HOBBIT);
+        List<Author> found = index.findAuthors("mary grandpre");
+        assertEquals(Arrays.asList("Mary GrandPr\u00e9", "MARY GRANDPRE"), names(found));
+        assertEquals(1, found.get(0).getBooks().size());
+        assertTrue(index.findAuthors("mary").isEmpty());
+    }
+
+    @Test
+    public void testCompleteAuthorsMatchesAnyWordAndRanksByBookCount() {
+        BookSearchIndex index = index(STONE, CHAMBER, HOBBIT, RINGS);
+        // Rowling and Tolkien both have two books, so the one seen first in the csv ranks first.
+        assertEquals(Arrays.asList("J.K. Rowling", "J.R.R. Tolkien"), names(index.completeAuthors("j", 2)));
+        assertEquals(Arrays.asList("Mary GrandPr\u00e9", "MARY GRANDPRE"), names(index.completeAuthors("Grand", 10)));
+        assertEquals(Arrays.asList("J.R.R. Tolkien"), names(index.completeAuthors("tolk", 10)));
+        assertTrue(index.completeAuthors("x", 10).isEmpty());
+        assertTrue(index.completeAuthors("", 10).isEmpty());
+    }
+
+    @Test
+    public void testCompleteTitlesRanksByRatingCount() {
+        BookSearchIndex index = index(STONE, CHAMBER, HOBBIT, RINGS, ELEGANCE);
+        assertEquals(Arrays.asList(CHAMBER, STONE), index.completeTitles("harry pot", 10));
+        assertEquals(Arrays.asList(HOBBIT, CHAMBER, STONE, RINGS), index.completeTitles("the", 10));
+        assertEquals(Arrays.asList(ELEGANCE), index.completeTitles("elegan", 10));
+        assertEquals(Arrays.asList(STONE), index.completeTitles("harry potter and the philosopher", 10));
+        assertTrue(index.completeTitles("harry potter and the prisoner", 10).isEmpty());
+    }
+
+    @Test
+    public void testSearchToleratesTypos() {
+        BookSearchIndex index = index(STONE, CHAMBER, HOBBIT, RINGS, ELEGANCE);
+        List<SearchHit<Author>> authors = index.searchAuthors("J.R.R. Tolkein", 10);
+        assertEquals("J.R.R. Tolkien", authors.get(0).getValue().getName());
+        List<SearchHit<Book>> titles = index.searchTitles("the hobit", 10);
+        assertEquals(HOBBIT, titles.get(0).getValue());
+        for (int i = 1; i < titles.size(); i++) {
+            assertTrue(titles.get(i).getSimilarity() <= titles.get(i - 1).getSimilarity());
+        }
+        assertEquals(1.0, index.searchTitles("THE HOBBIT", 1).get(0).getSimilarity(), 1e-9);
+        assertTrue(index.searchAuthors("zzzz", 10).isEmpty());
+    }
+
+    @Test
+    public void testMatchesFullScans() {
+        Random random = new Random(21);
+        String[] words = {"ann", "anna", "annex", "bob", "bobby", "cat", "catalog", "dune", "dunes"};
+        List<Book> books = new ArrayList<>();
+        for (int id = 0; id < 500; id++) {
+            StringBuilder title = new StringBuilder();
+            for (int w = 0, n = 1 + random.nextInt(4); w < n; w++) {
+                title.append(w > 0 ? " " : "").append(words[random.nextInt(words.length)]);
+            }
+            books.add(new Book(id, title.toString(), "Author " + random.nextInt(40), 4.0f, "", "", "eng", 100,
+                    random.nextInt(50), 0));
+        }
+        BookSearchIndex index = new BookSearchIndex(books, new BookStats().indexByAuthor(books));
+        for (String prefix : new String[]{"a", "ann", "anne", "bob", "cata", "dune", "ann bo", "z"}) {
+            List<Book> expected = new ArrayList<>();
+            for (Book book : books) {
+                String title = " " + SearchText.normalize(book.getTitle());
+                if (title.contains(" " + prefix)) {
+                    expected.add(book);
+                }
+            }
+            expected.sort(Comparator.comparingInt(Book::getRatingCount).reversed());
+            assertEquals(expected.subList(0, Math.min(15, expected.size())), index.completeTitles(prefix, 15), prefix);
+
+            for (SearchHit<Book> hit : index.searchTitles(prefix, 5, 0.5)) {
+                assertTrue(hit.getSimilarity() >= 0.5);
+            }
+
+            // Every title within the similarity bound is found, with its exact Jaccard similarity.
+            int similar = 0;
+            for (Book book : books) {
+                if (jaccard(prefix, book.getTitle()) >= 0.3) {
+                    similar++;
+                }
+            }
+            List<SearchHit<Book>> hits = index.searchTitles(prefix, books.size(), 0.3);
+            assertEquals(similar, hits.size(), prefix);
+            for (SearchHit<Book> hit : hits) {
+                assertEquals(jaccard(prefix, hit.getValue().getTitle()), hit.getSimilarity(), 1e-9);
+            }
+        }
+
+        Map<String, List<Book>> byAuthor = new BookStats().indexByAuthor(books);
+        List<String> expected = new ArrayList<>(byAuthor.keySet());
+        expected.sort(Comparator.comparingInt((String name) -> byAuthor.get(name).size()).reversed());
+        assertEquals(expected.subList(0, 10), names(index.completeAuthors("author", 10)));
+    }
+}
@@ -0,0 +1,153 @@
+import com.patientping.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestShardedBookStats {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testShardsMatchSingleFile() throws IOException {
+        List<Path> shards = writeShards(tempDir.resolve("shards"), 5);
+        StatsReport expectedAll = BundledBooks.sequentialReport(BundledBooks.books());
+
+        ExecutorService pool = Executors.newFixedThreadPool(3);
+        PartialBookStats actual;
+        try {
+            actual = new ShardedBookStats(shards, pool).run();
+        } finally {
+            pool.shutdown();
+        }
+        BundledBooks.assertSameMergedAnswers(BundledBooks.sequentialReport(BundledBooks.englishBooks()), StatsReport.of("English", actual.getEnglishStats()));
+        BundledBooks.assertSameMergedAnswers(expectedAll, StatsReport.of("All", actual.getAllStats()));
+        BundledBooks.assertSameMergedAnswers(expectedAll, StatsReport.of("All", new ShardedBookStats(shards).run().getAllStats()));
+    }
+
+    @Test
+    public void testMissingShardFails() throws IOException {
+        List<Path> shards = new ArrayList<>(writeShards(tempDir.resolve("shards"), 3));
+        Path missing = tempDir.resolve("shards/missing.csv");
+        shards.add(1, missing);
+        IOException e = assertThrows(IOException.class, () -> new ShardedBookStats(shards).run());
+        assertTrue(e.getMessage().contains(missing.toString()), e.getMessage());
+    }
+
+    @Test
+    public void testMergedAveragesDoNotDependOnSharding() {
+        // Summed as floats, these ratings give 11.98 in one pass but 11.9800005 when the last three are a shard.
+        float[] ratings = {2.54f, 4.04f, 4.34f, 1.06f};
+        List<Book> books = new ArrayList<>();
+        AuthorTotals onePass = new AuthorTotals("A");
+        for (float rating : ratings) {
+            books.add(new Book(books.size(), "Title", "A", rating, "", "", "eng", 100, 30, 3));
+            onePass.add(rating);
+        }
+        assertEquals(new Author("A", books).getAverageRatingForAllBooks(), onePass.getAverageRating(), 0f);
+
+        AuthorTotals oneAndThree = merged(ratings, 1);
+        AuthorTotals twoAndTwo = merged(ratings, 2);
+        assertEquals(onePass.getRatingTotal(), oneAndThree.getRatingTotal(), 0.0);
+        assertEquals(oneAndThree.getAverageRating(), twoAndTwo.getAverageRating(), 0f);
+        // A shard that has all of an author's books leaves their average as one pass gives it.
+        assertEquals(onePass.getAverageRating(), merged(ratings, 0).getAverageRating(), 0f);
+    }
+
+    private static AuthorTotals merged(float[] ratings, int split) {
+        AuthorTotals first = new AuthorTotals("A");
+        AuthorTotals second = new AuthorTotals("A");
+        for (int i = 0; i < ratings.length; i++) {
+            (i < split ? first : second).add(ratings[i]);
+        }
+        AuthorTotals merged = new AuthorTotals("A");
+        merged.merge(first);
+        merged.merge(second);
+        return merged;
+    }
+
+    @Test
+    public void testHeaderOnlyShardAddsNothing() throws IOException {
+        String header = "bookID,title,authors,average_rating,isbn,isbn13,language_code,# num_pages,ratings_count,text_reviews_count\n";
+        Path empty = tempDir.resolve("empty.csv");
+        Path one = tempDir.resolve("one.csv");
+        Files.write(empty, header.getBytes(StandardCharsets.UTF_8));
+        Files.write(one, (header + "1,Emma,Jane Austen,3.99,1,1,eng,100,200,10\n").getBytes(StandardCharsets.UTF_8));
+
+        PartialBookStats merged = new ShardedBookStats(Arrays.asList(empty, one, empty)).run();
+        assertEquals(1, merged.getAllStats().getBookCount());
+        assertEquals("Jane Austen", merged.getAllStats().getAuthorAggregates().findMostBooks().getName());
+        assertEquals(1, merged.getAllStats().getHighestRated().getHighestRatedBook().getId());
+        assertEquals(0, PartialBookStats.load(empty).getAllStats().getBookCount());
+    }
+
+    @Test
+    public void testPartialStatsSurviveSerialization() throws IOException, ClassNotFoundException {
+        List<Path> shards = writeShards(tempDir.resolve("shards"), 2);
+        PartialBookStats first = PartialBookStats.load(shards.get(0));
+        PartialBookStats second = PartialBookStats.load(shards.get(1));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(second);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            first.merge((PartialBookStats) in.readObject());
+        }
+        BundledBooks.assertSameMergedAnswers(BundledBooks.sequentialReport(BundledBooks.books()), StatsReport.of("All", first.getAllStats()));
+    }
+
+    @Test
+    public void testFindShardsByDirectoryAndGlob() throws IOException {
+        Path dir = tempDir.resolve("data");
+        Files.createDirectories(dir.resolve("nested"));
+        for (String name : Arrays.asList("b.csv", "a.csv.gz", "notes.txt", "nested/c.csv")) {
+            Files.write(dir.resolve(name), new byte[0]);
+        }
+        assertEquals(Arrays.asList(dir.resolve("a.csv.gz"), dir.resolve("b.csv")), ShardedBookStats.findShards(dir.toString()));
+        assertEquals(Arrays.asList(dir.resolve("b.csv")), ShardedBookStats.findShards(dir + "/*.csv"));
+        assertEquals(Arrays.asList(dir.resolve("b.csv"), dir.resolve("nested/c.csv")), ShardedBookStats.findShards(dir + "/**.csv"));
+    }
+
+    /**
+     * Split the bundled csv into shards that each repeat the header. The last shard is gzip compressed.
+     */
+    private static List<Path> writeShards(Path dir, int count) throws IOException {
+        Files.createDirectories(dir);
+        List<String> lines = new ArrayList<>(Arrays.asList(new String(BundledBooks.csv(), StandardCharsets.UTF_8).split("\n")));
+        String header = lines.remove(0);
+        List<Path> shards = new ArrayList<>();
+        int perShard = (lines.size() + count - 1) / count;
+        for (int i = 0; i < count; i++) {
+            StringBuilder shard = new StringBuilder(header).append('\n');
+            for (String line : lines.subList(i * perShard, Math.min(lines.size(), (i + 1) * perShard))) {
+                shard.append(line).append('\n');
+            }
+            boolean compress = i == count - 1;
+            Path file = dir.resolve("shard-" + i + (compress ? ".csv.gz" : ".csv"));
+            try (OutputStream out = compress ? new GZIPOutputStream(Files.newOutputStream(file)) : Files.newOutputStream(file)) {
+                out.write(shard.toString().getBytes(StandardCharsets.UTF_8));
+            }
+            shards.add(file);
+        }
+        return shards;
+    }
+}
@@ -0,0 +1,97 @@
+import com.patientping.*;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class TestStreamingBookStats {
+
+    private static final String CSV =
+            "bookID,title,authors,average_rating,isbn,isbn13,language_code,# num_pages,ratings_count,text_reviews_count\n" +
+                    "1681,The Confessions,Augustine of Hippo-John E. Rotelle-Maria Boulding,4.91,1565480848,9781565480841,eng,416,138,24\n" +
+                    "1684,The City of God,Augustine of Hippo-Thomas Merton-Marcus Dods,2.92,0679783199,9780679783190,spa,905,99,15\n" +
+                    "1685,The Enchiridion,Augustine of Hippo-Bruce Harbert-John E. Rotelle,4.04,1565481240,9781565481244,eng,144,251,19\n" +
+                    "4,Harry Potter and the Chamber of Secrets,J.K. Rowling,4.41,0439554896,9780439554893,en-US,352,6267,272\n" +
+                    "10,Harry Potter Collection,J.K. Rowling,4.73,0439827604,9780439827607,eng,3342,24,820\n";
+
+    private static InputStream csv(String data) {
+        return new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testStreamingStatsForAllBooks() throws IOException {
+        StreamingBookStats stats = new StreamingBookStats();
+        stats.load(csv(CSV));
+
+        StatsAccumulator all = stats.getAllStats();
+        assertEquals(5, all.getBookCount());
+        assertEquals("Augustine of Hippo", all.getAuthorAggregates().findMostBooks().getName());
+        assertEquals(3, all.getAuthorAggregates().findMostBooks().getBookCount());
+        assertEquals(1681, all.getHighestRated().getHighestRatedBook().getId());
+        assertEquals(10, all.getHighestRatio().getHighestRatioBook().getId());
+        assertEquals("Maria Boulding", all.getAuthorAggregates().findHighestAverageRating().getName());
+    }
+
+    @Test
+    public void testStreamingStatsForEnglishBooks() throws IOException {
+        StreamingBookStats stats = new StreamingBookStats();
+        stats.load(csv(CSV));
+
+        StatsAccumulator english = stats.getEnglishStats();
+        assertEquals(4, english.getBookCount());
+        assertEquals(2, english.getAuthorAggregates().getTotals("Augustine of Hippo").getBookCount());
+        assertNull(english.getAuthorAggregates().getTotals("Thomas Merton"));
+        assertEquals("Augustine of Hippo", english.getAuthorAggregates().findMostBooks().getName());
+        assertEquals(4.474999904632568, english.getAuthorAggregates().getTotals("John E. Rotelle").getAverageRating());
+    }
+
+    @Test
+    public void testHeaderOnlyInputHasNoAnswers() throws IOException {
+        StreamingBookStats stats = new StreamingBookStats();
+        stats.load(csv(CSV.substring(0, CSV.indexOf('\n') + 1)));
+
+        for (StatResult result : StatsReport.of("All", stats.getAllStats()).getResults()) {
+            assertFalse(result.isPresent(), result.getMetric().toString());
+        }
+        assertEquals(0, stats.getEnglishStats().getBookCount());
+    }
+
+    @Test
+    public void testStreamingStatsMatchListBasedStats() throws IOException {
+        StreamingBookStats stats = new StreamingBookStats();
+        stats.load(BundledBooks.open());
+
+        BundledBooks.assertSameAnswers(BundledBooks.sequentialReport(BundledBooks.books()), StatsReport.of("All", stats.getAllStats()));
+        BundledBooks.assertSameAnswers(BundledBooks.sequentialReport(BundledBooks.englishBooks()), StatsReport.of("English", stats.getEnglishStats()));
+    }
+
+    @Test
+    public void testNearTieAveragesMatchAuthor() throws IOException {
+        // Summed as floats in book order, Near's six ratings average 3.2249997, tying Tied, who was seen first.
+        // Summed as doubles they would average 3.225 and win.
+        StringBuilder csv = new StringBuilder(CSV.substring(0, CSV.indexOf('\n') + 1))
+                .append("1,Only,Tied,3.2249997,1,1,eng,100,100,10\n");
+        float[] ratings = {2.95f, 4.66f, 1.64f, 2.48f, 4.46f, 3.16f};
+        for (int i = 0; i < ratings.length; i++) {
+            csv.append(i + 2).append(",Book,Near,").append(ratings[i]).append(",1,1,eng,100,100,10\n");
+        }
+        BookStats bookStats = new BookStats();
+        List<Book> books = bookStats.loadCsv(csv(csv.toString()));
+        StatsReport expected = BundledBooks.sequentialReport(books);
+        assertEquals("Tied", expected.getResults().get(3).getAuthor());
+
+        StreamingBookStats streaming = new StreamingBookStats();
+        streaming.load(csv(csv.toString()));
+        BundledBooks.assertSameAnswers(expected, StatsReport.of("All", streaming.getAllStats()));
+        IncrementalBookStats incremental = new IncrementalBookStats(25);
+        incremental.append(books);
+        BundledBooks.assertSameAnswers(expected, StatsReport.of("All", incremental));
+    }
+}